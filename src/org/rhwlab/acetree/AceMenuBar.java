@@ -109,6 +109,8 @@ public class AceMenuBar extends JMenuBar implements ActionListener, ItemListener
     JMenuItem iSetEndTime;
     JMenuItem iIncrementEndTime;
     JMenuItem iUndo;
+    JMenuItem iRedo;
+    JMenuItem iReplayJournal;
     JMenuItem iATVTree;
     JMenuItem iAncestralTree;
     JMenuItem iSulstonTree;
@@ -128,6 +130,7 @@ public class AceMenuBar extends JMenuBar implements ActionListener, ItemListener
     JCheckBoxMenuItem i3D2save;
     JCheckBoxMenuItem i3D2Zsave;
     JCheckBoxMenuItem i2Dsave;
+    JMenuItem iExportImages;
     JMenuItem   iViewEllipse;
     JMenuItem   iDepthViews;
     JMenuItem iAllCentroids;
@@ -342,6 +345,12 @@ public class AceMenuBar extends JMenuBar implements ActionListener, ItemListener
 	        iUndo = new JMenuItem(UNDO);
 	        iUndo.addActionListener(this);
 	        menu.add(iUndo);
+	        iRedo = new JMenuItem(REDO);
+	        iRedo.addActionListener(this);
+	        menu.add(iRedo);
+	        iReplayJournal = new JMenuItem(REPLAYJOURNAL);
+	        iReplayJournal.addActionListener(this);
+	        menu.add(iReplayJournal);
 	        menu.addSeparator();
 	        iSetEndTime = new JMenuItem(SETENDTIME);
 	        iSetEndTime.addActionListener(this);
@@ -458,6 +467,9 @@ public class AceMenuBar extends JMenuBar implements ActionListener, ItemListener
 	        i2Dsave = new JCheckBoxMenuItem(TWODSAVE);
 	        i2Dsave.addItemListener(this);
 	        menu.add(i2Dsave);
+	        iExportImages = new JMenuItem(EXPORTIMAGES);
+	        iExportImages.addActionListener(this);
+	        menu.add(iExportImages);
 		}
 
 		if(fullgui){
@@ -809,6 +821,10 @@ public class AceMenuBar extends JMenuBar implements ActionListener, ItemListener
             iAceTree.incrementEndTime();
         } else if (iUndo == o) {
             iAceTree.undo();
+        } else if (iRedo == o) {
+            iAceTree.redo();
+        } else if (iReplayJournal == o) {
+            iAceTree.replayJournal();
         } else if (iAncestralTree == o) {
             iAceTree.ancestral();
         } else if (iSulstonTree == o) {
@@ -826,6 +842,7 @@ public class AceMenuBar extends JMenuBar implements ActionListener, ItemListener
         	    view = new WormGUIDESWindow(iAceTree);
                 view.initializeWormGUIDES();
             } else {
+                view.showSeries();
                 view.showMainStage();
             }
         } else if (i3D2Z == o) {
@@ -834,6 +851,8 @@ public class AceMenuBar extends JMenuBar implements ActionListener, ItemListener
             new EllipseViewer();
         } else if (iDepthViews == o) {
             new DepthViews("");
+        } else if (iExportImages == o) {
+            iAceTree.exportImages();
         } else if (iAllCentroids == o) {
             iAceTree.allCentroidsView();
         } else if (iCellMovementImage == o) {
@@ -969,6 +988,8 @@ public class AceMenuBar extends JMenuBar implements ActionListener, ItemListener
         ,SETENDTIME = "Set end time"
         ,INCREMENTENDTIME = "Increment end time"
         ,UNDO = "Undo"
+        ,REDO = "Redo"
+        ,REPLAYJOURNAL = "Replay unsaved edits"
         ,VIEW = "View"
         ,THREED = "3D old View"
         ,THREED3 = "3D Sister View"
@@ -976,6 +997,7 @@ public class AceMenuBar extends JMenuBar implements ActionListener, ItemListener
         ,THREEDTWOSAVE = "Save 3D View"
         ,THREEDTWOZSAVE = "Save 3D Sister View"
         ,TWODSAVE = "Save 2D"
+        ,EXPORTIMAGES = "Export 2D images..."
         ,ANNOTATIONPROPERTIES= "Annotation Properties"
         ,VIEWELLIPSE = "View ellipse"
         ,DEPTHVIEWS = "Depth views"
@@ -22,6 +22,7 @@ import org.rhwlab.image.*;
 //import org.rhwlab.image.EditImage;
 //import org.rhwlab.image.EditImage3;
 
+import org.rhwlab.image.management.ExportImagesDialog;
 import org.rhwlab.image.management.ImageConversionManager;
 import org.rhwlab.image.management.ImageManager;
 import org.rhwlab.image.management.ImageWindowDelegate;
@@ -43,6 +44,7 @@ import org.rhwlab.nucedit.SetEndTimeDialog;
 import org.rhwlab.nucedit.Siamese;
 import org.rhwlab.nucedit.Zafer1;
 import org.rhwlab.snight.Config;
+import org.rhwlab.snight.EditJournal;
 import org.rhwlab.snight.NucZipper;
 import org.rhwlab.snight.NucleiMgr;
 import org.rhwlab.snight.Nucleus;
@@ -62,6 +64,7 @@ import java.awt.BorderLayout;
 import java.awt.Component;
 import java.awt.Dimension;
 import java.awt.Font;
+import java.awt.GraphicsEnvironment;
 import java.awt.KeyboardFocusManager;
 import java.awt.Toolkit;
 import java.awt.Window;
@@ -105,6 +108,7 @@ import javax.swing.event.MouseInputAdapter;
 import javax.swing.event.TreeSelectionEvent;
 import javax.swing.event.TreeSelectionListener;
 import javax.swing.tree.DefaultTreeCellRenderer;
+import javax.swing.tree.DefaultTreeModel;
 import javax.swing.tree.TreeNode;
 import javax.swing.tree.TreePath;
 import javax.swing.tree.TreeSelectionModel;
@@ -214,6 +218,7 @@ public class AceTree extends JPanel
 
     private CanonicalTree   iCanonicalTree;
     protected PlayerControl   iPlayerControl;
+    private PlaybackPipeline  iPlayback;
     private EditTraverse    iEditTraverse;
 
     private int         iColor;
@@ -235,6 +240,9 @@ public class AceTree extends JPanel
 
     private static boolean fullGUI = false;
 
+    // -Dacetree.checkupdate=true compares each patched tree with a full build
+    private static final boolean CHECKUPDATE = Boolean.getBoolean("acetree.checkupdate");
+
     // booleans to control tree selection changes and determine their origins
     boolean treeValueChangedFromMouseClick;
     boolean treeValueChangedFromImageChange;
@@ -588,6 +596,8 @@ public class AceTree extends JPanel
 
             // build an ImageManager (file parsing, name logic, image related runtime variables
             if (configManager != null) {
+                // the background work of the previous series would compete with this one
+                if (imageManager != null) imageManager.close();
                 imageManager = new ImageManager(configManager.getImageConfig());
             } else {
                 System.out.println("Can't build ImageManager in AceTree.bringUpSeriesUI() - Config didn't successfully build an ImageConfig\n\n\n");
@@ -666,6 +676,9 @@ public class AceTree extends JPanel
 	        setShowAnnotations(true);
 	        setShowSulstonAnnotations(true);
 	        updateDisplay();
+	        // an open WormGUIDES window moves on to this series
+	        if (iAceMenuBar.view != null) iAceMenuBar.view.showSeries();
+	        offerJournalRecovery();
     	} catch (Throwable t) {
 			new GeneralStartupError(getMainFrame(), t);
     	}
@@ -931,8 +944,7 @@ public class AceTree extends JPanel
         }
         setStartingCell(c, time);
         // if current cell cannot be found anymore deactivate active cell to avoid accidental change
-        Vector nuclei = iNucleiMgr.getElementAt(time);
-        Nucleus n = NucUtils.getCurrentCellNucleus(nuclei, iCurrentCell);
+        Nucleus n = iNucleiMgr.getCurrentCellNucleus(iCurrentCell, time + 1);
         if (c != null && n == null) {
             iCurrentCell = null;
         }
@@ -955,6 +967,86 @@ public class AceTree extends JPanel
         // System.gc();
     }
 
+    /**
+     * brings the lineage up to date after an edit of the nuclei
+     * <br>only the time points marked dirty since the last build and what
+     * descends from them are recomputed and the JTree is patched in place;
+     * falls back to clearTree() and buildTree(true) when that is not possible
+     */
+    public void rebuildTree() {
+        Vector patched = null;
+        if (iAncesTree != null && iRoot != null) {
+            patched = iNucleiMgr.updateNuclei(iRoot);
+        }
+        String patchedLineage = null;
+        if (patched != null && CHECKUPDATE) {
+            patchedLineage = AncesTree.describe(iRoot, iNucleiMgr.getNucleiRecord());
+            patched = null;
+        }
+        if (patched == null) {
+            clearTree();
+            buildTree(true);
+            if (patchedLineage != null) checkUpdate(patchedLineage);
+            return;
+        }
+        if (iEditLog != null) {
+            iEditLog.append("rebuildTree() patched = " + patched.size() + iEditLog.getTime());
+        }
+        iCellsByName = iAncesTree.getCellsByName();
+        iCellsByName.remove("P");
+        iCellsByName.put("P", iRoot);
+
+        // one notification per changed subtree that is still in the JTree
+        DefaultTreeModel model = (DefaultTreeModel)iTree.getModel();
+        for (int i=0; i < patched.size(); i++) {
+            Cell c = (Cell)patched.elementAt(i);
+            if (!c.isNodeAncestor(iRoot)) continue;
+            boolean inner = false;
+            TreeNode p = c.getParent();
+            while (p != null && !inner) {
+                inner = patched.contains(p);
+                p = p.getParent();
+            }
+            if (!inner) model.nodeStructureChanged(c);
+        }
+
+        // same as the end of buildTree, back to the current cell
+        Cell c = null;
+        int time = this.imageManager.getCurrImageTime();
+        if (iCurrentCell != null) {
+            c = (Cell)iCellsByName.get(iCurrentCell.getName());
+        }
+        setStartingCell(c, time);
+        Nucleus n = iNucleiMgr.getCurrentCellNucleus(iCurrentCell, time + 1);
+        if (c != null && n == null) {
+            iCurrentCell = null;
+        }
+        updateDisplay();
+        this.treeValueChangedFromEdit = true;
+        if (iEditTraverse != null)  {
+            iEditTraverse.buildNotification();
+        }
+    }
+
+    // reports where the tree and names updateNuclei left differ from a full build
+    private void checkUpdate(String patchedLineage) {
+        String fullLineage = AncesTree.describe(iRoot, iNucleiMgr.getNucleiRecord());
+        if (fullLineage.equals(patchedLineage)) {
+            println("checkUpdate: patched tree matches the full build");
+            return;
+        }
+        String [] a = patchedLineage.split("\n");
+        String [] b = fullLineage.split("\n");
+        int k = 0;
+        while (k < a.length && k < b.length && a[k].equals(b[k])) k++;
+        println("checkUpdate: patched tree differs from the full build at line " + (k + 1));
+        println("checkUpdate: patched: " + (k < a.length ? a[k] : ""));
+        println("checkUpdate: full:    " + (k < b.length ? b[k] : ""));
+        if (iEditLog != null) {
+            iEditLog.append("checkUpdate: patched tree differs at line " + (k + 1) + iEditLog.getTime());
+        }
+    }
+
     private Cell walkUpToAGoodCell() {
         Cell c = null;
         //System.out.println("Looking for a starting cell beginning at root: " + iRoot.getName());
@@ -2017,14 +2109,20 @@ public class AceTree extends JPanel
         if (iImgWin != null) {
             //System.out.println("Refreshing image window with new image, time: " + this.imageManager.getCurrImageTime() + ", plane: " + this.imageManager.getCurrImagePlane());
             // refresh the ImageWindow by building the desired image in the series with ImageManager and passing it along
-            if (this.imageManager.isCurrImageMIP()) {
+            String imageKey = makeImageKey();
+            if (imageKey.equals(iImgWin.getImageKey())) {
+                // the same image, only the centroids, annotations or current cell changed
+                iImgWin.refreshOverlay();
+            } else if (this.imageManager.isCurrImageMIP()) {
                 // rebuild a maximum intensity projection (most likely the contrast slider was updated and ImageWindow has called back to updateDisplay())
                 maximumIntensityProjection(false); // will pass the max projection to ImageWindow
+                iImgWin.setImageKey(imageKey);
             } else {
                 int planeNum = -1;
                 if (this.configManager.getImageConfig().getUseStack() == 1) { planeNum = this.imageManager.getCurrImagePlane(); }
 
                 iImgWin.refreshDisplay(this.imageManager.makeImageNameForTitle(), this.imageManager.extractColorChannelFromImagePlus(this.imageManager.makeImage(), this.iColor), planeNum);
+                iImgWin.setImageKey(imageKey);
             }
         }
 
@@ -2046,6 +2144,19 @@ public class AceTree extends JPanel
         }
     }
 
+    /**
+     * @return what the image shown is made from; an image window showing an image
+     * with the same key only needs its overlay repainted
+     */
+    private String makeImageKey() {
+        return System.identityHashCode(this.imageManager) + CS + this.configManager.getImageConfig().getImagePrefixes()[0]
+                + CS + this.imageManager.getCurrImageTime() + CS + this.imageManager.getCurrImagePlane()
+                + CS + this.imageManager.isCurrImageMIP() + CS + iColor
+                + CS + ImageManager.getContrastMin1() + CS + ImageManager.getContrastMax1()
+                + CS + ImageManager.getContrastMin2() + CS + ImageManager.getContrastMax2()
+                + CS + ImageManager.getContrastMin3() + CS + ImageManager.getContrastMax3();
+    }
+
     @SuppressWarnings("static-access")
 //	public void handleImage() {
 //        String cfile = makeImageName();
@@ -2134,8 +2245,7 @@ public class AceTree extends JPanel
         try {
             int t = time - 1;
             //System.out.println("Looking for nuc " + iCurrentCell.getName() + " at time: " + t);
-        	Vector nuclei = iNucleiMgr.getElementAt(time - 1);
-            n = NucUtils.getCurrentCellNucleus(nuclei, iCurrentCell);
+            n = iNucleiMgr.getCurrentCellNucleus(iCurrentCell, time);
         } catch(Exception e) {
             System.out.println("AceTree.getCurrentCellParameters error at time=" + time);
         }
@@ -2169,7 +2279,7 @@ public class AceTree extends JPanel
         if (iCurrentCellPresent) {
             sb2.append(name + " is one of ");
             sb2.append(NucUtils.countLiveCells(nuclei) + " cells at time " + (this.imageManager.getCurrImageTime()));
-            Nucleus n = NucUtils.getCurrentCellNucleus(nuclei, iCurrentCell);
+            Nucleus n = iNucleiMgr.getCurrentCellNucleus(iCurrentCell, time);
 	        if (n != null) {
             sb2.append("\nlocation: " + iCurrentCellXloc + ", " + iCurrentCellYloc + ", " + n.z);
 	        //sb2.append(CS + iAxis);
@@ -2885,11 +2995,10 @@ public class AceTree extends JPanel
             return;
         }
 
-        Vector nuclei = iNucleiMgr.getElementAt(this.imageManager.getCurrImageTime() - 1);
         String currentName = parent.getName();
         StringBuffer dummy = new StringBuffer();
-        Nucleus anterior = NucUtils.getCurrentCellData(nuclei, anteriorCell.getName());
-        Nucleus posterior = NucUtils.getCurrentCellData(nuclei, posteriorCell.getName());
+        Nucleus anterior = iNucleiMgr.getCurrentCellData(anteriorCell.getName(), this.imageManager.getCurrImageTime());
+        Nucleus posterior = iNucleiMgr.getCurrentCellData(posteriorCell.getName(), this.imageManager.getCurrImageTime());
         //System.out.println("makeDaughterDisplay: anterior: " + anterior);
         //System.out.println("makeDaughterDisplay: posterior: " + posterior);
         if (anterior != null && posterior != null) {
@@ -3052,12 +3161,10 @@ public class AceTree extends JPanel
             //System.out.println("Prevtime called at: " + this.imageManager.getCurrImageTime());
         	//Vector nuclei1 = iNucleiMgr.getElementAt(this.imageManager.getCurrImageTime() + iTimeInc);
             //Vector nuclei0 = iNucleiMgr.getElementAt(this.imageManager.getCurrImageTime() + iTimeInc - 1);
-            Vector nuclei1 = iNucleiMgr.getElementAt(this.imageManager.getCurrImageTime());
-            Vector nuclei0 = iNucleiMgr.getElementAt(this.imageManager.getCurrImageTime() - 1);
 
             //System.out.println("Queried nucs at times: " + (this.imageManager.getCurrImageTime() + iTimeInc) + ", " + (this.imageManager.getCurrImageTime() + iTimeInc - 1));
             //System.out.println("Looking for parent of " + iCurrentCell.getName() + " at those times");
-        	Nucleus n = NucUtils.getParent(nuclei0, nuclei1, iCurrentCell.getName());
+        	Nucleus n = iNucleiMgr.getParent(iCurrentCell.getName(), this.imageManager.getCurrImageTime() + 1);
             Cell currentCellSave = iCurrentCell;
             if (n != null) {
                 //System.out.println("Parent: " + n.identity + " of: " + iCurrentCell.getName());
@@ -3405,22 +3512,82 @@ public class AceTree extends JPanel
         }
     }
 
+    /**
+     * takes back the last edit recorded in the EditJournal
+     */
     public void undo() {
+        int r = iNucleiMgr.getJournal().undo();
+        if (r == EditJournal.NOTHING) {
+            println("undo: nothing to undo");
+            return;
+        }
         iEditLog.append("UNDO");
-        iNucleiMgr.restoreNucleiRecord();
-        iNucleiMgr.clearAllHashkeys();
-        clearTree();
-        buildTree(true);
+        afterJournal(r);
+    }
+
+    /**
+     * applies again the last edit taken back by undo()
+     */
+    public void redo() {
+        int r = iNucleiMgr.getJournal().redo();
+        if (r == EditJournal.NOTHING) {
+            println("redo: nothing to redo");
+            return;
+        }
+        iEditLog.append("REDO");
+        afterJournal(r);
+    }
+
+    /**
+     * asks whether to replay the edits an earlier session journaled but
+     * did not save; the journal is left as it is when the answer is no
+     */
+    private void offerJournalRecovery() {
+        File file = iNucleiMgr.getRecoveredJournal();
+        if (file == null || GraphicsEnvironment.isHeadless()) return;
+        int answer = JOptionPane.showConfirmDialog(iMainFrame,
+                "An earlier session left edits that were not saved:\n" + file
+                + "\nReplay them now? They can also be replayed later from the menu.",
+                "Unsaved edits", JOptionPane.YES_NO_OPTION);
+        if (answer == JOptionPane.YES_OPTION) replayJournal();
+    }
+
+    /**
+     * applies the edits an earlier session journaled but did not save
+     */
+    public void replayJournal() {
+        File file = iNucleiMgr.getRecoveredJournal();
+        if (file == null) {
+            JOptionPane.showMessageDialog(iMainFrame, "There are no unsaved edits to replay.");
+            return;
+        }
+        int k = 0;
+        try {
+            k = iNucleiMgr.getJournal().recover();
+        } catch(IOException ioe) {
+            println("replayJournal: " + ioe);
+        }
+        println("replayJournal: " + k + " edits from " + file);
+        if (k <= 0) return;
+        iEditLog.append("REPLAY " + k);
+        afterJournal(EditJournal.REMOVED);
+    }
+
+    private void afterJournal(int r) {
+        if (r == EditJournal.REMOVED) {
+            // rows taken out of the nuclei_record are not seen by rebuildTree
+            iNucleiMgr.clearAllHashkeys();
+            clearTree();
+            buildTree(true);
+        } else {
+            rebuildTree();
+        }
 
         // update WormGUIDES data if it's open
         if (iAceMenuBar.view != null && !iAceMenuBar.view.isClosed()) {
             iAceMenuBar.view.rebuildData();
         }
-
-        this.treeValueChangedFromEdit = true;
-        setStartingCell((Cell)iRoot.getFirstChild(), this.configManager.getImageConfig().getStartingIndex());
         iEditLog.setModified(true);
-
     }
 
     ///////////////////// editing end ///////////////////////////////////
@@ -3517,6 +3684,15 @@ public class AceTree extends JPanel
         iImgWin.saveImageIfEnabled();
     }
 
+    /**
+     * writes a range of time points and planes, with the centroids and annotations
+     * shown, to image files or a movie without stepping the image window through them
+     */
+    public void exportImages() {
+        if (iImgWin == null) return;
+        new ExportImagesDialog(iMainFrame, this.imageManager, iImgWin.getImageSavingManager(), iColor);
+    }
+
 
     private void delay(int n) {
         long t = System.currentTimeMillis();
@@ -3539,14 +3715,7 @@ public class AceTree extends JPanel
     }
     
     public boolean nextImageFast() {
-    	if(iImgWin!=null)
-		    iImgWin.setSpecialEffect(null);
-        boolean b = nextTime();
-        for (int i = 0; i < 4 & b; i++)
-        	b = nextTime();
-        
-        updateDisplay();
-        return b;
+        return getPlayback().step(FASTSTEP);
     }
 
     public boolean prevImage() {
@@ -3557,14 +3726,15 @@ public class AceTree extends JPanel
     }
     
     public boolean prevImageFast() {
-    	if(iImgWin!=null)
-		    iImgWin.setSpecialEffect(null);
-        boolean b = prevTime();
-        for (int i = 0; i < 4 & b; i++)
-        	b = prevTime();
-        
-        updateDisplay();
-        return b;
+        return getPlayback().step(-FASTSTEP);
+    }
+
+    /**
+     * @return the PlaybackPipeline the PlayerControl and the fast steps go through
+     */
+    public PlaybackPipeline getPlayback() {
+        if (iPlayback == null) iPlayback = new PlaybackPipeline(this);
+        return iPlayback;
     }
 
     @SuppressWarnings("unused")
@@ -3718,6 +3888,7 @@ public class AceTree extends JPanel
     ,HEIGHT30 = 30
     ,XINC = 8
     ,YINC = 12
+    ,FASTSTEP = 5
     ;
 
 
@@ -1,74 +1,380 @@
 package org.rhwlab.acetree;
 
+import java.io.BufferedReader;
 import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
 import java.text.DecimalFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Vector;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.stream.Stream;
 
+import org.rhwlab.snight.Identity3;
 import org.rhwlab.snight.NucZipper;
-import org.rhwlab.snight.NucleiMgr;
-
+import org.rhwlab.snight.NucleiMgrHeadless;
+import org.rhwlab.snight.Nucleus;
 
+/**
+ * reprocesses series without the UI: load, naming and AncesTree, save
+ * <br>given one config it processes that series in this JVM; given
+ * several, or a list file, or a glob, every series is run in a JVM of
+ * its own, a bounded number at a time, and a CSV summary with the
+ * timings of each is written when all are done
+ * <br>series get a JVM each because Identity3, NucUtils and Cell keep
+ * the series being worked on in static fields, so two series cannot be
+ * named in one JVM at the same time; it is also what makes the heap
+ * limit of a series enforceable
+ * <pre>
+ * AceTreeBatch [options] config.xml ... | @list.txt | 'dir/*&#47;*.xml'
+ *   -workers n     series processed at once (default: processors / 2)
+ *   -mem size      heap of each series, as for -Xmx (default 2g)
+ *   -summary file  the CSV summary (default batch_summary.csv)
+ *   -logs dir      the output of each series (default batch_logs)
+ *   -nosave        do not write the nuclei back
+ *   -naming engine serial, parallel or verify (default parallel); verify
+ *                  names each series both ways and logs the names that differ
+ * </pre>
+ */
 public class AceTreeBatch {
-    
-    String      iConfigName;
-    NucleiMgr   iNucleiMgr;
-    
-    @SuppressWarnings("unused")
+
+    String              iConfigName;
+    NucleiMgrHeadless   iNucleiMgr;
+    boolean             iSave;
+    long []             iTimes;
+    int                 iNuclei;
+    int                 iCells;
+
 	public AceTreeBatch(String configName) {
+        this(configName, true);
+    }
+
+	public AceTreeBatch(String configName, boolean save) {
         iConfigName = configName;
-        int r = bringUpSeriesData(configName);
+        iSave = save;
+        iTimes = new long[STAGES];
+    }
+
+    /**
+     * processes the series in this JVM
+     * @return 0 if it was processed, -1 if its nuclei could not be read
+     */
+    public int run() {
+        int r = bringUpSeriesData(iConfigName);
         if (r != 0) {
             println("AceTreeBatch, bad nucleiMgr");
-            System.exit(0);
+            return r;
         }
-        else println("AceTreeBatch, good series");
-        String realSave = iNucleiMgr.getConfig().iZipFileName;
-        File file = new File(realSave);
-        NucZipper nz = new NucZipper(file, iNucleiMgr, null);
-        println("AceTreeBatch, " + realSave);
-        println("AceTreeBatch, saved");
-
-        
-        
+        println("AceTreeBatch, good series");
+        if (iSave) {
+            long t = System.currentTimeMillis();
+            String realSave = iNucleiMgr.getConfig().iZipFileName;
+            new NucZipper(new File(realSave), iNucleiMgr, null);
+            iTimes[SAVE] = System.currentTimeMillis() - t;
+            println("AceTreeBatch, saved, " + realSave);
+        }
+        return 0;
     }
-    
-    @SuppressWarnings("unused")
+
 	public int bringUpSeriesData(String configFileName) {
         System.out.println("bringUpSeriesData: " + configFileName);
-        File fx = new File(configFileName);
-        
-        // this is the only place where we construct a NucleiMgr
-        NucleiMgr nucMgr = new NucleiMgr(configFileName);
+        long t = System.currentTimeMillis();
+        NucleiMgrHeadless nucMgr = new NucleiMgrHeadless(configFileName);
+        iTimes[LOAD] = System.currentTimeMillis() - t;
         if (!nucMgr.iGoodNucleiMgr) {
             return -1;
         }
+        t = System.currentTimeMillis();
         nucMgr.processNuclei(true, nucMgr.getConfig().iNamingMethod);
-        String config = nucMgr.getConfig().getShortName();
+        iTimes[PROCESS] = System.currentTimeMillis() - t;
         iNucleiMgr = nucMgr;
-        // System.gc();
+        Vector record = nucMgr.getNucleiRecord();
+        for (int i=0; i < record.size(); i++) {
+            Vector nuclei = (Vector)record.get(i);
+            for (int j=0; j < nuclei.size(); j++) {
+                if (((Nucleus)nuclei.get(j)).status > 0) iNuclei++;
+            }
+        }
+        iCells = nucMgr.getCellsByName().size();
         return 0;
     }
-    
 
+    // the line the batch looks for in the output of a series
+    String result() {
+        return RESULT + iTimes[LOAD] + C + iTimes[PROCESS] + C + iTimes[SAVE] + C + iNuclei + C + iCells;
+    }
+
+    /////////////// many series ///////////////
+
+    /**
+     * one series of a batch, run in a JVM of its own
+     */
+    static class Series {
+        String  iConfig;
+        File    iLog;
+        int     iExit = -1;
+        String  iStatus = "not run";
+        long    iWall;
+        String  iResult;
+
+        Series(String config, File log) {
+            iConfig = config;
+            iLog = log;
+        }
+
+        Series run(String mem, boolean save) {
+            ArrayList<String> cmd = new ArrayList<String>();
+            cmd.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+            cmd.add("-Xmx" + mem);
+            cmd.add("-Djava.awt.headless=true");
+            cmd.add("-cp");
+            cmd.add(System.getProperty("java.class.path"));
+            cmd.add(AceTreeBatch.class.getName());
+            cmd.add(ONE);
+            if (!save) cmd.add(NOSAVE);
+            cmd.add(NAMING);
+            cmd.add(Identity3.NAMING_ENGINE[Identity3.getNamingEngine()]);
+            cmd.add(iConfig);
+            long t = System.currentTimeMillis();
+            try {
+                ProcessBuilder pb = new ProcessBuilder(cmd);
+                pb.redirectErrorStream(true);
+                pb.redirectOutput(iLog);
+                Process p = pb.start();
+                iExit = p.waitFor();
+                iResult = findResult(iLog);
+                if (iExit == 0 && iResult != null) iStatus = "ok";
+                else if (iExit == 0) iStatus = "failed";
+                else iStatus = outOfMemory(iLog) ? "out of memory" : "exit " + iExit;
+            } catch(IOException ioe) {
+                iStatus = "cannot start: " + ioe.getMessage();
+            } catch(InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                iStatus = "interrupted";
+            }
+            iWall = System.currentTimeMillis() - t;
+            println("AceTreeBatch, " + iStatus + CS + iWall + CS + iConfig);
+            return this;
+        }
+
+        String toCSV() {
+            String r = iResult == null ? ",,,," : iResult.substring(RESULT.length());
+            return quote(iConfig) + C + quote(iStatus) + C + iExit + C + iWall + C + r + C + quote(iLog.getPath());
+        }
+    }
+
+    /**
+     * runs the series, at most workers at a time, and writes the summary
+     * @return number of series that did not finish
+     */
+    public static int runBatch(Vector<String> configs, int workers, String mem, boolean save,
+            File summary, File logs) {
+        logs.mkdirs();
+        ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, workers), new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "AceTreeBatch");
+                t.setDaemon(true);
+                return t;
+            }
+        });
+        final String fmem = mem;
+        final boolean fsave = save;
+        ArrayList<Series> series = new ArrayList<Series>();
+        ArrayList<Future<Series>> futures = new ArrayList<Future<Series>>();
+        long start = System.currentTimeMillis();
+        for (int i=0; i < configs.size(); i++) {
+            String config = configs.get(i);
+            String name = new File(config).getName();
+            final Series s = new Series(config, new File(logs, i + "_" + name + ".log"));
+            series.add(s);
+            futures.add(pool.submit(() -> s.run(fmem, fsave)));
+        }
+        int failed = 0;
+        try {
+            for (int i=0; i < futures.size(); i++) {
+                if (!futures.get(i).get().iStatus.equals("ok")) failed++;
+            }
+        } catch(InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            println("AceTreeBatch interrupted");
+        } catch(ExecutionException ee) {
+            println("AceTreeBatch exception: " + ee.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+        long wall = System.currentTimeMillis() - start;
+        try {
+            PrintWriter pw = new PrintWriter(summary);
+            pw.println(HEADER);
+            for (int i=0; i < series.size(); i++) pw.println(series.get(i).toCSV());
+            pw.close();
+        } catch(IOException ioe) {
+            println("AceTreeBatch, cannot write summary, " + summary + CS + ioe);
+        }
+        println("AceTreeBatch, " + series.size() + " series, " + failed + " failed, "
+                + fmt1(wall / 1000.) + " s, summary " + summary);
+        return failed;
+    }
+
+    /**
+     * @param arg a config, @ followed by a file listing configs one per
+     * line (# starts a comment), or a glob such as dats/*&#47;*.xml
+     * @param configs the configs found are added here
+     */
+    public static void addConfigs(String arg, Vector<String> configs) {
+        if (arg.startsWith("@")) {
+            try {
+                BufferedReader br = new BufferedReader(new FileReader(arg.substring(1)));
+                String s;
+                while ((s = br.readLine()) != null) {
+                    s = s.trim();
+                    if (s.length() == 0 || s.startsWith("#")) continue;
+                    addConfigs(s.split("\\s+")[0], configs);
+                }
+                br.close();
+            } catch(IOException ioe) {
+                println("AceTreeBatch, cannot read list, " + arg + CS + ioe);
+            }
+            return;
+        }
+        int g = firstGlobChar(arg);
+        if (g < 0) {
+            configs.add(arg);
+            return;
+        }
+        // walk from the last directory before the first wildcard
+        int k = arg.lastIndexOf('/', g);
+        Path base = Paths.get(k < 0 ? "." : (k == 0 ? "/" : arg.substring(0, k)));
+        String pattern = k < 0 ? base.toString() + "/" + arg : arg;
+        PathMatcher pm = FileSystems.getDefault().getPathMatcher("glob:" + pattern);
+        ArrayList<String> found = new ArrayList<String>();
+        try (Stream<Path> paths = Files.walk(base)) {
+            for (Iterator<Path> it = paths.iterator(); it.hasNext(); ) {
+                Path p = it.next();
+                if (pm.matches(p) && Files.isRegularFile(p)) found.add(p.toString());
+            }
+        } catch(IOException ioe) {
+            println("AceTreeBatch, cannot search, " + base + CS + ioe);
+        }
+        Collections.sort(found);
+        if (found.isEmpty()) println("AceTreeBatch, nothing matches, " + arg);
+        configs.addAll(found);
+    }
+
+    private static int firstGlobChar(String s) {
+        for (int i=0; i < s.length(); i++) {
+            if ("*?[{".indexOf(s.charAt(i)) >= 0) return i;
+        }
+        return -1;
+    }
+
+    private static String findResult(File log) throws IOException {
+        String result = null;
+        BufferedReader br = new BufferedReader(new FileReader(log));
+        String s;
+        while ((s = br.readLine()) != null) {
+            if (s.startsWith(RESULT)) result = s;
+        }
+        br.close();
+        return result;
+    }
+
+    private static boolean outOfMemory(File log) {
+        try {
+            BufferedReader br = new BufferedReader(new FileReader(log));
+            String s;
+            boolean b = false;
+            while (!b && (s = br.readLine()) != null) b = s.contains("OutOfMemoryError");
+            br.close();
+            return b;
+        } catch(IOException ioe) {
+            return false;
+        }
+    }
+
+    private static String quote(String s) {
+        return "\"" + s.replace("\"", "\"\"") + "\"";
+    }
 
     /**
-     * @param args
+     * @param args see the class comment
      */
     public static void main(String[] args) {
-        String configName = args[0];
-        configName = "/nfs/waterston1/annots/murray/20060716_cnd1_3/dats/20060716_cnd1_3.xml";
-        println("AceTreeBatch.main, " + configName);
-        new AceTreeBatch(configName);
-        //Config config = new Config(configName);
+        Vector<String> configs = new Vector<String>();
+        int workers = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+        String mem = "2g";
+        boolean save = true;
+        boolean one = false;
+        File summary = new File("batch_summary.csv");
+        File logs = new File("batch_logs");
+        for (int i=0; i < args.length; i++) {
+            String a = args[i];
+            if (a.equals("-workers") && i + 1 < args.length) workers = Integer.parseInt(args[++i]);
+            else if (a.equals("-mem") && i + 1 < args.length) mem = args[++i];
+            else if (a.equals("-summary") && i + 1 < args.length) summary = new File(args[++i]);
+            else if (a.equals("-logs") && i + 1 < args.length) logs = new File(args[++i]);
+            else if (a.equals(NAMING) && i + 1 < args.length) setNamingEngine(args[++i]);
+            else if (a.equals(NOSAVE)) save = false;
+            else if (a.equals(ONE)) one = true;
+            else addConfigs(a, configs);
+        }
+        if (configs.isEmpty()) {
+            println("usage: AceTreeBatch [-workers n] [-mem size] [-summary file] [-logs dir] [-nosave] [-naming engine] config.xml ... | @list | glob");
+            System.exit(2);
+        }
+        if (one || configs.size() == 1) {
+            println("AceTreeBatch.main, " + configs.get(0));
+            AceTreeBatch batch = new AceTreeBatch(configs.get(0), save);
+            int r = batch.run();
+            if (r == 0) println(batch.result());
+            System.exit(r == 0 ? 0 : 1);
+        }
+        int failed = runBatch(configs, workers, mem, save, summary, logs);
+        System.exit(failed == 0 ? 0 : 1);
+    }
 
+    private static void setNamingEngine(String name) {
+        for (int i=0; i < Identity3.NAMING_ENGINE.length; i++) {
+            if (Identity3.NAMING_ENGINE[i].equals(name)) {
+                Identity3.setNamingEngine(i);
+                return;
+            }
+        }
+        println("AceTreeBatch, unknown naming engine, " + name);
+        System.exit(2);
     }
+
     private static void println(String s) {System.out.println(s);}
-    private static void print(String s) {System.out.print(s);}
     private static final String CS = ", ";
-    private static final DecimalFormat DF0 = new DecimalFormat("####");
+    private static final String C = ",";
     private static final DecimalFormat DF1 = new DecimalFormat("####.#");
-    private static final DecimalFormat DF4 = new DecimalFormat("####.####");
-    private static String fmt4(double d) {return DF4.format(d);}
     private static String fmt1(double d) {return DF1.format(d);}
-    private static String fmt0(double d) {return DF0.format(d);}
 
+    private static final int
+         LOAD = 0
+        ,PROCESS = 1
+        ,SAVE = 2
+        ,STAGES = 3
+        ;
+
+    private static final String
+         ONE = "-one"
+        ,NOSAVE = "-nosave"
+        ,NAMING = "-naming"
+        ,RESULT = "BATCHRESULT,"
+        ,HEADER = "config,status,exit,wall_ms,load_ms,process_ms,save_ms,nuclei,cells,log"
+        ;
 }
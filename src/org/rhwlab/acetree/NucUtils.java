@@ -96,6 +96,8 @@ public class NucUtils {
     /**
      * Given a cell name and a vector of nuclei data for this time point
      * return the Nucleus object for this the cell in the list at this time point.
+     * <br>this scans the vector; for a time point of the nuclei_record
+     * NucleiMgr.getCurrentCellData(cellName, time) uses an index instead
      */
     @SuppressWarnings("unused")
 	public static Nucleus getCurrentCellData(Vector nucData, String cellName) {
@@ -117,6 +119,8 @@ public class NucUtils {
     /**
      * Given a cell and a vector of nuclei data for this time point
      * return the Nucleus object for this the cell in the list at this time point.
+     * <br>this scans the vector; for a time point of the nuclei_record
+     * NucleiMgr.getCurrentCellNucleus(cell, time) uses an index instead
      */
     @SuppressWarnings("unused")
 	public static Nucleus getCurrentCellNucleus(Vector nucData, Cell cell) {
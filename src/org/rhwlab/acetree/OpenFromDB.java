@@ -24,6 +24,7 @@ import javax.swing.JTextField;
 import javax.swing.WindowConstants;
 import javax.swing.border.Border;
 
+import org.rhwlab.dbaccess.EmbryoCatalog;
 import org.rhwlab.dbaccess.EmbryoXML;
 import org.rhwlab.dbaccess.DBAccess;
 import org.rhwlab.snight.Config;
@@ -64,6 +65,33 @@ public class OpenFromDB  extends JDialog implements ActionListener {
         addEditedPointsCheckbox(p);
         setVisible(true);
         pack();
+        warmCatalog(dbLocation());
+    }
+
+    // brings the catalog of the database up to date while the series is typed
+    private static void warmCatalog(final String location) {
+        Thread t = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                EmbryoCatalog.getCatalog(location).rescan();
+            }
+        }, "OpenFromDB catalog");
+        t.setDaemon(true);
+        t.start();
+    }
+
+    /**
+     * @param series a path to an embryo XML file, or a series name
+     * @return the path, from the EmbryoCatalog when a series name was given
+     */
+    private String resolve(String series) {
+        if (new File(series).isFile()) return series;
+        EmbryoCatalog catalog = EmbryoCatalog.getCatalog(DBAccess.cDBLocation);
+        String path = catalog.getPath(series);
+        if (path == null && catalog.isScanning()) {
+            println("OpenFromDB, " + series + " not in the catalog yet, the database is still being scanned");
+        }
+        return path != null ? path : series;
     }
 
     private void addIdentityChoices(JPanel mp) {
@@ -96,6 +124,8 @@ public class OpenFromDB  extends JDialog implements ActionListener {
         bg.add(iTraditional);
         bg.add(iNew);
         iNew.setSelected(true);
+        iTraditional.addActionListener(this);
+        iNew.addActionListener(this);
         println("addDBChoices, " + DBAccess.cDBLocation);
         //iNew.setSelected(!DBAccess.cDBLocation.equals("/nfs/waterston/embryoDBnew"));
         rp.add(new JLabel("Database"));
@@ -115,10 +145,14 @@ public class OpenFromDB  extends JDialog implements ActionListener {
         mp.add(rp);
     }
 
-    void handleRadioButtons() {
+    private String dbLocation() {
     	if (iTraditional.isSelected()) {
-    		DBAccess.cDBLocation = "/nfs/waterston/embryoDBnew";
-    	} else DBAccess.cDBLocation = "/nfs/waterston/embryoDB";
+    		return "/nfs/waterston/embryoDBnew";
+    	} else return "/nfs/waterston/embryoDB";
+    }
+
+    void handleRadioButtons() {
+    	DBAccess.cDBLocation = dbLocation();
     	if (iManual.isSelected()) {
     		Config.cDefaultNaming = Config.MANUAL;
     	} else Config.cDefaultNaming = Config.NEWCANONICAL;
@@ -128,7 +162,10 @@ public class OpenFromDB  extends JDialog implements ActionListener {
 	@Override
 	public void actionPerformed(ActionEvent e) {
         Object o = e.getSource();
-        if (o == iOpen) {
+        if (o == iTraditional || o == iNew) {
+            // the other database is the one the series will be looked up in
+            warmCatalog(dbLocation());
+        } else if (o == iOpen) {
         	handleRadioButtons();
         	String sr = "";
         	String s = iSeries.getText();
@@ -145,7 +182,7 @@ public class OpenFromDB  extends JDialog implements ActionListener {
                             sr = sa[0];
                             System.out.println("\n\n***series: " + sr);
                         	try{
-                        		EmbryoXML exml = new EmbryoXML(sr);
+                        		EmbryoXML exml = new EmbryoXML(resolve(sr));
                         		String annots = exml.iRecord[EmbryoXML.ANNOTS];
                         		String atconfig = exml.iRecord[EmbryoXML.ATCONFIG];
                         		String editedPts = exml.iRecord[EmbryoXML.EDITEDTP];
@@ -175,7 +212,7 @@ public class OpenFromDB  extends JDialog implements ActionListener {
         	} else {
         	//println("actionPerformed, " + s);
         		try{
-        			EmbryoXML exml = new EmbryoXML(s);
+        			EmbryoXML exml = new EmbryoXML(resolve(s));
         			String annots = exml.iRecord[EmbryoXML.ANNOTS];
         			String atconfig = exml.iRecord[EmbryoXML.ATCONFIG];
         			String configFile = annots + "/dats/" + atconfig;
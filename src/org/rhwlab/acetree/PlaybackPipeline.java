@@ -0,0 +1,123 @@
+package org.rhwlab.acetree;
+
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+
+import javax.swing.Timer;
+
+import org.rhwlab.image.management.ImageManager;
+
+/**
+ * plays the image series at a fixed frame rate
+ * <br>frames are presented on the event dispatch thread from a
+ * javax.swing.Timer; each tick shows the frame the clock says is due,
+ * so when showing a frame took longer than the frame period the frames
+ * in between are skipped instead of the movie falling behind
+ * <br>after every frame the decoding of the frames that come next is
+ * queued on the worker threads of the ImageCache, so presenting a frame
+ * only converts a plane that is already in memory; the conversion stays
+ * on the event dispatch thread because ImageConversionManager and the
+ * contrast settings of ImageManager are static state
+ * <br>AceTree.nextImageFast and prevImageFast step through the same
+ * pipeline, several time points per frame
+ *
+ * Created: Oct. 2026
+ */
+public class PlaybackPipeline implements ActionListener {
+    private AceTree     iAceTree;
+    private Timer       iTimer;
+    private int         iStep;
+    private int         iPeriod;
+    private long        iStartNanos;
+    private long        iShown;
+    private long        iDropped;
+    private Runnable    iStopped;
+
+    public PlaybackPipeline(AceTree aceTree) {
+        iAceTree = aceTree;
+    }
+
+    /**
+     * starts playing, or changes direction and rate if already playing;
+     * to be called on the event dispatch thread
+     * @param forward false to play backwards
+     * @param period milliseconds from one frame to the next
+     * @param stopped run on the event dispatch thread when the movie
+     * reaches its first or last time point, may be null
+     */
+    public void start(boolean forward, int period, Runnable stopped) {
+        iStep = forward ? 1 : -1;
+        iPeriod = Math.max(period, 1);
+        iStopped = stopped;
+        iStartNanos = System.nanoTime();
+        iShown = 0;
+        iDropped = 0;
+        if (iTimer == null) {
+            iTimer = new Timer(iPeriod, this);
+            iTimer.setCoalesce(true);
+        }
+        iTimer.setDelay(iPeriod);
+        iTimer.setInitialDelay(0);
+        iTimer.restart();
+    }
+
+    /**
+     * stops playing; the frame on screen stays
+     */
+    public void stop() {
+        if (iTimer != null) iTimer.stop();
+        if (iDropped > 0) println("PlaybackPipeline, frames shown, skipped: " + iShown + CS + iDropped);
+    }
+
+    public boolean isRunning() {
+        return iTimer != null && iTimer.isRunning();
+    }
+
+    @Override
+    public void actionPerformed(ActionEvent e) {
+        long due = (System.nanoTime() - iStartNanos) / (iPeriod * 1000000L) + 1;
+        long frames = due - iShown - iDropped;
+        if (frames < 1) return;
+        iShown++;
+        iDropped += frames - 1;
+        if (!step((int)(frames * iStep), READAHEAD) && isRunning()) {
+            stop();
+            if (iStopped != null) iStopped.run();
+        }
+    }
+
+    /**
+     * moves count time points, shows the time point reached and reads
+     * the next frames ahead in the same direction
+     * @param count time points, negative to go back
+     * @return false if the first or last time point was already reached
+     */
+    public boolean step(int count) {
+        return step(count, READAHEAD_STEP);
+    }
+
+    private boolean step(int count, int readAhead) {
+        ImageManager imageManager = iAceTree.getImageManager();
+        int before = imageManager.getCurrImageTime();
+        // as nextImage, nextImageFast and prevImageFast do; playing backwards keeps it like prevImage
+        if ((count > 0 || !isRunning()) && iAceTree.getImageWindow() != null) {
+            iAceTree.getImageWindow().setSpecialEffect(null);
+        }
+        boolean b = true;
+        for (int i=0; i < Math.abs(count) && b; i++) {
+            b = count > 0 ? iAceTree.nextTime() : iAceTree.prevTime();
+        }
+        iAceTree.updateDisplay();
+        int now = imageManager.getCurrImageTime();
+        imageManager.prefetchFrames(now, count, readAhead);
+        return b && now != before;
+    }
+
+    private static final int
+         READAHEAD = 6
+        ,READAHEAD_STEP = 2
+        ;
+
+    private static final String CS = ", ";
+    private static void println(String s) {System.out.println(s);}
+}
@@ -26,7 +26,7 @@ import javax.swing.JComponent;
  * TODO To change the template for this generated type comment go to
  * Window - Preferences - Java - Code Style - Code Templates
  */
-public class PlayerControl extends JPanel implements ActionListener, Runnable {
+public class PlayerControl extends JPanel implements ActionListener {
 
   protected  AceTree iAceTree;
    protected JToolBar iToolBar;
@@ -161,28 +161,19 @@ public class PlayerControl extends JPanel implements ActionListener, Runnable {
         return b;
     }
 
-    @Override
-	public void run() {
-        boolean b; // enables run to exit when movie hits the wall
-        while (iRunning) {
-            if (iForward) {
-                b = iAceTree.nextImage();
-            } else {
-                b = iAceTree.prevImage();
-            }
-
-            if (b) {
-                try {
-                    Thread.sleep(iDwell);
-                } catch(InterruptedException ie) {
-                     ie.printStackTrace();
-                 }
-            } else {
-                iRunning = false;
+    /**
+     * plays the movie through the PlaybackPipeline, one frame every iDwell ms
+     */
+    protected void play(boolean forward) {
+        iRunning = true;
+        iForward = forward;
+        iAceTree.getPlayback().start(forward, iDwell, new Runnable() {
+            @Override
+            public void run() {
+                // the movie hit the wall
+                pause();
             }
-        }
-        setEnabledAll(true);
-        iPause.setEnabled(false);
+        });
     }
 
     // called from the WormGUIDESWindow when the WormGUIDES app goes into play mode. We want to disable
@@ -208,6 +199,7 @@ public class PlayerControl extends JPanel implements ActionListener, Runnable {
 
     public void pause() {
         iRunning = false;
+        iAceTree.getPlayback().stop();
         setEnabledAll(true);
         iPause.setEnabled(false);
 
@@ -232,8 +224,6 @@ public class PlayerControl extends JPanel implements ActionListener, Runnable {
         if (o == iPlay) {
             //iEventPusher = new EventPusher(iAceTree, 30);
             //iEventPusher.start(true);
-            iRunning = true;
-            iForward = true;
             setEnabledAll(false);
             iPause.setEnabled(true);
 
@@ -243,13 +233,11 @@ public class PlayerControl extends JPanel implements ActionListener, Runnable {
                 iAceTree.iAceMenuBar.view.disableTimeControls();
             }
 
-            new Thread(this, "TEST").start();
+            play(true);
         } else if (o == iReverse) {
             //iEventPusher = new EventPusher(iAceTree, 30);
             //iEventPusher.start(false);
             if (iRunning) return;
-            iRunning = true;
-            iForward = false;
             setEnabledAll(false);
             iPause.setEnabled(true);
 
@@ -258,7 +246,7 @@ public class PlayerControl extends JPanel implements ActionListener, Runnable {
                 iAceTree.iAceMenuBar.view.disableTimeControls();
             }
 
-            new Thread(this, "TEST").start();
+            play(false);
         } else if (o == iStepForward) {
             if (iRunning)
             	return;
@@ -29,10 +29,12 @@ import javax.swing.JPanel;
 import javax.swing.JScrollPane;
 import javax.swing.JTextArea;
 import javax.swing.JTextField;
+import javax.swing.SwingUtilities;
 import javax.swing.border.Border;
 
 import org.rhwlab.acetree.AceTree;
 import org.rhwlab.snight.NucleiMgr;
+import org.rhwlab.snight.Nucleus;
 import org.rhwlab.tree.AncesTree;
 import org.rhwlab.tree.Cell;
 
@@ -69,6 +71,10 @@ public class RedBkgComp extends JDialog implements ActionListener, Runnable {
     JCheckBox       iFeedback;
 
     RedBkgComp2     iRedBkgComp2;
+    RedQuantifier   iQuantifier;
+    int             iStart;
+    int             iEnd;
+    boolean         iSendResults;
 
     @SuppressWarnings("unused")
 	public RedBkgComp() {
@@ -144,12 +150,14 @@ public class RedBkgComp extends JDialog implements ActionListener, Runnable {
     }
 
     void getRed() {
-        int start = Integer.parseInt(iStartText.getText());
-        int end = Integer.parseInt(iEndText.getText());
+        iStart = Integer.parseInt(iStartText.getText());
+        iEnd = Integer.parseInt(iEndText.getText());
         double kMedium = Double.parseDouble(iKMediumText.getText());
         double kLarge = Double.parseDouble(iKLargeText.getText());
-        boolean sendResults = iFeedback.isSelected();
-        iRedBkgComp2.setParameters(start, end, kMedium, kLarge, this, sendResults);
+        iSendResults = iFeedback.isSelected();
+        iRedBkgComp2.setParameters(iStart, iEnd, kMedium, kLarge, this, iSendResults);
+        iQuantifier = new RedQuantifier(iNucleiMgr, iAceTree.getConfig().getImageConfig(), kMedium, kLarge);
+        iRun.setEnabled(false);
         new Thread(this).start();
     }
 
@@ -157,6 +165,7 @@ public class RedBkgComp extends JDialog implements ActionListener, Runnable {
         println("actionPerformed, request stop");
         append("requesting stop at end of current time point");
         iRedBkgComp2.stopRequested();
+        if (iQuantifier != null) iQuantifier.stopRequested();
     }
 
 
@@ -166,7 +175,27 @@ public class RedBkgComp extends JDialog implements ActionListener, Runnable {
     @Override
 	public void run() {
         //iRedBkgComp2.test1();
-
+        long startTime = System.currentTimeMillis();
+        int done = iQuantifier.run(iStart, iEnd);
+        final Vector lines = new Vector();
+        if (iSendResults) {
+            for (int time = iStart; time < iStart + done; time++) {
+                Vector nuclei = iNucleiMgr.getNuclei(time - 1);
+                for (int j=0; j < nuclei.size(); j++) {
+                    Nucleus n = (Nucleus)nuclei.get(j);
+                    if (n.status == Nucleus.NILLI) continue;
+                    lines.add(n.identity + CS + n.rweight + CS + n.rcount + CS + n.rsum + CS + time);
+                }
+            }
+        }
+        lines.add("run elapsed millisec, " + (System.currentTimeMillis() - startTime) + CS + done + " time points");
+        SwingUtilities.invokeLater(new Runnable() {
+            @Override
+            public void run() {
+                for (int i=0; i < lines.size(); i++) append((String)lines.get(i));
+                iRun.setEnabled(true);
+            }
+        });
     }
     public void append(String s) {
         iText.append(s + NL);
@@ -53,11 +53,11 @@ public class RedCorrector2 {
             cellNames.add(name);
         }
         Collections.sort(cellNames);
-        cCellNames = cellNames;
-        cCells = new Hashtable();
+        // the statics are only set at the end, RedQuantifier corrects time points in parallel
+        Hashtable cells = new Hashtable();
         for (int i=0; i < cellNames.size(); i++) {
             String name = (String)cellNames.get(i);
-            cCells.put(name, new Integer(i));
+            cells.put(name, new Integer(i));
         }
         
         
@@ -96,8 +96,12 @@ public class RedCorrector2 {
             //n.rwcorr4 = (int)Math.round(x[i]);
         }
         //showResults(nucMgr, time);
-        cM = M;
-        cNuclei = workingNuclei;
+        synchronized (RedCorrector2.class) {
+            cCellNames = cellNames;
+            cCells = cells;
+            cM = M;
+            cNuclei = workingNuclei;
+        }
     }
     
     public static void extractTerms(String cellName) {
@@ -0,0 +1,403 @@
+package org.rhwlab.analyze;
+
+import ij.ImagePlus;
+import ij.io.Opener;
+import ij.process.ImageProcessor;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Vector;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import org.rhwlab.image.ParsingLogic.ImageNameLogic;
+import org.rhwlab.image.management.ImageConfig;
+import org.rhwlab.image.management.TiffPlaneReader;
+import org.rhwlab.snight.NucleiMgr;
+import org.rhwlab.snight.Nucleus;
+
+/**
+ * background corrected red expression of every nucleus, for a range of
+ * time points
+ * <br>as in RedBkgComp2 a nucleus is measured in each plane its large
+ * circle (kLarge times its diameter) reaches: the red inside its own
+ * circle, and the red of the annulus out to the large circle with the
+ * medium circles (kMedium) of all nuclei of the plane cut out
+ * <br>each red plane is read once into a short [] and all nuclei that
+ * reach it are measured from it, through row spans of the circles that
+ * are worked out once per radius; time points are measured in parallel
+ * <br>the results go into rwraw, rwcorr1 (the plane background outside
+ * all medium circles), rwcorr2 (the annulus outside the nucleus' own
+ * medium circle), rwcorr3 (the annulus outside all medium circles, as
+ * RedBkgComp2 computed it), rsum and rcount; rwcorr4 is then solved by
+ * RedCorrector2 and rweight set by NucleiMgr.computeRWeights() from the
+ * expression correction of the config
+ *
+ * Created: Oct. 2026
+ */
+public class RedQuantifier {
+    private NucleiMgr       iNucleiMgr;
+    private ImageConfig     iImageConfig;
+    private double          iKMedium;
+    private double          iKLarge;
+    private int             iThreads;
+    private volatile boolean iStopRequested;
+    private volatile int [][] iSpans;
+    private ThreadLocal<Buffers> iBuffers;
+
+    public RedQuantifier(NucleiMgr nucleiMgr, ImageConfig imageConfig, double kMedium, double kLarge) {
+        iNucleiMgr = nucleiMgr;
+        iImageConfig = imageConfig;
+        iKMedium = kMedium;
+        iKLarge = kLarge;
+        iThreads = Math.max(1, Math.min(Runtime.getRuntime().availableProcessors(), MAXTHREADS));
+        iSpans = new int[0][];
+        iBuffers = new ThreadLocal<Buffers>() {
+            @Override
+            protected Buffers initialValue() {
+                return new Buffers();
+            }
+        };
+    }
+
+    public void setThreads(int threads) {
+        iThreads = Math.max(1, threads);
+    }
+
+    /**
+     * the time points not yet started are skipped
+     */
+    public void stopRequested() {
+        iStopRequested = true;
+    }
+
+    /**
+     * measures the nuclei of the time points start to end
+     * @return the number of time points measured
+     */
+    public int run(int start, int end) {
+        iStopRequested = false;
+        start = Math.max(start, 1);
+        end = Math.min(end, iNucleiMgr.getNucleiRecord().size());
+        if (end < start) return 0;
+        iNucleiMgr.markDirty(start, end);
+        final long begin = System.currentTimeMillis();
+        ExecutorService pool = Executors.newFixedThreadPool(iThreads, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "RedQuantifier");
+                t.setDaemon(true);
+                return t;
+            }
+        });
+        ArrayList<Future<Boolean>> futures = new ArrayList<Future<Boolean>>();
+        for (int time = start; time <= end; time++) {
+            final int t = time;
+            futures.add(pool.submit(new Callable<Boolean>() {
+                @Override
+                public Boolean call() throws Exception {
+                    if (iStopRequested) return false;
+                    quantify(t);
+                    correctCrossTalk(t);
+                    if (t % 50 == 0) println("RedQuantifier, time, elapsed, " + t + CS + (System.currentTimeMillis() - begin));
+                    return true;
+                }
+            }));
+        }
+        int done = 0;
+        try {
+            for (int i=0; i < futures.size(); i++) {
+                if (futures.get(i).get()) done++;
+            }
+        } catch(InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            println("RedQuantifier interrupted");
+        } catch(ExecutionException ee) {
+            println("RedQuantifier exception: " + ee.getCause());
+            ee.getCause().printStackTrace();
+        } finally {
+            pool.shutdownNow();
+        }
+        iNucleiMgr.computeRWeights();
+        println("RedQuantifier, " + done + " time points, " + (System.currentTimeMillis() - begin) + " ms");
+        return done;
+    }
+
+    /**
+     * measures the nuclei of one time point
+     * @param time 1-based time
+     */
+    public void quantify(int time) {
+        Vector nuclei = (Vector)iNucleiMgr.getNucleiRecord().get(time - 1);
+        ArrayList<Nucleus> live = new ArrayList<Nucleus>();
+        for (int j=0; j < nuclei.size(); j++) {
+            Nucleus n = (Nucleus)nuclei.get(j);
+            if (n.status != Nucleus.NILLI) live.add(n);
+        }
+        int count = live.size();
+        if (count == 0) return;
+        double [] nucRed = new double[count];
+        double [] nucArea = new double[count];
+        double [] annRed = new double[count];
+        double [] annArea = new double[count];
+        double [] locRed = new double[count];
+        double [] locArea = new double[count];
+        double bkgRed = 0;
+        double bkgArea = 0;
+        int [] rn = new int[count];
+        int [] rm = new int[count];
+        int [] rl = new int[count];
+        Buffers b = iBuffers.get();
+        double zPixRes = iNucleiMgr.getZPixRes();
+        int planes = iNucleiMgr.getPlaneEnd();
+        for (int plane=1; plane <= planes; plane++) {
+            boolean any = false;
+            for (int k=0; k < count; k++) {
+                Nucleus n = live.get(k);
+                double dl = nucDiameter(n, plane, n.size * iKLarge, zPixRes);
+                rl[k] = dl > 0 ? (int)Math.round(dl / 2) : -1;
+                if (rl[k] < 0) continue;
+                any = true;
+                rn[k] = radius(nucDiameter(n, plane, n.size, zPixRes));
+                rm[k] = radius(nucDiameter(n, plane, n.size * iKMedium, zPixRes));
+            }
+            if (!any) continue;
+            // beyond the last plane of the stack even if the NucleiMgr does not know it
+            if (!readRed(time, plane, b)) continue;
+
+            int width = b.iWidth;
+            int height = b.iHeight;
+            if (b.iCookies == null || b.iCookies.length < width * height) b.iCookies = new boolean[width * height];
+            boolean [] cookies = b.iCookies;
+            Arrays.fill(cookies, 0, width * height, false);
+            for (int k=0; k < count; k++) {
+                if (rl[k] < 0 || rm[k] < 0) continue;
+                Nucleus n = live.get(k);
+                int [] span = spans(rm[k]);
+                for (int dy=-rm[k]; dy <= rm[k]; dy++) {
+                    int y = n.y + dy;
+                    if (y < 0 || y >= height) continue;
+                    int h = span[Math.abs(dy)];
+                    int x0 = Math.max(n.x - h, 0);
+                    int x1 = Math.min(n.x + h, width - 1);
+                    for (int x=x0; x <= x1; x++) cookies[y * width + x] = true;
+                }
+            }
+            for (int y=0; y < height; y++) {
+                for (int x=0; x < width; x++) {
+                    if (cookies[y * width + x]) continue;
+                    bkgRed += b.pixel(x, y);
+                    bkgArea++;
+                }
+            }
+            for (int k=0; k < count; k++) {
+                if (rl[k] < 0) continue;
+                Nucleus n = live.get(k);
+                int [] outer = spans(rl[k]);
+                int [] inner = rn[k] < 0 ? null : spans(rn[k]);
+                int [] middle = rm[k] < 0 ? null : spans(rm[k]);
+                for (int dy=-rl[k]; dy <= rl[k]; dy++) {
+                    int y = n.y + dy;
+                    if (y < 0 || y >= height) continue;
+                    int ady = Math.abs(dy);
+                    int ho = outer[ady];
+                    int hi = inner == null || ady > rn[k] ? -1 : inner[ady];
+                    int hm = middle == null || ady > rm[k] ? -1 : middle[ady];
+                    int x0 = Math.max(n.x - ho, 0);
+                    int x1 = Math.min(n.x + ho, width - 1);
+                    for (int x=x0; x <= x1; x++) {
+                        int p = b.pixel(x, y);
+                        int adx = Math.abs(x - n.x);
+                        if (adx <= hi) {
+                            nucRed[k] += p;
+                            nucArea[k]++;
+                        }
+                        if (adx > hm) {
+                            locRed[k] += p;
+                            locArea[k]++;
+                        }
+                        if (!cookies[y * width + x]) {
+                            annRed[k] += p;
+                            annArea[k]++;
+                        }
+                    }
+                }
+            }
+        }
+
+        double bkg = bkgArea > 0 ? 1000 * bkgRed / bkgArea : 0;
+        for (int k=0; k < count; k++) {
+            if (nucArea[k] == 0) continue;
+            Nucleus n = live.get(k);
+            double fri = 1000 * nucRed[k] / nucArea[k];
+            double bri = annArea[k] > 0 ? 1000 * annRed[k] / annArea[k] : 0;
+            double loc = locArea[k] > 0 ? 1000 * locRed[k] / locArea[k] : 0;
+            n.rwraw = (int)Math.round(fri);
+            n.rwcorr1 = (int)Math.round(bkg);
+            n.rwcorr2 = (int)Math.round(loc);
+            n.rwcorr3 = (int)Math.round(bri);
+            n.rweight = (int)Math.round(fri - bri);
+            n.rsum = (int)Math.round(nucArea[k]);
+            n.rcount = (int)Math.round(bri);
+        }
+    }
+
+    // rwcorr4, from the rwraw and rwcorr1 just measured
+    private void correctCrossTalk(int time) {
+        Vector nuclei = (Vector)iNucleiMgr.getNucleiRecord().get(time - 1);
+        boolean any = false;
+        for (int j=0; j < nuclei.size() && !any; j++) any = ((Nucleus)nuclei.get(j)).status > 0;
+        if (!any) return;
+        try {
+            RedCorrector2.correctNuclei(iNucleiMgr, time);
+        } catch(RuntimeException re) {
+            println("RedQuantifier, no crosstalk correction at time " + time + CS + re);
+        }
+    }
+
+    // same as RedBkgComp2.nucDiameter
+    private static double nucDiameter(Nucleus n, double imgPlane, double dx, double zPixRes) {
+        double r = -0.5;
+        double R = dx/2.; //pixels
+        double y = (n.z - imgPlane)*zPixRes/R;
+        double r2 = 1 - y*y;
+        if (r2 >= 0.) r = Math.sqrt(r2)*R;
+        return 2*r;
+    }
+
+    private static int radius(double d) {
+        return d > 0 ? (int)Math.round(d / 2) : -1;
+    }
+
+    /**
+     * @return for each row offset 0..r from the center, the largest column offset inside the circle
+     * <br>the table is never changed once published, a new radius is added
+     * to a copy that replaces it, so the workers read it without locking
+     */
+    private int [] spans(int r) {
+        int [][] spans = iSpans;
+        if (r < spans.length && spans[r] != null) return spans[r];
+        int [] span = new int[r + 1];
+        for (int dy=0; dy <= r; dy++) span[dy] = (int)Math.floor(Math.sqrt((double)r * r - dy * dy));
+        synchronized (this) {
+            spans = iSpans;
+            if (r < spans.length && spans[r] != null) return spans[r];
+            spans = Arrays.copyOf(spans, Math.max(spans.length, r + 1));
+            spans[r] = span;
+            iSpans = spans;
+        }
+        return span;
+    }
+
+    /////////////// the red channel ///////////////
+
+    /**
+     * reads the red plane into the buffers
+     * <br>16bit stacks are read with TiffPlaneReader where it can, the
+     * red half of a split stack is addressed in place, flipped or not
+     * as ImageConversionManager shows it; 8bit series read the tifR
+     * image of the plane
+     * @return false if there is no red plane
+     */
+    private boolean readRed(int time, int plane, Buffers b) {
+        String [] prefixes = iImageConfig.getImagePrefixes();
+        boolean flip = iImageConfig.getFlipStack() == 1;
+        b.iX0 = 0;
+        b.iFlip = false;
+        try {
+            if (iImageConfig.getUseStack() == 1 && iImageConfig.getNumChannels() == -1) {
+                String path = ImageNameLogic.appendTimeToSingle16BitTIFPrefix(prefixes[0], time);
+                if (!read16(path, plane, b)) return false;
+                b.iFlip = flip;
+                if (iImageConfig.getSplitStack() == 1) {
+                    b.iWidth = b.iSrcWidth / 2;
+                    b.iX0 = flip ? b.iSrcWidth / 2 : 0;
+                }
+                return true;
+            }
+            if (iImageConfig.getUseStack() == 1) {
+                String path = ImageNameLogic.appendTimeToMultiple16BitTifPrefixes(prefixes, time)[0];
+                if (path.isEmpty() || !read16(path, plane, b)) return false;
+                b.iFlip = flip;
+                return true;
+            }
+            String path = ImageNameLogic.appendTimeAndPlaneTo8BittifPrefix(prefixes[0], time, plane);
+            if (path.contains(ImageNameLogic.tifDir) || path.contains(ImageNameLogic.tifDir_2)) {
+                String red = ImageNameLogic.findSecondColorChannelFromSliceImage(path);
+                if (red.equals(path)) return false;
+                path = red;
+            }
+            return readOpener(path, 1, b);
+        } catch(IOException ioe) {
+            println("RedQuantifier, cannot read, " + time + CS + plane + CS + ioe);
+            return false;
+        }
+    }
+
+    private boolean read16(String path, int plane, Buffers b) throws IOException {
+        if (!new File(path).exists()) return false;
+        TiffPlaneReader reader = TiffPlaneReader.get(path);
+        if (reader != null) {
+            short [] pixels = reader.readPlane(plane, b.iPixels, b.iDims);
+            if (pixels != null) {
+                b.iPixels = pixels;
+                b.iSrcWidth = b.iWidth = b.iDims[0];
+                b.iHeight = b.iDims[1];
+                return true;
+            }
+        }
+        return readOpener(path, plane, b);
+    }
+
+    private boolean readOpener(String path, int plane, Buffers b) {
+        if (!new File(path).exists()) return false;
+        ImagePlus ip = new Opener().openTiff(path, plane);
+        if (ip == null) return false;
+        ImageProcessor proc = ip.getProcessor();
+        int size = proc.getWidth() * proc.getHeight();
+        if (b.iPixels == null || b.iPixels.length != size) b.iPixels = new short[size];
+        Object pixels = proc.getPixels();
+        if (pixels instanceof short []) {
+            System.arraycopy(pixels, 0, b.iPixels, 0, size);
+        } else if (pixels instanceof byte []) {
+            byte [] bytes = (byte [])pixels;
+            for (int i=0; i < size; i++) b.iPixels[i] = (short)(bytes[i] & 0xff);
+        } else {
+            for (int i=0; i < size; i++) b.iPixels[i] = (short)proc.get(i);
+        }
+        b.iSrcWidth = b.iWidth = proc.getWidth();
+        b.iHeight = proc.getHeight();
+        return true;
+    }
+
+    /**
+     * the red plane being measured, one per thread
+     */
+    private static class Buffers {
+        short []    iPixels;
+        int []      iDims = new int[2];
+        boolean []  iCookies;
+        int         iSrcWidth;
+        int         iWidth;
+        int         iHeight;
+        int         iX0;
+        boolean     iFlip;
+
+        // x, y as shown in the image window
+        int pixel(int x, int y) {
+            int c = iX0 + x;
+            return iPixels[y * iSrcWidth + (iFlip ? iSrcWidth - 1 - c : c)] & 0xffff;
+        }
+    }
+
+    private static final int MAXTHREADS = 8;
+
+    private static final String CS = ", ";
+    private static void println(String s) {System.out.println(s);}
+}
@@ -1,6 +1,5 @@
 package org.rhwlab.dbaccess;
 
-import java.io.File;
 import java.text.DecimalFormat;
 import java.util.Hashtable;
 import java.util.Vector;
@@ -54,38 +53,27 @@ public class DBAccess {
     }
 
 
+    /**
+     * the embryos dated iStartDate or later that are not deleted, from the
+     * EmbryoCatalog of cDBLocation; only new or changed files are parsed
+     */
     public void getEmbryos() {
         iEmbryos = new Vector();
         iEmbryosHash = new Hashtable();
-        File f = new File(cDBLocation);
-        File [] files = f.listFiles();
-        for (int i=0; i < files.length; i++) {
-            if (!files[i].isFile()) continue;
-            iLookedAt++;
-            String absPath = files[i].getAbsolutePath();
-            EmbryoXML exml = new EmbryoXML(absPath, 0);
-            if (isOfInterest(exml)) {
-                iEmbryos.add(exml);
-                iEmbryosHash.put(exml.iRecord[EmbryoXML.SERIES], exml);
-                //println("getEmbryos, " + exml.iRecord[EmbryoXML.SERIES]);
-            }
+        EmbryoCatalog catalog = EmbryoCatalog.getCatalog(cDBLocation);
+        iLookedAt = catalog.rescan();
+        Vector<EmbryoXML> v = catalog.select(iStartDate, EmbryoXML.SERIES);
+        for (int i=0; i < v.size(); i++) {
+            EmbryoXML exml = v.get(i);
+            iEmbryos.add(exml);
+            String series = exml.iRecord[EmbryoXML.SERIES];
+            if (series != null) iEmbryosHash.put(series, exml);
+            //println("getEmbryos, " + exml.iRecord[EmbryoXML.SERIES]);
         }
     }
 
 
 
-
-    private boolean isOfInterest(EmbryoXML exml) {
-        String status = exml.iRecord[EmbryoXML.STATUS];
-        if (status.equals("deleted")) return false;
-        String date = exml.iRecord[EmbryoXML.DATE];
-        long ldate = Long.parseLong(date);
-        if (ldate < iStartDate) return false;
-        return true;
-    }
-
-
-
     private static long start;
     private static long inter;
     private static long now;
@@ -0,0 +1,388 @@
+package org.rhwlab.dbaccess;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Hashtable;
+import java.util.Vector;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * the embryo XML files of one database directory, parsed once
+ * <br>every file is kept with its size and modification time and the
+ * iRecord EmbryoXML read from it; a rescan lists the directory and only
+ * parses the files that are new or changed since, on a bounded pool of
+ * worker threads, and forgets the files that are gone
+ * <br>the catalog is written to ~/.acetree/catalog after a rescan that
+ * changed it and read back on first use, so opening a large database
+ * again only costs the directory listing
+ * <br>one catalog per directory is shared through getCatalog()
+ * <br>the entries are published as an immutable Snapshot; a rescan builds
+ * the next one without blocking anybody and swaps it in when it is done
+ * <br>select() and getPath() never wait for a rescan that is running, they
+ * answer from the snapshot there is; they only scan themselves when the
+ * catalog has never been scanned and no scan is under way
+ *
+ * Created: Oct. 2026
+ */
+public class EmbryoCatalog {
+    private static Hashtable<String, EmbryoCatalog> cCatalogs = new Hashtable<String, EmbryoCatalog>();
+
+    private String                      iLocation;
+    private volatile Snapshot           iSnapshot;
+    private final ReentrantLock         iScanLock;
+    private volatile boolean            iLoaded;
+    private volatile boolean            iScanned;
+    private int                         iThreads;
+
+    /**
+     * @param location the database directory
+     * @return the catalog of that directory, read from disk but not rescanned
+     */
+    public static EmbryoCatalog getCatalog(String location) {
+        String key = new File(location).getAbsolutePath();
+        synchronized (cCatalogs) {
+            EmbryoCatalog catalog = cCatalogs.get(key);
+            if (catalog == null) {
+                catalog = new EmbryoCatalog(key);
+                cCatalogs.put(key, catalog);
+            }
+            return catalog;
+        }
+    }
+
+    private EmbryoCatalog(String location) {
+        iLocation = location;
+        iSnapshot = new Snapshot(new Hashtable<String, Entry>());
+        iScanLock = new ReentrantLock();
+        iThreads = Math.max(1, Math.min(Runtime.getRuntime().availableProcessors(), MAXTHREADS));
+    }
+
+    public void setThreads(int threads) {
+        iThreads = Math.max(1, threads);
+    }
+
+    /**
+     * @return true once the directory has been listed since the catalog was made
+     */
+    public boolean isScanned() {
+        return iScanned;
+    }
+
+    /**
+     * @return true while a rescan is running
+     */
+    public boolean isScanning() {
+        return iScanLock.isLocked();
+    }
+
+    /**
+     * brings the catalog up to date with the directory
+     * <br>rescans run one at a time; readers keep using the last snapshot meanwhile
+     * @return number of files that had to be parsed
+     */
+    public int rescan() {
+        iScanLock.lock();
+        try {
+            load();
+            File [] files = new File(iLocation).listFiles();
+            if (files == null) {
+                println("EmbryoCatalog, cannot list, " + iLocation);
+                return 0;
+            }
+            Hashtable<String, Entry> old = iSnapshot.iEntries;
+            Hashtable<String, Entry> entries = new Hashtable<String, Entry>(files.length * 2);
+            ArrayList<Entry> stale = new ArrayList<Entry>();
+            for (int i=0; i < files.length; i++) {
+                File f = files[i];
+                if (!f.isFile()) continue;
+                String path = f.getAbsolutePath();
+                Entry e = old.get(path);
+                if (e == null || e.iModified != f.lastModified() || e.iLength != f.length()) {
+                    e = new Entry(path, f.lastModified(), f.length(), null);
+                    stale.add(e);
+                }
+                entries.put(path, e);
+            }
+            boolean changed = !stale.isEmpty() || entries.size() != old.size();
+            if (!stale.isEmpty()) parse(stale);
+            Snapshot snapshot = new Snapshot(entries);
+            iSnapshot = snapshot;
+            iScanned = true;
+            if (changed) save(snapshot);
+            return stale.size();
+        } finally {
+            iScanLock.unlock();
+        }
+    }
+
+    // a rescan by a reader, skipped if one is running already
+    private void rescanIfIdle() {
+        if (!iScanLock.tryLock()) return;
+        try {
+            rescan();
+        } finally {
+            iScanLock.unlock();
+        }
+    }
+
+    // the files parsed on the pool, each into its own EmbryoXML
+    private void parse(ArrayList<Entry> stale) {
+        ExecutorService pool = Executors.newFixedThreadPool(Math.min(iThreads, stale.size()), new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "EmbryoCatalog");
+                t.setDaemon(true);
+                return t;
+            }
+        });
+        ArrayList<Future<String []>> futures = new ArrayList<Future<String []>>();
+        for (int i=0; i < stale.size(); i++) {
+            final String path = stale.get(i).iPath;
+            futures.add(pool.submit(new Callable<String []>() {
+                @Override
+                public String [] call() {
+                    return new EmbryoXML(path, 0).iRecord;
+                }
+            }));
+        }
+        try {
+            for (int i=0; i < futures.size(); i++) {
+                stale.get(i).iRecord = futures.get(i).get();
+            }
+        } catch(InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            println("EmbryoCatalog interrupted");
+        } catch(ExecutionException ee) {
+            println("EmbryoCatalog exception: " + ee.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+        // anything not parsed is left out of the catalog and tried again next time
+        for (int i=0; i < stale.size(); i++) {
+            if (stale.get(i).iRecord == null) stale.get(i).iModified = -1;
+        }
+    }
+
+    /**
+     * @param startDate earliest DATE, as yyyymmdd
+     * @param sortField an EmbryoXML field index to sort on, or -1 to leave the order as it is
+     * @return the embryos not deleted and dated startDate or later; the
+     * records are copies and can be changed; while the first scan is
+     * running, those of the catalog as it was last saved
+     */
+    public Vector<EmbryoXML> select(long startDate, int sortField) {
+        if (!iScanned) rescanIfIdle();
+        ArrayList<Entry> picked = new ArrayList<Entry>();
+        for (Entry e : iSnapshot.iEntries.values()) {
+            if (e.iRecord == null) continue;
+            String status = e.iRecord[EmbryoXML.STATUS];
+            if (status != null && status.equals("deleted")) continue;
+            if (date(e.iRecord) < startDate) continue;
+            picked.add(e);
+        }
+        final int field = sortField;
+        Collections.sort(picked, new Comparator<Entry>() {
+            @Override
+            public int compare(Entry a, Entry b) {
+                if (field >= 0) {
+                    int k = compareField(a.iRecord[field], b.iRecord[field]);
+                    if (k != 0) return k;
+                }
+                return a.iPath.compareTo(b.iPath);
+            }
+        });
+        Vector<EmbryoXML> v = new Vector<EmbryoXML>(picked.size());
+        for (int i=0; i < picked.size(); i++) v.add(picked.get(i).toEmbryoXML());
+        return v;
+    }
+
+    /**
+     * @param series the SERIES of an embryo
+     * @return path of its XML file, null if the catalog has no such series,
+     * or does not have it yet while the first scan is running
+     */
+    public String getPath(String series) {
+        if (series == null) return null;
+        Entry e = iSnapshot.iBySeries.get(series);
+        if (e == null && !iScanned) {
+            load();
+            e = iSnapshot.iBySeries.get(series);
+        }
+        if (e == null && !iScanned) {
+            rescanIfIdle();
+            e = iSnapshot.iBySeries.get(series);
+        }
+        if (e == null || !new File(e.iPath).isFile()) return null;
+        return e.iPath;
+    }
+
+    private static long date(String [] record) {
+        String date = record[EmbryoXML.DATE];
+        try {
+            return Long.parseLong(date);
+        } catch(NumberFormatException nfe) {
+            return Long.MIN_VALUE;
+        }
+    }
+
+    private static int compareField(String a, String b) {
+        if (a == null || b == null) return a == null ? (b == null ? 0 : -1) : 1;
+        return a.compareTo(b);
+    }
+
+    /////////////// kept on disk ///////////////
+
+    private File catalogFile() {
+        String dir = System.getProperty("user.home") + File.separator + ".acetree" + File.separator + "catalog";
+        return new File(dir, Integer.toHexString(iLocation.hashCode()) + ".cat");
+    }
+
+    // a scan that is running has loaded already or is about to, so a reader does not wait for it
+    private void load() {
+        if (iLoaded || !iScanLock.tryLock()) return;
+        try {
+            if (iLoaded) return;
+            iLoaded = true;
+            Hashtable<String, Entry> entries = read();
+            if (entries != null) iSnapshot = new Snapshot(entries);
+        } finally {
+            iScanLock.unlock();
+        }
+    }
+
+    // the catalog as it was last saved, null if there is none for this directory
+    private Hashtable<String, Entry> read() {
+        File f = catalogFile();
+        if (!f.exists()) return null;
+        DataInputStream in = null;
+        Hashtable<String, Entry> entries = new Hashtable<String, Entry>();
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(f)));
+            if (in.readInt() != MAGIC) return null;
+            if (!in.readUTF().equals(iLocation)) return null;
+            int count = in.readInt();
+            int fields = in.readInt();
+            if (fields != EmbryoXML.elem.length) return null;
+            for (int i=0; i < count; i++) {
+                String path = in.readUTF();
+                long modified = in.readLong();
+                long length = in.readLong();
+                String [] record = new String[fields];
+                for (int j=0; j < fields; j++) record[j] = in.readBoolean() ? in.readUTF() : null;
+                entries.put(path, new Entry(path, modified, length, record));
+            }
+        } catch (IOException ioe) {
+            println("EmbryoCatalog, cannot read, " + f + CS + ioe);
+            return null;
+        } finally {
+            if (in != null) {
+                try { in.close(); } catch (IOException ioe) { }
+            }
+        }
+        return entries;
+    }
+
+    private void save(Snapshot snapshot) {
+        File f = catalogFile();
+        File tmp = new File(f.getPath() + ".tmp");
+        f.getParentFile().mkdirs();
+        DataOutputStream out = null;
+        try {
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+            ArrayList<Entry> entries = new ArrayList<Entry>();
+            for (Entry e : snapshot.iEntries.values()) {
+                if (e.iRecord != null) entries.add(e);
+            }
+            out.writeInt(MAGIC);
+            out.writeUTF(iLocation);
+            out.writeInt(entries.size());
+            out.writeInt(EmbryoXML.elem.length);
+            for (int i=0; i < entries.size(); i++) {
+                Entry e = entries.get(i);
+                out.writeUTF(e.iPath);
+                out.writeLong(e.iModified);
+                out.writeLong(e.iLength);
+                for (int j=0; j < EmbryoXML.elem.length; j++) {
+                    String s = j < e.iRecord.length ? e.iRecord[j] : null;
+                    out.writeBoolean(s != null);
+                    if (s != null) out.writeUTF(s);
+                }
+            }
+            out.close();
+            out = null;
+            if (f.exists() && !f.delete()) println("EmbryoCatalog, cannot replace, " + f);
+            if (!tmp.renameTo(f)) println("EmbryoCatalog, cannot write, " + f);
+        } catch (IOException ioe) {
+            println("EmbryoCatalog, cannot write, " + f + CS + ioe);
+        } finally {
+            if (out != null) {
+                try { out.close(); } catch (IOException ioe) { }
+            }
+            tmp.delete();
+        }
+    }
+
+    /**
+     * the entries of one scan and their index by SERIES, not changed once published
+     */
+    private static class Snapshot {
+        final Hashtable<String, Entry>  iEntries;
+        final Hashtable<String, Entry>  iBySeries;
+
+        Snapshot(Hashtable<String, Entry> entries) {
+            iEntries = entries;
+            iBySeries = new Hashtable<String, Entry>(entries.size() * 2);
+            for (Entry e : entries.values()) {
+                if (e.iRecord == null) continue;
+                String series = e.iRecord[EmbryoXML.SERIES];
+                if (series != null) iBySeries.put(series, e);
+            }
+        }
+    }
+
+    /**
+     * one XML file of the database
+     */
+    private static class Entry {
+        String      iPath;
+        long        iModified;
+        long        iLength;
+        String []   iRecord;
+
+        Entry(String path, long modified, long length, String [] record) {
+            iPath = path;
+            iModified = modified;
+            iLength = length;
+            iRecord = record;
+        }
+
+        EmbryoXML toEmbryoXML() {
+            EmbryoXML exml = new EmbryoXML();
+            System.arraycopy(iRecord, 0, exml.iRecord, 0, Math.min(iRecord.length, exml.iRecord.length));
+            return exml;
+        }
+    }
+
+    private static final int
+         MAGIC = 0x45434154
+        ,MAXTHREADS = 8
+        ;
+
+    private static final String CS = ", ";
+    private static void println(String s) {System.out.println(s);}
+}
@@ -23,7 +23,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.lang.IllegalArgumentException;
 import java.util.Enumeration;
-import java.util.Iterator;
+import java.util.HashSet;
 import java.util.Vector;
 import java.util.zip.ZipEntry;
 
@@ -52,10 +52,6 @@ import ij.process.ByteProcessor;
 import ij.process.ColorProcessor;
 import ij.process.ImageConverter;
 import ij.process.ImageProcessor;
-import javax.imageio.IIOImage;
-import javax.imageio.ImageIO;
-import javax.imageio.ImageWriteParam;
-import javax.imageio.stream.FileImageOutputStream;
 import javax.swing.BorderFactory;
 import javax.swing.JButton;
 import javax.swing.JComboBox;
@@ -89,6 +85,7 @@ import org.rhwlab.acetree.AnnotInfo;
 //import org.rhwlab.image.Image3D.PropertiesTab.SublineageUI;
 import org.rhwlab.image.ParsingLogic.ImageNameLogic;
 import org.rhwlab.image.management.ImageManager;
+import org.rhwlab.image.management.ImageSavingManager;
 import org.rhwlab.nucedit.AddOneDialog;
 import org.rhwlab.nucedit.NucRelinkDialog;
 import org.rhwlab.nucedit.UnifiedNucRelinkDialog;
@@ -105,7 +102,7 @@ import org.rhwlab.acetree.PartsList;
  * @author biowolp
  * @version 1.0 January 25, 2005
  */
-public class  ImageWindow extends JFrame implements  KeyListener, Runnable {
+public class  ImageWindow extends JFrame implements  KeyListener {
 	// variables to stay after revisions
     public ImageCanvas      iImgCanvas;
     static ImagePlus        iImgPlus;
@@ -152,8 +149,15 @@ public class  ImageWindow extends JFrame implements  KeyListener, Runnable {
 
     /* these should go into ImageSavingManager */
     boolean                 iSaveImage;
-    boolean                 iSaveInProcess;
     String                  iSaveImageDirectory;
+    ImageSavingManager      iImageSavingManager;
+
+    // what the shown image was made from and the time and plane of its overlay
+    String                  iImageKey;
+    int                     iOverlayTime;
+    int                     iOverlayPlane;
+    boolean                 iOverlayMip;
+    OverlayLayer            iOverlayLayer;
     // *****************************************
 
     /* this should go into ImageAnnotationManager */
@@ -174,8 +178,6 @@ public class  ImageWindow extends JFrame implements  KeyListener, Runnable {
     // *************************************
 
     // NOT SURE WHAT THESE ARE OR WHAT THEY'RE USED FOR
-    boolean                 iUseRobot;
-    boolean                 iNewConstruction;
     static boolean         	cAcbTree = false;
 
 
@@ -239,7 +241,6 @@ public class  ImageWindow extends JFrame implements  KeyListener, Runnable {
         iIsRightMouseButton = false;
         iSaveImage = false;
         iSaveImageDirectory = null;
-        iUseRobot = false;
 
         iImgCanvas.addKeyListener(this);
 
@@ -275,6 +276,7 @@ public class  ImageWindow extends JFrame implements  KeyListener, Runnable {
 
     public void setBookmarkList(ListModel list) {
     	iBookmarkListModel = (DefaultListModel)list;
+    	getOverlayLayer().setBookmarkList(list);
     }
     
     public MouseHandler getMouseHandler() {
@@ -635,27 +637,53 @@ public class  ImageWindow extends JFrame implements  KeyListener, Runnable {
 
         if (ip != null)
             iImgPlus.setProcessor(imageName, ip.getProcessor());
+        iImageKey = null;
+
+        // the centroids and annotations are painted over the image by paintOverlay(), the image is not drawn on
+        int time = iAceTree.getImageManager().getCurrImageTime();
+        if (time < 0) {
+            iAceTree.getImageManager().setCurrImageTime(1);
+            iTimeInc = 0;
+        }
+        iOverlayTime = iAceTree.getImageManager().getCurrImageTime();
+        iOverlayPlane = iAceTree.getImageManager().getCurrImagePlane();
+        iOverlayMip = inMaxProjectionMode;
         if (iIsMainImgWindow && iAceTree.isTracking()) {
             //System.out.println("In imagewindow, acetree is tracking so adding main annotation");
             iAceTree.addMainAnnotation();
         }
-        if (iAceTree.getShowCentroids())
-            showCentroids(inMaxProjectionMode);
-        if (iAceTree.getShowAnnotations())
-            showAnnotations(inMaxProjectionMode);
-        if (iSpecialEffect != null)
-            showSpecialEffect();
 
         iImgCanvas.repaint();
 
-        if(iImageZoomerPanel!=null){
+        if (iImageZoomerPanel != null || iImageZoomerFrame != null) {
             BufferedImage image = BufferedImageCreator.create((ColorProcessor)iImgPlus.getProcessor());
-            iImageZoomerPanel.updateImage(image);
+            if (iImageZoomerPanel != null) iImageZoomerPanel.updateImage(image);
+            if (iImageZoomerFrame != null) iImageZoomerFrame.updateImage(image);
         }
-        if (iImageZoomerFrame != null) {
-            BufferedImage image = BufferedImageCreator.create((ColorProcessor)iImgPlus.getProcessor());
-            iImageZoomerFrame.updateImage(image);
+    }
+
+    /**
+     * Repaints the centroids and annotations over the image shown, after they are shown or hidden or
+     * the current cell changed; the image is not made again
+     */
+    public void refreshOverlay() {
+        if (iIsMainImgWindow && iAceTree.isTracking()) {
+            iAceTree.addMainAnnotation();
         }
+        if (iImageZoomerPanel != null) iImageZoomerPanel.getImage().repaint();
+        if (iImageZoomerFrame != null) iImageZoomerFrame.repaint();
+    }
+
+    /**
+     * @param key what the shown image was made from, set by AceTree after refreshDisplay() so it can tell
+     * when a refresh only needs refreshOverlay()
+     */
+    public void setImageKey(String key) {
+        iImageKey = key;
+    }
+
+    public String getImageKey() {
+        return iImageKey;
     }
 
     /**
@@ -820,7 +848,7 @@ public class  ImageWindow extends JFrame implements  KeyListener, Runnable {
         iSpecialEffect = specialEffect;
     }
 
-    protected void showSpecialEffect() {
+    protected void paintSpecialEffect(Graphics2D g) {
         if (!iAceTree.isTracking()) 
         	return;
         int x1 = ((Integer)iSpecialEffect[0]).intValue();
@@ -834,19 +862,16 @@ public class  ImageWindow extends JFrame implements  KeyListener, Runnable {
         int offset = r2 + 4;
         if (y2 < y1) offset = -offset;
 
-
-        ImageProcessor iproc = getImagePlus().getProcessor();
-        //iproc.setColor(Color.magenta);
-        iproc.setColor(COLOR[iDispProps[LOWERSIS].iLineageNum]);
+        //g.setColor(Color.magenta);
+        g.setColor(COLOR[iDispProps[LOWERSIS].iLineageNum]);
         if (z2 <= z1) 
-        	iproc.setColor(COLOR[iDispProps[UPPERSIS].iLineageNum]);
-        //if (z2 <= z1) iproc.setColor(Color.cyan);
-
-        iproc.setLineWidth(cLineWidth);
-        //iproc.drawLine((int)x1, (int)y1, (int)x2, (int)y2);
-        iproc.drawLine(x1, y1, x2, y2);
-        iproc.drawPolygon(EUtils.pCircle(x2, y2, r2));
-        iproc.drawString("    " + s + "(" + z2 + ")", x2, y2 + offset);
+        	g.setColor(COLOR[iDispProps[UPPERSIS].iLineageNum]);
+        //if (z2 <= z1) g.setColor(Color.cyan);
+
+        g.setStroke(new BasicStroke(cLineWidth));
+        g.drawLine(x1, y1, x2, y2);
+        g.drawPolygon(EUtils.pCircle(x2, y2, r2));
+        drawString(g, "    " + s + "(" + z2 + ")", x2, y2 + offset);
     }
 
 //    protected void setImageTimeAndPlaneFromTitle() {
@@ -944,55 +969,95 @@ public class  ImageWindow extends JFrame implements  KeyListener, Runnable {
 
 
     public static final int [] WIDTHS = {1,2,3,4,5,6,7,8,9,10};
+    private static final Font ANNOTATIONFONT = new Font("SansSerif", Font.BOLD, 13);
     
-    @SuppressWarnings("unused")
-	protected void showCentroids(boolean isInMaxProjectionMode) {
-        int time = iAceTree.getImageManager().getCurrImageTime();
-        if (time < 0) {
-            iAceTree.getImageManager().setCurrImageTime(1);
-            iTimeInc = 0;
+    /**
+     * Paints the centroids, annotations and special effect over the image shown, in image coordinates
+     */
+    public void paintOverlay(Graphics2D g) {
+        if (iOverlayTime < 1 || iAceTree == null) return;
+        Stroke stroke = g.getStroke();
+        paintOverlays(g, iOverlayTime, iOverlayPlane, iOverlayMip);
+        if (iSpecialEffect != null)
+            paintSpecialEffect(g);
+        g.setStroke(stroke);
+    }
+
+    /**
+     * Paints the centroids and annotations this window shows over an image of the given time and plane
+     *
+     * @param g graphics of the image, in image coordinates
+     * @param time
+     * @param plane
+     * @param isInMaxProjectionMode
+     */
+    public void paintOverlays(Graphics2D g, int time, int plane, boolean isInMaxProjectionMode) {
+        OverlayLayer.Painting p = makePainting(getOverlayLayer(), time, plane, isInMaxProjectionMode);
+        if (p != null)
+            p.paint(g);
+    }
+
+    /**
+     * Settles what paintOverlays() would paint over an image of the given time and plane, to be painted later
+     * on another thread; it reads the nuclei, the current cell, the bookmarks and the annotations shown, so it
+     * is made on the event dispatch thread
+     *
+     * @param layer the geometry cache to use, an export passes its own so the one of this window is left alone
+     * @param time
+     * @param plane
+     * @param isInMaxProjectionMode
+     * @return the painting, null if there is nothing to paint
+     */
+    public OverlayLayer.Painting makePainting(OverlayLayer layer, int time, int plane, boolean isInMaxProjectionMode) {
+        if (iAceTree == null) return null;
+        boolean centroids = iAceTree.getShowCentroids();
+        boolean annotations = iAceTree.getShowAnnotations();
+        if (!centroids && !annotations) return null;
+        OverlayLayer.Frame f = layer.getFrame(cNucleiMgr, time, plane, isInMaxProjectionMode);
+        if (f == null) return null;
+        OverlayLayer.Painting p = new OverlayLayer.Painting();
+        if (centroids)
+            addCentroids(p, f);
+        if (annotations)
+            addAnnotations(p, f);
+        return p;
+    }
+
+    /**
+     * @return the cached centroid and annotation geometry of this window
+     */
+    public synchronized OverlayLayer getOverlayLayer() {
+        if (iOverlayLayer == null) {
+            iOverlayLayer = new OverlayLayer();
+            iOverlayLayer.setBookmarkList(iBookmarkListModel);
         }
-        
-        Vector v = cNucleiMgr.getElementAt(iAceTree.getImageManager().getCurrImageTime() - 1);
-        
-        ImageProcessor iproc = getImagePlus().getProcessor();
-        iproc.setColor(COLOR[iDispProps[NCENTROID].iLineageNum]);
-        iproc.setLineWidth(WIDTHS[iDispProps[LINEWIDTH].iLineageNum]);
-        Polygon p = null;
-        
-        Enumeration e = v.elements();
+        return iOverlayLayer;
+    }
+
+    private void addCentroids(OverlayLayer.Painting painting, OverlayLayer.Frame f) {
+        int width = WIDTHS[iDispProps[LINEWIDTH].iLineageNum];
+        Color ncolor = COLOR[iDispProps[NCENTROID].iLineageNum];
+        Color bmcolor = COLOR[iDispProps[BMCENTROID].iLineageNum];
+        Color scolor = COLOR[iDispProps[SCENTROID].iLineageNum];
+        int TOGGLE_OPTION = 6; // toggle option colorscheme display property is 6th element in iDispProp
+        boolean dots = iDispProps[TOGGLE_OPTION].iLineageNum != 0; // don't toggle, default to empty circles
+        painting.setCircleStyle(width, dots);
+
         Cell currentCell = iAceTree.getCurrentCell();
-        while(e.hasMoreElements()) {
-            Nucleus n = (Nucleus)e.nextElement();
-            if (n.status < 0) 
-            	continue;
-
-            double x;
-            if (isInMaxProjectionMode) {
-                // instead of passing an image plane, we'll pass the z component of the nucleus itself which in effect gives us the actual diameter of the cell
-                x = cNucleiMgr.nucDiameter(n, n.z);
-            } else {
-                x = cNucleiMgr.nucDiameter(n,
-                        iAceTree.getImageManager().getCurrImagePlane());
-            }
-            if (x > 0) {
-            	// Manage bookmarked cells
-                if (iBookmarkListModel != null && !iBookmarkListModel.isEmpty()) {
-                	String name = n.identity;
-                	if (iBookmarkListModel.contains(name))
-                		iproc.setColor(COLOR[iDispProps[BMCENTROID].iLineageNum]);
-                }
-                if (currentCell != null && n.hashKey != null && n.hashKey.equals(currentCell.getHashKey()) && iAceTree.isTracking()) {
-                    iproc.setColor(COLOR[iDispProps[SCENTROID].iLineageNum]);
-                }
-				int TOGGLE_OPTION = 6; // toggle option colorscheme display property is 6th element in iDispProp
-				if(iDispProps[TOGGLE_OPTION].iLineageNum == 0) { // don't toggle, default to empty circles
-				    iproc.drawPolygon(EUtils.pCircle(n.x, n.y, (int)(x/2.)));
-				} else {
-				    iproc.drawDot(n.x, n.y);
-				}
-                iproc.setColor(COLOR[iDispProps[NCENTROID].iLineageNum]);
-            }
+        String currentKey = currentCell != null && iAceTree.isTracking() ? currentCell.getHashKey() : null;
+        OverlayLayer overlay = getOverlayLayer();
+        for (OverlayLayer.Mark m : f.getMarks()) {
+            Polygon p = m.getCircle();
+            if (p == null)
+                continue;
+            Nucleus n = m.getNucleus();
+            Color c = ncolor;
+            // Manage bookmarked cells
+            if (overlay.isBookmarked(n.identity))
+                c = bmcolor;
+            if (currentKey != null && currentKey.equals(n.hashKey))
+                c = scolor;
+            painting.addCircle(p, m.getX(), m.getY(), c);
         }
     }
 
@@ -1036,64 +1101,37 @@ public class  ImageWindow extends JFrame implements  KeyListener, Runnable {
 
     }
 
-    @SuppressWarnings("unused")
-	protected void showAnnotations(boolean inMaxProjectionMode) {
-        Vector v = cNucleiMgr.getNucleiRecord().elementAt(iAceTree.getImageManager().getCurrImageTime()  - 1);
-        int size = v.size();
-        int [] x = new int[size];
-        int [] y = new int[size];
-        Vector annots = new Vector();
-        Enumeration e = v.elements();
-        while(e.hasMoreElements()) {
-            AnnotInfo ai = null;
-            Nucleus n = (Nucleus)e.nextElement();
-            String propername = PartsList.lookupSulston(n.identity);
-			String label = n.identity;
-			if(propername != null){
-			    label = label + " " + propername;
-			}
-         
-            if (n.status >= 0 && (isInList(label) != null)) {
-                ai = new AnnotInfo(label, n.x, n.y);
-
-                // if we're in max projection mode, then we want to show all annotations so we'll add all annotations
-                if (inMaxProjectionMode) {
-                    annots.add(ai);
-                } else if (cNucleiMgr.hasCircle(n, iAceTree.getImageManager().getCurrImagePlane())) {
-                    annots.add(ai);
-                }
-            }
+    private void addAnnotations(OverlayLayer.Painting painting, OverlayLayer.Frame f) {
+        HashSet<String> shown = new HashSet<String>();
+        Enumeration e = iAnnotsShown.elements();
+        while (e.hasMoreElements()) {
+            shown.add(((AnnotInfo)e.nextElement()).iName);
         }
-        drawStrings(annots, this);
-        //NucUtils.drawStrings(annots, this);
-        //iShow.setText(HIDE);
-    }
+        if (shown.isEmpty())
+            return;
 
-    private void drawStrings(Vector annots, ImageWindow imgWin) {
-        ImagePlus imgPlus = imgWin.getImagePlus();
-        ImageProcessor imgProc = imgPlus.getProcessor();
-        ImageCanvas imgCan = imgWin.getCanvas();
-        //imgProc.setColor(Color.yellow);
-        //System.out.println("iDispProps: " + iDispProps);
-        imgProc.setColor(COLOR[iDispProps[ANNOTATIONS].iLineageNum]);
-        imgProc.setFont(new Font("SansSerif", Font.BOLD, 13));
-        Enumeration e = annots.elements();
-        while (e.hasMoreElements()) {
-            AnnotInfo ai = (AnnotInfo)e.nextElement();
-            imgProc.moveTo(imgCan.offScreenX(ai.iX),imgCan.offScreenY(ai.iY));
-            
+        painting.setLabelStyle(COLOR[iDispProps[ANNOTATIONS].iLineageNum], ANNOTATIONFONT);
+        boolean sulston = iAceTree.getShowSulstonAnnotations();
+        for (OverlayLayer.Mark m : f.getMarks()) {
+            String label = m.getLabel();
+            if (label == null || !shown.contains(label))
+                continue;
             // If there is a proper name appended, shows Sulston or terminal name base on user choice
-            String name = ai.iName.trim(); //to avoid leading space
+            String name = label.trim(); //to avoid leading space
             int i = name.indexOf(" ");
             if (i > 0)
-                if (iAceTree.getShowSulstonAnnotations()) {
+                if (sulston) {
                     name = name.substring(0, i+1);
                 } else {
                     name = name.substring(i+1, name.length()).toUpperCase();
                 }
-            imgProc.drawString(name);
+            painting.addLabel(name, m.getX(), m.getY());
         }
-        imgPlus.updateAndDraw();
+    }
+
+    // as ImageProcessor.drawString(), (x, y) is the lower left corner of the text
+    private static void drawString(Graphics2D g, String s, int x, int y) {
+        g.drawString(s, x, y - g.getFontMetrics().getDescent());
     }
 
     public void updateCurrentCellAnnotation(Cell newCell, Cell old, int time) {
@@ -1148,52 +1186,9 @@ public class  ImageWindow extends JFrame implements  KeyListener, Runnable {
     }
 
     public void saveImageIfEnabled() {
-        if (iSaveImage) {
-            while(iSaveInProcess);
-            new Thread(this).start();
-        }
-    }
-
-    @Override
-	public void run() {
-        iSaveInProcess = true;
-        int k = 1000;
-        if (iNewConstruction) {
-            k = 5000; // long delay needed on new open
-            iNewConstruction = false;
-        }
-        try {
-            Thread.sleep(k);
-        } catch(InterruptedException ie) {
-            ie.printStackTrace();
-        }
-        saveImage();
-
+        if (iSaveImage) saveImage();
     }
 
-	void saveJpeg(BufferedImage bi, String outFileName, int quality) {
-		Iterator iter = ImageIO.getImageWritersByFormatName("jpeg");
-		javax.imageio.ImageWriter writer = (javax.imageio.ImageWriter)iter.next();
-		ImageWriteParam iwp = writer.getDefaultWriteParam();
-		iwp.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
-		iwp.setCompressionQuality(1);   // an integer between 0 and 1
-		//println("otherSaveJpeg, " + iwp.canWriteCompressed() + CS + iwp.getCompressionQuality());
-		//outFileName = "jpg" + quality + ".jpg";
-		File file = new File(outFileName);
-		if (file.exists()) file.delete();
-		file = new File(outFileName);
-		try {
-			FileImageOutputStream output = new FileImageOutputStream(file);
-			writer.setOutput(output);
-			IIOImage image = new IIOImage(bi, null, null);
-			writer.write(null, image, iwp);
-			writer.dispose();
-			output.close();
-		} catch(Exception e) {
-			e.printStackTrace();
-		}
-	}
-
 	public void zoomView() {
         String title = "zoom";
         BufferedImage image = BufferedImageCreator.create((ColorProcessor)iImgPlus.getProcessor());
@@ -1202,52 +1197,33 @@ public class  ImageWindow extends JFrame implements  KeyListener, Runnable {
     	iImageZoomerFrame = izf;
 	}
 
-    @SuppressWarnings("unused")
+    /**
+     * Saves the image shown as a JPEG; it is copied now, then encoded and written in the background,
+     * so the window does not need to be repainted and captured from the screen first
+     */
 	public void saveImage() {
         String title = makeTitle();
         if (title == null) {
             cancelSaveOperations();
             return;
         }
-        Rectangle screenRect = this.getBounds();
-        int topAdjust = 23;
-        int y = screenRect.y;
-        screenRect.y += topAdjust;
-        int height = screenRect.height;
-        screenRect.height -= topAdjust;
-        // create screen shot
-        //File f = new File("ij-ImageIO_.jar");
-        //if (!f.exists()) {
-        //    println("CANNOT SAVE FILES -- MISSING ij-ImageIO_.jar");
-        //    return;
-        //}
-
-        Robot robot = null;
-        BufferedImage image = null;
-        if (iUseRobot) {
-            try {
-                robot = new Robot();
-            } catch(AWTException e) {
-                println("EXCEPTION -- NO ROBOT -- NOT SAVING");
-                iSaveInProcess = false;
-                iSaveImage = false;
-                iAceTree.iAceMenuBar.resetSaveState();
-                return;
-            }
-            image = robot.createScreenCapture(screenRect);
-        } else {
-            image = BufferedImageCreator.create((ColorProcessor)iImgPlus.getProcessor());
-        }
-
-        saveJpeg(image, title, 20);
+        BufferedImage image = BufferedImageCreator.create((ColorProcessor)iImgPlus.getProcessor());
+        Graphics2D g = image.createGraphics();
+        paintOverlay(g);
+        g.dispose();
+        getImageSavingManager().save(image, new File(title));
+    }
 
-        System.out.println("file: " + title + " written");
-        iSaveInProcess = false;
+    /**
+     * @return the saver of this window's images, which also exports movies with its annotations
+     */
+    public synchronized ImageSavingManager getImageSavingManager() {
+        if (iImageSavingManager == null) iImageSavingManager = new ImageSavingManager(imageManager, this);
+        return iImageSavingManager;
     }
 
     public void cancelSaveOperations() {
         println("WARNING: NO IMAGE SAVE PATH -- NOT SAVING!");
-        iSaveInProcess = false;
         iSaveImage = false;
         iAceTree.iAceMenuBar.resetSaveState();
         return;
@@ -1256,13 +1232,6 @@ public class  ImageWindow extends JFrame implements  KeyListener, Runnable {
 
     public String getSaveImageDirectory() {
         if (iSaveImageDirectory != null) return iSaveImageDirectory;
-        try {
-            Class.forName("net.sf.ij.jaiio.BufferedImageCreator");
-        } catch(ClassNotFoundException e) {
-            iUseRobot = true;
-            println("USING ROBOT FOR IMAGE2D SAVING");
-        }
-
         try {
             JFileChooser fc = new JFileChooser("");
             fc.setDialogTitle("Save images to: ");
@@ -247,6 +247,9 @@ m_imagePanel.addKeyListener(iImgWin); //added to make zoom window respond to key
 
             //draw the image
             g2D.drawImage(m_image, 0, 0, this);
+
+            //and the centroids and annotations over it
+            if (iImgWin != null) iImgWin.paintOverlay(g2D);
         }
 
         /**
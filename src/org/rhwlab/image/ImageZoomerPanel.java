@@ -213,6 +213,9 @@ public class ImageZoomerPanel extends JPanel
 
             //draw the image
             g2D.drawImage(m_image, 0, 0, this);
+
+            //and the centroids and annotations over it
+            if (iImgWin != null) iImgWin.paintOverlay(g2D);
         }
 
         /**
@@ -0,0 +1,298 @@
+package org.rhwlab.image;
+
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.Graphics2D;
+import java.awt.Polygon;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Vector;
+
+import javax.swing.ListModel;
+import javax.swing.event.ListDataEvent;
+import javax.swing.event.ListDataListener;
+
+import org.rhwlab.acetree.PartsList;
+import org.rhwlab.snight.NucleiMgr;
+import org.rhwlab.snight.Nucleus;
+import org.rhwlab.utils.EUtils;
+
+/**
+ * the centroid circles and annotation labels ImageWindow paints over its image
+ * <br>the geometry of a time point and plane is worked out once and kept; the
+ * window paints it over the image when it is shown, so the image itself is
+ * never drawn on and showing or hiding the marks, or changing the current
+ * cell, only needs a repaint
+ * <br>a kept frame is checked against the nuclei each time it is used and a
+ * nucleus that was edited gets its mark made again
+ * <br>the bookmarked cells are kept in a hashed set that follows the bookmark list
+ * <br>a Painting is what the window makes of a frame, the marks with their
+ * colors and names settled, and can be painted on any thread
+ *
+ * Created: Oct. 2026
+ */
+public class OverlayLayer implements ListDataListener {
+    private LinkedHashMap<Long, Frame>  iFrames;
+    private ListModel                   iBookmarkList;
+    private HashSet<String>             iBookmarks;
+
+    public OverlayLayer() {
+        iFrames = new LinkedHashMap<Long, Frame>(16, .75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Frame> eldest) {
+                return size() > MAXFRAMES;
+            }
+        };
+        iBookmarks = new HashSet<String>();
+    }
+
+    /**
+     * @return the marks of time and plane, plane is ignored for a max projection
+     */
+    public synchronized Frame getFrame(NucleiMgr nucleiMgr, int time, int plane, boolean mip) {
+        if (nucleiMgr == null || time < 1 || time > nucleiMgr.getNucleiRecord().size()) return null;
+        Vector nuclei = nucleiMgr.getNucleiRecord().elementAt(time - 1);
+        double zPixRes = nucleiMgr.getZPixRes();
+        if (mip) plane = Integer.MAX_VALUE;
+        Long key = Long.valueOf(((long)time << 32) | (plane & 0xffffffffL));
+        Frame f = iFrames.get(key);
+        if (f != null && f.iNucleiMgr == nucleiMgr && f.iZPixRes == zPixRes && f.isCurrent(nuclei)) return f;
+        f = new Frame(nucleiMgr, nuclei, zPixRes, plane, mip, f);
+        iFrames.put(key, f);
+        return f;
+    }
+
+    public synchronized void clear() {
+        iFrames.clear();
+    }
+
+    public synchronized void setBookmarkList(ListModel list) {
+        if (iBookmarkList != null) iBookmarkList.removeListDataListener(this);
+        iBookmarkList = list;
+        if (iBookmarkList != null) iBookmarkList.addListDataListener(this);
+        readBookmarks();
+    }
+
+    public synchronized boolean isBookmarked(String name) {
+        return name != null && iBookmarks.contains(name);
+    }
+
+    @Override
+    public void intervalAdded(ListDataEvent e) {
+        readBookmarks();
+    }
+
+    @Override
+    public void intervalRemoved(ListDataEvent e) {
+        readBookmarks();
+    }
+
+    @Override
+    public void contentsChanged(ListDataEvent e) {
+        readBookmarks();
+    }
+
+    private synchronized void readBookmarks() {
+        iBookmarks.clear();
+        if (iBookmarkList == null) return;
+        for (int i=0; i < iBookmarkList.getSize(); i++) {
+            Object o = iBookmarkList.getElementAt(i);
+            if (o != null) iBookmarks.add(o.toString());
+        }
+    }
+
+    /**
+     * the marks of one time point and plane, one for each nucleus that is alive
+     */
+    public static class Frame {
+        private NucleiMgr   iNucleiMgr;
+        private Vector      iNuclei;
+        private int         iCount;
+        private double      iZPixRes;
+        private Mark []     iMarks;
+
+        Frame(NucleiMgr nucleiMgr, Vector nuclei, double zPixRes, int plane, boolean mip, Frame old) {
+            iNucleiMgr = nucleiMgr;
+            iNuclei = nuclei;
+            iCount = nuclei.size();
+            iZPixRes = zPixRes;
+            // marks of nuclei that did not change are taken from the frame this one replaces
+            IdentityHashMap<Nucleus, Mark> reuse = null;
+            if (old != null && old.iNucleiMgr == nucleiMgr && old.iZPixRes == zPixRes) {
+                reuse = new IdentityHashMap<Nucleus, Mark>();
+                for (Mark m : old.iMarks) reuse.put(m.iNucleus, m);
+            }
+            Vector<Mark> v = new Vector<Mark>();
+            for (int i=0; i < iCount; i++) {
+                Nucleus n = (Nucleus)nuclei.elementAt(i);
+                if (n.status < 0) continue;
+                Mark m = reuse != null ? reuse.get(n) : null;
+                if (m == null || !m.isCurrent()) m = new Mark(nucleiMgr, n, plane, mip);
+                v.add(m);
+            }
+            iMarks = v.toArray(new Mark[v.size()]);
+        }
+
+        boolean isCurrent(Vector nuclei) {
+            if (nuclei != iNuclei || nuclei.size() != iCount) return false;
+            int k = 0;
+            for (int i=0; i < iCount; i++) {
+                Nucleus n = (Nucleus)nuclei.elementAt(i);
+                if (n.status < 0) continue;
+                if (k >= iMarks.length || iMarks[k].iNucleus != n || !iMarks[k].isCurrent()) return false;
+                k++;
+            }
+            return k == iMarks.length;
+        }
+
+        public Mark [] getMarks() {
+            return iMarks;
+        }
+    }
+
+    /**
+     * the circle and label of one nucleus, with the values of the nucleus they were made from
+     */
+    public static class Mark {
+        private Nucleus     iNucleus;
+        private int         iX;
+        private int         iY;
+        private float       iZ;
+        private int         iSize;
+        private int         iStatus;
+        private String      iIdentity;
+
+        private Polygon     iCircle;
+        private String      iLabel;
+
+        Mark(NucleiMgr nucleiMgr, Nucleus n, int plane, boolean mip) {
+            iNucleus = n;
+            iX = n.x;
+            iY = n.y;
+            iZ = n.z;
+            iSize = n.size;
+            iStatus = n.status;
+            iIdentity = n.identity;
+            // in a max projection the circle is the whole nucleus
+            double d = nucleiMgr.nucDiameter(n, mip ? n.z : plane);
+            if (d > 0) iCircle = EUtils.pCircle(n.x, n.y, (int)(d/2.));
+            if ((iCircle != null || mip) && n.identity != null) {
+                String propername = PartsList.lookupSulston(n.identity);
+                iLabel = n.identity;
+                if (propername != null) iLabel = iLabel + " " + propername;
+            }
+        }
+
+        boolean isCurrent() {
+            Nucleus n = iNucleus;
+            return n.x == iX && n.y == iY && n.z == iZ && n.size == iSize && n.status == iStatus
+                    && n.identity == iIdentity;
+        }
+
+        public Nucleus getNucleus() {
+            return iNucleus;
+        }
+
+        public int getX() {
+            return iX;
+        }
+
+        public int getY() {
+            return iY;
+        }
+
+        /**
+         * @return the outline of the nucleus in the plane, null if it is not in the plane
+         */
+        public Polygon getCircle() {
+            return iCircle;
+        }
+
+        /**
+         * @return the name and proper name of a nucleus that is labeled in the plane, null if it is not
+         */
+        public String getLabel() {
+            return iLabel;
+        }
+    }
+
+    /**
+     * the circles and labels of one frame as they are to be painted, made
+     * on the event dispatch thread from the nuclei, the current cell, the
+     * bookmarks and the annotations shown at the time; nothing in it is
+     * read from those again, so an exporter can paint it on its own thread
+     */
+    public static class Painting {
+        private int             iWidth;
+        private boolean         iDots;
+        private Vector<Polygon> iCircles;
+        private Vector<int []>  iCenters;
+        private Vector<Color>   iColors;
+        private Color           iLabelColor;
+        private Font            iFont;
+        private Vector<String>  iLabels;
+        private Vector<int []>  iCorners;
+
+        Painting() {
+            iCircles = new Vector<Polygon>();
+            iCenters = new Vector<int []>();
+            iColors = new Vector<Color>();
+            iLabels = new Vector<String>();
+            iCorners = new Vector<int []>();
+        }
+
+        /**
+         * @param width line width of the circles, also the size of a dot
+         * @param dots true to paint a dot at the center instead of the circle
+         */
+        void setCircleStyle(int width, boolean dots) {
+            iWidth = width;
+            iDots = dots;
+        }
+
+        // the Polygon of a Mark is never changed once made and can be shared
+        void addCircle(Polygon p, int x, int y, Color c) {
+            iCircles.add(p);
+            iCenters.add(new int [] {x, y});
+            iColors.add(c);
+        }
+
+        void setLabelStyle(Color c, Font font) {
+            iLabelColor = c;
+            iFont = font;
+        }
+
+        void addLabel(String s, int x, int y) {
+            iLabels.add(s);
+            iCorners.add(new int [] {x, y});
+        }
+
+        /**
+         * @param g graphics of the image, in image coordinates
+         */
+        public void paint(Graphics2D g) {
+            if (!iCircles.isEmpty()) g.setStroke(new BasicStroke(iWidth));
+            for (int i=0; i < iCircles.size(); i++) {
+                g.setColor(iColors.get(i));
+                int [] c = iCenters.get(i);
+                if (iDots) g.fillRect(c[0] - iWidth/2, c[1] - iWidth/2, iWidth, iWidth);
+                else g.drawPolygon(iCircles.get(i));
+            }
+            if (iLabels.isEmpty()) return;
+            g.setColor(iLabelColor);
+            g.setFont(iFont);
+            for (int i=0; i < iLabels.size(); i++) {
+                int [] c = iCorners.get(i);
+                // as ImageProcessor.drawString(), (x, y) is the lower left corner of the text
+                g.drawString(iLabels.get(i), c[0], c[1] - g.getFontMetrics().getDescent());
+            }
+        }
+    }
+
+    private static final int
+         MAXFRAMES = 64
+        ;
+}
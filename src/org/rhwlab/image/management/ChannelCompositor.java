@@ -0,0 +1,181 @@
+package org.rhwlab.image.management;
+
+import ij.process.ImageConverter;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * ChannelCompositor.java
+ * Date created: 10/2026
+ *
+ * Fused 16bit to 8bit RGB conversion for ImageConversionManager. One pass over the 16bit pixels applies the
+ * horizontal flip, the crop to one half of a split stack, the display range of each channel and the packing
+ * into RGB. The source pixels are not modified, so the decoded planes can be shared with the ImageCache.
+ *
+ * The display range is applied through a 65536 entry lookup table per channel that gives the same values as
+ * ImageJ's convertToGray8(). Tables and the 8bit channel buffers are kept between calls; the channel buffers
+ * become the current pixel maps of ImageConversionManager and are overwritten by the next conversion. Large
+ * images are converted in bands of rows on all cores.
+ */
+final class ChannelCompositor {
+
+    private static final byte[][] luts = new byte[3][];
+    private static final int[][] lutRanges = new int[3][];
+    private static byte[][] channelBuffers;
+    private static ExecutorService bandPool;
+
+    private ChannelCompositor() {}
+
+    /**
+     * @param pixels the 16bit source of each of the red, green and blue channels, null for an empty channel
+     * @param srcWidth width of the source images
+     * @param x0 for each channel, the first column of the output in the (flipped) source
+     * @param flip whether the source is mirrored horizontally before cropping
+     * @param width width of the output
+     * @param height height of the output
+     * @param ranges for each channel the display range as {min, max}
+     * @return the packed RGB pixels. The channels are left in getChannels()
+     */
+    static int[] composite(final short[][] pixels, final int srcWidth, final int[] x0, final boolean flip,
+                           final int width, final int height, int[][] ranges) {
+        final int n = width * height;
+        final byte[][] lut = new byte[3][];
+        for (int c = 0; c < 3; c++) {
+            if (pixels[c] != null) lut[c] = getLut(c, ranges[c][0], ranges[c][1]);
+        }
+        final byte[][] out = getChannelBuffers(n);
+        final int[] rgb = new int[n];
+
+        int bands = height < MIN_BAND_ROWS * 2 || n < PARALLEL_PIXELS ? 1
+                : Math.min(Runtime.getRuntime().availableProcessors(), height / MIN_BAND_ROWS);
+        if (bands <= 1) {
+            compositeRows(pixels, srcWidth, x0, flip, width, 0, height, lut, out, rgb);
+            return rgb;
+        }
+
+        ArrayList<Callable<Object>> tasks = new ArrayList<Callable<Object>>();
+        final int rowsPerBand = (height + bands - 1) / bands;
+        for (int y = 0; y < height; y += rowsPerBand) {
+            final int y0 = y;
+            final int y1 = Math.min(height, y + rowsPerBand);
+            tasks.add(new Callable<Object>() {
+                @Override
+                public Object call() {
+                    compositeRows(pixels, srcWidth, x0, flip, width, y0, y1, lut, out, rgb);
+                    return null;
+                }
+            });
+        }
+        try {
+            for (Future<Object> f : getBandPool().invokeAll(tasks)) f.get();
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException ee) {
+            System.out.println("ChannelCompositor band failed: " + ee.getCause());
+        }
+        return rgb;
+    }
+
+    /**
+     * @return the red, green and blue 8bit channels of the last composite() call
+     */
+    static synchronized byte[][] getChannels() { return channelBuffers; }
+
+    /**
+     * The range of the pixel values in a block of columns, which is what ImageJ reports as the display range
+     * of a freshly cropped 16bit image
+     */
+    static int[] findMinAndMax(short[] pixels, int srcWidth, int x0, boolean flip, int width, int height) {
+        int min = 65535, max = 0;
+        for (int y = 0; y < height; y++) {
+            int p = flip ? y * srcWidth + srcWidth - 1 - x0 : y * srcWidth + x0;
+            int step = flip ? -1 : 1;
+            for (int x = 0; x < width; x++, p += step) {
+                int v = pixels[p] & 0xFFFF;
+                if (v < min) min = v;
+                if (v > max) max = v;
+            }
+        }
+        return new int[]{min, max};
+    }
+
+    private static void compositeRows(short[][] pixels, int srcWidth, int[] x0, boolean flip, int width,
+                                      int y0, int y1, byte[][] lut, byte[][] out, int[] rgb) {
+        int step = flip ? -1 : 1;
+        for (int c = 0; c < 3; c++) {
+            short[] src = pixels[c];
+            byte[] dst = out[c];
+            byte[] table = lut[c];
+            for (int y = y0; y < y1; y++) {
+                int q = y * width;
+                if (src == null) {
+                    Arrays.fill(dst, q, q + width, (byte)0);
+                    continue;
+                }
+                int p = flip ? y * srcWidth + srcWidth - 1 - x0[c] : y * srcWidth + x0[c];
+                for (int x = 0; x < width; x++, p += step) {
+                    dst[q + x] = table[src[p] & 0xFFFF];
+                }
+            }
+        }
+        byte[] r = out[0], g = out[1], b = out[2];
+        for (int i = y0 * width, end = y1 * width; i < end; i++) {
+            rgb[i] = 0xFF000000 | ((r[i] & 0xFF) << 16) | ((g[i] & 0xFF) << 8) | (b[i] & 0xFF);
+        }
+    }
+
+    // same arithmetic as ij.process.TypeConverter.convertShortToByte()
+    private static synchronized byte[] getLut(int slot, int min, int max) {
+        boolean scaling = ImageConverter.getDoScaling();
+        int[] key = lutRanges[slot];
+        if (luts[slot] != null && key[0] == min && key[1] == max && (key[2] == 1) == scaling) return luts[slot];
+        byte[] lut = new byte[65536];
+        double scale = 256.0 / (max - min + 1);
+        for (int v = 0; v < 65536; v++) {
+            int value;
+            if (scaling) {
+                value = v - min;
+                if (value < 0) value = 0;
+                value = (int)(value * scale + 0.5);
+            } else {
+                value = v;
+            }
+            if (value > 255) value = 255;
+            lut[v] = (byte)value;
+        }
+        luts[slot] = lut;
+        lutRanges[slot] = new int[]{min, max, scaling ? 1 : 0};
+        return lut;
+    }
+
+    private static synchronized byte[][] getChannelBuffers(int n) {
+        if (channelBuffers == null || channelBuffers[0].length != n) {
+            channelBuffers = new byte[3][n];
+        }
+        return channelBuffers;
+    }
+
+    private static synchronized ExecutorService getBandPool() {
+        if (bandPool == null) {
+            bandPool = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "ChannelCompositor");
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+        }
+        return bandPool;
+    }
+
+    private static final int MIN_BAND_ROWS = 64;
+    private static final int PARALLEL_PIXELS = 1 << 18;
+}
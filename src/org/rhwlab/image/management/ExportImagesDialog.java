@@ -0,0 +1,170 @@
+package org.rhwlab.image.management;
+
+import java.awt.Component;
+import java.awt.FlowLayout;
+import java.awt.Frame;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.io.File;
+import javax.swing.BoxLayout;
+import javax.swing.JButton;
+import javax.swing.JCheckBox;
+import javax.swing.JComboBox;
+import javax.swing.JDialog;
+import javax.swing.JFileChooser;
+import javax.swing.JLabel;
+import javax.swing.JOptionPane;
+import javax.swing.JPanel;
+import javax.swing.JTextField;
+import javax.swing.SwingUtilities;
+
+/**
+ * ExportImagesDialog.java
+ * Date created: 10/2026
+ *
+ * Asks for the time points, planes, format and destination of an export and runs it with an ImageSavingManager.
+ * The frames are read, annotated and written off screen, so the export runs on a thread of its own while
+ * the image window stays as it is.
+ */
+public class ExportImagesDialog extends JDialog implements ActionListener {
+
+    private ImageManager imageManager;
+    private ImageSavingManager imageSavingManager;
+    private int color;
+
+    private JTextField firstTime;
+    private JTextField lastTime;
+    private JTextField firstPlane;
+    private JTextField lastPlane;
+    private JCheckBox maxProjection;
+    private JComboBox<String> format;
+    private JTextField framesPerSecond;
+    private JTextField output;
+    private JButton browse;
+    private JButton export;
+    private JButton cancel;
+
+    /**
+     * @param color the color channel toggle of the frames, as for ImageManager.extractColorChannelFromImagePlus()
+     */
+    public ExportImagesDialog(Frame owner, ImageManager imageManager, ImageSavingManager imageSavingManager, int color) {
+        super(owner, TITLE, false);
+        this.imageManager = imageManager;
+        this.imageSavingManager = imageSavingManager;
+        this.color = color;
+
+        ImageConfig imageConfig = imageManager.getImageConfig();
+        JPanel p = new JPanel();
+        p.setLayout(new BoxLayout(p, BoxLayout.PAGE_AXIS));
+
+        this.firstTime = field(imageConfig.getStartingIndex());
+        this.lastTime = field(imageConfig.getEndingIndex());
+        p.add(row(new JLabel("times"), this.firstTime, new JLabel("to"), this.lastTime));
+
+        this.firstPlane = field(1);
+        this.lastPlane = field(imageConfig.getPlaneEnd());
+        this.maxProjection = new JCheckBox("max projection", imageManager.isCurrImageMIP());
+        p.add(row(new JLabel("planes"), this.firstPlane, new JLabel("to"), this.lastPlane, this.maxProjection));
+
+        this.format = new JComboBox<String>(new String[] {ImageSavingManager.PNG, ImageSavingManager.JPEG, ImageSavingManager.AVI});
+        this.format.addActionListener(this);
+        this.framesPerSecond = field(10);
+        this.framesPerSecond.setEnabled(false);
+        p.add(row(new JLabel("format"), this.format, new JLabel("frames per second"), this.framesPerSecond));
+
+        this.output = new JTextField(30);
+        this.output.setText(new File(System.getProperty("user.dir"), "export").getPath());
+        this.browse = new JButton("...");
+        this.browse.addActionListener(this);
+        p.add(row(new JLabel("save to"), this.output, this.browse));
+
+        this.export = new JButton(EXPORT);
+        this.export.addActionListener(this);
+        this.cancel = new JButton(CANCEL);
+        this.cancel.addActionListener(this);
+        p.add(row(this.export, this.cancel));
+
+        p.setOpaque(true);
+        setContentPane(p);
+        pack();
+        setLocationRelativeTo(owner);
+        setVisible(true);
+    }
+
+    @Override
+    public void actionPerformed(ActionEvent e) {
+        Object o = e.getSource();
+        if (o == this.format) {
+            this.framesPerSecond.setEnabled(ImageSavingManager.AVI.equals(this.format.getSelectedItem()));
+        } else if (o == this.browse) {
+            JFileChooser fileChooser = new JFileChooser(this.output.getText());
+            if (fileChooser.showSaveDialog(this) == JFileChooser.APPROVE_OPTION) {
+                this.output.setText(fileChooser.getSelectedFile().getPath());
+            }
+        } else if (o == this.export) {
+            startExport();
+        } else if (o == this.cancel) {
+            this.imageSavingManager.cancel();
+            dispose();
+        }
+    }
+
+    private void startExport() {
+        final String fmt = (String)this.format.getSelectedItem();
+        File out = new File(this.output.getText());
+        if (fmt.equals(ImageSavingManager.AVI) && !out.getName().toLowerCase().endsWith(".avi")) {
+            out = new File(out.getPath() + ".avi");
+        }
+        try {
+            this.imageSavingManager.setTimes(Integer.parseInt(this.firstTime.getText().trim()),
+                    Integer.parseInt(this.lastTime.getText().trim()));
+            this.imageSavingManager.setPlanes(Integer.parseInt(this.firstPlane.getText().trim()),
+                    Integer.parseInt(this.lastPlane.getText().trim()));
+            this.imageSavingManager.setFramesPerSecond(Integer.parseInt(this.framesPerSecond.getText().trim()));
+        } catch (NumberFormatException nfe) {
+            JOptionPane.showMessageDialog(this, "Not a number: " + nfe.getMessage(), TITLE, JOptionPane.ERROR_MESSAGE);
+            return;
+        }
+        this.imageSavingManager.setMaxProjection(this.maxProjection.isSelected());
+        this.imageSavingManager.setFormat(fmt);
+        this.imageSavingManager.setColor(this.color);
+
+        String prefix = this.imageManager.getImageConfig().getImagePrefixes()[0];
+        prefix = new File(prefix).getName();
+        final File target = out;
+        final String name = prefix;
+        this.export.setEnabled(false);
+        Thread t = new Thread(() -> {
+            int n = this.imageSavingManager.export(target, name);
+            System.out.println("ExportImagesDialog, " + (n < 0 ? "could not write " : n + " frames written to ") + target);
+            SwingUtilities.invokeLater(() -> {
+                this.export.setEnabled(true);
+                if (n < 0) {
+                    JOptionPane.showMessageDialog(this, "Could not write " + target
+                            + ", see the console for the reason", TITLE, JOptionPane.ERROR_MESSAGE);
+                }
+            });
+        }, "ExportImagesDialog");
+        t.setDaemon(true);
+        t.start();
+    }
+
+    private static JTextField field(int value) {
+        JTextField f = new JTextField(5);
+        f.setText(String.valueOf(value));
+        return f;
+    }
+
+    private static JPanel row(Component... components) {
+        JPanel s = new JPanel();
+        s.setLayout(new FlowLayout(FlowLayout.LEFT));
+        for (Component c : components) s.add(c);
+        return s;
+    }
+
+    private static final String
+         TITLE = "Export images"
+        ,EXPORT = "Export"
+        ,CANCEL = "Close"
+        ;
+}
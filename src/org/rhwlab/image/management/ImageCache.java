@@ -0,0 +1,327 @@
+package org.rhwlab.image.management;
+
+import ij.ImagePlus;
+import ij.io.Opener;
+import ij.process.ColorProcessor;
+import ij.process.ImageProcessor;
+import ij.process.ShortProcessor;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ImageCache.java
+ * Date created: 10/2026
+ *
+ * Bounded cache of image planes for the ImageManager. Two kinds of entries share one byte budget and
+ * are evicted least recently used first:
+ *
+ * - decoded planes, keyed by file and plane, as they come out of the Opener. These are what the
+ *   prefetcher fills in on its worker threads while the user looks at the current plane
+ *
+ * - converted RGB planes, keyed by time, plane, channel mode and contrast settings. A hit skips both
+ *   the file access and the 16bit to 8bit conversion
+ *
+ * The conversion itself is left to the caller on the calling thread because ImageConversionManager
+ * and the contrast settings in ImageManager are static state.
+ *
+ * Planes of 16bit TIFF stacks are read through TiffPlaneReader when its layout is supported.
+ *
+ * Images handed out by open() are copies, since the 8bit conversion methods modify the ImagePlus they are given.
+ */
+public class ImageCache {
+
+    private LinkedHashMap<String, Entry> entries;
+    private HashMap<String, Future<ImagePlus>> pending;
+    private long budget;
+    private long bytes;
+    private ThreadPoolExecutor prefetchPool;
+
+    public ImageCache() {
+        this.entries = new LinkedHashMap<String, Entry>(64, 0.75f, true);
+        this.pending = new HashMap<String, Future<ImagePlus>>();
+        this.budget = Runtime.getRuntime().maxMemory() / BUDGET_FRACTION;
+        this.bytes = 0;
+    }
+
+    /**
+     * Opens one plane of an image file, from the cache if it was opened or prefetched before
+     *
+     * @param path the image file
+     * @param plane the 1-based plane of a stack, or 0 for a file holding a single plane
+     * @return a copy of the decoded plane, or null if the file does not exist or cannot be opened
+     */
+    public ImagePlus open(String path, int plane) {
+        return open(path, plane, true);
+    }
+
+    /**
+     * Like open(), but hands out the cached plane itself. The caller must not modify it; the 16bit conversions
+     * in ImageConversionManager only read the pixels, so this saves a copy of the plane per image shown
+     */
+    public ImagePlus openShared(String path, int plane) {
+        return open(path, plane, false);
+    }
+
+    private ImagePlus open(String path, int plane, boolean copy) {
+        String key = decodedKey(path, plane);
+        Future<ImagePlus> f;
+        synchronized (this) {
+            Entry e = this.entries.get(key);
+            if (e != null) return copy ? copy(e.image) : e.image;
+            f = this.pending.get(key);
+        }
+        ImagePlus ip = null;
+        if (f != null) {
+            // a prefetch of this plane is under way, wait for it rather than read the file twice
+            try {
+                ip = f.get();
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException ee) {
+                System.out.println("ImageCache prefetch failed for " + key + ": " + ee.getCause());
+            } catch (CancellationException ce) {
+                // dropped from the queue, read it here
+            }
+            if (ip != null) return copy ? copy(ip) : ip;
+        }
+        ip = load(path, plane);
+        if (ip == null) return null;
+        putDecoded(key, ip);
+        return copy ? copy(ip) : ip;
+    }
+
+    /**
+     * Queues the given planes to be decoded in the background. Requests still waiting from an earlier call
+     * are dropped first, so the queue always follows what the user is looking at
+     *
+     * @param paths image files, parallel to planes
+     * @param planes 1-based planes, or 0 for single plane files
+     */
+    public void prefetch(ArrayList<String> paths, ArrayList<Integer> planes) {
+        ThreadPoolExecutor pool = getPrefetchPool();
+        ArrayList<Runnable> dropped = new ArrayList<Runnable>();
+        pool.getQueue().drainTo(dropped);
+        synchronized (this) {
+            for (Runnable r : dropped) {
+                ((Future<?>)r).cancel(false);
+            }
+            Iterator<Future<ImagePlus>> it = this.pending.values().iterator();
+            while (it.hasNext()) {
+                if (it.next().isCancelled()) it.remove();
+            }
+            for (int i = 0; i < paths.size(); i++) {
+                final String path = paths.get(i);
+                final int plane = planes.get(i);
+                final String key = decodedKey(path, plane);
+                if (this.entries.containsKey(key) || this.pending.containsKey(key)) continue;
+                Future<ImagePlus> f = pool.submit(new Callable<ImagePlus>() {
+                    @Override
+                    public ImagePlus call() {
+                        ImagePlus ip = null;
+                        try {
+                            ip = load(path, plane);
+                            if (ip != null) putDecoded(key, ip);
+                        } finally {
+                            synchronized (ImageCache.this) {
+                                pending.remove(key);
+                            }
+                        }
+                        return ip;
+                    }
+                });
+                this.pending.put(key, f);
+            }
+        }
+    }
+
+    /**
+     * @param key see ImageManager.makeConvertedKey
+     * @return the cached channels of a converted plane, or null
+     */
+    public synchronized Converted getConverted(String key) {
+        Entry e = this.entries.get(key);
+        if (e == null || e.converted == null) return null;
+        return e.converted;
+    }
+
+    /**
+     * Keeps the channels of a converted RGB image
+     *
+     * @param name the image file name the ImageManager reports for it
+     * @param imageWidth the width of the image as read, before any split
+     * @param imageHeight the height of the image as read
+     */
+    public void putConverted(String key, ImagePlus rgb, String name, int imageWidth, int imageHeight) {
+        if (rgb == null || !(rgb.getProcessor() instanceof ColorProcessor)) return;
+        ColorProcessor cp = (ColorProcessor)rgb.getProcessor();
+        int n = cp.getPixelCount();
+        Converted c = new Converted();
+        c.r = new byte[n];
+        c.g = new byte[n];
+        c.b = new byte[n];
+        cp.getRGB(c.r, c.g, c.b);
+        c.width = cp.getWidth();
+        c.height = cp.getHeight();
+        c.title = rgb.getTitle();
+        c.name = name;
+        c.imageWidth = imageWidth;
+        c.imageHeight = imageHeight;
+        Entry e = new Entry();
+        e.converted = c;
+        e.bytes = 3L * n;
+        put(key, e);
+    }
+
+    public synchronized void clear() {
+        this.entries.clear();
+        this.bytes = 0;
+    }
+
+    /**
+     * Drops the queued prefetches and lets the pool finish the ones being read; they are not interrupted, as
+     * that would close the file channels of the TiffPlaneReaders in use
+     */
+    public void shutdown() {
+        ThreadPoolExecutor pool;
+        synchronized (this) {
+            pool = this.prefetchPool;
+            this.prefetchPool = null;
+        }
+        if (pool == null) return;
+        ArrayList<Runnable> dropped = new ArrayList<Runnable>();
+        pool.getQueue().drainTo(dropped);
+        synchronized (this) {
+            for (Runnable r : dropped) {
+                ((Future<?>)r).cancel(false);
+            }
+            this.pending.clear();
+        }
+        pool.shutdown();
+    }
+
+    private void putDecoded(String key, ImagePlus ip) {
+        Entry e = new Entry();
+        e.image = ip;
+        ImageProcessor proc = ip.getProcessor();
+        e.bytes = (long)proc.getPixelCount() * Math.max(1, ip.getBytesPerPixel());
+        put(key, e);
+    }
+
+    private synchronized void put(String key, Entry e) {
+        Entry old = this.entries.put(key, e);
+        if (old != null) this.bytes -= old.bytes;
+        this.bytes += e.bytes;
+        evict();
+    }
+
+    private void evict() {
+        Iterator<Map.Entry<String, Entry>> it = this.entries.entrySet().iterator();
+        while (this.bytes > this.budget && it.hasNext()) {
+            Entry e = it.next().getValue();
+            this.bytes -= e.bytes;
+            it.remove();
+        }
+    }
+
+    private synchronized ThreadPoolExecutor getPrefetchPool() {
+        if (this.prefetchPool == null) {
+            this.prefetchPool = new ThreadPoolExecutor(PREFETCH_THREADS, PREFETCH_THREADS, 30, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "ImageCache prefetch");
+                    t.setDaemon(true);
+                    t.setPriority(Thread.MIN_PRIORITY);
+                    return t;
+                }
+            });
+            this.prefetchPool.allowCoreThreadTimeOut(true);
+        }
+        return this.prefetchPool;
+    }
+
+    private static ImagePlus load(String path, int plane) {
+        if (path == null || path.isEmpty() || !new File(path).exists()) return null;
+        if (plane > 0) {
+            ImagePlus ip = readPlane(path, plane);
+            if (ip != null) return ip;
+            return new Opener().openImage(path, plane);
+        }
+        return new Opener().openImage(path);
+    }
+
+    // reads a plane of a 16bit stack through the IFD index, null if the layout needs the Opener
+    private static ImagePlus readPlane(String path, int plane) {
+        TiffPlaneReader reader = TiffPlaneReader.get(path);
+        if (reader == null) return null;
+        try {
+            int[] dims = new int[2];
+            short[] pixels = reader.readPlane(plane, null, dims);
+            if (pixels == null) return null;
+            return new ImagePlus(new File(path).getName(), new ShortProcessor(dims[0], dims[1], pixels, null));
+        } catch (IOException ioe) {
+            System.out.println("ImageCache could not read plane " + plane + " of " + path + ": " + ioe);
+            return null;
+        }
+    }
+
+    private static ImagePlus copy(ImagePlus ip) {
+        ImageProcessor proc = ip.getProcessor();
+        ImageProcessor dup = proc.duplicate();
+        dup.setMinAndMax(proc.getMin(), proc.getMax());
+        return new ImagePlus(ip.getTitle(), dup);
+    }
+
+    private static String decodedKey(String path, int plane) {
+        return path + "#" + plane;
+    }
+
+    /**
+     * The channels of a converted RGB plane
+     */
+    public static class Converted {
+        byte[] r, g, b;
+        int width, height;
+        int imageWidth, imageHeight;
+        String title;
+        String name;
+
+        public ImagePlus makeImage() {
+            ColorProcessor cp = new ColorProcessor(this.width, this.height);
+            cp.setRGB(this.r, this.g, this.b);
+            return new ImagePlus(this.title, cp);
+        }
+
+        public String getName() { return this.name; }
+        public int getImageWidth() { return this.imageWidth; }
+        public int getImageHeight() { return this.imageHeight; }
+
+        /**
+         * Makes these channels the current pixel maps of ImageConversionManager, as a conversion would
+         */
+        public void setCurrentPixelMaps() { ImageConversionManager.setCurrentPixelMaps(this.r, this.g, this.b); }
+    }
+
+    private static class Entry {
+        ImagePlus image;
+        Converted converted;
+        long bytes;
+    }
+
+    private static final int BUDGET_FRACTION = 4;
+    private static final int PREFETCH_THREADS = 2;
+}
@@ -157,25 +157,16 @@ public class ImageConversionManager {
      */
     public static ImagePlus convertSingle16BitTIFToRGB(ImagePlus TIF_16bit, ImageConfig imageConfig) {
         ImageProcessor iproc = TIF_16bit.getProcessor();
+        boolean flip = imageConfig.getFlipStack() == 1;
 
-        if (imageConfig.getFlipStack() == 1) {
-            iproc.flipHorizontal();
-        }
-
-        int pixelCount = iproc.getPixelCount();
-        int ipwidth = iproc.getWidth();
+        short[] pixels = (short[])iproc.getPixels();
+        int srcWidth = iproc.getWidth();
+        int ipwidth = srcWidth;
         int ipheight = iproc.getHeight();
 
-        if (imageConfig.getSplitStack() == 1) {
-            pixelCount /= 2;
-            ipwidth /= 2;
-        }
-
-        byte [] R = new byte[pixelCount];
-        byte [] G = new byte[pixelCount];
-        byte [] B = new byte[pixelCount];
-
-        ColorProcessor iproc3 = new ColorProcessor(ipwidth, ipheight);
+        short[][] channels = new short[3][];
+        int[] x0 = new int[3];
+        int[][] ranges = new int[3][];
 
         /** this indicates 16bit images are present (because useStack = 1), *and* they should be split into two channels */
         if (imageConfig.getSplitStack() == 1) {
@@ -184,56 +175,30 @@ public class ImageConversionManager {
              * RIGHT SIDE - GREEN
              * LEFT SIDE - RED
              */
-            // check if the image was flipped to make sure the correct half of the image is cropped
-            if (imageConfig.getFlipStack() == 1) {
-                iproc.setRoi(new Rectangle(TIF_16bit.getWidth()/2, 0, TIF_16bit.getWidth()/2, TIF_16bit.getHeight()));
-            } else {
-                iproc.setRoi(new Rectangle(0, 0, TIF_16bit.getWidth()/2, TIF_16bit.getHeight()));
-            }
-
-            ImageProcessor croppedR = iproc.crop();
-            ImagePlus croppedIPR = new ImagePlus(TIF_16bit.getTitle(), croppedR);
-
-            if (imageConfig.getFlipStack() == 1) {
-                iproc.setRoi(new Rectangle(0, 0, TIF_16bit.getWidth()/2, TIF_16bit.getHeight()));
-            } else {
-                iproc.setRoi(new Rectangle(TIF_16bit.getWidth()/2, 0, TIF_16bit.getWidth()/2, TIF_16bit.getHeight()));
-            }
-
-            ImageProcessor croppedG = iproc.crop();
-            ImagePlus croppedIPG = new ImagePlus(TIF_16bit.getTitle(), croppedG);
+            // check if the image was flipped to make sure the correct half of the image is taken
+            ipwidth = srcWidth / 2;
+            x0[0] = flip ? srcWidth / 2 : 0;
+            x0[1] = flip ? 0 : srcWidth / 2;
+            channels[0] = pixels;
+            channels[1] = pixels;
 
             if (ImageManager.getOriginalContrastValuesFlag()) {
                 // Set contrast values from original image
-                int ipminred = (int)(croppedIPR.getDisplayRangeMin());
-                int ipmaxred = (int)(croppedIPR.getDisplayRangeMax());
-                System.out.println("ImageConversionManager set channel 1 contrast minimum, maximum from image: " + ipminred + ", " + ipmaxred);
-                ImageManager.setContrastMin1(ipminred);
-                ImageManager.setContrastMax1(ipmaxred);
+                int[] red = ChannelCompositor.findMinAndMax(pixels, srcWidth, x0[0], flip, ipwidth, ipheight);
+                System.out.println("ImageConversionManager set channel 1 contrast minimum, maximum from image: " + red[0] + ", " + red[1]);
+                ImageManager.setContrastMin1(red[0]);
+                ImageManager.setContrastMax1(red[1]);
 
-                int ipmingre = (int)(croppedIPG.getDisplayRangeMin());
-                int ipmaxgre = (int)(croppedIPG.getDisplayRangeMax());
-                System.out.println("ImageConversionManager set channel 2 contrast minimum, maximum from image: " + ipmingre + ", " + ipmaxgre);
-                ImageManager.setContrastMin2(ipmingre);
-                ImageManager.setContrastMax2(ipmaxgre);
+                int[] gre = ChannelCompositor.findMinAndMax(pixels, srcWidth, x0[1], flip, ipwidth, ipheight);
+                System.out.println("ImageConversionManager set channel 2 contrast minimum, maximum from image: " + gre[0] + ", " + gre[1]);
+                ImageManager.setContrastMin2(gre[0]);
+                ImageManager.setContrastMax2(gre[1]);
 
                 ImageManager.setOriginContrastValuesFlag(false);
             }
 
-            croppedIPR.setDisplayRange(ImageManager.getContrastMin1(), ImageManager.getContrastMax1());
-            croppedIPG.setDisplayRange(ImageManager.getContrastMin2(), ImageManager.getContrastMax2());
-
-            // convert the images to 8bit
-            ImageConverter ic1 = new ImageConverter(croppedIPR);
-            ImageConverter ic2 = new ImageConverter(croppedIPG);
-            ic1.convertToGray8();
-            ic2.convertToGray8();
-
-            // get the individual color pixels and set them to the color maps
-            ImageProcessor convertedR = croppedIPR.getProcessor();
-            ImageProcessor convertedG = croppedIPG.getProcessor();
-            R = (byte [])convertedR.getPixels();
-            G = (byte [])convertedG.getPixels();
+            ranges[0] = makeDisplayRange(ImageManager.getContrastMin1(), ImageManager.getContrastMax1(), pixels, srcWidth, x0[0], flip, ipwidth, ipheight);
+            ranges[1] = makeDisplayRange(ImageManager.getContrastMin2(), ImageManager.getContrastMax2(), pixels, srcWidth, x0[1], flip, ipwidth, ipheight);
         } else { /** this option identifies the case where 16bit images should *not* be split */
             if (ImageManager.getOriginalContrastValuesFlag()) {
                 // Set contrast values from original image
@@ -247,21 +212,11 @@ public class ImageConversionManager {
                 ImageManager.setOriginContrastValuesFlag(false);
             }
 
-            TIF_16bit.setDisplayRange(ImageManager.getContrastMin1(), ImageManager.getContrastMax1());
-            ImageConverter ic = new ImageConverter(TIF_16bit);
-            ic.convertToGray8();
-            ImageProcessor converted = TIF_16bit.getProcessor();
-            R = (byte [])converted.getPixels();
+            channels[0] = pixels;
+            ranges[0] = makeDisplayRange(ImageManager.getContrastMin1(), ImageManager.getContrastMax1(), pixels, srcWidth, 0, flip, ipwidth, ipheight);
         }
 
-        iproc3.setRGB(R, G, B);
-        TIF_16bit.setProcessor("test", iproc3);
-
-        currentRPixelMap = R;
-        currentGPixelMap = G;
-        currentBPixelMap = B;
-
-        return TIF_16bit;
+        return buildComposite(channels, srcWidth, x0, flip, ipwidth, ipheight, ranges);
     }
 
     /**
@@ -283,19 +238,11 @@ public class ImageConversionManager {
                     "will be ignored");
         }
 
-        // pipe the configuration to the correct method
-        if (red_valid && green_valid && !blue_valid) {
-            return convertMultiple16BitTIFsToRG(TIFs_16bit[0], TIFs_16bit[1], imageConfig);
-        } else if (red_valid && green_valid && blue_valid) {
-            return convertMultiple16BitTIFstoRGB(TIFs_16bit[0], TIFs_16bit[1], TIFs_16bit[2], imageConfig);
-        } else if (!red_valid && green_valid && !blue_valid) {
-            return convert16BitTIFtoG(TIFs_16bit[1], imageConfig);
-        } else if (!red_valid && !green_valid && blue_valid) {
-            return convert16BitTIFtoB(TIFs_16bit[2], imageConfig);
-        } else if (!red_valid && green_valid && blue_valid) {
-            return convertMultiple16BitTIFstoGB(TIFs_16bit[1], TIFs_16bit[2], imageConfig);
-        } else if (red_valid && !green_valid && blue_valid) {
-            return convertMultiple16BitTIFstoRB(TIFs_16bit[0], TIFs_16bit[2], imageConfig);
+        // pipe the configuration to the conversion, leaving out the channels that are not valid
+        if ((red_valid || green_valid || blue_valid) && !(red_valid && !green_valid && !blue_valid)) {
+            return convertMultiple16BitTIFs(red_valid ? TIFs_16bit[0] : null,
+                    green_valid ? TIFs_16bit[1] : null,
+                    blue_valid ? TIFs_16bit[2] : null, imageConfig);
         }
         System.out.println("Invalid configuration in ImageConversionManager.convertMultiple16BitTIFsToRGB()");
         return null;
@@ -306,571 +253,103 @@ public class ImageConversionManager {
     /////////////// CONVERSION ////////////////////////
 
     /**
-     * RED/GREEN CHANNEL CASE
-     * @param red_ip
-     * @param green_ip
+     * Any combination of the red, green and blue channels, each from its own TIF
+     *
+     * @param red_ip the red channel, or null
+     * @param green_ip the green channel, or null
+     * @param blue_ip the blue channel, or null
      * @return
      */
-    private static ImagePlus convertMultiple16BitTIFsToRG(ImagePlus red_ip, ImagePlus green_ip, ImageConfig imageConfig) {
-        ImagePlus ip = new ImagePlus();
-
-        ImageProcessor iproc_channel1 = red_ip.getProcessor();
-        ImageProcessor iproc_channel2 = green_ip.getProcessor();
-
-        if (imageConfig.getFlipStack() == 1) {
-            iproc_channel1.flipHorizontal();
-            iproc_channel2.flipHorizontal();
-        }
-
-        int pixelCount_channel1 = iproc_channel1.getPixelCount();
-        int ipwidth_channel1 = iproc_channel1.getWidth();
-        int ipheight_channel1 = iproc_channel1.getHeight();
-
-        int pixelCount_channel2 = iproc_channel2.getPixelCount();
-        int ipwidth_channel2 = iproc_channel2.getWidth();
-        int ipheight_channel2 = iproc_channel2.getHeight();
-
-
-        // error checks
-        if (pixelCount_channel1 != pixelCount_channel2) {
-            System.err.println("Pixel counts in the first two color channel stacks are mismatched.");
-            return red_ip;
-        }
-        if (ipwidth_channel1 != ipwidth_channel2) {
-            System.err.println("Image widths in the first two color channel stacks are mismatched.");
-            return red_ip;
-        }
-        if (ipheight_channel1 != ipheight_channel2) {
-            System.err.println("Image heights in the first two color channel stacks are mismatched.");
-            return red_ip;
+    private static ImagePlus convertMultiple16BitTIFs(ImagePlus red_ip, ImagePlus green_ip, ImagePlus blue_ip, ImageConfig imageConfig) {
+        ImagePlus[] ips = {red_ip, green_ip, blue_ip};
+        ImagePlus first = null;
+        for (ImagePlus ip : ips) {
+            if (ip == null) continue;
+            if (first == null) {
+                first = ip;
+            } else if (ip.getWidth() != first.getWidth() || ip.getHeight() != first.getHeight()) {
+                // error check
+                System.err.println("Image sizes in the color channel stacks are mismatched.");
+                return first;
+            }
         }
+        if (first == null) return null;
 
-
-        // now these vars will pertain to the single resulting ImagePlus so just doing this for clarity - plenty of memory to go around
-        int pixelCount = pixelCount_channel1;
-        int ipWidth = ipwidth_channel1;
-        int ipHeight = ipheight_channel1;
-
-
-        byte[] colorChannel1;
-        byte[] colorChannel2;
-        byte[] colorChannel3 = new byte[pixelCount];
-
-
-        ColorProcessor iproc3 = new ColorProcessor(ipWidth, ipHeight);
+        int ipWidth = first.getWidth();
+        int ipHeight = first.getHeight();
+        boolean flip = imageConfig.getFlipStack() == 1;
 
         // set the min and max contrast values if need be
-        // This can be lifted out of the splitStack conditional because in the case of multiple TIFs, we know we have two color channels
         if (ImageManager.getOriginalContrastValuesFlag()) {
-            int ipMinChannel1 = (int)(red_ip.getDisplayRangeMin());
-            int ipMaxChannel1 = (int)(red_ip.getDisplayRangeMax());
-
-            ImageManager.setContrastMin1(ipMinChannel1);
-            ImageManager.setContrastMax1(ipMaxChannel1);
-
-            System.out.println("ImageConversionManager set channel contrast min, max for channel1: " + ipMinChannel1 + ", " + ipMaxChannel1);
-
-            int ipMinChannel2 = (int)(green_ip.getDisplayRangeMin());
-            int ipMaxChannel2 = (int)(green_ip.getDisplayRangeMax());
-
-            ImageManager.setContrastMin2(ipMinChannel2);
-            ImageManager.setContrastMax2(ipMaxChannel2);
-
-            System.out.println("ImageConversionManager set channel contrast min, max for channel2: " + ipMinChannel2 + ", " + ipMaxChannel2);
-
+            for (int c = 0; c < 3; c++) {
+                if (ips[c] == null) continue;
+                int ipMin = (int)(ips[c].getDisplayRangeMin());
+                int ipMax = (int)(ips[c].getDisplayRangeMax());
+                setContrast(c + 1, ipMin, ipMax);
+                System.out.println("ImageConversionManager set channel contrast min, max for channel" + (c + 1) + ": " + ipMin + ", " + ipMax);
+            }
 
             ImageManager.setOriginContrastValuesFlag(false);
         }
 
-        red_ip.setDisplayRange(ImageManager.getContrastMin1(), ImageManager.getContrastMax1());
-        green_ip.setDisplayRange(ImageManager.getContrastMin2(), ImageManager.getContrastMax2());
-
-        // convert the images to 8bit
-        ImageConverter ic1 = new ImageConverter(red_ip);
-        ImageConverter ic2 = new ImageConverter(green_ip);
-        ic1.convertToGray8();
-        ic2.convertToGray8();
-
-        // get the individual color pixels and set them to the color maps
-        ImageProcessor convertedChannel1 = red_ip.getProcessor();
-        ImageProcessor convertedChannel2 = green_ip.getProcessor();
-
-        colorChannel1 = (byte [])convertedChannel1.getPixels();
-        colorChannel2 = (byte [])convertedChannel2.getPixels();
-
-
-        iproc3.setRGB(colorChannel1, colorChannel2, colorChannel3);
-        ip.setProcessor("test", iproc3);
-
-        currentRPixelMap = colorChannel1;
-        currentGPixelMap = colorChannel2;
-        currentBPixelMap = colorChannel3;
-
-        return ip;
-    }
-
-    /**
-     * RED/GREEN/BLUE CHANNEL CASE
-     * @param red_ip
-     * @param green_ip
-     * @param blue_ip
-     * @return
-     */
-    private static ImagePlus convertMultiple16BitTIFstoRGB(ImagePlus red_ip, ImagePlus green_ip, ImagePlus blue_ip, ImageConfig imageConfig) {
-        ImagePlus ip = new ImagePlus();
-
-        ImageProcessor iproc_channel1 = red_ip.getProcessor();
-        ImageProcessor iproc_channel2 = green_ip.getProcessor();
-        ImageProcessor iproc_channel3 = blue_ip.getProcessor();
-
-        if (imageConfig.getFlipStack() == 1) {
-            iproc_channel1.flipHorizontal();
-            iproc_channel2.flipHorizontal();
-            iproc_channel3.flipHorizontal();
-        }
-
-        int pixelCount_channel1 = iproc_channel1.getPixelCount();
-        int ipwidth_channel1 = iproc_channel1.getWidth();
-        int ipheight_channel1 = iproc_channel1.getHeight();
-
-        int pixelCount_channel2 = iproc_channel2.getPixelCount();
-        int ipwidth_channel2 = iproc_channel2.getWidth();
-        int ipheight_channel2 = iproc_channel2.getHeight();
-
-        int pixelCount_channel3 = iproc_channel3.getPixelCount();
-        int ipwidth_channel3 = iproc_channel3.getWidth();
-        int ipheight_channel3 = iproc_channel3.getHeight();
-
-        // error checks
-        if (pixelCount_channel1 != pixelCount_channel2) {
-            System.err.println("Pixel counts in the first two color channel stacks are mismatched.");
-            return red_ip;
-        }
-        if (ipwidth_channel1 != ipwidth_channel2) {
-            System.err.println("Image widths in the first two color channel stacks are mismatched.");
-            return red_ip;
-        }
-        if (ipheight_channel1 != ipheight_channel2) {
-            System.err.println("Image heights in the first two color channel stacks are mismatched.");
-            return red_ip;
-        }
-
-        if (pixelCount_channel1 != pixelCount_channel3
-                || ipwidth_channel1 != ipwidth_channel3
-                || ipheight_channel1 != ipheight_channel3) {
-            System.err.println("Pixel counts in the first three color channel stacks are mismatched.");
-            return red_ip;
-        }
-
-
-        // now these vars will pertain to the single resulting ImagePlus so just doing this for clarity - plenty of memory to go around
-        int pixelCount = pixelCount_channel1;
-        int ipWidth = ipwidth_channel1;
-        int ipHeight = ipheight_channel1;
-
-
-        byte[] colorChannel1;
-        byte[] colorChannel2;
-        byte[] colorChannel3;
-
-
-        ColorProcessor iproc3 = new ColorProcessor(ipWidth, ipHeight);
-
-        // set the min and max contrast values if need be
-        // This can be lifted out of the splitStack conditional because in the case of multiple TIFs, we know we have two color channels
-        if (ImageManager.getOriginalContrastValuesFlag()) {
-            int ipMinChannel1 = (int)(red_ip.getDisplayRangeMin());
-            int ipMaxChannel1 = (int)(red_ip.getDisplayRangeMax());
-
-            ImageManager.setContrastMin1(ipMinChannel1);
-            ImageManager.setContrastMax1(ipMaxChannel1);
-
-            System.out.println("ImageConversionManager set channel contrast min, max for channel1: " + ipMinChannel1 + ", " + ipMaxChannel1);
-
-            int ipMinChannel2 = (int)(green_ip.getDisplayRangeMin());
-            int ipMaxChannel2 = (int)(green_ip.getDisplayRangeMax());
-
-            ImageManager.setContrastMin2(ipMinChannel2);
-            ImageManager.setContrastMax2(ipMaxChannel2);
-
-            System.out.println("ImageConversionManager set channel contrast min, max for channel2: " + ipMinChannel2 + ", " + ipMaxChannel2);
-
-            int ipMinChannel3 = (int)blue_ip.getDisplayRangeMin();
-            int ipMaxChannel3 = (int)blue_ip.getDisplayRangeMax();
-
-            ImageManager.setContrastMin3(ipMinChannel3);
-            ImageManager.setContrastMax3(ipMaxChannel3);
-
-            System.out.println("ImageConversionManager set channel contrast min, max for channel3: " + ipMinChannel3 + ", " + ipMaxChannel3);
-
-            ImageManager.setOriginContrastValuesFlag(false);
+        short[][] channels = new short[3][];
+        int[][] ranges = new int[3][];
+        for (int c = 0; c < 3; c++) {
+            if (ips[c] == null) continue;
+            channels[c] = (short[])ips[c].getProcessor().getPixels();
+            ranges[c] = makeDisplayRange(getContrastMin(c + 1), getContrastMax(c + 1), channels[c], ipWidth, 0, flip, ipWidth, ipHeight);
         }
 
-        red_ip.setDisplayRange(ImageManager.getContrastMin1(), ImageManager.getContrastMax1());
-        green_ip.setDisplayRange(ImageManager.getContrastMin2(), ImageManager.getContrastMax2());
-        blue_ip.setDisplayRange(ImageManager.getContrastMin3(), ImageManager.getContrastMax3());
-
-        // convert the images to 8bit
-        ImageConverter ic1 = new ImageConverter(red_ip);
-        ImageConverter ic2 = new ImageConverter(green_ip);
-        ImageConverter ic3 = new ImageConverter(blue_ip);
-        ic1.convertToGray8();
-        ic2.convertToGray8();
-        ic3.convertToGray8();
-
-        // get the individual color pixels and set them to the color maps
-        ImageProcessor convertedChannel1 = red_ip.getProcessor();
-        ImageProcessor convertedChannel2 = green_ip.getProcessor();
-        ImageProcessor convertedChannel3 = blue_ip.getProcessor();
-
-        colorChannel1 = (byte [])convertedChannel1.getPixels();
-        colorChannel2 = (byte [])convertedChannel2.getPixels();
-        colorChannel3 = (byte [])convertedChannel3.getPixels();
-
-
-        iproc3.setRGB(colorChannel1, colorChannel2, colorChannel3);
-        ip.setProcessor("test", iproc3);
-
-        currentRPixelMap = colorChannel1;
-        currentGPixelMap = colorChannel2;
-        currentBPixelMap = colorChannel3;
-
-        return ip;
+        return buildComposite(channels, ipWidth, new int[3], flip, ipWidth, ipHeight, ranges);
     }
 
     /**
-     * GREEN CHANNEL CASE
-     *
-     * @param green_ip
-     * @return
+     * Runs the ChannelCompositor and makes its channels the current pixel maps
      */
-    private static ImagePlus convert16BitTIFtoG(ImagePlus green_ip, ImageConfig imageConfig) {
-        ImagePlus ip = new ImagePlus();
-
-        ImageProcessor iproc_channel2 = green_ip.getProcessor();
-
-        if (imageConfig.getFlipStack() == 1) {
-            iproc_channel2.flipHorizontal();
-        }
-
-        int pixelCount_channel2 = iproc_channel2.getPixelCount();
-        int ipwidth_channel2 = iproc_channel2.getWidth();
-        int ipheight_channel2 = iproc_channel2.getHeight();
-
-
-        byte[] colorChannel1 = new byte[pixelCount_channel2];
-        byte[] colorChannel2;
-        byte[] colorChannel3 = new byte[pixelCount_channel2];
-
-
-        ColorProcessor iproc3 = new ColorProcessor(ipwidth_channel2, ipheight_channel2);
-
-        // set the min and max contrast values if need be
-        // This can be lifted out of the splitStack conditional because in the case of multiple TIFs, we know we have two color channels
-        if (ImageManager.getOriginalContrastValuesFlag()) {
-            int ipMinChannel2 = (int)(green_ip.getDisplayRangeMin());
-            int ipMaxChannel2 = (int)(green_ip.getDisplayRangeMax());
-
-            ImageManager.setContrastMin2(ipMinChannel2);
-            ImageManager.setContrastMax2(ipMaxChannel2);
-
-            System.out.println("ImageConversionManager set channel contrast min, max for channel2: " + ipMinChannel2 + ", " + ipMaxChannel2);
+    private static ImagePlus buildComposite(short[][] channels, int srcWidth, int[] x0, boolean flip, int width, int height, int[][] ranges) {
+        int[] rgb = ChannelCompositor.composite(channels, srcWidth, x0, flip, width, height, ranges);
+        byte[][] maps = ChannelCompositor.getChannels();
 
+        currentRPixelMap = maps[0];
+        currentGPixelMap = maps[1];
+        currentBPixelMap = maps[2];
 
-            ImageManager.setOriginContrastValuesFlag(false);
-        }
-
-        green_ip.setDisplayRange(ImageManager.getContrastMin2(), ImageManager.getContrastMax2());
-
-        // convert the image to 8bit
-        ImageConverter ic2 = new ImageConverter(green_ip);
-        ic2.convertToGray8();
-
-        // get the individual color pixels and set them to the color maps
-        ImageProcessor convertedChannel2 = green_ip.getProcessor();
-
-        colorChannel2 = (byte [])convertedChannel2.getPixels();
-
-
-        iproc3.setRGB(colorChannel1, colorChannel2, colorChannel3);
-        ip.setProcessor("test", iproc3);
-
-        currentRPixelMap = colorChannel1;
-        currentGPixelMap = colorChannel2;
-        currentBPixelMap = colorChannel3;
-
-        return ip;
-    }
-
-    /**
-     * BLUE CHANNEL CASE
-     * @param blue_ip
-     * @return
-     */
-    private static ImagePlus convert16BitTIFtoB(ImagePlus blue_ip, ImageConfig imageConfig) {
         ImagePlus ip = new ImagePlus();
-
-        ImageProcessor iproc_channel3 = blue_ip.getProcessor();
-
-        if (imageConfig.getFlipStack() == 1) {
-            iproc_channel3.flipHorizontal();
-        }
-
-        int pixelCount_channel3 = iproc_channel3.getPixelCount();
-        int ipwidth_channel3 = iproc_channel3.getWidth();
-        int ipheight_channel3 = iproc_channel3.getHeight();
-
-
-        byte[] colorChannel1 = new byte[pixelCount_channel3];
-        byte[] colorChannel2 = new byte[pixelCount_channel3];
-        byte[] colorChannel3;
-
-
-        ColorProcessor iproc3 = new ColorProcessor(ipwidth_channel3, ipheight_channel3);
-
-        // set the min and max contrast values if need be
-        // This can be lifted out of the splitStack conditional because in the case of multiple TIFs, we know we have two color channels
-        if (ImageManager.getOriginalContrastValuesFlag()) {
-            int ipMinChannel3 = (int)(blue_ip.getDisplayRangeMin());
-            int ipMaxChannel3 = (int)(blue_ip.getDisplayRangeMax());
-
-            ImageManager.setContrastMin3(ipMinChannel3);
-            ImageManager.setContrastMax3(ipMaxChannel3);
-
-            System.out.println("ImageConversionManager set channel contrast min, max for channel3: " + ipMinChannel3 + ", " + ipMaxChannel3);
-
-
-            ImageManager.setOriginContrastValuesFlag(false);
-        }
-
-        blue_ip.setDisplayRange(ImageManager.getContrastMin3(), ImageManager.getContrastMax3());
-
-        // convert the image to 8bit
-        ImageConverter ic3 = new ImageConverter(blue_ip);
-        ic3.convertToGray8();
-
-        // get the individual color pixels and set them to the color maps
-        ImageProcessor convertedChannel3 = blue_ip.getProcessor();
-
-        colorChannel3 = (byte [])convertedChannel3.getPixels();
-
-
-        iproc3.setRGB(colorChannel1, colorChannel2, colorChannel3);
-        ip.setProcessor("test", iproc3);
-
-        currentRPixelMap = colorChannel1;
-        currentGPixelMap = colorChannel2;
-        currentBPixelMap = colorChannel3;
-
+        ip.setProcessor("test", new ColorProcessor(width, height, rgb));
         return ip;
     }
 
     /**
-     * GREEN/BLUE CHANNEL CASE
-     * @param green_ip
-     * @param blue_ip
-     * @return
+     * ImageJ treats a display range of 0, 0 as the range of the pixel values
      */
-    private static ImagePlus convertMultiple16BitTIFstoGB(ImagePlus green_ip, ImagePlus blue_ip, ImageConfig imageConfig) {
-        ImagePlus ip = new ImagePlus();
-
-        ImageProcessor iproc_channel2 = green_ip.getProcessor();
-        ImageProcessor iproc_channel3 = blue_ip.getProcessor();
-
-        if (imageConfig.getFlipStack() == 1) {
-            iproc_channel2.flipHorizontal();
-            iproc_channel3.flipHorizontal();
-        }
-
-        int pixelCount_channel2 = iproc_channel2.getPixelCount();
-        int ipwidth_channel2 = iproc_channel2.getWidth();
-        int ipheight_channel2 = iproc_channel2.getHeight();
-
-        int pixelCount_channel3 = iproc_channel3.getPixelCount();
-        int ipwidth_channel3 = iproc_channel3.getWidth();
-        int ipheight_channel3 = iproc_channel3.getHeight();
-
-
-        // error checks
-        if (pixelCount_channel2 != pixelCount_channel3) {
-            System.err.println("Pixel counts in the first two color channel stacks are mismatched.");
-            return green_ip;
-        }
-        if (ipwidth_channel2 != ipwidth_channel3) {
-            System.err.println("Image widths in the first two color channel stacks are mismatched.");
-            return green_ip;
-        }
-        if (ipheight_channel2 != ipheight_channel3) {
-            System.err.println("Image heights in the first two color channel stacks are mismatched.");
-            return green_ip;
-        }
-
-
-        // now these vars will pertain to the single resulting ImagePlus so just doing this for clarity - plenty of memory to go around
-        int pixelCount = pixelCount_channel2;
-        int ipWidth = ipwidth_channel2;
-        int ipHeight = ipheight_channel2;
-
-
-        byte[] colorChannel1 = new byte[pixelCount];
-        byte[] colorChannel2;
-        byte[] colorChannel3;
-
-
-        ColorProcessor iproc3 = new ColorProcessor(ipWidth, ipHeight);
-
-        // set the min and max contrast values if need be
-        // This can be lifted out of the splitStack conditional because in the case of multiple TIFs, we know we have two color channels
-        if (ImageManager.getOriginalContrastValuesFlag()) {
-            int ipMinChannel2 = (int)(green_ip.getDisplayRangeMin());
-            int ipMaxChannel2 = (int)(green_ip.getDisplayRangeMax());
-
-            ImageManager.setContrastMin2(ipMinChannel2);
-            ImageManager.setContrastMax2(ipMaxChannel2);
-
-            System.out.println("ImageConversionManager set channel contrast min, max for channel2: " + ipMinChannel2 + ", " + ipMaxChannel2);
-
-            int ipMinChannel3 = (int)(blue_ip.getDisplayRangeMin());
-            int ipMaxChannel3 = (int)(blue_ip.getDisplayRangeMax());
-
-            ImageManager.setContrastMin3(ipMinChannel3);
-            ImageManager.setContrastMax3(ipMaxChannel3);
-
-            System.out.println("ImageConversionManager set channel contrast min, max for channel3: " + ipMinChannel3 + ", " + ipMaxChannel3);
-
-
-            ImageManager.setOriginContrastValuesFlag(false);
-        }
-
-        green_ip.setDisplayRange(ImageManager.getContrastMin2(), ImageManager.getContrastMax2());
-        blue_ip.setDisplayRange(ImageManager.getContrastMin3(), ImageManager.getContrastMax3());
-
-        // convert the images to 8bit
-        ImageConverter ic2 = new ImageConverter(green_ip);
-        ImageConverter ic3 = new ImageConverter(blue_ip);
-        ic2.convertToGray8();
-        ic3.convertToGray8();
-
-        // get the individual color pixels and set them to the color maps
-        ImageProcessor convertedChannel2 = green_ip.getProcessor();
-        ImageProcessor convertedChannel3 = blue_ip.getProcessor();
-
-        colorChannel2 = (byte [])convertedChannel2.getPixels();
-        colorChannel3 = (byte [])convertedChannel3.getPixels();
-
-
-        iproc3.setRGB(colorChannel1, colorChannel2, colorChannel3);
-        ip.setProcessor("test", iproc3);
-
-        currentRPixelMap = colorChannel1;
-        currentGPixelMap = colorChannel2;
-        currentBPixelMap = colorChannel3;
-
-        return ip;
+    private static int[] makeDisplayRange(int min, int max, short[] pixels, int srcWidth, int x0, boolean flip, int width, int height) {
+        if (min == 0 && max == 0) return ChannelCompositor.findMinAndMax(pixels, srcWidth, x0, flip, width, height);
+        return new int[]{min, max};
     }
 
-    /**
-     * RED/BLUE CHANNEL CASE
-     * @param red_ip
-     * @param blue_ip
-     * @return
-     */
-    private static ImagePlus convertMultiple16BitTIFstoRB(ImagePlus red_ip, ImagePlus blue_ip, ImageConfig imageConfig) {
-        ImagePlus ip = new ImagePlus();
-
-        ImageProcessor iproc_channel1 = red_ip.getProcessor();
-        ImageProcessor iproc_channel3 = blue_ip.getProcessor();
-
-        if (imageConfig.getFlipStack() == 1) {
-            iproc_channel1.flipHorizontal();
-            iproc_channel3.flipHorizontal();
-        }
-
-        int pixelCount_channel1 = iproc_channel1.getPixelCount();
-        int ipwidth_channel1 = iproc_channel1.getWidth();
-        int ipheight_channel1 = iproc_channel1.getHeight();
-
-        int pixelCount_channel3 = iproc_channel3.getPixelCount();
-        int ipwidth_channel3 = iproc_channel3.getWidth();
-        int ipheight_channel3 = iproc_channel3.getHeight();
-
-
-        // error checks
-        if (pixelCount_channel1 != pixelCount_channel3) {
-            System.err.println("Pixel counts in the first two color channel stacks are mismatched.");
-            return red_ip;
-        }
-        if (ipwidth_channel1 != ipwidth_channel3) {
-            System.err.println("Image widths in the first two color channel stacks are mismatched.");
-            return red_ip;
-        }
-        if (ipheight_channel1 != ipheight_channel3) {
-            System.err.println("Image heights in the first two color channel stacks are mismatched.");
-            return red_ip;
-        }
-
-
-        // now these vars will pertain to the single resulting ImagePlus so just doing this for clarity - plenty of memory to go around
-        int pixelCount = pixelCount_channel1;
-        int ipWidth = ipwidth_channel1;
-        int ipHeight = ipheight_channel1;
-
-
-        byte[] colorChannel1;
-        byte[] colorChannel2 = new byte[pixelCount];
-        byte[] colorChannel3;
-
-
-        ColorProcessor iproc3 = new ColorProcessor(ipWidth, ipHeight);
-
-        // set the min and max contrast values if need be
-        // This can be lifted out of the splitStack conditional because in the case of multiple TIFs, we know we have two color channels
-        if (ImageManager.getOriginalContrastValuesFlag()) {
-            int ipMinChannel1 = (int)(red_ip.getDisplayRangeMin());
-            int ipMaxChannel1 = (int)(red_ip.getDisplayRangeMax());
-
-            ImageManager.setContrastMin1(ipMinChannel1);
-            ImageManager.setContrastMax1(ipMaxChannel1);
-
-            System.out.println("ImageConversionManager set channel contrast min, max for channel1: " + ipMinChannel1 + ", " + ipMaxChannel1);
-
-            int ipMinChannel3 = (int)(blue_ip.getDisplayRangeMin());
-            int ipMaxChannel3 = (int)(blue_ip.getDisplayRangeMax());
-
-            ImageManager.setContrastMin3(ipMinChannel3);
-            ImageManager.setContrastMax3(ipMaxChannel3);
-
-            System.out.println("ImageConversionManager set channel contrast min, max for channel3: " + ipMinChannel3 + ", " + ipMaxChannel3);
-
-
-            ImageManager.setOriginContrastValuesFlag(false);
+    private static void setContrast(int channel, int min, int max) {
+        if (channel == RED) {
+            ImageManager.setContrastMin1(min);
+            ImageManager.setContrastMax1(max);
+        } else if (channel == GREEN) {
+            ImageManager.setContrastMin2(min);
+            ImageManager.setContrastMax2(max);
+        } else {
+            ImageManager.setContrastMin3(min);
+            ImageManager.setContrastMax3(max);
         }
+    }
 
-        red_ip.setDisplayRange(ImageManager.getContrastMin1(), ImageManager.getContrastMax1());
-        blue_ip.setDisplayRange(ImageManager.getContrastMin3(), ImageManager.getContrastMax3());
-
-        // convert the images to 8bit
-        ImageConverter ic1 = new ImageConverter(red_ip);
-        ImageConverter ic3 = new ImageConverter(blue_ip);
-        ic1.convertToGray8();
-        ic3.convertToGray8();
-
-        // get the individual color pixels and set them to the color maps
-        ImageProcessor convertedChannel1 = red_ip.getProcessor();
-        ImageProcessor convertedChannel3 = blue_ip.getProcessor();
-
-        colorChannel1 = (byte [])convertedChannel1.getPixels();
-        colorChannel3 = (byte [])convertedChannel3.getPixels();
-
-
-        iproc3.setRGB(colorChannel1, colorChannel2, colorChannel3);
-        ip.setProcessor("test", iproc3);
-
-        currentRPixelMap = colorChannel1;
-        currentGPixelMap = colorChannel2;
-        currentBPixelMap = colorChannel3;
+    private static int getContrastMin(int channel) {
+        if (channel == RED) return ImageManager.getContrastMin1();
+        if (channel == GREEN) return ImageManager.getContrastMin2();
+        return ImageManager.getContrastMin3();
+    }
 
-        return ip;
+    private static int getContrastMax(int channel) {
+        if (channel == RED) return ImageManager.getContrastMax1();
+        if (channel == GREEN) return ImageManager.getContrastMax2();
+        return ImageManager.getContrastMax3();
     }
     //////////////////////////////////////////////////////////////////
     /////////////////////////////////////////////////////////////////
@@ -1185,6 +664,11 @@ public class ImageConversionManager {
     public static byte[] getCurrentRPixelMap() { return currentRPixelMap; }
     public static byte[] getCurrentGPixelMap() { return currentGPixelMap; }
     public static byte[] getCurrentBPixelMap() { return currentBPixelMap; }
+    static void setCurrentPixelMaps(byte[] r, byte[] g, byte[] b) {
+        currentRPixelMap = r;
+        currentGPixelMap = g;
+        currentBPixelMap = b;
+    }
 
     private static int RED = 1;
     private static int GREEN = 2;
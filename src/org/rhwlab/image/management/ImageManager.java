@@ -2,15 +2,13 @@ package org.rhwlab.image.management;
 
 import ij.IJ;
 import ij.ImagePlus;
-import ij.ImageStack;
-import ij.io.Opener;
-import ij.plugin.ZProjector;
 import ij.process.ColorProcessor;
 import ij.process.ImageProcessor;
 import javafx.beans.property.IntegerProperty;
 import javafx.beans.property.SimpleIntegerProperty;
 import org.rhwlab.image.ParsingLogic.ImageNameLogic;
 import java.io.File;
+import java.util.ArrayList;
 import java.util.Hashtable;
 
 /**
@@ -50,6 +48,12 @@ public class ImageManager {
 
     private IntegerProperty timeProperty;
 
+    // decoded and converted planes, with the prefetching of the neighbouring ones
+    private ImageCache imageCache;
+
+    // maximum intensity projections of all time points, before conversion
+    private MaxProjectionCache maxProjectionCache;
+
     private static boolean setOriginalContrastValues; // not quite sure what this is used for
     private static int contrastMin1, contrastMin2, contrastMax1, contrastMax2, contrastMin3, contrastMax3;
     private static boolean contrastChange;
@@ -83,6 +87,20 @@ public class ImageManager {
 
         // timeProperty is a variable that is needed for the 3D Window and harmless when not used
         this.timeProperty = new SimpleIntegerProperty(this.currentImageTime);
+
+        this.imageCache = new ImageCache();
+        this.maxProjectionCache = new MaxProjectionCache(imageConfig);
+    }
+
+    /**
+     * Stops the prefetching and the projections made in the background and lets go of the cached images,
+     * when another series replaces this one
+     */
+    public void close() {
+        this.imageCache.shutdown();
+        this.imageCache.clear();
+        this.maxProjectionCache.shutdown();
+        this.maxProjectionCache.clear();
     }
 
     // methods to set runtime parameters
@@ -491,7 +509,7 @@ public class ImageManager {
             //System.out.println("*** The file: " + tif_8bit + " does NOT exist on this system ***");
             return null;
         }
-        ImagePlus ip = new Opener().openImage(tif_8bit); // no need for other arguments, the file is just a single plane at a single timepoint
+        ImagePlus ip = this.imageCache.open(tif_8bit, 0); // no need for other arguments, the file is just a single plane at a single timepoint
         if (ip != null) {
             this.imageWidth = ip.getWidth();
             this.imageHeight = ip.getHeight();
@@ -500,7 +518,7 @@ public class ImageManager {
             String secondColorChannelAttempt = ImageNameLogic.findSecondColorChannelFromSliceImage(tif_8bit);
             if (!tif_8bit.equals(secondColorChannelAttempt)) {
                 // a second color channel was found, so load both images as one layered, RGB image
-                ImagePlus ip2 = new Opener().openImage(secondColorChannelAttempt);
+                ImagePlus ip2 = this.imageCache.open(secondColorChannelAttempt, 0);
                 if (ip2 != null) {
                     if (tif_8bit.contains(ImageNameLogic.tifDir) || tif_8bit.contains(ImageNameLogic.tifDir_2)) {
                         return ImageConversionManager.convertMultiple8bittifsToRGB(ip, ip2, this.imageConfig);
@@ -532,7 +550,7 @@ public class ImageManager {
             return null;
         }
 
-        ImagePlus ip = new Opener().openImage(TIF_slice_16bit);
+        ImagePlus ip = this.imageCache.open(TIF_slice_16bit, 0);
         if (ip != null) {
             this.imageWidth = ip.getWidth();
             this.imageHeight = ip.getHeight();
@@ -555,7 +573,7 @@ public class ImageManager {
             return null;
         }
 
-        ImagePlus ip = new Opener().openImage(TIF_16bit, this.currentImagePlane);
+        ImagePlus ip = this.imageCache.openShared(TIF_16bit, this.currentImagePlane);
 
         if (ip != null) {
             this.imageWidth = ip.getWidth();
@@ -579,7 +597,7 @@ public class ImageManager {
         int i = 0;
         for (; i < TIFs_16bit_names.length; i++) {
             if (!TIFs_16bit_names[i].isEmpty() && new File(TIFs_16bit_names[i]).exists()) {
-                TIFs_16bit[i] = new Opener().openImage(TIFs_16bit_names[i], this.currentImagePlane);
+                TIFs_16bit[i] = this.imageCache.openShared(TIFs_16bit_names[i], this.currentImagePlane);
 
                 if (TIFs_16bit[i] == null) {
                     System.err.println("Couldn't make image from: " + TIFs_16bit_names[i]);
@@ -679,11 +697,114 @@ public class ImageManager {
      * This is the method called from AceTree during runtime when the UI is triggered to update the images
      * e.g. when the user chan\ges the time/plane
      *
+     * Converted images are kept in the ImageCache, and the planes around the requested one are prefetched
+     * so that stepping through planes and time does not wait on the file system
+     *
      * @param time
      * @param plane
      * @return
      */
-    public ImagePlus makeImage(int time, int plane) {
+    public ImagePlus makeImage(int time, int plane) { return makeImage(time, plane, true); }
+
+    /**
+     * @param prefetch false to leave the neighbouring planes unread, for images that are not shown, e.g. those
+     *                 of an export
+     */
+    public ImagePlus makeImage(int time, int plane, boolean prefetch) {
+        // 16bit stacks are read at the current plane, see makeImageFromSingle16BitTIF()
+        int readPlane = this.imageConfig.getUseStack() == 1 ? this.currentImagePlane : plane;
+
+        // until the contrast has been taken from the first image, a conversion also sets it, so don't skip it
+        if (!getOriginalContrastValuesFlag()) {
+            ImageCache.Converted converted = this.imageCache.getConverted(makeConvertedKey(time, readPlane));
+            if (converted != null) {
+                this.currentImageName = converted.getName();
+                this.imageWidth = converted.getImageWidth();
+                this.imageHeight = converted.getImageHeight();
+                converted.setCurrentPixelMaps();
+                if (prefetch) prefetchAround(time, readPlane);
+                return converted.makeImage();
+            }
+        }
+
+        ImagePlus ip = readImage(time, plane);
+        if (ip != null) {
+            this.imageCache.putConverted(makeConvertedKey(time, readPlane), ip, this.currentImageName, this.imageWidth, this.imageHeight);
+        }
+        if (prefetch) prefetchAround(time, readPlane);
+        return ip;
+    }
+
+    /**
+     * Key of a converted image: everything the 16bit to 8bit conversion depends on
+     */
+    private String makeConvertedKey(int time, int plane) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(this.imageConfig.getImagePrefixes()[0]).append('|').append(time).append('|').append(plane);
+        sb.append('|').append(this.imageConfig.getUseStack()).append(this.imageConfig.getNumChannels());
+        sb.append(this.imageConfig.getSplitStack()).append(this.imageConfig.getFlipStack());
+        sb.append('|').append(contrastMin1).append(',').append(contrastMax1);
+        sb.append(',').append(contrastMin2).append(',').append(contrastMax2);
+        sb.append(',').append(contrastMin3).append(',').append(contrastMax3);
+        return sb.toString();
+    }
+
+    /**
+     * Queues the neighbouring planes and the same plane at the previous and next time points for decoding
+     * in the background, nearest first
+     */
+    private void prefetchAround(int time, int plane) {
+        ArrayList<String> paths = new ArrayList<String>();
+        ArrayList<Integer> planes = new ArrayList<Integer>();
+        for (int d = 1; d <= PREFETCH_PLANES; d++) {
+            addPrefetch(paths, planes, time, plane + d);
+            addPrefetch(paths, planes, time, plane - d);
+            if (d <= PREFETCH_TIMES) {
+                addPrefetch(paths, planes, time + d, plane);
+                addPrefetch(paths, planes, time - d, plane);
+            }
+        }
+        this.imageCache.prefetch(paths, planes);
+    }
+
+    /**
+     * Queues the current plane of the frames a playback shows next for decoding in the background, nearest first.
+     * Like prefetchAround(), this replaces the requests still waiting from an earlier call
+     *
+     * @param time the time point shown now
+     * @param step time points from one frame to the next, negative when playing backwards
+     * @param count the number of frames to read ahead
+     */
+    public void prefetchFrames(int time, int step, int count) {
+        if (this.isCurrImageMIP || step == 0) return; // the MaxProjectionCache makes the projections of all time points
+        ArrayList<String> paths = new ArrayList<String>();
+        ArrayList<Integer> planes = new ArrayList<Integer>();
+        for (int k = 1; k <= count; k++) {
+            addPrefetch(paths, planes, time + k * step, this.currentImagePlane);
+        }
+        this.imageCache.prefetch(paths, planes);
+    }
+
+    private void addPrefetch(ArrayList<String> paths, ArrayList<Integer> planes, int time, int plane) {
+        if (plane < 1 || plane > this.imageConfig.getPlaneEnd()) return;
+        if (time < this.imageConfig.getStartingIndex() || time > this.imageConfig.getEndingIndex()) return;
+        if (this.imageConfig.getUseStack() == 0) {
+            // the second channel of an 8bit series is looked up on disk, it is read when the plane is shown
+            paths.add(ImageNameLogic.appendTimeAndPlaneTo8BittifPrefix(this.imageConfig.getImagePrefixes()[0], time, plane));
+            planes.add(0);
+        } else if (this.imageConfig.getNumChannels() == -1) {
+            paths.add(ImageNameLogic.appendTimeToSingle16BitTIFPrefix(this.imageConfig.getImagePrefixes()[0], time));
+            planes.add(plane);
+        } else if (this.imageConfig.getNumChannels() > 1) {
+            for (String s : ImageNameLogic.appendTimeToMultiple16BitTifPrefixes(this.imageConfig.getImagePrefixes(), time)) {
+                if (s.isEmpty()) continue;
+                paths.add(s);
+                planes.add(plane);
+            }
+        }
+    }
+
+    private ImagePlus readImage(int time, int plane) {
         // first check if we're dealing with 8 bit or 16 bit images
         if (this.imageConfig.getUseStack() == 0) { // 8bit
             this.currentImageName = ImageNameLogic.appendTimeAndPlaneTo8BittifPrefix(this.imageConfig.getImagePrefixes()[0], time, plane);
@@ -903,95 +1024,65 @@ public class ImageManager {
     /**
      * Makes max projection(s)
      *
+     * The projections come from the MaxProjectionCache, which makes the ones of the other time points in the
+     * background, so only the conversion to RGB is done here when the contrast or time changes in MIP mode
+     *
      * @return
      */
     public ImagePlus makeMaxProjection() {
-        ZProjector zproj = new ZProjector();
-        zproj.setMethod(ZProjector.MAX_METHOD);
+        ImagePlus ip = makeMaxProjection(this.currentImageTime);
+        this.maxProjectionCache.precompute(this.currentImageTime);
 
+        String[] images = this.maxProjectionCache.getSources(this.currentImageTime);
         if (this.imageConfig.getUseStack() == 0) { // 8bit
-
-            // we'll need to load all of the planes in the stack before making this max projection so hold off on this for now
-            //implemented on 2/28/2020
-
-            //combine the single images of current time point into one stack
-            ImageStack is = new ImageStack(imageWidth, imageHeight);
-
-            for (int i = 0; i < imageConfig.getPlaneEnd(); i++) {
-                this.currentImageName = ImageNameLogic.appendTimeAndPlaneTo8BittifPrefix(this.imageConfig.getImagePrefixes()[0], this.currentImageTime, i + 1);
-                //testing
-                //System.out.println(this.currentImageName);
-                ImagePlus currentIP = new Opener().openImage(this.currentImageName);
-
-                if (currentIP != null) {
-                    is.addSlice(Integer.toString(i + 1), currentIP.getProcessor());
+            // as when the planes were opened one by one, the last one names the image
+            this.currentImageName = images[images.length - 1];
+        } else {
+            // set the current image name as the first non-empty value
+            for (String s : images) {
+                if (!s.isEmpty()) {
+                    this.currentImageName = images[0];
+                    break;
                 }
             }
+        }
+        if (ip == null) return null;
 
-            ImagePlus currentStack = new ImagePlus(Integer.toString(this.currentImageTime), is);
-
-            //set the current stack and do the projection
-            zproj.setImage(currentStack);
-            zproj.doProjection();
-
-            //convert the projection to 8bit RGB (shown in red by default)
-            this.currentImage = ImageConversionManager.convertMIPToRGB(zproj.getProjection(), 1, this.imageConfig);
-
-            this.isCurrImageMIP = true;
-            return this.currentImage;
-        } else if (this.imageConfig.getUseStack() == 1) { //16bit
-            // check if there are multiple stacks defining the color channels of the image series, or if all channels are contained in a single stack
-            if (this.imageConfig.getNumChannels() == -1 || this.imageConfig.getNumChannels() == 1) { // legacy .XML config
-                // single stack with one or more color channels
-                this.currentImageName = ImageNameLogic.appendTimeToSingle16BitTIFPrefix(this.imageConfig.getImagePrefixes()[0], this.currentImageTime);
-
-                // set the image and do the projection
-                zproj.setImage(new Opener().openImage(this.currentImageName));
-                zproj.doProjection();
-
-                // convert the projection to 8bit RGB (shown in red by default)
-                this.currentImage = ImageConversionManager.convertMIPToRGB(zproj.getProjection(), 1, this.imageConfig);
-
-                this.isCurrImageMIP = true;
-                return this.currentImage;
-            } else if (this.imageConfig.getNumChannels() > 1) {
-                // multiple stacks containing multiple image channels for an image series
-                String[] images = ImageNameLogic.appendTimeToMultiple16BitTifPrefixes(this.imageConfig.getImagePrefixes(), this.currentImageTime);
-
-                // set the current image name as the first non-empty value
-                for (String s : images) {
-                    if (!s.isEmpty()) {
-                        this.currentImageName = images[0];
-                        break;
-                    }
-                }
-
-
-                ImagePlus[] MIP_ips = new ImagePlus[images.length];
-                for (int i = 0; i < images.length; i++) {
-                    if (!images[i].isEmpty()) {
-                        zproj.setImage(new Opener().openImage(images[i]));
-                        zproj.doProjection();
-                        MIP_ips[i] = zproj.getProjection();
-                    }
-                }
-
-                int[] colorChannelIndices = new int[images.length];
-                for (int i = 0; i < images.length; i++) {
-                    if (!images[i].isEmpty()) {
-                        colorChannelIndices[i] = i+1;
-                    } else {
-                        colorChannelIndices[i] = -1; // this will represent an image that is null, just for safe measure
-                    }
+        this.currentImage = ip;
+        this.isCurrImageMIP = true;
+        return this.currentImage;
+    }
 
+    /**
+     * The max projection of a time point converted to 8bit RGB, as makeMaxProjection() makes it, but without
+     * making it the current image; used to export the projections of other time points
+     *
+     * @param time
+     * @return the projection, null if no image of the time point could be read
+     */
+    public ImagePlus makeMaxProjection(int time) {
+        ImagePlus[] MIP_ips = this.maxProjectionCache.getProjections(time);
+        if (MIP_ips == null) return null;
+
+        if (this.imageConfig.getUseStack() == 0
+                || this.imageConfig.getNumChannels() == -1 || this.imageConfig.getNumChannels() == 1) {
+            // convert the projection to 8bit RGB (shown in red by default)
+            return ImageConversionManager.convertMIPToRGB(MIP_ips[0], 1, this.imageConfig);
+        } else if (this.imageConfig.getNumChannels() > 1) {
+            // multiple stacks containing multiple image channels for an image series
+            String[] images = this.maxProjectionCache.getSources(time);
+            int[] colorChannelIndices = new int[images.length];
+            for (int i = 0; i < images.length; i++) {
+                if (!images[i].isEmpty()) {
+                    colorChannelIndices[i] = i+1;
+                } else {
+                    colorChannelIndices[i] = -1; // this will represent an image that is null, just for safe measure
                 }
 
-                // convert the MIPs into an 8bit RGB image
-                this.currentImage = ImageConversionManager.convertMultipleMIPsToRGB(MIP_ips, colorChannelIndices, this.imageConfig);
-
-                this.isCurrImageMIP = true;
-                return this.currentImage;
             }
+
+            // convert the MIPs into an 8bit RGB image
+            return ImageConversionManager.convertMultipleMIPsToRGB(MIP_ips, colorChannelIndices, this.imageConfig);
         }
         return null;
     }
@@ -1156,6 +1247,8 @@ public class ImageManager {
     public static int _16BIT_ID = 16;
     public static int _32BIT_ID = 32;
     private static int FAIL = -1;
+    private static final int PREFETCH_PLANES = 2;
+    private static final int PREFETCH_TIMES = 1;
 
 //    public static void main(String[] args) {
 //        String test16bit = "/media/braden/24344443-dff2-4bf4-b2c6-b8c551978b83/AceTree_data/data_post2018/20141022_JIM113_UNC-86myrGFP/20141022_JIM113_UNC-86myrGFP_1_s1_t1.TIF";
@@ -1,8 +1,372 @@
 package org.rhwlab.image.management;
 
+import ij.ImagePlus;
+import ij.process.ColorProcessor;
+import ij.process.ImageProcessor;
+import net.sf.ij.jaiio.BufferedImageCreator;
+import org.rhwlab.image.ImageWindow;
+import org.rhwlab.image.OverlayLayer;
+import org.rhwlab.utils.EUtils;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+import javax.imageio.stream.MemoryCacheImageOutputStream;
+import javax.swing.SwingUtilities;
+import java.awt.Graphics2D;
+import java.awt.GraphicsEnvironment;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayDeque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * ImageSavingManager.java
+ * Revised: 10/2026
+ *
+ * Writes images of the series without the screen. A frame is the image ImageManager makes for a time point and
+ * plane, or the maximum intensity projection of a time point, in the color channels AceTree shows; the centroids
+ * and annotations ImageWindow would show are drawn on a copy of it, and it is encoded on a pool of threads.
+ *
+ * export() writes a range of time points and planes as PNG or JPEG files, or as one Motion JPEG AVI movie.
+ * save() writes the image shown in ImageWindow, the "Save 2D" option, without waiting for the window to repaint.
+ *
+ * ImageManager is not thread safe and the UI uses it on the event dispatch thread, so frames are read there and
+ * only the drawing and encoding are done on the pool. The centroids and annotations of a frame are settled there
+ * as well, from an OverlayLayer of the export's own, and the pool only paints them.
+ */
 public class ImageSavingManager {
 
-    public ImageSavingManager() {
+    private ImageManager imageManager;
+    private ImageWindow imageWindow;
+    private ExecutorService pool;
+
+    // what export() writes
+    private int firstTime;
+    private int lastTime;
+    private int firstPlane;
+    private int lastPlane;
+    private boolean maxProjection;
+    private int color;
+    private String format;
+    private float quality;
+    private int framesPerSecond;
+    private int workers;
+    private volatile boolean cancelled;
+
+    /**
+     * @param imageManager source of the images
+     * @param imageWindow draws the centroids and annotations, null for the images alone
+     */
+    public ImageSavingManager(ImageManager imageManager, ImageWindow imageWindow) {
+        this.imageManager = imageManager;
+        this.imageWindow = imageWindow;
+        this.firstTime = this.lastTime = imageManager.getCurrImageTime();
+        this.firstPlane = this.lastPlane = imageManager.getCurrImagePlane();
+        this.maxProjection = false;
+        this.color = 7;
+        this.format = PNG;
+        this.quality = 0.9f;
+        this.framesPerSecond = 10;
+        this.workers = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+    }
+
+    public void setTimes(int first, int last) {
+        this.firstTime = first;
+        this.lastTime = last;
+    }
+
+    public void setPlanes(int first, int last) {
+        this.firstPlane = first;
+        this.lastPlane = last;
+    }
+
+    /**
+     * @param mip true for one maximum intensity projection per time point instead of the planes
+     */
+    public void setMaxProjection(boolean mip) { this.maxProjection = mip; }
+
+    /**
+     * @param color the color channel toggle, as for ImageManager.extractColorChannelFromImagePlus()
+     */
+    public void setColor(int color) { this.color = color; }
 
+    /**
+     * @param format PNG, JPEG or AVI
+     */
+    public void setFormat(String format) { this.format = format; }
+
+    /**
+     * @param quality JPEG quality, 0 to 1, also used for the frames of a movie
+     */
+    public void setQuality(float quality) { this.quality = quality; }
+
+    public void setFramesPerSecond(int fps) { this.framesPerSecond = fps; }
+
+    public void setWorkers(int workers) { this.workers = Math.max(1, workers); }
+
+    /**
+     * Stops a running export after the frames already read
+     */
+    public void cancel() { this.cancelled = true; }
+
+    /**
+     * Writes the frames, time point by time point and within one plane by plane
+     *
+     * @param out the directory of the image files, or the movie file for AVI
+     * @param prefix the start of the image file names
+     * @return the number of frames written, -1 if the output could not be written, also when a movie would pass
+     * the 2 GB an AVI file can hold; the movie then ends with the frames before
+     */
+    public int export(File out, String prefix) {
+        this.cancelled = false;
+        boolean movie = this.format.equals(AVI);
+        if (!movie) out.mkdirs();
+        int planeStep = this.lastPlane >= this.firstPlane ? 1 : -1;
+        int timeStep = this.lastTime >= this.firstTime ? 1 : -1;
+        int planes = this.maxProjection ? 1 : Math.abs(this.lastPlane - this.firstPlane) + 1;
+        int total = (Math.abs(this.lastTime - this.firstTime) + 1) * planes;
+        System.out.println("ImageSavingManager exporting " + total + " frames to " + out);
+
+        long t0 = System.currentTimeMillis();
+        ExecutorService exportPool = Executors.newFixedThreadPool(this.workers, daemonFactory("ImageSavingManager export"));
+        ArrayDeque<Future<byte[]>> inFlight = new ArrayDeque<Future<byte[]>>();
+        MjpegAviWriter avi = null;
+        int written = 0;
+        // the window's cache holds what it shows, the frames of the export would push that out
+        OverlayLayer layer = new OverlayLayer();
+        try {
+            for (int k = 0; k < total && !this.cancelled; k++) {
+                final int time = this.firstTime + timeStep * (k / planes);
+                final int plane = this.maxProjection ? Integer.MAX_VALUE : this.firstPlane + planeStep * (k % planes);
+                ExportFrame frame = readFrame(time, plane, layer);
+                ImagePlus ip = frame == null ? null : frame.image;
+                if (ip == null) {
+                    System.out.println("ImageSavingManager, no image at time " + time + ", plane " + plane);
+                    continue;
+                }
+                if (movie && avi == null) {
+                    avi = new MjpegAviWriter(out, ip.getWidth(), ip.getHeight(), this.framesPerSecond);
+                } else if (movie && (ip.getWidth() != avi.getWidth() || ip.getHeight() != avi.getHeight())) {
+                    System.out.println("ImageSavingManager, frame at time " + time + " is not the size of the movie, skipped");
+                    continue;
+                }
+                final ImageProcessor iproc = ip.getProcessor();
+                final OverlayLayer.Painting painting = frame.painting;
+                final File f = movie ? null : new File(out, frameName(prefix, time, plane, this.format));
+                final String fmt = movie ? JPEG : this.format;
+                inFlight.add(exportPool.submit(() -> {
+                    byte[] bytes = encode(compose(iproc, painting), fmt, this.quality);
+                    if (f == null) return bytes;
+                    write(bytes, f);
+                    return null;
+                }));
+                // bound the frames held in memory, the movie takes them in order
+                while (inFlight.size() > 2 * this.workers) {
+                    written += drain(inFlight.poll(), avi);
+                }
+            }
+            while (!inFlight.isEmpty()) {
+                written += drain(inFlight.poll(), avi);
+            }
+            if (avi != null) avi.close();
+        } catch (IOException ioe) {
+            System.out.println("ImageSavingManager could not write " + out + ": " + ioe);
+            if (avi != null) {
+                try {
+                    avi.close();
+                } catch (IOException ignored) {
+                }
+            }
+            return -1;
+        } finally {
+            exportPool.shutdownNow();
+            restore();
+        }
+        long ms = System.currentTimeMillis() - t0;
+        System.out.println("ImageSavingManager wrote " + written + " frames in " + ms + " ms"
+                + (this.cancelled ? ", cancelled" : ""));
+        return written;
     }
+
+    /**
+     * Writes an image that is already composed, e.g. the one ImageWindow shows, as a JPEG at full quality.
+     * The encoding is done on a thread of its own, saves are written in the order they are made
+     */
+    public void save(final BufferedImage image, final File f) {
+        getPool().submit(() -> {
+            try {
+                write(encode(image, JPEG, 1f), f);
+                System.out.println("file: " + f + " written");
+            } catch (IOException ioe) {
+                System.out.println("ImageSavingManager could not write " + f + ": " + ioe);
+            }
+        });
+    }
+
+    private int drain(Future<byte[]> future, MjpegAviWriter avi) throws IOException {
+        try {
+            byte[] bytes = future.get();
+            if (avi != null && bytes != null) avi.addFrame(bytes);
+            return 1;
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            this.cancelled = true;
+        } catch (ExecutionException ee) {
+            Throwable t = ee.getCause();
+            if (t instanceof IOException) throw (IOException)t;
+            System.out.println("ImageSavingManager, frame failed: " + t);
+        }
+        return 0;
+    }
+
+    /**
+     * @param plane Integer.MAX_VALUE for the maximum intensity projection
+     * @param layer the export's cache of centroid and annotation geometry
+     * @return the image in the export's color channels and what to paint over it, null if there is no image
+     */
+    private ExportFrame readFrame(final int time, final int plane, final OverlayLayer layer) {
+        if (GraphicsEnvironment.isHeadless() || SwingUtilities.isEventDispatchThread()) {
+            return readFrameNow(time, plane, layer);
+        }
+        final ExportFrame[] ip = new ExportFrame[1];
+        try {
+            SwingUtilities.invokeAndWait(() -> ip[0] = readFrameNow(time, plane, layer));
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            this.cancelled = true;
+        } catch (InvocationTargetException ite) {
+            System.out.println("ImageSavingManager, reading time " + time + " failed: " + ite.getCause());
+        }
+        return ip[0];
+    }
+
+    private ExportFrame readFrameNow(int time, int plane, OverlayLayer layer) {
+        // making an image renames the current one, the window title comes from it
+        String name = this.imageManager.getCurrentImageName();
+        int currentPlane = this.imageManager.getCurrImagePlane();
+        ImagePlus ip;
+        if (plane == Integer.MAX_VALUE) {
+            ip = this.imageManager.makeMaxProjection(time);
+        } else {
+            // 16bit stacks are read at the current plane
+            this.imageManager.setCurrImagePlane(plane);
+            ip = this.imageManager.makeImage(time, plane, false);
+            this.imageManager.setCurrImagePlane(currentPlane);
+        }
+        this.imageManager.setCurrImageName(name);
+        if (ip == null) return null;
+        ExportFrame frame = new ExportFrame();
+        frame.image = this.imageManager.extractColorChannelFromImagePlus(ip, this.color);
+        if (this.imageWindow != null) {
+            boolean mip = plane == Integer.MAX_VALUE;
+            frame.painting = this.imageWindow.makePainting(layer, time, mip ? currentPlane : plane, mip);
+        }
+        return frame;
+    }
+
+    // the conversions of the last frame read are now the current ones, make those of the image shown again,
+    // at the time and plane shown now, the user may have moved on while the export ran
+    private void restore() {
+        Runnable r = () -> {
+            if (this.imageManager.isCurrImageMIP()) return;
+            String name = this.imageManager.getCurrentImageName();
+            this.imageManager.makeImage(this.imageManager.getCurrImageTime(), this.imageManager.getCurrImagePlane());
+            this.imageManager.setCurrImageName(name);
+        };
+        if (GraphicsEnvironment.isHeadless() || SwingUtilities.isEventDispatchThread()) r.run();
+        else SwingUtilities.invokeLater(r);
+    }
+
+    // a copy of the frame with the centroids and annotations painted over it
+    private static BufferedImage compose(ImageProcessor iproc, OverlayLayer.Painting painting) {
+        ImageProcessor rgb = iproc instanceof ColorProcessor ? iproc : iproc.convertToRGB();
+        BufferedImage image = BufferedImageCreator.create((ColorProcessor)rgb);
+        if (painting != null) {
+            Graphics2D g = image.createGraphics();
+            painting.paint(g);
+            g.dispose();
+        }
+        return image;
+    }
+
+    private static String frameName(String prefix, int time, int plane, String format) {
+        String s = prefix + "-t" + EUtils.makePaddedInt(time);
+        if (plane == Integer.MAX_VALUE) s += "-mip";
+        else s += "-p" + EUtils.makePaddedInt(plane, 2);
+        return s + (format.equals(JPEG) ? ".jpg" : ".png");
+    }
+
+    /**
+     * @return the image as a PNG or JPEG file
+     */
+    static byte[] encode(BufferedImage image, String format, float quality) throws IOException {
+        ImageWriter writer = format.equals(PNG) ? PNG_WRITER.get() : JPEG_WRITER.get();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(image.getWidth() * image.getHeight());
+        ImageOutputStream output = new MemoryCacheImageOutputStream(bytes);
+        try {
+            ImageWriteParam iwp = writer.getDefaultWriteParam();
+            if (format.equals(JPEG)) {
+                iwp.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+                iwp.setCompressionQuality(quality);
+            }
+            writer.setOutput(output);
+            writer.write(null, new IIOImage(image, null, null), iwp);
+        } finally {
+            writer.reset();
+            output.close();
+        }
+        return bytes.toByteArray();
+    }
+
+    private static void write(byte[] bytes, File f) throws IOException {
+        FileOutputStream fos = new FileOutputStream(f);
+        try {
+            fos.write(bytes);
+        } finally {
+            fos.close();
+        }
+    }
+
+    private synchronized ExecutorService getPool() {
+        if (this.pool == null) this.pool = Executors.newSingleThreadExecutor(daemonFactory("ImageSavingManager save"));
+        return this.pool;
+    }
+
+    private static ThreadFactory daemonFactory(final String name) {
+        return new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, name);
+                t.setDaemon(true);
+                return t;
+            }
+        };
+    }
+
+    // a frame as read on the event dispatch thread, handed to the pool
+    private static class ExportFrame {
+        ImagePlus image;
+        OverlayLayer.Painting painting;
+    }
+
+    // an ImageWriter is not thread safe, each thread keeps its own instead of making one per image
+    private static final ThreadLocal<ImageWriter> PNG_WRITER = ThreadLocal.withInitial(
+            () -> ImageIO.getImageWritersByFormatName("png").next());
+    private static final ThreadLocal<ImageWriter> JPEG_WRITER = ThreadLocal.withInitial(
+            () -> ImageIO.getImageWritersByFormatName("jpeg").next());
+
+    public static final String PNG = "png";
+    public static final String JPEG = "jpeg";
+    public static final String AVI = "avi";
 }
@@ -40,7 +40,7 @@ public class ImageWindowDelegate {
         this.nucleiMgr = nucleiMgr;
 
         this.imageAnnotationManager = new ImageAnnotationManager(this.imageWindow, this.imageManager, this.nucleiMgr);
-        this.imageSavingManager = new ImageSavingManager();
+        this.imageSavingManager = this.imageWindow.getImageSavingManager();
     }
 
     ///////////////////////// MOUSE HANDLING //////////////////////////////////////
@@ -142,6 +142,7 @@ public class ImageWindowDelegate {
 
 
     //////////////////////////////////// SAVING HANDLING ////////////////////////////////////////
+    public ImageSavingManager getImageSavingManager() { return this.imageSavingManager; }
 
     /////////////////////////////////// END SAVING HANDLING ////////////////////////////////////
 }
@@ -0,0 +1,397 @@
+package org.rhwlab.image.management;
+
+import ij.ImagePlus;
+import ij.ImageStack;
+import ij.io.Opener;
+import ij.plugin.ZProjector;
+import ij.process.ByteProcessor;
+import ij.process.ImageProcessor;
+import ij.process.ShortProcessor;
+import org.rhwlab.image.ParsingLogic.ImageNameLogic;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * MaxProjectionCache.java
+ * Date created: 10/2026
+ *
+ * Maximum intensity projections of every time point, one per color channel, kept before the conversion to RGB.
+ * Changing the contrast in MIP mode then only converts the cached projection again, and scrubbing through time
+ * reads one projection instead of every plane.
+ *
+ * Projections are held in memory (least recently used first out) and written, deflated, to a .mip directory
+ * next to the image series, or under ~/.acetree/mip when that directory is not writable. A file on disk is
+ * only used while the lengths and modification times of its source images are unchanged.
+ *
+ * Once the first projection is asked for, the others are made in the background, nearest time points first;
+ * this is done once per series, until shutdown() when the series is closed.
+ */
+public class MaxProjectionCache {
+
+    private ImageConfig imageConfig;
+    private LinkedHashMap<Integer, ImageProcessor[]> projections;
+    private long budget;
+    private long bytes;
+    private ThreadPoolExecutor batchPool;
+    private volatile int batchId;
+    private boolean precomputed;
+
+    public MaxProjectionCache(ImageConfig imageConfig) {
+        this.imageConfig = imageConfig;
+        this.projections = new LinkedHashMap<Integer, ImageProcessor[]>(64, 0.75f, true);
+        this.budget = Runtime.getRuntime().maxMemory() / BUDGET_FRACTION;
+        this.bytes = 0;
+    }
+
+    /**
+     * @param time
+     * @return the projection of each color channel at the time point, null where a channel is not in the series.
+     * These are copies that the MIP conversions may modify. Null if no image of the time point could be read
+     */
+    public ImagePlus[] getProjections(int time) {
+        ImageProcessor[] procs;
+        synchronized (this) {
+            procs = this.projections.get(time);
+        }
+        if (procs == null) {
+            procs = load(time);
+            if (procs == null) return null;
+        }
+        ImagePlus[] ips = new ImagePlus[procs.length];
+        for (int i = 0; i < procs.length; i++) {
+            if (procs[i] == null) continue;
+            ImageProcessor dup = procs[i].duplicate();
+            dup.resetMinAndMax();
+            ips[i] = new ImagePlus("MAX_" + time, dup);
+        }
+        return ips;
+    }
+
+    /**
+     * @return the image file(s) of each channel at the time point, the planes of an 8bit series in order.
+     * An empty string stands for a channel that is not in the series
+     */
+    public String[] getSources(int time) {
+        if (this.imageConfig.getUseStack() == 0) {
+            String[] planes = new String[this.imageConfig.getPlaneEnd()];
+            for (int i = 0; i < planes.length; i++) {
+                planes[i] = ImageNameLogic.appendTimeAndPlaneTo8BittifPrefix(this.imageConfig.getImagePrefixes()[0], time, i + 1);
+            }
+            return planes;
+        }
+        if (this.imageConfig.getNumChannels() == -1 || this.imageConfig.getNumChannels() == 1) {
+            return new String[]{ImageNameLogic.appendTimeToSingle16BitTIFPrefix(this.imageConfig.getImagePrefixes()[0], time)};
+        }
+        return ImageNameLogic.appendTimeToMultiple16BitTifPrefixes(this.imageConfig.getImagePrefixes(), time);
+    }
+
+    /**
+     * Starts making the projections of all time points in the background, nearest to the given one first.
+     * The projections are the same for every contrast and channel setting, so this is done once; later calls,
+     * such as the one of every redraw in MIP mode, do nothing
+     */
+    public synchronized void precompute(final int fromTime) {
+        if (this.precomputed) return;
+        this.precomputed = true;
+        final int id = ++this.batchId;
+        getBatchPool().submit(new Runnable() {
+            @Override
+            public void run() {
+                int first = imageConfig.getStartingIndex();
+                int last = imageConfig.getEndingIndex();
+                for (int d = 0; fromTime - d >= first || fromTime + d <= last; d++) {
+                    if (id != batchId) return;
+                    if (fromTime + d <= last) prepare(fromTime + d);
+                    if (d > 0 && fromTime - d >= first) prepare(fromTime - d);
+                }
+            }
+        });
+    }
+
+    public synchronized void clear() {
+        this.projections.clear();
+        this.bytes = 0;
+    }
+
+    /**
+     * Stops the batch after the projection it is making; it is not interrupted, as that would close the file
+     * channels of the TiffPlaneReaders in use
+     */
+    public void shutdown() {
+        ThreadPoolExecutor pool;
+        synchronized (this) {
+            pool = this.batchPool;
+            this.batchPool = null;
+            this.batchId++;
+            this.precomputed = true;
+        }
+        if (pool != null) pool.shutdown();
+    }
+
+    // makes sure the projection is on disk, without holding it in memory
+    private void prepare(int time) {
+        synchronized (this) {
+            if (this.projections.containsKey(time)) return;
+        }
+        String[] sources = getSources(time);
+        File f = getCacheFile(sources);
+        if (f == null) return;
+        long signature = makeSignature(sources);
+        if (isCurrent(f, signature)) return;
+        ImageProcessor[] procs = project(sources);
+        if (procs != null) writeProjections(f, signature, procs);
+    }
+
+    private ImageProcessor[] load(int time) {
+        String[] sources = getSources(time);
+        File f = getCacheFile(sources);
+        if (f == null) return null;
+        long signature = makeSignature(sources);
+        ImageProcessor[] procs = f.exists() ? readProjections(f, signature) : null;
+        if (procs == null) {
+            procs = project(sources);
+            if (procs == null) return null;
+            writeProjections(f, signature, procs);
+        }
+        put(time, procs);
+        return procs;
+    }
+
+    private ImageProcessor[] project(String[] sources) {
+        if (this.imageConfig.getUseStack() == 0) {
+            // the planes of an 8bit series are separate files
+            ImageStack is = null;
+            for (String s : sources) {
+                if (!new File(s).exists()) continue;
+                ImagePlus ip = new Opener().openImage(s);
+                if (ip == null) continue;
+                if (is == null) is = new ImageStack(ip.getWidth(), ip.getHeight());
+                if (ip.getWidth() == is.getWidth() && ip.getHeight() == is.getHeight()) is.addSlice(s, ip.getProcessor());
+            }
+            if (is == null) return null;
+            return new ImageProcessor[]{projectStack(new ImagePlus("", is))};
+        }
+
+        ImageProcessor[] procs = new ImageProcessor[sources.length];
+        boolean any = false;
+        for (int c = 0; c < sources.length; c++) {
+            if (sources[c].isEmpty() || !new File(sources[c]).exists()) continue;
+            procs[c] = projectStack(sources[c]);
+            any |= procs[c] != null;
+        }
+        return any ? procs : null;
+    }
+
+    // the max over the planes of a 16bit stack, read one plane at a time when the TIFF layout allows it
+    private static ImageProcessor projectStack(String path) {
+        TiffPlaneReader reader = TiffPlaneReader.get(path);
+        if (reader != null) {
+            try {
+                int[] dims = new int[2];
+                short[] plane = reader.readPlane(1, null, dims);
+                if (plane != null) {
+                    short[] max = plane.clone();
+                    for (int p = 2; p <= reader.getPlaneCount() && plane != null; p++) {
+                        plane = reader.readPlane(p, plane, dims);
+                        if (plane == null || plane.length != max.length) break;
+                        for (int i = 0; i < max.length; i++) {
+                            if ((plane[i] & 0xFFFF) > (max[i] & 0xFFFF)) max[i] = plane[i];
+                        }
+                    }
+                    if (plane != null) return new ShortProcessor(dims[0], dims[1], max, null);
+                }
+            } catch (IOException ioe) {
+                System.out.println("MaxProjectionCache could not read " + path + ": " + ioe);
+            }
+        }
+
+        ImagePlus stack = new Opener().openImage(path);
+        if (stack == null) return null;
+        return projectStack(stack);
+    }
+
+    private static ImageProcessor projectStack(ImagePlus stack) {
+        ZProjector zproj = new ZProjector();
+        zproj.setMethod(ZProjector.MAX_METHOD);
+        zproj.setImage(stack);
+        zproj.doProjection();
+        return zproj.getProjection().getProcessor();
+    }
+
+    private synchronized void put(int time, ImageProcessor[] procs) {
+        ImageProcessor[] old = this.projections.put(time, procs);
+        if (old != null) this.bytes -= sizeOf(old);
+        this.bytes += sizeOf(procs);
+        Iterator<Map.Entry<Integer, ImageProcessor[]>> it = this.projections.entrySet().iterator();
+        while (this.bytes > this.budget && it.hasNext()) {
+            this.bytes -= sizeOf(it.next().getValue());
+            it.remove();
+        }
+    }
+
+    private static long sizeOf(ImageProcessor[] procs) {
+        long n = 0;
+        for (ImageProcessor p : procs) {
+            if (p != null) n += (long)p.getPixelCount() * (p instanceof ShortProcessor ? 2 : 1);
+        }
+        return n;
+    }
+
+    /////////////// projections kept on disk ///////////////
+
+    private static File getCacheFile(String[] sources) {
+        String first = null;
+        for (String s : sources) {
+            if (s != null && !s.isEmpty()) {
+                first = s;
+                break;
+            }
+        }
+        if (first == null) return null;
+        File source = new File(first).getAbsoluteFile();
+        String name = source.getName() + ".mip";
+        File dir = new File(source.getParentFile(), MIP_DIR);
+        if (dir.isDirectory() ? dir.canWrite() : (source.getParentFile().canWrite() && dir.mkdir())) {
+            return new File(dir, name);
+        }
+        dir = new File(System.getProperty("user.home") + File.separator + ".acetree" + File.separator + "mip",
+                Integer.toHexString(source.getParent().hashCode()));
+        dir.mkdirs();
+        return new File(dir, name);
+    }
+
+    private static long makeSignature(String[] sources) {
+        long signature = 17;
+        for (String s : sources) {
+            File f = new File(s);
+            signature = signature * 31 + (s.isEmpty() ? 0 : f.length());
+            signature = signature * 31 + (s.isEmpty() ? 0 : f.lastModified());
+        }
+        return signature;
+    }
+
+    private static boolean isCurrent(File f, long signature) {
+        if (!f.exists()) return false;
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new InflaterInputStream(new FileInputStream(f)));
+            return in.readInt() == MAGIC && in.readLong() == signature;
+        } catch (IOException ioe) {
+            return false;
+        } finally {
+            if (in != null) {
+                try { in.close(); } catch (IOException ioe) { }
+            }
+        }
+    }
+
+    private static ImageProcessor[] readProjections(File f, long signature) {
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new InflaterInputStream(new FileInputStream(f))));
+            if (in.readInt() != MAGIC || in.readLong() != signature) return null;
+            ImageProcessor[] procs = new ImageProcessor[in.readInt()];
+            for (int c = 0; c < procs.length; c++) {
+                int depth = in.readInt();
+                if (depth == 0) continue;
+                int width = in.readInt();
+                int height = in.readInt();
+                byte[] raw = new byte[width * height * depth];
+                in.readFully(raw);
+                if (depth == 1) {
+                    procs[c] = new ByteProcessor(width, height, raw, null);
+                } else {
+                    short[] pixels = new short[width * height];
+                    ByteBuffer.wrap(raw).order(ByteOrder.BIG_ENDIAN).asShortBuffer().get(pixels);
+                    procs[c] = new ShortProcessor(width, height, pixels, null);
+                }
+            }
+            return procs;
+        } catch (IOException ioe) {
+            return null;
+        } finally {
+            if (in != null) {
+                try { in.close(); } catch (IOException ioe) { }
+            }
+        }
+    }
+
+    private static void writeProjections(File f, long signature, ImageProcessor[] procs) {
+        File tmp = new File(f.getPath() + "." + Thread.currentThread().getId() + ".tmp");
+        try {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                    new DeflaterOutputStream(new FileOutputStream(tmp), new Deflater(Deflater.BEST_SPEED))));
+            try {
+                out.writeInt(MAGIC);
+                out.writeLong(signature);
+                out.writeInt(procs.length);
+                for (ImageProcessor p : procs) {
+                    if (p == null) {
+                        out.writeInt(0);
+                        continue;
+                    }
+                    boolean shorts = p instanceof ShortProcessor;
+                    out.writeInt(shorts ? 2 : 1);
+                    out.writeInt(p.getWidth());
+                    out.writeInt(p.getHeight());
+                    if (shorts) {
+                        short[] pixels = (short[])p.getPixels();
+                        byte[] raw = new byte[pixels.length * 2];
+                        ByteBuffer.wrap(raw).order(ByteOrder.BIG_ENDIAN).asShortBuffer().put(pixels);
+                        out.write(raw);
+                    } else {
+                        out.write((byte[])p.getPixels());
+                    }
+                }
+            } finally {
+                out.close();
+            }
+            f.delete();
+            if (!tmp.renameTo(f)) tmp.delete();
+        } catch (IOException ioe) {
+            // the projection is still served from memory
+            System.out.println("MaxProjectionCache could not write " + f + ": " + ioe);
+            tmp.delete();
+        }
+    }
+
+    private synchronized ThreadPoolExecutor getBatchPool() {
+        if (this.batchPool == null) {
+            this.batchPool = new ThreadPoolExecutor(1, 1, 30, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "MaxProjectionCache batch");
+                    t.setDaemon(true);
+                    t.setPriority(Thread.MIN_PRIORITY);
+                    return t;
+                }
+            });
+            this.batchPool.allowCoreThreadTimeOut(true);
+        }
+        return this.batchPool;
+    }
+
+    private static final int BUDGET_FRACTION = 8;
+    private static final int MAGIC = 0x4d495031;
+    private static final String MIP_DIR = ".mip";
+}
@@ -0,0 +1,205 @@
+package org.rhwlab.image.management;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+/**
+ * MjpegAviWriter.java
+ * Date created: 10/2026
+ *
+ * Writes a movie as an AVI file with one Motion JPEG video stream, which common players and ImageJ open.
+ * Frames are already encoded JPEG images and are appended one by one, so a movie of any length is written
+ * without holding its frames in memory. The headers are written with the counts left at zero and filled in,
+ * together with the index, by close().
+ */
+public class MjpegAviWriter {
+
+    private RandomAccessFile file;
+    private int width;
+    private int height;
+    private int frames;
+    private int maxFrameBytes;
+    private long moviStart;
+    private ByteArrayOutputStream index;
+
+    /**
+     * @param f the movie, replaced if it exists
+     * @param width width of every frame
+     * @param height height of every frame
+     * @param framesPerSecond playback rate
+     */
+    public MjpegAviWriter(File f, int width, int height, int framesPerSecond) throws IOException {
+        if (f.exists()) f.delete();
+        this.file = new RandomAccessFile(f, "rw");
+        this.width = width;
+        this.height = height;
+        this.index = new ByteArrayOutputStream();
+
+        fourcc("RIFF");
+        int32(0); // file size - 8, set by close()
+        fourcc("AVI ");
+
+        fourcc("LIST");
+        int32(HDRL_SIZE);
+        fourcc("hdrl");
+
+        fourcc("avih");
+        int32(56);
+        int32(1000000 / Math.max(1, framesPerSecond)); // microseconds per frame
+        int32(0); // max bytes per second
+        int32(0); // padding granularity
+        int32(AVIF_HASINDEX);
+        int32(0); // total frames, set by close()
+        int32(0); // initial frames
+        int32(1); // streams
+        int32(0); // suggested buffer size, set by close()
+        int32(width);
+        int32(height);
+        int32(0);
+        int32(0);
+        int32(0);
+        int32(0);
+
+        fourcc("LIST");
+        int32(STRL_SIZE);
+        fourcc("strl");
+
+        fourcc("strh");
+        int32(56);
+        fourcc("vids");
+        fourcc("MJPG");
+        int32(0); // flags
+        int16(0); // priority
+        int16(0); // language
+        int32(0); // initial frames
+        int32(1); // scale
+        int32(Math.max(1, framesPerSecond)); // rate, frames per second = rate / scale
+        int32(0); // start
+        int32(0); // length in frames, set by close()
+        int32(0); // suggested buffer size, set by close()
+        int32(-1); // quality
+        int32(0); // sample size
+        int16(0);
+        int16(0);
+        int16(width);
+        int16(height);
+
+        fourcc("strf");
+        int32(40);
+        int32(40); // BITMAPINFOHEADER size
+        int32(width);
+        int32(height);
+        int16(1); // planes
+        int16(24); // bits per pixel
+        fourcc("MJPG");
+        int32(width * height * 3);
+        int32(0);
+        int32(0);
+        int32(0);
+        int32(0);
+
+        fourcc("LIST");
+        int32(0); // movi size, set by close()
+        this.moviStart = this.file.getFilePointer();
+        fourcc("movi");
+    }
+
+    public int getWidth() { return this.width; }
+    public int getHeight() { return this.height; }
+    public int getFrames() { return this.frames; }
+
+    /**
+     * Appends a frame
+     * @param jpeg a JPEG image of the size given to the constructor
+     * @throws IOException also when the frame would take the file past the 2 GB an AVI file can hold, the frame is
+     * then not written and close() still makes a movie of the frames before
+     */
+    public void addFrame(byte[] jpeg) throws IOException {
+        long offset = this.file.getFilePointer() - this.moviStart;
+        // the RIFF size counts all but the first 8 bytes, close() adds the index with an entry for this frame
+        long size = this.file.getFilePointer() + 8 + jpeg.length + (jpeg.length & 1) + 8 + this.index.size() + 16 - 8;
+        if (size > MAX_RIFF_SIZE) {
+            throw new IOException("the movie would pass the 2 GB of an AVI file after " + this.frames + " frames");
+        }
+        fourcc("00dc");
+        int32(jpeg.length);
+        this.file.write(jpeg);
+        if ((jpeg.length & 1) != 0) this.file.write(0);
+
+        writeIndex("00dc");
+        writeIndex(AVIIF_KEYFRAME);
+        writeIndex((int)offset);
+        writeIndex(jpeg.length);
+
+        this.frames++;
+        this.maxFrameBytes = Math.max(this.maxFrameBytes, jpeg.length);
+    }
+
+    /**
+     * Writes the index and the counts of the headers and closes the file
+     */
+    public void close() throws IOException {
+        try {
+            long moviEnd = this.file.getFilePointer();
+            fourcc("idx1");
+            int32(this.index.size());
+            this.file.write(this.index.toByteArray());
+            long end = this.file.getFilePointer();
+
+            this.file.seek(4);
+            int32((int)(end - 8));
+            this.file.seek(AVIH_FRAMES);
+            int32(this.frames);
+            this.file.seek(AVIH_BUFFER);
+            int32(this.maxFrameBytes);
+            this.file.seek(STRH_LENGTH);
+            int32(this.frames);
+            int32(this.maxFrameBytes);
+            this.file.seek(this.moviStart - 4);
+            int32((int)(moviEnd - this.moviStart));
+        } finally {
+            this.file.close();
+        }
+    }
+
+    private void fourcc(String s) throws IOException {
+        for (int i = 0; i < 4; i++) this.file.write(s.charAt(i));
+    }
+
+    // little endian
+    private void int32(int v) throws IOException {
+        this.file.write(v);
+        this.file.write(v >>> 8);
+        this.file.write(v >>> 16);
+        this.file.write(v >>> 24);
+    }
+
+    private void int16(int v) throws IOException {
+        this.file.write(v);
+        this.file.write(v >>> 8);
+    }
+
+    private void writeIndex(String s) {
+        for (int i = 0; i < 4; i++) this.index.write(s.charAt(i));
+    }
+
+    private void writeIndex(int v) {
+        this.index.write(v);
+        this.index.write(v >>> 8);
+        this.index.write(v >>> 16);
+        this.index.write(v >>> 24);
+    }
+
+    private static final int AVIF_HASINDEX = 0x10;
+    // the sizes and offsets are written as signed 32 bit integers
+    private static final long MAX_RIFF_SIZE = Integer.MAX_VALUE;
+    private static final int AVIIF_KEYFRAME = 0x10;
+    // sizes of the header lists and offsets of the counts close() fills in
+    private static final int STRL_SIZE = 4 + 8 + 56 + 8 + 40;
+    private static final int HDRL_SIZE = 4 + 8 + 56 + 8 + STRL_SIZE;
+    private static final int AVIH_FRAMES = 12 + 12 + 8 + 16;
+    private static final int AVIH_BUFFER = AVIH_FRAMES + 12;
+    private static final int STRH_LENGTH = 12 + 12 + 64 + 12 + 8 + 32;
+}
@@ -0,0 +1,491 @@
+package org.rhwlab.image.management;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * TiffPlaneReader.java
+ * Date created: 10/2026
+ *
+ * Random access reader for the planes of a 16bit grayscale multi-page TIFF.
+ *
+ * The offsets of all image file directories (IFDs) are collected once per file, so reading plane n does not
+ * walk the IFD chain from the start as ImageJ's Opener does. The index is also written to a small file under
+ * ~/.acetree/tiffindex so that opening the same stack in a later session (typically on network storage,
+ * where each IFD visited is a separate read) skips the walk entirely.
+ *
+ * The file is memory mapped and a plane's strips are decoded straight into a short[]. Supported encodings are
+ * uncompressed, PackBits, LZW and Deflate, with or without horizontal differencing. Anything else (tiles,
+ * several samples per pixel, signed or float data, BigTIFF) makes get() or readPlane() return null and the
+ * caller falls back to the Opener.
+ */
+public class TiffPlaneReader {
+
+    private File file;
+    private long length;
+    private long lastModified;
+    private ByteOrder order;
+    private long[] ifdOffsets;
+    private MappedByteBuffer mapped;
+    private FileChannel channel;
+
+    // one reader per file, bounded so that the mappings of an old series are let go
+    private static final LinkedHashMap<String, TiffPlaneReader> readers = new LinkedHashMap<String, TiffPlaneReader>(16, 0.75f, true);
+
+    private TiffPlaneReader(File file) {
+        this.file = file;
+        this.length = file.length();
+        this.lastModified = file.lastModified();
+    }
+
+    /**
+     * @param path a TIFF file
+     * @return the reader for the file, or null if it is not a TIFF this class can index
+     */
+    public static TiffPlaneReader get(String path) {
+        File f = new File(path);
+        synchronized (readers) {
+            TiffPlaneReader r = readers.get(path);
+            if (r != null && r.length == f.length() && r.lastModified == f.lastModified()) return r;
+            if (r != null) {
+                readers.remove(path);
+                r.close();
+            }
+        }
+        TiffPlaneReader r = new TiffPlaneReader(f);
+        try {
+            if (!r.open()) {
+                // open() may have opened the file before finding it cannot be read directly
+                r.close();
+                return null;
+            }
+        } catch (IOException | RuntimeException e) {
+            // a damaged IFD chain runs off the end of the mapping
+            System.out.println("TiffPlaneReader could not index " + path + ": " + e);
+            r.close();
+            return null;
+        }
+        synchronized (readers) {
+            // two prefetch workers can miss on the same file, the first reader in is the one kept
+            TiffPlaneReader other = readers.get(path);
+            if (other != null && other.length == r.length && other.lastModified == r.lastModified) {
+                r.close();
+                return other;
+            }
+            if (other != null) other.close();
+            readers.put(path, r);
+            Iterator<Map.Entry<String, TiffPlaneReader>> it = readers.entrySet().iterator();
+            while (readers.size() > MAX_READERS && it.hasNext()) {
+                it.next().getValue().close();
+                it.remove();
+            }
+        }
+        return r;
+    }
+
+    public int getPlaneCount() { return this.ifdOffsets.length; }
+
+    /**
+     * Decodes one plane
+     *
+     * @param plane 1-based plane
+     * @param dest array to decode into, reused when it has the right size, may be null
+     * @param dims receives the width and height of the plane
+     * @return the pixels, or null if the plane is out of range or uses an unsupported layout
+     * @throws IOException if the file cannot be read or is truncated or damaged
+     */
+    public short[] readPlane(int plane, short[] dest, int[] dims) throws IOException {
+        if (plane < 1 || plane > this.ifdOffsets.length) return null;
+        try {
+            return decodePlane(plane, dest, dims);
+        } catch (RuntimeException re) {
+            // offsets or counts that point past the data end up as buffer exceptions, the caller expects an IOException
+            throw new IOException("damaged plane " + plane + " of " + this.file + ": " + re);
+        }
+    }
+
+    private short[] decodePlane(int plane, short[] dest, int[] dims) throws IOException {
+        ByteBuffer bb = buffer();
+        Ifd ifd = readIfd(bb, this.ifdOffsets[plane - 1]);
+        if (ifd == null) return null;
+        int n = ifd.width * ifd.height;
+        if (dest == null || dest.length != n) dest = new short[n];
+        dims[0] = ifd.width;
+        dims[1] = ifd.height;
+
+        int row = 0;
+        for (int s = 0; s < ifd.stripOffsets.length && row < ifd.height; s++) {
+            int rows = Math.min(ifd.rowsPerStrip, ifd.height - row);
+            int count = rows * ifd.width;
+            int start = row * ifd.width;
+            long offset = ifd.stripOffsets[s];
+            int byteCount = (int)ifd.stripByteCounts[s];
+            if (offset + byteCount > this.length) throw new IOException("strip beyond end of file");
+            if (ifd.compression == NONE) {
+                ByteBuffer strip = slice(bb, offset, count * 2);
+                strip.asShortBuffer().get(dest, start, count);
+            } else {
+                byte[] raw = new byte[byteCount];
+                ByteBuffer strip = slice(bb, offset, byteCount);
+                strip.get(raw);
+                byte[] bytes = new byte[count * 2];
+                int k;
+                if (ifd.compression == PACKBITS) {
+                    k = unpackBits(raw, bytes);
+                } else if (ifd.compression == LZW) {
+                    k = lzw(raw, bytes);
+                } else {
+                    k = inflate(raw, bytes);
+                }
+                if (k < bytes.length) throw new IOException("short strip " + s + " in plane " + plane);
+                ByteBuffer.wrap(bytes).order(this.order).asShortBuffer().get(dest, start, count);
+            }
+            if (ifd.predictor == 2) {
+                for (int r = 0; r < rows; r++) {
+                    int p = start + r * ifd.width;
+                    for (int x = 1; x < ifd.width; x++) dest[p + x] += dest[p + x - 1];
+                }
+            }
+            row += rows;
+        }
+        return dest;
+    }
+
+    private boolean open() throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(this.file, "r");
+        this.channel = raf.getChannel();
+        if (this.length < 8) return false;
+        byte[] header = new byte[8];
+        raf.readFully(header);
+        if (header[0] == 'I' && header[1] == 'I') {
+            this.order = ByteOrder.LITTLE_ENDIAN;
+        } else if (header[0] == 'M' && header[1] == 'M') {
+            this.order = ByteOrder.BIG_ENDIAN;
+        } else {
+            return false;
+        }
+        ByteBuffer hb = ByteBuffer.wrap(header).order(this.order);
+        if (hb.getShort(2) != 42) return false; // BigTIFF and others are left to the Opener
+
+        if (this.length <= Integer.MAX_VALUE) {
+            this.mapped = this.channel.map(FileChannel.MapMode.READ_ONLY, 0, this.length);
+        }
+
+        this.ifdOffsets = readIndex();
+        if (this.ifdOffsets == null) {
+            this.ifdOffsets = walkIfds(hb.getInt(4) & 0xFFFFFFFFL);
+            writeIndex();
+        }
+        return this.ifdOffsets.length > 0;
+    }
+
+    private long[] walkIfds(long first) throws IOException {
+        long[] offsets = new long[64];
+        int count = 0;
+        long offset = first;
+        ByteBuffer small = ByteBuffer.allocate(4).order(this.order);
+        while (offset != 0 && offset + 2 <= this.length) {
+            if (count == offsets.length) {
+                long[] grown = new long[count * 2];
+                System.arraycopy(offsets, 0, grown, 0, count);
+                offsets = grown;
+            }
+            offsets[count++] = offset;
+            int entries = readShort(small, offset) & 0xFFFF;
+            long next = readInt(small, offset + 2 + 12L * entries) & 0xFFFFFFFFL;
+            if (next != 0 && next <= offset) break; // a loop in the chain
+            offset = next;
+        }
+        long[] result = new long[count];
+        System.arraycopy(offsets, 0, result, 0, count);
+        return result;
+    }
+
+    private int readShort(ByteBuffer small, long pos) throws IOException {
+        if (this.mapped != null) return this.mapped.duplicate().order(this.order).getShort((int)pos);
+        small.clear();
+        small.limit(2);
+        this.channel.read(small, pos);
+        return small.getShort(0);
+    }
+
+    private int readInt(ByteBuffer small, long pos) throws IOException {
+        if (pos + 4 > this.length) return 0;
+        if (this.mapped != null) return this.mapped.duplicate().order(this.order).getInt((int)pos);
+        small.clear();
+        this.channel.read(small, pos);
+        return small.getInt(0);
+    }
+
+    private ByteBuffer buffer() throws IOException {
+        if (this.mapped != null) return this.mapped.duplicate().order(this.order);
+        return null;
+    }
+
+    private ByteBuffer slice(ByteBuffer bb, long offset, int count) throws IOException {
+        if (offset < 0 || count < 0 || offset + count > this.length) {
+            throw new IOException(count + " bytes at " + offset + " are beyond the end of " + this.file);
+        }
+        if (bb != null) {
+            ByteBuffer d = bb.duplicate();
+            d.position((int)offset);
+            d.limit((int)offset + count);
+            return d.slice().order(this.order);
+        }
+        // too large to map at once, map the part that is needed
+        return this.channel.map(FileChannel.MapMode.READ_ONLY, offset, count).order(this.order);
+    }
+
+    private Ifd readIfd(ByteBuffer bb, long offset) throws IOException {
+        ByteBuffer b = bb;
+        long base = 0;
+        if (b == null) {
+            b = slice(null, offset, (int)Math.min(this.length - offset, 2 + 12 * 4096 + 4));
+            base = offset;
+        }
+        int entries = b.getShort((int)(offset - base)) & 0xFFFF;
+        Ifd ifd = new Ifd();
+        int bits = 0, samples = 1, format = 1, planar = 1;
+        long stripOffsetsPos = 0, stripCountsPos = 0;
+        int stripOffsetsType = 0, stripCountsType = 0, strips = 0;
+        for (int i = 0; i < entries; i++) {
+            int e = (int)(offset - base) + 2 + 12 * i;
+            int tag = b.getShort(e) & 0xFFFF;
+            int type = b.getShort(e + 2) & 0xFFFF;
+            int count = b.getInt(e + 4);
+            int value = type == SHORT ? b.getShort(e + 8) & 0xFFFF : b.getInt(e + 8);
+            switch (tag) {
+                case 256: ifd.width = value; break;
+                case 257: ifd.height = value; break;
+                case 258: bits = value; if (count > 1) return null; break;
+                case 259: ifd.compression = value; break;
+                case 273:
+                    strips = count;
+                    stripOffsetsType = type;
+                    stripOffsetsPos = count * typeSize(type) <= 4 ? base + e + 8 : b.getInt(e + 8) & 0xFFFFFFFFL;
+                    break;
+                case 277: samples = value; break;
+                case 278: ifd.rowsPerStrip = value; break;
+                case 279:
+                    stripCountsType = type;
+                    stripCountsPos = count * typeSize(type) <= 4 ? base + e + 8 : b.getInt(e + 8) & 0xFFFFFFFFL;
+                    break;
+                case 284: planar = value; break;
+                case 317: ifd.predictor = value; break;
+                case 322: return null; // tiled
+                case 339: format = value; break;
+                default: break;
+            }
+        }
+        if (bits != 16 || samples != 1 || format != 1 || planar != 1) return null;
+        if (ifd.compression != NONE && ifd.compression != PACKBITS && ifd.compression != LZW
+                && ifd.compression != DEFLATE && ifd.compression != ADOBE_DEFLATE) return null;
+        if (ifd.width <= 0 || ifd.height <= 0 || strips == 0) return null;
+        if (ifd.rowsPerStrip <= 0 || ifd.rowsPerStrip > ifd.height) ifd.rowsPerStrip = ifd.height;
+        ifd.stripOffsets = readArray(stripOffsetsPos, stripOffsetsType, strips);
+        if (stripCountsPos == 0) {
+            if (ifd.compression != NONE || strips != 1) return null;
+            ifd.stripByteCounts = new long[]{2L * ifd.width * ifd.height};
+        } else {
+            ifd.stripByteCounts = readArray(stripCountsPos, stripCountsType, strips);
+        }
+        return ifd;
+    }
+
+    private long[] readArray(long pos, int type, int count) throws IOException {
+        int size = typeSize(type);
+        ByteBuffer b = slice(buffer(), pos, size * count);
+        long[] a = new long[count];
+        for (int i = 0; i < count; i++) {
+            a[i] = size == 2 ? b.getShort(2 * i) & 0xFFFF : b.getInt(4 * i) & 0xFFFFFFFFL;
+        }
+        return a;
+    }
+
+    private static int typeSize(int type) {
+        return type == SHORT ? 2 : 4;
+    }
+
+    /////////////// index kept on disk ///////////////
+
+    private File indexFile() {
+        String dir = System.getProperty("user.home") + File.separator + ".acetree" + File.separator + "tiffindex";
+        String name = Integer.toHexString(this.file.getAbsolutePath().hashCode()) + "-" + Long.toHexString(this.length) + ".idx";
+        return new File(dir, name);
+    }
+
+    private long[] readIndex() {
+        File f = indexFile();
+        if (!f.exists()) return null;
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(f)));
+            if (in.readInt() != INDEX_MAGIC) return null;
+            if (!in.readUTF().equals(this.file.getAbsolutePath())) return null;
+            if (in.readLong() != this.length || in.readLong() != this.lastModified) return null;
+            long[] offsets = new long[in.readInt()];
+            for (int i = 0; i < offsets.length; i++) offsets[i] = in.readLong();
+            return offsets;
+        } catch (IOException ioe) {
+            return null;
+        } finally {
+            if (in != null) {
+                try { in.close(); } catch (IOException ioe) { }
+            }
+        }
+    }
+
+    private void writeIndex() {
+        File f = indexFile();
+        File tmp = new File(f.getPath() + ".tmp");
+        try {
+            f.getParentFile().mkdirs();
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+            try {
+                out.writeInt(INDEX_MAGIC);
+                out.writeUTF(this.file.getAbsolutePath());
+                out.writeLong(this.length);
+                out.writeLong(this.lastModified);
+                out.writeInt(this.ifdOffsets.length);
+                for (long o : this.ifdOffsets) out.writeLong(o);
+            } finally {
+                out.close();
+            }
+            f.delete();
+            if (!tmp.renameTo(f)) tmp.delete();
+        } catch (IOException ioe) {
+            // the index is only a shortcut, the reader works without it
+            tmp.delete();
+        }
+    }
+
+    private void close() {
+        this.mapped = null;
+        try {
+            if (this.channel != null) this.channel.close();
+        } catch (IOException ioe) {
+            System.out.println("TiffPlaneReader close: " + ioe);
+        }
+    }
+
+    /////////////// decompression ///////////////
+
+    private static int unpackBits(byte[] in, byte[] out) {
+        int i = 0, o = 0;
+        while (i < in.length && o < out.length) {
+            int n = in[i++];
+            if (n >= 0) {
+                int k = Math.min(n + 1, Math.min(out.length - o, in.length - i));
+                System.arraycopy(in, i, out, o, k);
+                i += n + 1;
+                o += k;
+            } else if (n != -128 && i < in.length) {
+                byte v = in[i++];
+                for (int k = 0; k < 1 - n && o < out.length; k++) out[o++] = v;
+            }
+        }
+        return o;
+    }
+
+    private static int inflate(byte[] in, byte[] out) throws IOException {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(in);
+            int o = 0;
+            while (o < out.length && !inflater.finished()) {
+                int k = inflater.inflate(out, o, out.length - o);
+                if (k == 0 && (inflater.needsInput() || inflater.needsDictionary())) break;
+                o += k;
+            }
+            return o;
+        } catch (DataFormatException dfe) {
+            throw new IOException(dfe.getMessage());
+        } finally {
+            inflater.end();
+        }
+    }
+
+    // TIFF flavour of LZW: MSB first codes of 9 to 12 bits, widths change one code early
+    private static int lzw(byte[] in, byte[] out) {
+        byte[][] table = new byte[4096][];
+        for (int i = 0; i < 256; i++) table[i] = new byte[]{(byte)i};
+        int next = 258;
+        int width = 9;
+        int bitPos = 0;
+        int o = 0;
+        byte[] prev = null;
+        int totalBits = in.length * 8;
+        while (bitPos + width <= totalBits && o < out.length) {
+            int code = 0;
+            for (int k = 0; k < width; k++) {
+                int bit = (in[(bitPos + k) >> 3] >> (7 - ((bitPos + k) & 7))) & 1;
+                code = (code << 1) | bit;
+            }
+            bitPos += width;
+            if (code == 257) break; // end of information
+            if (code == 256) {
+                next = 258;
+                width = 9;
+                prev = null;
+                continue;
+            }
+            byte[] entry;
+            if (code < next && table[code] != null) {
+                entry = table[code];
+                if (prev != null && next < 4096) table[next++] = concat(prev, entry[0]);
+            } else if (prev != null) {
+                entry = concat(prev, prev[0]);
+                if (next < 4096) table[next++] = entry;
+            } else {
+                break; // corrupt data
+            }
+            int k = Math.min(entry.length, out.length - o);
+            System.arraycopy(entry, 0, out, o, k);
+            o += k;
+            prev = entry;
+            if (next + 1 >= (1 << width) && width < 12) width++;
+        }
+        return o;
+    }
+
+    private static byte[] concat(byte[] a, byte b) {
+        byte[] c = new byte[a.length + 1];
+        System.arraycopy(a, 0, c, 0, a.length);
+        c[a.length] = b;
+        return c;
+    }
+
+    private static class Ifd {
+        int width, height;
+        int compression = NONE;
+        int predictor = 1;
+        int rowsPerStrip;
+        long[] stripOffsets;
+        long[] stripByteCounts;
+    }
+
+    private static final int NONE = 1;
+    private static final int LZW = 5;
+    private static final int DEFLATE = 32946;
+    private static final int ADOBE_DEFLATE = 8;
+    private static final int PACKBITS = 32773;
+    private static final int SHORT = 3;
+    private static final int MAX_READERS = 8;
+    private static final int INDEX_MAGIC = 0x54494458;
+}
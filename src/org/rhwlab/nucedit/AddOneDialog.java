@@ -201,8 +201,7 @@ public class AddOneDialog extends JDialog implements ActionListener, WindowFocus
 	    //int time = iImageTime + iTimeInc
             int time = iImageTime;
 	    Cell c = iCurrentCell;
-	    iAceTree.clearTree();
-	    iAceTree.buildTree(true);
+	    iAceTree.rebuildTree();
 
             // update WormGUIDES data if it's open
             if (iAceTree.iAceMenuBar.view != null) {
@@ -236,6 +235,7 @@ public class AddOneDialog extends JDialog implements ActionListener, WindowFocus
             Nucleus n = iAceTree.getNucleiMgr().getNucleusFromHashkey(iCurrentCell.getHashKey(), iAceTree.getImageManager().getCurrImageTime());
             if(n==null)
             	return;
+            iAceTree.getNucleiMgr().markDirty(iAceTree.getImageManager().getCurrImageTime());
             
             if (cmd.equals(UP)) n.y--;
             else if (cmd.equals(DOWN)) n.y++;
@@ -353,6 +353,7 @@ public class AddOneDialog extends JDialog implements ActionListener, WindowFocus
     	//if exists in range iterate over range
     	//adjust property
     	if(validrange){
+    		iAceTree.getNucleiMgr().markDirty(starttime, endtime);
 
     		for (int i=starttime;i<=endtime;i++){
     			n = iAceTree.getNucleiMgr().getNucleusFromHashkey(iCurrentCell.getHashKey(), i);
@@ -418,6 +419,7 @@ public class AddOneDialog extends JDialog implements ActionListener, WindowFocus
         updateCurrentInfo(false);
         //int time = iImageTime + iTimeInc;
         int time = iAceTree.getImageManager().getCurrImageTime();
+        iAceTree.getNucleiMgr().markDirty(time);
         Vector nuclei = iAceTree.getNucleiMgr().getNucleiRecord().elementAt(time - 1);
         Nucleus n = new Nucleus();
         n.index = nuclei.size() + 1;
@@ -485,8 +487,7 @@ public class AddOneDialog extends JDialog implements ActionListener, WindowFocus
         iPlaneInc = iAceTree.getPlaneInc();
         iCurrentCell = iAceTree.getCurrentCell();
         //Vector nuclei = ImageWindow.cNucleiMgr.getNuclei(iImageTime + iTimeInc - 1);
-        Vector nuclei = iAceTree.getNucleiMgr().getNuclei(iImageTime - 1);
-        iNucleus = NucUtils.getCurrentCellNucleus(nuclei, iCurrentCell);
+        iNucleus = iAceTree.getNucleiMgr().getCurrentCellNucleus(iCurrentCell, iImageTime);
         
         // Force named cell does not get set to iCurrentCell -DT
         //println("updateCurrentInfo: " + iCurrentCell + CS + iNucleus);
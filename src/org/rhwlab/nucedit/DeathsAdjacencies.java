@@ -44,6 +44,7 @@ import org.rhwlab.acetree.NucUtils;
 import org.rhwlab.image.ImageWindow;
 import org.rhwlab.snight.NucleiMgr;
 import org.rhwlab.snight.Nucleus;
+import org.rhwlab.snight.NucleusGrid;
 import org.rhwlab.tree.AncesTree;
 import org.rhwlab.tree.Cell;
 import org.rhwlab.tree.CellData;
@@ -78,6 +79,7 @@ public class DeathsAdjacencies extends JDialog implements ActionListener, ListSe
     private Font        iFont;
     private String      iCellName;
     private int         iTest;
+    private NeighbourScan iScan;
 
     public DeathsAdjacencies() {
 
@@ -398,24 +400,49 @@ public class DeathsAdjacencies extends JDialog implements ActionListener, ListSe
 
 
     // seems to bring up a list of cells that are within a certain
-    // distance of the current cell
+    // distance of each cell
     // I will not use this since test2() and test3() seem to give
     // essentially the same info in perhaps a better way
+    // now runs over all time points up to maxTime and only looks at
+    // the nuclei the grid has near each cell
     private void test4X() {
         println("test4 clicked");
         iNamesAvailable = false;
-        iTest = 4;
-        iTime = iAceTree.getImageManager().getCurrImageTime();
-        double zPixRes = iAceTree.getConfig().getNucleiConfig().getZPixRes();
-        //println("test1: " + iTime);
-        Vector nuclei = (Vector)nuclei_record.get(iTime - 1);
+        iTest = 5;
+        int t1 = iAceTree.getConfig().getImageConfig().getStartingIndex();
+        String [] sa = iTextField.getText().split(":");
+        int t2 = Math.min(Integer.parseInt(sa[0]), nuclei_record.size());
+        final double zPixRes = iAceTree.getConfig().getNucleiConfig().getZPixRes();
+        iListModel.clear();
+        iListModel.addElement("#list shows time, distance, cell, neighbor and their positions");
+        stopScan();
+        iScan = new NeighbourScan(t1, t2, new NeighbourScan.Scanner() {
+            @Override
+            public Vector<String> scan(int time) {
+                return adjacencies(time, zPixRes);
+            }
+        }, iListModel, new Runnable() {
+            @Override
+            public void run() {
+                iNamesAvailable = true;
+            }
+        }).start();
+    }
+
+    private Vector<String> adjacencies(int time, double zPixRes) {
+        Vector<String> v = new Vector<String>();
+        NucleusGrid grid = iNucleiMgr.getNucleusGrid(time);
+        if (grid == null) return v;
+        Vector nuclei = (Vector)nuclei_record.get(time - 1);
         for (int i=0; i < nuclei.size(); i++) {
             Nucleus n1 = (Nucleus)nuclei.get(i);
             if (n1.status <= 0) continue;
             int margin = (int)Math.round(n1.size * FACTOR);
-            for (int j = 0; j < nuclei.size(); j++) {
-                if (j == i) continue;
-                Nucleus n2 = (Nucleus)nuclei.get(j);
+            // zd is rounded so the box is half a pixel deeper in z
+            Nucleus [] near = grid.candidates(n1.x, n1.y, n1.z * zPixRes, margin, margin + 0.5);
+            for (int j = 0; j < near.length; j++) {
+                Nucleus n2 = near[j];
+                if (n2 == n1) continue;
                 if (n2.status <= 0) continue;
                 int xd = Math.abs(n1.x - n2.x);
                 if (xd > margin) continue;
@@ -425,17 +452,21 @@ public class DeathsAdjacencies extends JDialog implements ActionListener, ListSe
                 if (zd > margin) continue;
                 int d = (int)Math.round(Math.sqrt(xd*xd + yd*yd + zd*zd));
                 StringBuffer sb = new StringBuffer();
-                sb.append(d);
+                sb.append(time);
+                sb.append(CS + d);
                 sb.append(CS + n1.identity);
                 sb.append(CS + n2.identity);
                 sb.append(CS + n1.x + CS + n1.y + CS + n1.z);
                 sb.append(CS + n2.x + CS + n2.y + CS + n2.z);
-
-                iListModel.addElement(sb.toString());
-
+                v.add(sb.toString());
             }
         }
-        iNamesAvailable = true;
+        return v;
+    }
+
+    private void stopScan() {
+        if (iScan != null) iScan.cancel();
+        iScan = null;
     }
 
     private static final double FACTOR = .5;
@@ -464,6 +495,7 @@ public class DeathsAdjacencies extends JDialog implements ActionListener, ListSe
             ,"# Deaths: makes a queryable list of cell deaths"
             ,"# Adjacent backward: makes two queryable lists showing nearby cells at this ane previous time."
             ,"#A djacent forward: makes a queryable list of cells near current cell at next time"
+            ,"# Neighbors: makes a queryable list of cells within half a diameter of each other up to maxTime"
     };
 
     private void help() {
@@ -541,9 +573,15 @@ public class DeathsAdjacencies extends JDialog implements ActionListener, ListSe
             test3();
         } else if (s.equals(TEST4)) {
             test4();
+        } else if (s.equals(TEST5)) {
+            test4X();
+        } else if (s.equals(STOP)) {
+            stopScan();
+            iNamesAvailable = true;
         } else if (s.equals(HELP)) {
             help();
         } else if (s.equals(CLEAR)) {
+            stopScan();
             iNamesAvailable = false;
             iListModel.clear();
             help();
@@ -568,6 +606,10 @@ public class DeathsAdjacencies extends JDialog implements ActionListener, ListSe
         addToolBarButton(jb);
         jb = new JButton(TEST3);
         addToolBarButton(jb);
+        jb = new JButton(TEST5);
+        addToolBarButton(jb);
+        jb = new JButton(STOP);
+        addToolBarButton(jb);
     }
 
     protected void addToolBarButton(AbstractButton ab) {
@@ -633,7 +675,8 @@ public class DeathsAdjacencies extends JDialog implements ActionListener, ListSe
         ,TEST2 = "Adj back"
         ,TEST3 = "Adj forward"
         ,TEST4 = "Jumps"
-        ,TEST5 = "Test5"
+        ,TEST5 = "Neighbors"
+        ,STOP  = "Stop"
         ,HELP  = "Help"
         ;
 
@@ -672,6 +715,9 @@ public class DeathsAdjacencies extends JDialog implements ActionListener, ListSe
             } else if (iTest == 4) {
                 name = sa[1];
                 //iTime = Integer.parseInt(sa[2]);
+            } else if (iTest == 5) {
+                name = sa[2];
+                iTime = Integer.parseInt(sa[0]);
             }
 
             bringUpImageWindow(name);
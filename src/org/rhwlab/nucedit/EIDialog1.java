@@ -218,6 +218,7 @@ public class EIDialog1 extends JDialog implements ActionListener, WindowFocusLis
             float z = iAceTree.getImageManager().getCurrImagePlane();
             int prevTime = iPrevTime;
             Nucleus n = null;
+            iAceTree.getNucleiMgr().markDirty(prevTime, iAceTree.getImageManager().getCurrImageTime());
             for (int k=prevTime + 1; k <= iAceTree.getImageManager().getCurrImageTime(); k++) {
                 nucleiAdd = (Vector)nuclei_record.elementAt(k - 1);
 
@@ -356,8 +357,7 @@ public class EIDialog1 extends JDialog implements ActionListener, WindowFocusLis
             updateCurrentInfo(false);
             int time = iAceTree.getImageManager().getCurrImageTime();
             Cell c = iCurrentCell;
-            iAceTree.clearTree();
-            iAceTree.buildTree(true);
+            iAceTree.rebuildTree();
 
             if (iAceTree.iAceMenuBar.view != null) {
                 iAceTree.iAceMenuBar.view.rebuildData();
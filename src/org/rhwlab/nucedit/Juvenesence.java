@@ -33,6 +33,7 @@ import org.rhwlab.snight.NucleiMgr;
 import org.rhwlab.snight.Nucleus;
 import org.rhwlab.tree.AncesTree;
 import org.rhwlab.tree.Cell;
+import org.rhwlab.tree.CellTracks;
 
 
 public class Juvenesence extends JDialog implements ActionListener, ListSelectionListener{
@@ -191,6 +192,19 @@ public class Juvenesence extends JDialog implements ActionListener, ListSelectio
         Collections.sort(iSortedCellNames);
     }
 
+    // number of Cells alive at each time point that are not named N...
+    private static int [] namedCellCounts(CellTracks tracks) {
+        int [] counts = new int[tracks.getLast() + 2];
+        Cell [] cells = tracks.getCells();
+        for (int k=0; k < cells.length; k++) {
+            if (cells[k].getName().startsWith("N")) continue;
+            counts[tracks.getStart(cells[k])]++;
+            counts[tracks.getEnd(cells[k]) + 1]--;
+        }
+        for (int t=1; t < counts.length; t++) counts[t] += counts[t - 1];
+        return counts;
+    }
+
     @SuppressWarnings("unused")
 	private int estimate350CellStage() {
         int stage = 355;
@@ -198,6 +212,8 @@ public class Juvenesence extends JDialog implements ActionListener, ListSelectio
         int size = 0;
         int time = 0;
         int i = 0;
+        CellTracks tracks = iNucleiMgr.getCellTracks();
+        int [] named = tracks == null ? null : namedCellCounts(tracks);
         for (; i < nuclei_record.size(); i++) {
             Vector nuclei = (Vector)nuclei_record.get(i);
             int t = nuclei.size();
@@ -206,7 +222,9 @@ public class Juvenesence extends JDialog implements ActionListener, ListSelectio
                 time = i;
             }
             int count = 0;
-            if (size > stage) {
+            if (size > stage && named != null && i + 1 >= tracks.getFirst() && i + 1 <= tracks.getLast()) {
+                count = named[i + 1];
+            } else if (size > stage) {
                 count = 0;
                 for (int j=0; j < nuclei.size(); j++) {
                     Nucleus n = (Nucleus)nuclei.get(j);
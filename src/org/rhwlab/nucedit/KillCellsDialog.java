@@ -251,6 +251,7 @@ public class KillCellsDialog extends GenericDialog {
             }
         }
         int namingMethod = AceTree.getAceTree(null).getConfig().getNucleiConfig().getNamingMethod();
+        iNucleiMgr.markDirty(iTime, iTime + k - 1);
         for (int i=0; i < k; i++) {
             nuclei = (Vector)iCandidateCells.elementAt(i);
             Nucleus n = null;
@@ -277,8 +278,7 @@ public class KillCellsDialog extends GenericDialog {
         if (o == iApplyAndRebuild) {
 
             iAceTree.treeValueChangedFromEdit = true;
-            iAceTree.clearTree();
-            iAceTree.buildTree(true);
+            iAceTree.rebuildTree();
             iEditLog.setModified(true);
 
             if (iAceTree.iAceMenuBar.view != null) {
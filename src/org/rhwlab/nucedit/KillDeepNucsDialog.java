@@ -165,13 +165,13 @@ public class KillDeepNucsDialog  extends JDialog implements ActionListener {
         		if (n.z > iZLim && iFlippedImages.isSelected()) continue;
         		//println("killDeepNucs, " + i + CS + n);
         		if (implement) {
+        			iNucleiMgr.markDirty(i + 1);
         			n.status = Nucleus.NILLI;
         		} else iCount++;
         	}
         }
         if (implement) {
-            iAceTree.clearTree();
-            iAceTree.buildTree(true);
+            iAceTree.rebuildTree();
 
             if (iAceTree.iAceMenuBar.view != null) {
                 iAceTree.iAceMenuBar.view.rebuildData();
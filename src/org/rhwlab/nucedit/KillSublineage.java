@@ -202,6 +202,7 @@ public class KillSublineage extends JPanel implements ActionListener {
 		
 		//int namingMethod = AceTree.getAceTree(null).getNucleiMgr().getIdentity().getNamingMethod();
 		//actual deletion
+		iNucleiMgr.markDirty(iTime, iTime + k - 1);
 		for (int i=0; i < k; i++) {
 			Vector nuclei = (Vector)iCandidateCells.elementAt(i);
 			Nucleus n = null;
@@ -224,8 +225,7 @@ public class KillSublineage extends JPanel implements ActionListener {
 			c = (Cell)h.get(predecessorNuc.identity);
 		}
 
-				iAceTree.clearTree();
-			iAceTree.buildTree(true);
+				iAceTree.rebuildTree();
 
 			// update WormGUIDES data if it's open
 			if (iAceTree.iAceMenuBar.view != null) {
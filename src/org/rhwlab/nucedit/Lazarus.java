@@ -6,6 +6,7 @@ import java.awt.GridLayout;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.text.DecimalFormat;
+import java.util.Collections;
 import java.util.Comparator;
 import java.util.Enumeration;
 import java.util.Hashtable;
@@ -33,6 +34,7 @@ import org.rhwlab.image.ImageWindow;
 
 import org.rhwlab.snight.NucleiMgr;
 import org.rhwlab.snight.Nucleus;
+import org.rhwlab.snight.NucleusGrid;
 import org.rhwlab.tree.AncesTree;
 import org.rhwlab.tree.Cell;
 
@@ -60,6 +62,7 @@ public class Lazarus extends JDialog  implements ActionListener, ListSelectionLi
     int                     iDelD;
     int                     iDelJ;
     int                     iDelJD;
+    private NeighbourScan   iScan;
 
     public Lazarus() {
 
@@ -143,44 +146,87 @@ public class Lazarus extends JDialog  implements ActionListener, ListSelectionLi
                 }
             }
         }
-        iNamesAvailable = true;
         //*****
         iListModel.clear();
         iListModel.addElement("####");
+        // the deaths are matched on the pool a death time at a time
+        // and the list fills in death time order
+        final Hashtable byTime = new Hashtable();
+        int first = Integer.MAX_VALUE;
+        int last = Integer.MIN_VALUE;
         Enumeration cells = iLazers.keys();
         while (cells.hasMoreElements()) {
-        //for (int i=0; i < iLazers.size(); i++) {
             String name = (String)cells.nextElement();
             Laz laz = (Laz)iLazers.get(name);
-            //println("makeInitialList, " + i + laz.iDyer.identity + CS + laz.iDTime);
-            int tend = laz.iDTime + iDelT;
-            Vector nuclei = null;
-            for (int j = laz.iDTime + 1; j < tend; j++) {
-                nuclei = (Vector)nuclei_record.get(j - 1);
-                boolean matchFound = false;
-                for (int m = 0; m < nuclei.size(); m++) {
-                    Nucleus n = (Nucleus)nuclei.get(m);
-                    if (n.status < 0) continue;
-                    int d = laz.distance(n);
-                    if (d < iDelD) {
-                        Laz lazx = getJump(j-2, n);
-                        if (lazx.iMatch) {
-                            laz.setMatch(n, j);
-                            matchFound = true;
-                            break;
-                        }
-                    }
-                }
-                if (matchFound) break;
-           }
-           println("" + laz);
-           if (laz.iMatch) iListModel.addElement(laz.toString());
+            Vector v = (Vector)byTime.get(laz.iDTime);
+            if (v == null) {
+                v = new Vector();
+                byTime.put(laz.iDTime, v);
+            }
+            v.add(name);
+            first = Math.min(first, laz.iDTime);
+            last = Math.max(last, laz.iDTime);
         }
+        stopScan();
+        iScan = new NeighbourScan(first, last, new NeighbourScan.Scanner() {
+            @Override
+            public Vector<String> scan(int time) {
+                Vector<String> rows = new Vector<String>();
+                Vector names = (Vector)byTime.get(time);
+                if (names == null) return rows;
+                Collections.sort(names);
+                for (int i=0; i < names.size(); i++) {
+                    Laz laz = (Laz)iLazers.get(names.get(i));
+                    findMatch(laz);
+                    println("" + laz);
+                    if (laz.iMatch) rows.add(laz.toString());
+                }
+                return rows;
+            }
+        }, iListModel, new Runnable() {
+            @Override
+            public void run() {
+                iNamesAvailable = true;
+            }
+        }).start();
         //*****/
 
 
     }
 
+    // the first nucleus after the death that is close enough and got there by
+    // a jump, a division or being new; only the nuclei the grid has near the
+    // dead cell are looked at
+    private void findMatch(Laz laz) {
+        // laz.distance() scales z by 11.1 and the grid by zPixRes
+        double zPixRes = iNucleiMgr.getZPixRes();
+        double zReach = iDelD * zPixRes / 11.1;
+        Nucleus d = laz.iDyer;
+        int tend = Math.min(laz.iDTime + iDelT, nuclei_record.size() + 1);
+        for (int j = laz.iDTime + 1; j < tend; j++) {
+            NucleusGrid grid = iNucleiMgr.getNucleusGrid(j);
+            if (grid == null) break;
+            Nucleus [] near = grid.candidates(d.x, d.y, d.z * zPixRes, iDelD, zReach);
+            for (int m = 0; m < near.length; m++) {
+                Nucleus n = near[m];
+                if (n.status < 0) continue;
+                int dist = laz.distance(n);
+                if (dist < iDelD) {
+                    Laz lazx = getJump(j-2, n);
+                    if (lazx.iMatch) {
+                        laz.setMatch(n, j);
+                        return;
+                    }
+                }
+            }
+        }
+    }
+
+    private void stopScan() {
+        if (iScan != null) iScan.cancel();
+        iScan = null;
+    }
+
     private Laz getJump(int k, Nucleus n) {
         Laz laz = new Laz(n, k);
         Vector nuclei = (Vector)nuclei_record.get(k);
@@ -233,8 +279,7 @@ public class Lazarus extends JDialog  implements ActionListener, ListSelectionLi
         //updateCurrentInfo(false);
         //int time = iImageTime + iTimeInc;
         //Cell c = iCurrentCell;
-        iAceTree.clearTree();
-        iAceTree.buildTree(true);
+        iAceTree.rebuildTree();
 
         // update WormGUIDES data if it's open
         if (iAceTree.iAceMenuBar.view != null) {
@@ -290,6 +335,8 @@ public class Lazarus extends JDialog  implements ActionListener, ListSelectionLi
         addToolBarButton(jb);
         jb = new JButton(TEST1);
         addToolBarButton(jb);
+        jb = new JButton(STOP);
+        addToolBarButton(jb);
         jb = new JButton("linkEm");
         addToolBarButton(jb);
         jb = new JButton("rebuild");
@@ -354,6 +401,7 @@ public class Lazarus extends JDialog  implements ActionListener, ListSelectionLi
    ,TEST4 = "Jumps"
    ,TEST5 = "Test5"
    ,HELP  = "Help"
+   ,STOP  = "Stop"
    ;
 
 
@@ -374,7 +422,11 @@ public class Lazarus extends JDialog  implements ActionListener, ListSelectionLi
         String s = e.getActionCommand();
         if (s.equals(TEST1)) {
             makeInitialList();
+        } else if (s.equals(STOP)) {
+            stopScan();
+            iNamesAvailable = true;
         } else if (s.equals(CLEAR)) {
+            stopScan();
             iNamesAvailable = false;
             iListModel.clear();
             help();
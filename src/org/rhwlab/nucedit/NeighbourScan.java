@@ -0,0 +1,136 @@
+package org.rhwlab.nucedit;
+
+import java.util.Vector;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import javax.swing.DefaultListModel;
+import javax.swing.SwingUtilities;
+
+/**
+ * runs a quality control scan over a range of time points on a fork/join pool
+ * and streams the rows into a list model while it goes
+ * <br>each time point is handled by a Scanner, which normally asks the
+ * NucleusGrid of that time point for the nuclei near the one it is looking at
+ * instead of going through all pairs
+ * <br>rows are added in time order, each time point as soon as it and all the
+ * ones before it are done, so the list reads the same as a serial scan
+ * <br>cancel() stops the scan; rows that are not in the list yet are dropped
+ * and the done callback is not run
+ *
+ * Created: Oct. 2026
+ */
+public class NeighbourScan {
+
+    public interface Scanner {
+        /**
+         * called on a pool thread, for several time points at once
+         * @return the rows for this time point, empty if there are none
+         */
+        Vector<String> scan(int time);
+    }
+
+    private static ForkJoinPool cPool;
+
+    private int                 iStart;
+    private int                 iEnd;
+    private Scanner             iScanner;
+    private DefaultListModel    iModel;
+    private Runnable            iDone;
+    private Vector<String> []   iRows;
+    private int                 iNext;
+    private volatile boolean    iCancelled;
+
+    /**
+     * @param start first time point
+     * @param end last time point, included
+     * @param scanner the scan of one time point
+     * @param model the rows are added to it on the event dispatch thread
+     * @param done run on the event dispatch thread after the last rows, may be null
+     */
+    @SuppressWarnings("unchecked")
+    public NeighbourScan(int start, int end, Scanner scanner, DefaultListModel model, Runnable done) {
+        iStart = start;
+        iEnd = Math.max(end, start - 1);
+        iScanner = scanner;
+        iModel = model;
+        iDone = done;
+        iRows = new Vector[iEnd - iStart + 1];
+    }
+
+    public NeighbourScan start() {
+        if (iRows.length == 0) publish(iStart - 1, null);
+        else getPool().execute(new Span(iStart, iEnd));
+        return this;
+    }
+
+    public void cancel() {
+        iCancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return iCancelled;
+    }
+
+    public synchronized boolean isDone() {
+        return iNext == iRows.length;
+    }
+
+    private class Span extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        int     iT1;
+        int     iT2;
+
+        Span(int t1, int t2) {
+            iT1 = t1;
+            iT2 = t2;
+        }
+
+        @Override
+        protected void compute() {
+            if (iCancelled) return;
+            if (iT1 < iT2) {
+                int mid = (iT1 + iT2) >>> 1;
+                invokeAll(new Span(iT1, mid), new Span(mid + 1, iT2));
+                return;
+            }
+            Vector<String> rows = null;
+            try {
+                rows = iScanner.scan(iT1);
+            } catch(RuntimeException e) {
+                println("NeighbourScan, time " + iT1 + CS + e);
+            }
+            publish(iT1, rows == null ? new Vector<String>() : rows);
+        }
+    }
+
+    // hands every time point that is now complete, in order, to the event dispatch thread
+    private synchronized void publish(int time, Vector<String> rows) {
+        if (rows != null) iRows[time - iStart] = rows;
+        final Vector<String> batch = new Vector<String>();
+        int next = iNext;
+        while (iNext < iRows.length && iRows[iNext] != null) {
+            batch.addAll(iRows[iNext]);
+            iRows[iNext++] = null;
+        }
+        final boolean finished = iNext == iRows.length && (next < iNext || rows == null);
+        if (batch.isEmpty() && !finished) return;
+        // queued while holding the lock so the batches reach the list in order
+        SwingUtilities.invokeLater(new Runnable() {
+            @Override
+            public void run() {
+                if (iCancelled) return;
+                for (int i=0; i < batch.size(); i++) iModel.addElement(batch.get(i));
+                if (finished && iDone != null) iDone.run();
+            }
+        });
+    }
+
+    private static synchronized ForkJoinPool getPool() {
+        if (cPool == null) cPool = new ForkJoinPool();
+        return cPool;
+    }
+
+    private static final String CS = ", ";
+    private static void println(String s) {System.out.println(s);}
+}
@@ -54,6 +54,7 @@ public class NucEditModel {
         }
         NucleiTableModel nucleiTableModel = iNucleiTableModel[tableModel];
         Vector nuclei = iNucleiMgr.getNucleiRecord().elementAt(i);
+        iNucleiMgr.markDirty(i + 1);
         int m = nuclei.size();
         Nucleus n;
         String s;
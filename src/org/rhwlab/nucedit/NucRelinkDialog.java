@@ -400,8 +400,7 @@ public class NucRelinkDialog extends JDialog implements ActionListener {
 		// if (cmd.equals(APPLYANDREBUILD)) {
 		//println("\n\nNucRelinkDialog.actionPerformed: applyAndRebuild");
 		iAceTree.treeValueChangedFromEdit = true;
-		iAceTree.clearTree();
-		iAceTree.buildTree(true);
+		iAceTree.rebuildTree();
 
 		// update WormGUIDES data if it's open
 		if (iAceTree.iAceMenuBar.view != null) {
@@ -489,6 +488,7 @@ public class NucRelinkDialog extends JDialog implements ActionListener {
 		println("createAndAddCells, " + endCellName + CS + endTime + CS + strCellName + CS + strTime);
 		Nucleus nEnd = getNucleus(endCellName, endTime);
 		if (strCellName.equals(AceTree.ROOTNAME)) {
+			iNucleiMgr.markDirty(endTime);
 			nEnd.predecessor = Nucleus.NILLI;
 			return;
 		}
@@ -499,6 +499,7 @@ public class NucRelinkDialog extends JDialog implements ActionListener {
 		//System.out.println("actionPerformed: nStr: " + nStr);
 		
 		// nuclei_record accessed and modified here
+		iNucleiMgr.markDirty(strTime, endTime);
 		Vector nuclei_record = iNucleiMgr.getNucleiRecord();
 		Vector nucleiAdd = null;
 		Nucleus n = nStr;
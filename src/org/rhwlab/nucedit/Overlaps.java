@@ -6,9 +6,11 @@ import java.awt.GridLayout;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.text.DecimalFormat;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.Hashtable;
+import java.util.IdentityHashMap;
 import java.util.Vector;
 
 import javax.swing.AbstractButton;
@@ -35,6 +37,7 @@ import org.rhwlab.acetree.NucUtils;
 import org.rhwlab.image.ImageWindow;
 import org.rhwlab.snight.NucleiMgr;
 import org.rhwlab.snight.Nucleus;
+import org.rhwlab.snight.NucleusGrid;
 import org.rhwlab.tree.AncesTree;
 import org.rhwlab.tree.Cell;
 import org.rhwlab.tree.CellData;
@@ -61,6 +64,7 @@ public class Overlaps extends JPanel implements ActionListener, ListSelectionLis
     private int                 iTime;
     private String              iCellName;
     private int                 iTest;
+    private NeighbourScan       iScan;
 
     public Overlaps() {
         iTitle = "Overlaps";
@@ -105,24 +109,68 @@ public class Overlaps extends JPanel implements ActionListener, ListSelectionLis
         iListModel.addElement("#list shows nuclei that are too close");
         iListModel.addElement("#where the separation is less than sum of radii - TOLERENCE ");
 
-        for (int i = t1; i <= t2; i++) {
-            findOverlaps(i);
-        }
-        iNamesAvailable = true;
+        // all the time points at once, the rows show up in time order as they are found
+        stopScan();
+        iScan = new NeighbourScan(t1, t2, new NeighbourScan.Scanner() {
+            @Override
+            public Vector<String> scan(int time) {
+                return overlaps(time);
+            }
+        }, iListModel, new Runnable() {
+            @Override
+            public void run() {
+                iNamesAvailable = true;
+            }
+        }).start();
 
     }
 
+    private void stopScan() {
+        if (iScan != null) iScan.cancel();
+        iScan = null;
+    }
+
 
     private static int TOLERENCE = 15;
     public void findOverlaps(int now) {
         iNamesAvailable = false;
         iTest = 1;
+        Vector<String> v = overlaps(now);
+        for (int i=0; i < v.size(); i++) {
+            iListModel.addElement(v.get(i));
+            //println("findOverlaps, " + v.get(i));
+        }
+        if (!this.isShowing()) this.showMe();
+        iNamesAvailable = true;
+    }
+
+    // the pairs are checked in name order as before, but only against the
+    // nuclei the grid has near the first one
+    private Vector<String> overlaps(int now) {
+        Vector<String> v = new Vector<String>();
+        NucleusGrid grid = iNucleiMgr.getNucleusGrid(now);
+        if (grid == null) return v;
+        double zPixRes = NucUtils.getZPixRes();
         Vector nuclei = iNucleiMgr.getNucleiRecord().elementAt(now - 1);
         nuclei = cleanupAndSort(nuclei);
+        IdentityHashMap<Nucleus, Integer> rank = new IdentityHashMap<Nucleus, Integer>();
+        for (int i=0; i < nuclei.size(); i++) rank.put(((Nuc)nuclei.get(i)).iNuc, i);
+        int [] later = new int[16];
         for (int i=0; i < nuclei.size(); i++) {
             Nucleus n = ((Nuc)nuclei.get(i)).iNuc;
-            for (int j=i + 1; j < nuclei.size(); j++) {
-                Nucleus n2 = ((Nuc)nuclei.get(j)).iNuc;
+            // the largest possible sum of radii less the tolerence, plus one
+            // for the rounding in NucUtils.distance()
+            double reach = (n.size + 2 * grid.getMaxRadius()) / 2 - TOLERENCE + 1;
+            int count = 0;
+            for (Nucleus c : grid.candidates(n.x, n.y, n.z * zPixRes, reach, reach)) {
+                Integer j = rank.get(c);
+                if (j == null || j <= i) continue;
+                if (count == later.length) later = Arrays.copyOf(later, count * 2);
+                later[count++] = j;
+            }
+            Arrays.sort(later, 0, count);
+            for (int k=0; k < count; k++) {
+                Nucleus n2 = ((Nuc)nuclei.get(later[k])).iNuc;
                 if (n2.status <  0) continue;
                 int dist = NucUtils.distance(n, n2);
                 double valid = (n.size + n2.size) / 2;
@@ -130,13 +178,10 @@ public class Overlaps extends JPanel implements ActionListener, ListSelectionLis
                 String plane = "above";
                 if (n2.z > n.z) plane = "below";
                 String s = now + CS + n.identity + CS + n2.identity + CS + plane + CS + DF1.format(dist) + CS + DF1.format(valid);
-                iListModel.addElement(s);
-                //println("findOverlaps, " + s);
-
+                v.add(s);
             }
         }
-        if (!this.isShowing()) this.showMe();
-        iNamesAvailable = true;
+        return v;
     }
 
     private Vector cleanupAndSort(Vector nuclei) {
@@ -243,6 +288,7 @@ public class Overlaps extends JPanel implements ActionListener, ListSelectionLis
     }
 
     private void rebuildAndRename() {
+        stopScan();
         iAceTree.clearTree();
         iAceTree.buildTree(true);
 
@@ -326,7 +372,11 @@ public class Overlaps extends JPanel implements ActionListener, ListSelectionLis
         } else if (s.equals("NucEm")) { //Jumps
             nucEm();
             //test4();
+        } else if (s.equals(STOP)) {
+            stopScan();
+            iNamesAvailable = true;
         } else if (s.equals(CLEAR)) { //Clear
+            stopScan();
             iNamesAvailable = false;
             iListModel.clear();
         } else if (s.equals("setParms")) {
@@ -351,6 +401,8 @@ public class Overlaps extends JPanel implements ActionListener, ListSelectionLis
         addToolBarButton(jb);
         jb = new JButton("Overlaps");
         addToolBarButton(jb);
+        jb = new JButton(STOP);
+        addToolBarButton(jb);
         jb = new JButton("ShowNucs");
         addToolBarButton(jb);
         jb = new JButton("NucEm");
@@ -406,6 +458,7 @@ public class Overlaps extends JPanel implements ActionListener, ListSelectionLis
 
     private static final String
     CLEAR = "Clear"
+   ,STOP  = "Stop"
    ;
 
 
@@ -238,8 +238,7 @@ public class Siamese extends JDialog implements ActionListener, ListSelectionLis
     }
 
     private void rebuildAndRename() {
-        iAceTree.clearTree();
-        iAceTree.buildTree(true);
+        iAceTree.rebuildTree();
 
         // update WormGUIDES data if it's open
         if (iAceTree.iAceMenuBar.view != null) {
@@ -311,8 +311,7 @@ public class SkipFalseNegatives extends JDialog implements ActionListener {
             iNucleiMgr.makeBackupNucleiRecord();
             createAndAddCells(endCellName, endTime, strCellName, strTime);
             if (o == iApplyAndRebuild) {
-                iAceTree.clearTree();
-                iAceTree.buildTree(true);
+                iAceTree.rebuildTree();
 
                 // update WormGUIDES data if it's open
                 if (iAceTree.iAceMenuBar.view != null) {
@@ -389,6 +388,7 @@ public class SkipFalseNegatives extends JDialog implements ActionListener {
         //System.out.println("startCell: " + strCellName + CS + strTime);
         Nucleus nStr = getNucleus(strCellName, strTime);
         //System.out.println("nStr: " + nStr);
+        iNucleiMgr.markDirty(strTime, endTime);
         Vector nuclei_record = iNucleiMgr.getNucleiRecord();
         Vector nucleiAdd = null; 
         Nucleus n = nStr;
@@ -187,8 +187,7 @@ public class UnifiedNucRelinkDialog extends NucRelinkDialog{
 				String ID = addCell(x,y);
     			//rebuild and rename
 				//System.out.println("Rebuild tree and rename nucleus.");
-    			iAceTree.clearTree();
-    			iAceTree.buildTree(true);
+    			iAceTree.rebuildTree();
 
 
     		} else {
@@ -245,6 +244,7 @@ public class UnifiedNucRelinkDialog extends NucRelinkDialog{
      */
     protected String addCell(int x, int y) {
     	int time = iAceTree.getImageManager().getCurrImageTime();
+        iAceTree.getNucleiMgr().markDirty(time);
         Vector nuclei = iAceTree.getNucleiMgr().getNucleiRecord().elementAt(time - 1);
         Nucleus n = new Nucleus();
         n.index = nuclei.size() + 1;
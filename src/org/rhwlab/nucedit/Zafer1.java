@@ -10,6 +10,7 @@ import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.text.DecimalFormat;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Enumeration;
 import java.util.Hashtable;
@@ -40,6 +41,7 @@ import org.rhwlab.snight.NucleiMgr;
 import org.rhwlab.snight.Nucleus;
 import org.rhwlab.tree.AncesTree;
 import org.rhwlab.tree.Cell;
+import org.rhwlab.tree.CellTracks;
 import org.rhwlab.utils.EUtils;
 
 
@@ -155,25 +157,59 @@ public class Zafer1  extends JDialog implements ActionListener, ListSelectionLis
         //println("showDivisions, " + now);
         iNamesAvailable = false;
         iTest = 1;
-        Vector nucleiNow = iNucleiMgr.getNucleiRecord().elementAt(now - 1);
+        Vector<Nucleus> dividing = dividingAt(now);
         Nucleus nnow = null;
-        for (int j=0; j < nucleiNow.size(); j++) {
-            nnow = (Nucleus)nucleiNow.elementAt(j);
-            if (nnow.status <= 0) continue;
-            if (nnow.successor1 > 0  && nnow.successor2 > 0) {
-                Vector nucleiNext = iNucleiMgr.getNucleiRecord().elementAt(now);
-                Nucleus a = (Nucleus)nucleiNext.elementAt(nnow.successor1 - 1);
-                Nucleus p = (Nucleus)nucleiNext.elementAt(nnow.successor2 - 1);
-                double score1 = evaluateDivision1(nnow, a, p, now);
-                //double score2 = evaluateDivision2(nnow, a, p, now);
-                if (score1 == 999 && score1 == 999) continue;
-                iListModel.addElement(division(nnow.identity, a.identity, p.identity, now, score1));
-            }
+        for (int j=0; j < dividing.size(); j++) {
+            nnow = dividing.elementAt(j);
+            Vector nucleiNext = iNucleiMgr.getNucleiRecord().elementAt(now);
+            Nucleus a = (Nucleus)nucleiNext.elementAt(nnow.successor1 - 1);
+            Nucleus p = (Nucleus)nucleiNext.elementAt(nnow.successor2 - 1);
+            double score1 = evaluateDivision1(nnow, a, p, now);
+            //double score2 = evaluateDivision2(nnow, a, p, now);
+            if (score1 == 999 && score1 == 999) continue;
+            iListModel.addElement(division(nnow.identity, a.identity, p.identity, now, score1));
         }
         if (!this.isShowing()) this.showMe();
         iNamesAvailable = true;
     }
 
+    /**
+     * @param now 1-based time
+     * @return the live nuclei of the time point with two successors, in the
+     * order of the time point; from the Cells whose tracks end at that time
+     * when the AncesTree is current, otherwise by going through the time point
+     */
+    @SuppressWarnings("unchecked")
+    Vector<Nucleus> dividingAt(int now) {
+        Vector<Nucleus> dividing = new Vector<Nucleus>();
+        Vector nucleiNow = iNucleiMgr.getNucleiRecord().elementAt(now - 1);
+        CellTracks tracks = iNucleiMgr.getCellTracks();
+        if (tracks != null && now >= tracks.getFirst() && now <= tracks.getLast()) {
+            Cell [] cells = tracks.endingAt(now);
+            int [] slots = new int[cells.length];
+            int count = 0;
+            for (int i=0; i < cells.length; i++) {
+                int j = tracks.slot(cells[i], now);
+                if (j >= 0) slots[count++] = j;
+            }
+            Arrays.sort(slots, 0, count);
+            for (int i=0; i < count; i++) {
+                Nucleus n = (Nucleus)nucleiNow.elementAt(slots[i]);
+                if (isDividing(n)) dividing.add(n);
+            }
+            return dividing;
+        }
+        for (int j=0; j < nucleiNow.size(); j++) {
+            Nucleus n = (Nucleus)nucleiNow.elementAt(j);
+            if (isDividing(n)) dividing.add(n);
+        }
+        return dividing;
+    }
+
+    private static boolean isDividing(Nucleus n) {
+        return n.status > 0 && n.successor1 > 0 && n.successor2 > 0;
+    }
+
     public String division(String par, String dau, String dau2, int now, double score1) {
         StringBuffer sb = new StringBuffer(par);
         sb.append(CS + now);
@@ -211,20 +247,17 @@ public class Zafer1  extends JDialog implements ActionListener, ListSelectionLis
         //println("showDivisions, " + now);
         iNamesAvailable = false;
         iTest = 1;
-        Vector nucleiNow = iNucleiMgr.getNucleiRecord().elementAt(now - 1);
+        Vector<Nucleus> dividing = dividingAt(now);
         Nucleus nnow = null;
-        for (int j=0; j < nucleiNow.size(); j++) {
-            nnow = (Nucleus)nucleiNow.elementAt(j);
-            if (nnow.status <= 0) continue;
-            if (nnow.successor1 > 0  && nnow.successor2 > 0) {
-                Vector nucleiNext = iNucleiMgr.getNucleiRecord().elementAt(now);
-                Nucleus a = (Nucleus)nucleiNext.elementAt(nnow.successor1 - 1);
-                Nucleus p = (Nucleus)nucleiNext.elementAt(nnow.successor2 - 1);
-                //double score1 = evaluateDivision1(nnow, a, p, now);
-                double score2 = evaluateDivision2(nnow, a, p, now);
-                if (score2 == 999) continue;
-                iListModel.addElement(movement(nnow.identity, a.identity, p.identity, now, score2));
-            }
+        for (int j=0; j < dividing.size(); j++) {
+            nnow = dividing.elementAt(j);
+            Vector nucleiNext = iNucleiMgr.getNucleiRecord().elementAt(now);
+            Nucleus a = (Nucleus)nucleiNext.elementAt(nnow.successor1 - 1);
+            Nucleus p = (Nucleus)nucleiNext.elementAt(nnow.successor2 - 1);
+            //double score1 = evaluateDivision1(nnow, a, p, now);
+            double score2 = evaluateDivision2(nnow, a, p, now);
+            if (score2 == 999) continue;
+            iListModel.addElement(movement(nnow.identity, a.identity, p.identity, now, score2));
         }
         if (!this.isShowing()) this.showMe();
         iNamesAvailable = true;
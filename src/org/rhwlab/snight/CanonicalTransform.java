@@ -1,9 +1,6 @@
 package org.rhwlab.snight;
 
 import java.util.StringTokenizer;
-import javafx.geometry.Point3D;
-import javafx.scene.transform.Rotate;
-import javafx.scene.transform.Transform;
 
 /**
  * This class represents the affine transform used to rotate vectors to canonical orientation
@@ -19,6 +16,9 @@ import javafx.scene.transform.Transform;
  * *** NOTE: this class is only used under the AuxInfo scheme in which datasets do not need to be compressed.
  * This new transform allows complete 3 dimensional rotation of datasets in any initial orientation
  * 
+ * The rotations are plain 3x3 matrices of doubles, row by row, built the way JavaFX Rotate builds
+ * them, so naming needs no JavaFX and applying a rotation allocates nothing
+ * 
  * @author bradenkatzman
  * @date 10/2016
  *
@@ -31,22 +31,21 @@ public class CanonicalTransform {
 	// vectors, angles, axes used for rotation to canonical orientation
 	private double[] AP_orientation_vec;
 	private double[] LR_orientation_vec;
-	private Point3D AP_orientation_vector;
-	private Point3D LR_orientation_vector;
-	private Point3D DV_orientation_vector;
+	private double[] AP_orientation_vector;
+	private double[] LR_orientation_vector;
 
 	// angles of rotations
 	private double angleOfRotationAP;
 	private double angleOfRotationLR;
 
 	// rotation axes
-	private Point3D rotationAxisAP;
-	private Point3D rotationAxisLR;
+	private double[] rotationAxisAP;
+	private double[] rotationAxisLR;
 
-	// rotation matrices
-	private Rotate rotMatrixAP;
-	private Rotate rotMatrixLR;
-	private Transform productTransform;
+	// rotation matrices, row by row
+	private double[] rotMatrixAP;
+	private double[] rotMatrixLR;
+	private double[] productTransform;
 
 	// set to true when rotations are confirmed, false on any failure
 	public boolean activeTransform;
@@ -115,19 +114,18 @@ public class CanonicalTransform {
 		LR_orientation_vec[2] = Double.parseDouble(st2.nextToken());
 
 		// create vector objects from initial orientations
-		this.AP_orientation_vector = new Point3D(AP_orientation_vec[0], AP_orientation_vec[1], AP_orientation_vec[2]);
-		this.LR_orientation_vector = new Point3D(LR_orientation_vec[0], LR_orientation_vec[1], LR_orientation_vec[2]);
+		this.AP_orientation_vector = AP_orientation_vec.clone();
+		this.LR_orientation_vector = LR_orientation_vec.clone();
 
 		return true;
 	}
 
 	/**
 	 * - Normalizes input vectors
-	 * - Finds the DV orientation (cross product of AP and LR)
 	 * - Finds the Axis-Angle representation of the rotation from AP initial to AP canonical
 	 * - Finds the Axis-Angle representation of the rotation from LR initial to LR canonical
-	 * - Builds a rotation matrix (JavaFX Rotate object) for AP
-	 * - Builds a rotation matrix (JavaFX Rotate object) for LR
+	 * - Builds a rotation matrix for AP
+	 * - Builds a rotation matrix for LR
 	 * 
 	 * 
 	 * *** There is a degenerate case of the axis-angle representation that needs to be handled manually:
@@ -149,69 +147,54 @@ public class CanonicalTransform {
 		}
 
 		// normalize
-		this.AP_orientation_vector = AP_orientation_vector.normalize();
-		this.LR_orientation_vector = LR_orientation_vector.normalize();
-
-		/* cross product for DV orientation vector --> init with AP_orientation coords and then cross with LR
-		 * NOTE: It's important that the cross product is computed as APxLR and not LRxAP because cross product is anticommunicative
-		 * To see this, use the right hand rule where the AP vector is your index finger and the LR vector is your middle finger:
-		 *     - in this orientation, the DV vector as a result of the cross product is your thumb (which should be at <0,0,+1> on
-		 *       your hand)
-		 *     - if we did LRxAP, the DV vector (thumb) would point down at <0,0,-1> which would be inconsistent with the 
-		 *       canonical orientation scheme
-		 */
-		this.DV_orientation_vector = new Point3D(AP_orientation_vector.getX(), AP_orientation_vector.getY(), AP_orientation_vector.getZ());
-		this.DV_orientation_vector.crossProduct(LR_orientation_vector);
+		this.AP_orientation_vector = normalize(AP_orientation_vector);
+		this.LR_orientation_vector = normalize(LR_orientation_vector);
 
-		// axis angle rep. of AP --> init with AP_orientation coords and then cross with AP canonical orientation
-		this.rotationAxisAP = new Point3D(AP_orientation_vector.getX(), AP_orientation_vector.getY(), AP_orientation_vector.getZ());
-		this.rotationAxisAP = rotationAxisAP.crossProduct(AP_can_or);
-		this.rotationAxisAP = rotationAxisAP.normalize();
-		this.angleOfRotationAP = AP_orientation_vector.angle(AP_can_or);
+		// axis angle rep. of AP --> cross the AP orientation with the AP canonical orientation
+		this.rotationAxisAP = normalize(crossProduct(AP_orientation_vector, AP_can_or));
+		this.angleOfRotationAP = angle(AP_orientation_vector, AP_can_or);
 
 		// check for degenerate case --> make sure angle of nonzero first to ensure the dataset isn't just already in canonical orientation
-		if (angleOfRotationAP != 0 && rotationAxisAP.getX() == 0 && rotationAxisAP.getY() == 0 && rotationAxisAP.getZ() == 0) {
+		if (angleOfRotationAP != 0 && isZero(rotationAxisAP)) {
 			// ensure that the AP orientation vector is in fact a vector in the xy plane
-			if (AP_orientation_vector.getX() != 0 && AP_orientation_vector.getY() == 0 && AP_orientation_vector.getZ() == 0) {
+			if (AP_orientation_vector[0] != 0 && AP_orientation_vector[1] == 0 && AP_orientation_vector[2] == 0) {
 				System.out.println("Degenerate case of axis angle rotation, rotation only about z axis in xy plane");
 
 				// make the z axis the axis of rotation
-				this.rotationAxisAP = new Point3D(0., 0., 1.);
+				this.rotationAxisAP = new double[]{0., 0., 1.};
 			}
 		}
 
 		// build rotation matrix for AP
-		this.rotMatrixAP = new Rotate(angleOfRotationAP,
-				new Point3D(rotationAxisAP.getX(), rotationAxisAP.getY(), rotationAxisAP.getZ()));
-
-		// before finding the axis angle representation of the LR rotation, rotate the LR config vec by the AP rotation
-		double[] LR_orientation_rotated = new double[]{LR_orientation_vector.getX(), 
-														LR_orientation_vector.getY(), 
-														LR_orientation_vector.getZ()};
-		applySingleTransform(LR_orientation_rotated, AP);
+		this.rotMatrixAP = rotation(angleOfRotationAP, rotationAxisAP);
+
+		/*
+		 * before finding the axis angle representation of the LR rotation, the LR config vec was meant to be
+		 * rotated by the AP rotation; that went through applySingleTransform, which does nothing until the
+		 * transform is active, so the LR axis has always been found from the vector as given. It is kept that
+		 * way, the names of existing series depend on it
+		 */
+		double[] LR_orientation_rotated = LR_orientation_vector;
 		
 		// axis angle rep. of LR		
-		this.rotationAxisLR = new Point3D(LR_orientation_rotated[0], LR_orientation_rotated[1], LR_orientation_rotated[2]);
-		this.rotationAxisLR = rotationAxisLR.crossProduct(LR_can_or);
-		this.rotationAxisLR = rotationAxisLR.normalize();
-		this.angleOfRotationLR = LR_orientation_vector.angle(LR_can_or);
+		this.rotationAxisLR = normalize(crossProduct(LR_orientation_rotated, LR_can_or));
+		this.angleOfRotationLR = angle(LR_orientation_vector, LR_can_or);
 
 		/* check for degenerate case --> make sure angle of nonzero first to ensure the dataset isn't just already in canonical orientation
 		* NOTE: the vectors are colinear when they face in opposite directions e.g. <1,0,0> and <-1,0,0>
 		*/
-		if (angleOfRotationLR != 0 && rotationAxisLR.getX() == 0 && rotationAxisLR.getY() == 0 && rotationAxisLR.getZ() == 0) {
+		if (angleOfRotationLR != 0 && isZero(rotationAxisLR)) {
 			// ensure that the LR orientation vector is in fact a vector in the yz plane
-			if (LR_orientation_vector.getX() == 0 && LR_orientation_vector.getY() == 0 && LR_orientation_vector.getZ() != 0) {
+			if (LR_orientation_vector[0] == 0 && LR_orientation_vector[1] == 0 && LR_orientation_vector[2] != 0) {
 				System.out.println("Degenerate case of axis angle rotation, rotation only about x axis in yz plane");
 
 				// make the x axis the axis of rotation
-				this.rotationAxisLR = new Point3D(1., 0., 0.);
+				this.rotationAxisLR = new double[]{1., 0., 0.};
 			}
 		}
 
 		// build rotation matrix for LR
-		this.rotMatrixLR = new Rotate(this.angleOfRotationLR,
-				new Point3D(rotationAxisLR.getX(), rotationAxisLR.getY(), rotationAxisLR.getZ()));
+		this.rotMatrixLR = rotation(angleOfRotationLR, rotationAxisLR);
 
 		return true;
 	}
@@ -226,26 +209,22 @@ public class CanonicalTransform {
 	 * Date: 8/15/16
 	 */
 	private boolean confirmOrientation() {
-		Point3D AP_orientation_pt = rotMatrixAP.deltaTransform(AP_orientation_vector.getX(), AP_orientation_vector.getY(), AP_orientation_vector.getZ());
-		AP_orientation_pt = AP_orientation_pt.normalize();
-		Point3D AP_orientation_test_vec = new Point3D(AP_orientation_pt.getX(), AP_orientation_pt.getY(), AP_orientation_pt.getZ());
-		AP_orientation_test_vec = roundVecCoords(AP_orientation_test_vec);
-		if (!AP_can_or.equals(AP_orientation_test_vec)) {
-			System.out.println("AP orientation incorrectly rotated to: <" + 
-					AP_orientation_test_vec.getX() + ", " + AP_orientation_test_vec.getY() + ", " + AP_orientation_test_vec.getZ() + ">");
-			System.out.println(rotMatrixAP.toString());
+		double[] AP_orientation_test_vec = AP_orientation_vector.clone();
+		transform(rotMatrixAP, AP_orientation_test_vec);
+		AP_orientation_test_vec = roundVecCoords(normalize(AP_orientation_test_vec));
+		if (!equals(AP_can_or, AP_orientation_test_vec)) {
+			System.out.println("AP orientation incorrectly rotated to: " + toString(AP_orientation_test_vec));
+			System.out.println("AP rotation: " + toString(rotMatrixAP));
 			System.out.println("Reverting to AuxInfo v1.0");
 			return false;
 		}
 
-		Point3D LR_orientation_pt = rotMatrixLR.deltaTransform(LR_orientation_vector.getX(), LR_orientation_vector.getY(), LR_orientation_vector.getZ());
-		LR_orientation_pt = LR_orientation_pt.normalize();
-		Point3D LR_orientation_test_vec = new Point3D(LR_orientation_pt.getX(), LR_orientation_pt.getY(), LR_orientation_pt.getZ());
-		LR_orientation_test_vec = roundVecCoords(LR_orientation_test_vec);
-		if (!LR_can_or.equals(LR_orientation_test_vec)) {
-			System.out.println("LR orientation incorrectly rotated to: <" + 
-					LR_orientation_test_vec.getX() + ", " + LR_orientation_test_vec.getY() + ", " + LR_orientation_test_vec.getZ() + ">");
-			System.out.println(rotMatrixLR.toString());
+		double[] LR_orientation_test_vec = LR_orientation_vector.clone();
+		transform(rotMatrixLR, LR_orientation_test_vec);
+		LR_orientation_test_vec = roundVecCoords(normalize(LR_orientation_test_vec));
+		if (!equals(LR_can_or, LR_orientation_test_vec)) {
+			System.out.println("LR orientation incorrectly rotated to: " + toString(LR_orientation_test_vec));
+			System.out.println("LR rotation: " + toString(rotMatrixLR));
 			System.out.println("Reverting to AuxInfo v1.0");
 
 			return false;
@@ -257,12 +236,12 @@ public class CanonicalTransform {
 		 * line says that the product transform applies the AP rotation first and then the LR rotation. This mirrors the order
 		 * in which compressed rotations are carried out under the first AuxInfo scheme. See DivisionCaller.java method diffsCorrected()
 		 */
-		this.productTransform = rotMatrixLR.createConcatenation(rotMatrixAP);
+		this.productTransform = multiply(rotMatrixLR, rotMatrixAP);
 		
 		System.out.println("Confirmed transforms rotate from initial AP, LR to canonical");
-		System.out.println("AP rotation: " + rotMatrixAP.toString());
-		System.out.println("LR rotation: " + rotMatrixLR.toString());
-		System.out.println("Affine transform: " + productTransform.toString());
+		System.out.println("AP rotation: " + angleOfRotationAP + " about " + toString(rotationAxisAP) + " " + toString(rotMatrixAP));
+		System.out.println("LR rotation: " + angleOfRotationLR + " about " + toString(rotationAxisLR) + " " + toString(rotMatrixLR));
+		System.out.println("Product transform: " + toString(productTransform));
 		System.out.println(" ");
 		return true;
 	}
@@ -271,112 +250,183 @@ public class CanonicalTransform {
 	 * Round the coordinates of a vector to a whole number if within a certain threshold to that number
 	 * ZERO_THRESHOLD defined at bottom of file
 	 * 
-	 * @param vec - the vector to be rounded
-	 * @return the updated vector in the form of a Point3D
+	 * @param vec - the vector to be rounded, in place
+	 * @return vec
 	 */
-	private Point3D roundVecCoords(Point3D vec) {
-		Point3D tmp = new Point3D(Math.round(vec.getX()), Math.round(vec.getY()), Math.round(vec.getZ()));
-
-		vec = new Point3D(
-				(Math.abs(vec.getX() - tmp.getX()) <= ZERO_THRESHOLD) ? tmp.getX() : vec.getX(),
-				(Math.abs(vec.getY() - tmp.getY()) <= ZERO_THRESHOLD) ? tmp.getY() : vec.getY(),		
-				(Math.abs(vec.getZ() - tmp.getZ()) <= ZERO_THRESHOLD) ? tmp.getZ() : vec.getZ());
-
+	private double[] roundVecCoords(double[] vec) {
+		for (int i = 0; i < THREE; i++) {
+			double r = Math.round(vec[i]);
+			if (Math.abs(vec[i] - r) <= ZERO_THRESHOLD) vec[i] = r;
+		}
 		return vec;
 	}
 
 	/**
-	 * Rotate the vector between divided cells by applying the two transforms
+	 * Rotate the vector between divided cells by applying the two transforms, in place
 	 * 
 	 * @param vec - the vector between daughter cells after division
+	 * @return false, leaving vec as it was, if the transform is not active or the result is NaN
 	 */
 	public boolean applyProductTransform(double[] vec) {
 		if (!this.activeTransform) return false;
-		
-		// make local copy
-		double[] vec_local = new double[3];
-		vec_local[0] = vec[0];
-		vec_local[1] = vec[1];
-		vec_local[2] = vec[2];
-			
-		/*
-		 * this probably does this same thing but for the sake of clarity deltaTransform works on a vector represented by
-		 * a Point3D and transform works on a point represented by Point3D
-		 */
-		Point3D transformed = productTransform.transform(vec_local[0], vec_local[1], vec_local[2]);
-		
-//		// update vec_local
-		vec_local[0] = transformed.getX();
-		vec_local[1] = transformed.getY();
-		vec_local[2] = transformed.getZ();
-		
+		return transform(productTransform, vec, 0);
+	}
 
-		// error handling
-		if (Double.isNaN(vec_local[0]) || Double.isNaN(vec_local[1]) || Double.isNaN(vec_local[2])) return false;
-		
-		// update parameter vector
-		vec[0] = vec_local[0];
-		vec[1] = vec_local[1];
-		vec[2] = vec_local[2];
-		
-		return true;
+	/**
+	 * Rotate count vectors stored one after the other as x, y, z in coords, in place
+	 * 
+	 * @param coords - x0, y0, z0, x1, y1, z1, ...
+	 * @param offset - index in coords of the first x
+	 * @param count - number of vectors
+	 * @return false if the transform is not active or some vector came out NaN; such a vector is left as it was
+	 */
+	public boolean applyProductTransform(double[] coords, int offset, int count) {
+		if (!this.activeTransform) return false;
+		boolean ok = true;
+		for (int i = 0; i < count; i++) {
+			ok &= transform(productTransform, coords, offset + THREE * i);
+		}
+		return ok;
 	}
 	
 	/**
-	 * Apply a single transform to the given vector specified with either "AP" or "LR"
+	 * Apply a single transform to the given vector specified with either "AP" or "LR", in place
 	 * 
 	 * @param vec - the vector to be transformed
 	 * @param axis - the axis around which to rotate ("AP" or "LR")
-	 * @return
+	 * @return false, leaving vec as it was, if the transform is not active, the axis is unknown or the result is NaN
 	 */
 	public boolean applySingleTransform(double[] vec, String axis) {
-		if (!this.activeTransform || (!axis.equals("AP") && !axis.equals("LR")) || axis == null) return false;
-		
-		// make local copy
-		double[] vec_local = new double[3];
-		vec_local[0] = vec[0];
-		vec_local[1] = vec[1];
-		vec_local[2] = vec[2];
-		
-		Point3D rotatedVec = null;
-		if (axis.equals("AP")) {
-			rotatedVec = rotMatrixAP.deltaTransform(vec_local[0], vec_local[1], vec_local[2]);
-		} else if (axis.equals("LR")) {
-			rotatedVec = rotMatrixLR.deltaTransform(vec_local[0], vec_local[1], vec_local[2]);
-		}
-		
-		// update vec_local
-		if (rotatedVec == null) return false;
-		vec_local[0] = rotatedVec.getX();
-		vec_local[1] = rotatedVec.getY();
-		vec_local[2] = rotatedVec.getZ();
-		
-		// error handling
-		if (Double.isNaN(vec_local[0]) || Double.isNaN(vec_local[1]) || Double.isNaN(vec_local[2])) return false;
-		
-		// update parameter vector
-		vec[0] = vec_local[0];
-		vec[1] = vec_local[1];
-		vec[2] = vec_local[2];
-		
-		return true;
+		if (!this.activeTransform || axis == null) return false;
+		if (axis.equals(AP)) return transform(rotMatrixAP, vec, 0);
+		if (axis.equals(LR)) return transform(rotMatrixLR, vec, 0);
+		return false;
+	}
+
+	/**
+	 * @return a copy of the matrix of the product transform, row by row, null if it is not active
+	 */
+	public double[] getProductMatrix() {
+		if (!this.activeTransform) return null;
+		return productTransform.clone();
 	}
 	
 	public boolean isActiveTransform() {
 		return this.activeTransform;
 	}
 
+	/*
+	 * 3x3 matrices and vectors of doubles; the arithmetic follows that of the JavaFX
+	 * Point3D, Rotate and Affine this class used before, so the names do not change
+	 */
+
+	// m times the vector at offset in v, written back unless it is NaN
+	private static boolean transform(double[] m, double[] v, int offset) {
+		double x = v[offset];
+		double y = v[offset + 1];
+		double z = v[offset + 2];
+		double tx = m[0] * x + m[1] * y + m[2] * z;
+		double ty = m[3] * x + m[4] * y + m[5] * z;
+		double tz = m[6] * x + m[7] * y + m[8] * z;
+		if (Double.isNaN(tx) || Double.isNaN(ty) || Double.isNaN(tz)) return false;
+		v[offset] = tx;
+		v[offset + 1] = ty;
+		v[offset + 2] = tz;
+		return true;
+	}
+
+	// m times v, NaN or not
+	private static void transform(double[] m, double[] v) {
+		double x = v[0];
+		double y = v[1];
+		double z = v[2];
+		v[0] = m[0] * x + m[1] * y + m[2] * z;
+		v[1] = m[3] * x + m[4] * y + m[5] * z;
+		v[2] = m[6] * x + m[7] * y + m[8] * z;
+	}
+
+	// the rotation of angle degrees about axis, right handed; the identity for a zero axis
+	private static double[] rotation(double angle, double[] axis) {
+		double rads = Math.toRadians(angle);
+		double sin = Math.sin(rads);
+		double cos = Math.cos(rads);
+		double ax = axis[0];
+		double ay = axis[1];
+		double az = axis[2];
+		if (ax == 0 && ay == 0 && az > 0) {
+			// about z, as JavaFX does it in 2D
+			return new double[]{cos, -sin, 0, sin, cos, 0, 0, 0, 1};
+		}
+		double mag = Math.sqrt(ax * ax + ay * ay + az * az);
+		if (mag == 0) return new double[]{1, 0, 0, 0, 1, 0, 0, 0, 1};
+		ax /= mag;
+		ay /= mag;
+		az /= mag;
+		double ic = 1.0 - cos;
+		return new double[]{
+				cos + ax * ax * ic, ax * ay * ic - az * sin, ax * az * ic + ay * sin,
+				ay * ax * ic + az * sin, cos + ay * ay * ic, ay * az * ic - ax * sin,
+				az * ax * ic - ay * sin, az * ay * ic + ax * sin, cos + az * az * ic};
+	}
+
+	// a times b, the transform that applies b first
+	private static double[] multiply(double[] a, double[] b) {
+		double[] m = new double[9];
+		for (int i = 0; i < THREE; i++) {
+			for (int j = 0; j < THREE; j++) {
+				m[3 * i + j] = a[3 * i] * b[j] + a[3 * i + 1] * b[3 + j] + a[3 * i + 2] * b[6 + j];
+			}
+		}
+		return m;
+	}
+
+	private static double[] normalize(double[] v) {
+		double mag = Math.sqrt(v[0] * v[0] + v[1] * v[1] + v[2] * v[2]);
+		if (mag == 0) return new double[THREE];
+		return new double[]{v[0] / mag, v[1] / mag, v[2] / mag};
+	}
+
+	private static double[] crossProduct(double[] a, double[] b) {
+		return new double[]{a[1] * b[2] - a[2] * b[1], a[2] * b[0] - a[0] * b[2], a[0] * b[1] - a[1] * b[0]};
+	}
+
+	// the angle between a and b in degrees
+	private static double angle(double[] a, double[] b) {
+		double delta = (a[0] * b[0] + a[1] * b[1] + a[2] * b[2])
+				/ Math.sqrt((a[0] * a[0] + a[1] * a[1] + a[2] * a[2]) * (b[0] * b[0] + b[1] * b[1] + b[2] * b[2]));
+		if (delta > 1.0) return 0.0;
+		if (delta < -1.0) return 180.0;
+		return Math.toDegrees(Math.acos(delta));
+	}
+
+	private static boolean isZero(double[] v) {
+		return v[0] == 0 && v[1] == 0 && v[2] == 0;
+	}
+
+	private static boolean equals(double[] a, double[] b) {
+		return a[0] == b[0] && a[1] == b[1] && a[2] == b[2];
+	}
+
+	private static String toString(double[] m) {
+		StringBuilder sb = new StringBuilder("<");
+		for (int i = 0; i < m.length; i++) {
+			if (i > 0) sb.append(i % THREE == 0 ? "; " : ", ");
+			sb.append(m[i]);
+		}
+		return sb.append(">").toString();
+	}
+
 	// static variables
 	private static final double[] AP_canonical_orientation = {-1, 0, 0};
 	private static final double[] LR_canonical_orientation = {0, 0, 1};
-	private static final Point3D AP_can_or = new Point3D(AP_canonical_orientation[0], AP_canonical_orientation[1], AP_canonical_orientation[2]);
-	private static final Point3D LR_can_or = new Point3D(LR_canonical_orientation[0], LR_canonical_orientation[1], LR_canonical_orientation[2]);
+	private static final double[] AP_can_or = AP_canonical_orientation;
+	private static final double[] LR_can_or = LR_canonical_orientation;
 	private static final int THREE = 3;
 	private static final double ZERO_THRESHOLD = .1;
 	private static final String AP = "AP";
 	private static final String LR = "LR";
 	
 	// probably won't need to use these, but if so here they are
-//  private static final Point3D DV_can_or = new Point3D(DV_canonical_orientation[0], DV_canonical_orientation[1], DV_canonical_orientation[2]);
+//  private static final double[] DV_can_or = DV_canonical_orientation;
 //	private static final double[] DV_canonical_orientation = {0, -1, 0};
 }
\ No newline at end of file
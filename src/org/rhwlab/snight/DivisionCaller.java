@@ -1,21 +1,8 @@
 package org.rhwlab.snight;
 
-import java.io.BufferedReader;
-import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.net.URL;
 import java.text.DecimalFormat;
 import java.util.Enumeration;
-import java.util.Hashtable;
 
-import org.rhwlab.acetree.AceTree;
-
-import javafx.beans.property.BooleanProperty;
-import javafx.beans.property.SimpleBooleanProperty;
-import javafx.beans.value.ChangeListener;
-import javafx.beans.value.ObservableValue;
-import javafx.geometry.Point2D;
-import javafx.geometry.Point3D;
 
 
 /**
@@ -31,8 +18,7 @@ import javafx.geometry.Point3D;
 
 public class DivisionCaller {
 
-	Hashtable<String, Rule>		iRulesHash;
-	Hashtable<String, String>		iSulstonHash;
+	DivisionRules	iRules;
 	String			iAxis;
 	String			iAxisUse;
 	double			iZPixRes;
@@ -41,14 +27,15 @@ public class DivisionCaller {
 	double			iEMajor;
 	double			iEMinor;
 	double			iZSlope;
-	Point2D			iAngVec;
 	double			iDMajor;
 	double			iDMinor;
 	double			iDSlope;
 	boolean			iDebug;
 	double [] 		iDaCorrected;
+	// the whole correction of a daughter vector as one 3x3 matrix, row by row
+	double []		iCorrection;
 
-	private BooleanProperty auxInfoVersion2;
+	private boolean auxInfoVersion2;
 	private CanonicalTransform canTransform;
 
 	/**
@@ -60,12 +47,9 @@ public class DivisionCaller {
 	public DivisionCaller(MeasureCSV measureCSV, String axis, double zpixRes) {
 		System.out.println("Using AuxInfo version 1.0");
 		this.iMeasureCSV = measureCSV;
-		this.iRulesHash = new Hashtable<String, Rule>();
-		this.auxInfoVersion2 = new SimpleBooleanProperty();
-		this.auxInfoVersion2.set(false);
+		this.iRules = DivisionRules.getRules();
+		this.auxInfoVersion2 = false;
 		this.iAxis = axis;
-		readNewRules();
-		readSulstonRules();
 
         iZPixRes = zpixRes;
 
@@ -81,34 +65,10 @@ public class DivisionCaller {
 	public DivisionCaller(MeasureCSV measureCSV, CanonicalTransform canTransform) {
 		System.out.println("Using AuxInfo version 2.0");
 		this.iMeasureCSV = measureCSV;
-		this.iRulesHash = new Hashtable<String, Rule>();
+		this.iRules = DivisionRules.getRules();
 		this.canTransform = canTransform;
-		readNewRules();
-		readSulstonRules();
 
-		/*
-		 * initialize based on AuxInfo v1.0 or v2.0
-		 */
-		this.auxInfoVersion2 = new SimpleBooleanProperty();
-		this.auxInfoVersion2.set(true);
-		this.auxInfoVersion2.addListener(new ChangeListener<Boolean>() {
-			@Override
-			public void changed(ObservableValue<? extends Boolean> observable, Boolean oldValue, Boolean newValue) {
-				/*
-				 * If AuxInfo v2.0 fails at any point, get the axis and angle from the AuxInfo v1.0
-				 */
-				if (!newValue) {
-					iAxis = iMeasureCSV.iMeasureHash_v1.get(MeasureCSV.att_v1[MeasureCSV.AXIS_v1]);
-
-					String sang = iMeasureCSV.iMeasureHash_v1.get("ang");
-					if (sang.length() > 0) {
-						iAng = Math.toRadians(-Double.parseDouble(sang));
-					}
-
-					iAngVec = new Point2D(Math.cos(iAng), Math.sin(iAng));
-				}
-			}
-		});
+		this.auxInfoVersion2 = true;
 
 		this.iZPixRes = Double.parseDouble(iMeasureCSV.iMeasureHash.get(MeasureCSV.att_v2[MeasureCSV.ZPIXRES_v2]));
 
@@ -116,7 +76,7 @@ public class DivisionCaller {
 	}
 
 	private void getScalingParms() {		
-		if (!(auxInfoVersion2.get())) {
+		if (!auxInfoVersion2) {
 			initAng();
 		}
 
@@ -147,7 +107,7 @@ public class DivisionCaller {
 		if (szslope != null && szslope.length() > 0) {
 			iZSlope = Double.parseDouble(szslope);
 		} else {
-			if (auxInfoVersion2.get()) {
+			if (auxInfoVersion2) {
 				iZSlope = Double.parseDouble(MeasureCSV.defaultAtt_v2[MeasureCSV.ZSLOPE_v2]);
 			} else {
 				iZSlope = Double.parseDouble(MeasureCSV.defaultAtt_v1[MeasureCSV.ZSLOPE_v1]);
@@ -163,21 +123,41 @@ public class DivisionCaller {
 			iDMinor = Double.parseDouble(MeasureCSV.defaultAtt_v1[MeasureCSV.EMINOR_v1]);
 			iDSlope = Double.parseDouble(MeasureCSV.defaultAtt_v1[MeasureCSV.ZSLOPE_v1]);
 		}
+		precompute();
+	}
+
+	/**
+	 * The z scaling, rotation, stretch and axis flips of diffsCorrected are all linear,
+	 * so they are multiplied out once here, column by column, by taking each unit
+	 * vector through them
+	 */
+	private void precompute() {
+		if (!auxInfoVersion2) {
+			iAxisUse = iAxis;
+		}
+		double [] m = new double[9];
+		for (int j=0; j < 3; j++) {
+			double [] da = new double[3];
+			da[j] = 1;
+			da[2] *= iZPixRes;
+			measurementCorrection(da);
+			axisCorrection(da);
+			for (int i=0; i < 3; i++) m[3 * i + j] = da[i];
+		}
+		iCorrection = m;
 	}
 
 	/**
 	 * Initializes the "ang" field for assigning names if AuxInfo version 1.0 is being used
 	 */
 	private void initAng() {
-		if (!(auxInfoVersion2.get())) {
+		if (!auxInfoVersion2) {
 			String sang = iMeasureCSV.iMeasureHash.get("ang");
 			if (sang != null) {
 				if (sang.length() > 0) {
 					iAng = Math.toRadians(-Double.parseDouble(sang));
 				}
 			}
-
-			iAngVec = new Point2D(Math.cos(iAng), Math.sin(iAng));
 		}
 	}
 
@@ -194,93 +174,19 @@ public class DivisionCaller {
 	}
 
 	public String getRuleString(String parent) {
-		Rule r = iRulesHash.get(parent);
+		Rule r = iRules.getFileRule(parent);
 		if (r == null) return "";
 		else return r.toString();
 	}
 
 	/**
-	 * Given a parent Nucleus, return Rule if already created, create if not
+	 * Given a parent Nucleus, return its Rule from the shared table, which makes
+	 * and keeps a default one based on the sulston letter if there is none
 	 * @param parent
 	 * @return
 	 */
 	private Rule getRule(Nucleus parent) {
-		Rule r = iRulesHash.get(parent.identity);
-
-		/*
-		 * If no rule is found, create rule based on division direction and axis
-		 */
-		if (r == null) {
-			String pname = parent.identity;
-			//System.out.println("DivisionCaller.getRule parent identity: "+pname);
-			String sulston = iSulstonHash.get(pname);
-
-			//System.out.println("Sulston for: " + pname + " is --> " + sulston);
-
-			//If no name, set default as 'a'
-			if (sulston == null || pname.startsWith("Nuc")) {
-				sulston = "a";
-			} else { //used the first letter of the sulston name
-				sulston = sulston.substring(0, 1);
-			}
-
-//			System.out.println("Using first letter: '" +  sulston + "' for daughter_1 and: '" + complement(sulston.charAt(0)) + "' for daughter_2");
-
-			// append parent identity with sulston letter for daughter_1 sulston name 
-			String sdau1 = parent.identity + sulston;
-			//System.out.println("Sulston daughter_1 for parent: " + pname + ", is --> " + sdau1);
-
-			// get the letter representing the division opposite of this division
-			char c = complement(sulston.charAt(0));
-
-			// set the daughter cell's sulston name with parent identity and complement of division
-			String sdau2 = parent.identity + c;
-			//System.out.println("Sulston daughter_2 for parent: " + pname + ", is --> " + sdau2);
-
-			// set the xyz axis of this rule based on sulston first letter
-			/*
-			 * If the first daughter divides in the anterior direction, the Rule vector is <1,0,0> in AuxInfo1
-			 * If the first daughter divides in the left direction, the Rule vector is <0,0,1>
-			 * If the first daughter divides in the dorsal direction, the Rule vector is <0,1,0> (else condition always seems to be when sulston equals "d")
-			 */
-			int x = 0;
-			int y = 0;
-			int z = 0;
-			if (sulston.equals("a")) {
-				x = 1;
-			} else if (sulston.equals("l")) {
-				z = 1;
-			} else { //usually "d"
-				y = 1;
-			}
-
-			// append a 0 to the sulston name
-			sulston += "0";
-
-			// create a rule for this parent which contains parent name, the directional sulston letter for the first daughter, and the vector corresponding
-			r = new Rule(pname, sulston, sdau1, sdau2, x, y, z);
-
-			/*
-			 * TODO
-			 * Go over this with Anthony
-			 * How should I handle different rotations being introduced late in naming?
-			 */
-			if (!(auxInfoVersion2.get())) {
-				// assuming dummy rules are late in embryonic development
-				// introduce rotation
-				if (iAxis == null)
-					iAxisUse = MeasureCSV.defaultAtt_v1[MeasureCSV.AXIS_v1];
-				else if (iAxis.equals("ADL"))
-					iAxisUse = "ARD";
-				else if (iAxis.equals("AVR"))
-					iAxisUse = "ALV";
-				else if (iAxis.equals("PDR"))
-					iAxisUse = "PLD";
-				else if (iAxis.equals("PVL"))
-					iAxisUse = "PRV";
-			}
-		}
-		return r;
+		return iRules.getRule(parent.identity);
 	}
 
 	public double getDotProduct(Nucleus parent, Nucleus dau1, Nucleus dau2) {
@@ -304,35 +210,24 @@ public class DivisionCaller {
 	 * @return
 	 */
 	private double getDotProduct(Nucleus parent, Nucleus dau1, Nucleus dau2, Rule r) {
-		if (!(auxInfoVersion2.get())) {
-			iAxisUse = iAxis;
-		}
-
-		// create a temporary template vector from the xyz coordinates of the rule
-		Point3D template = new Point3D(r.iX, r.iY, r.iZ);
-
 		// find the vector between the daughter cells, with corrections and rotations induced
 		double [] daCorrected = diffsCorrected(dau1, dau2);
 
 		// update the instance var
 		iDaCorrected = daCorrected;
 
-		// create vector from daughter vector coordinates
-		Point3D sample = new Point3D(daCorrected[0], daCorrected[1], daCorrected[2]);
-
-		// normalize the vector
-		sample = sample.normalize();
-		
 //		System.out.print(" to: <" + daCorrected[0] + ", " + daCorrected[1] + ", " + daCorrected[2] + ">");
-		
+
 		/*
-		 * find and return the dot product of the normalized, corrected, and rotated
-		 * vector between the two daughter cells
+		 * find and return the dot product of the rule vector with the normalized, corrected,
+		 * and rotated vector between the two daughter cells; a zero vector gives 0
 		 */
-		double dot = template.dotProduct(sample);
-		Double Dot = new Double(dot);
-		if (Dot.isNaN()) dot = 0;
-		
+		double len = Math.sqrt(daCorrected[0] * daCorrected[0] + daCorrected[1] * daCorrected[1]
+				+ daCorrected[2] * daCorrected[2]);
+		if (len == 0) return 0;
+		double dot = (r.iX * daCorrected[0] + r.iY * daCorrected[1] + r.iZ * daCorrected[2]) / len;
+		if (Double.isNaN(dot)) dot = 0;
+
 		return dot;
 	}
 
@@ -377,22 +272,28 @@ public class DivisionCaller {
 	 * @return the vector between the two daughters, corrected by constants and axis in use
 	 */
 	private double [] diffsCorrected(Nucleus d1, Nucleus d2) {
-		double [] da = new double[3];
-		
-		da[0] = d2.x - d1.x;
-		da[1] = d2.y - d1.y;
-		da[2] = d2.z - d1.z;
-		
-//		System.out.print("da: <" + da[0] + ", " + da[1] + ", " + da[2] + ">");
-		
-		// scale the z coordinate difference by the z pixel resolution i.e. the z scale
-		da[2] *= iZPixRes;
-		//if (iDebug) println("diffs, " + fmt4(da[0]) + CS + fmt4(da[1]) + CS + fmt4(da[2]));
+		double x = d2.x - d1.x;
+		double y = d2.y - d1.y;
+		double z = d2.z - d1.z;
 
-		// induce rotations with corrections and scaling
-		measurementCorrection(da);
+//		System.out.print("da: <" + x + ", " + y + ", " + z + ">");
 
-		if (!(auxInfoVersion2.get())) {
+		// z scaling, rotations, stretch and axis flips, all in the matrix made by precompute
+		double [] m = iCorrection;
+		double [] da = new double[3];
+		da[0] = m[0] * x + m[1] * y + m[2] * z;
+		da[1] = m[3] * x + m[4] * y + m[5] * z;
+		da[2] = m[6] * x + m[7] * y + m[8] * z;
+		return da;
+	}
+
+	/**
+	 * Under the first AuxInfo scheme, induce LR rotation with coordinate sign flipping
+	 * 
+	 * @param da
+	 */
+	private void axisCorrection(double [] da) {
+		if (!auxInfoVersion2 && iAxisUse != null) {
 			if (iAxisUse.equals("AVR")) {
 				da[1] *= -1;
 				da[2] *= -1;
@@ -413,8 +314,6 @@ public class DivisionCaller {
 				da[2] *= -1;
 			}
 		}
-
-		return da;
 	}
 
 	/**
@@ -424,7 +323,7 @@ public class DivisionCaller {
 	 */
 	private void measurementCorrection(double [] da) {
 		// correct for angle
-		if (auxInfoVersion2.get()) {
+		if (auxInfoVersion2) {
 			canTransform.applyProductTransform(da);
 		} else {
 			double [] dxy = handleRotation_V1(da[0], da[1], iAng);
@@ -462,85 +361,18 @@ public class DivisionCaller {
 		return da;
 	}
 
-	private void readNewRules() {
-		URL url = AceTree.class.getResource("/org/rhwlab/snight/NewRules.txt");
-		InputStream istream = null;
-		try {
-			istream = url.openStream();
-			BufferedReader br = new BufferedReader(new InputStreamReader(istream));
-			String s;
-			br.readLine(); //toss the header
-			while (br.ready()) {
-				s = br.readLine();
-				if (s.length() == 0) continue;
-				//println("readNewRules, " + s);
-				String [] sa = s.split(TAB);
-				Rule r = new Rule(sa);
-				iRulesHash.put(sa[0], r);
-			}
-			br.close();
-		} catch(Exception e) {
-			e.printStackTrace();
-		}
-	}
-
-
-	public void readSulstonRules() {
-		Hashtable<String, String> namingHash = new Hashtable<String, String>();
-		URL url = AceTree.class.getResource("/org/rhwlab/snight/namesHash.txt");
-		InputStream istream = null;
-		try {
-			istream = url.openStream();
-			BufferedReader br = new BufferedReader(new InputStreamReader(istream));
-			String s;
-			while (br.ready()) {
-				s = br.readLine();
-				if (s.length() == 0) continue;
-				String [] sa = s.split(",");
-				namingHash.put(sa[0], sa[1]);
-			}
-			br.close();
-		} catch(Exception e) {
-			e.printStackTrace();
-		}
-		iSulstonHash = namingHash;
-
-	}
-
 	/**
-	 * Returns the opposite division given a division letter
-	 * @param x - the character representing the direction of the division (A,P,D,V,L,R)
-	 * @return - the division direction opposite of x
+	 * A rule is not changed once made, the same ones are shared by every DivisionCaller
 	 */
-	private char complement(char x) {
-		switch(x) {
-		case 'a':
-			return 'p';
-		case 'p':
-			return 'a';
-		case 'd':
-			return 'v';
-		case 'v':
-			return 'd';
-		case 'l':
-			return 'r';
-		case 'r':
-			return 'l';
-
-		}
-		return 'g';
-	}
-
-
-	public class Rule {
-		double  DOTTOL = 0.6;
-		String 	iParent;
-		String  iRule;
-		String	iDau1;
-		String  iDau2;
-		public double	iX;
-		public double	iY;
-		public double   iZ;
+	public static class Rule {
+		static final double  DOTTOL = 0.6;
+		final String 	iParent;
+		final String  iRule;
+		final String	iDau1;
+		final String  iDau2;
+		public final double	iX;
+		public final double	iY;
+		public final double   iZ;
 
 		public Rule(String [] sa) {
 			iParent = sa[0];
@@ -0,0 +1,203 @@
+package org.rhwlab.snight;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.URL;
+import java.util.HashMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.rhwlab.acetree.AceTree;
+import org.rhwlab.snight.DivisionCaller.Rule;
+
+/**
+ * the division rules of NewRules.txt and the sulston letters of
+ * namesHash.txt, read once for the whole process
+ * <br>every DivisionCaller shares the one table; it is not changed after
+ * it is read, so callers on different threads need no locking
+ * <br>a parent with no rule of its own gets a rule made from its sulston
+ * letter; that rule only depends on the parent's name, so it is made once
+ * and kept for the next caller that names the same cell
+ *
+ * Created: Oct. 2026
+ */
+public class DivisionRules {
+    private static DivisionRules cRules;
+
+    private HashMap<String, Rule>               iRules;
+    private HashMap<String, String>             iSulston;
+    private ConcurrentHashMap<String, Rule>     iFallback;
+
+    /**
+     * @return the table, read on first use
+     */
+    public static synchronized DivisionRules getRules() {
+        if (cRules == null) cRules = new DivisionRules();
+        return cRules;
+    }
+
+    private DivisionRules() {
+        iRules = new HashMap<String, Rule>();
+        iSulston = new HashMap<String, String>();
+        iFallback = new ConcurrentHashMap<String, Rule>();
+        readNewRules();
+        readSulstonRules();
+    }
+
+    /**
+     * @return the rule NewRules.txt has for parent, null if it has none
+     */
+    public Rule getFileRule(String parent) {
+        return iRules.get(parent);
+    }
+
+    /**
+     * @return the rule for parent, made from its sulston letter if NewRules.txt has none
+     */
+    public Rule getRule(String parent) {
+        Rule r = iRules.get(parent);
+        if (r != null) return r;
+        r = iFallback.get(parent);
+        if (r != null) return r;
+        // unnamed cells are named after their index, keep the memo from growing without end
+        if (iFallback.size() > MAXFALLBACK) iFallback.clear();
+        r = makeRule(parent);
+        Rule old = iFallback.putIfAbsent(parent, r);
+        return old != null ? old : r;
+    }
+
+    // a rule along the axis of the parent's sulston letter, "a" when it has none
+    private Rule makeRule(String pname) {
+        String sulston = iSulston.get(pname);
+        if (sulston == null || pname.startsWith("Nuc")) sulston = "a";
+        String sdau1 = pname + sulston;
+        String sdau2 = pname + complement(sulston.charAt(0));
+        int x = 0;
+        int y = 0;
+        int z = 0;
+        if (sulston.equals("a")) {
+            x = 1;
+        } else if (sulston.equals("l")) {
+            z = 1;
+        } else { //usually "d"
+            y = 1;
+        }
+        return new Rule(pname, sulston + "0", sdau1, sdau2, x, y, z);
+    }
+
+    /**
+     * Returns the opposite division given a division letter
+     * @param x - the character representing the direction of the division (A,P,D,V,L,R)
+     * @return - the division direction opposite of x
+     */
+    private static char complement(char x) {
+        switch(x) {
+        case 'a':
+            return 'p';
+        case 'p':
+            return 'a';
+        case 'd':
+            return 'v';
+        case 'v':
+            return 'd';
+        case 'l':
+            return 'r';
+        case 'r':
+            return 'l';
+        }
+        return 'g';
+    }
+
+    private void readNewRules() {
+        BufferedReader br = open("/org/rhwlab/snight/NewRules.txt");
+        if (br == null) return;
+        String [] sa = new String[7];
+        try {
+            br.readLine(); //toss the header
+            String s;
+            while ((s = br.readLine()) != null) {
+                if (s.length() == 0) continue;
+                if (fields(s, '\t', sa) < sa.length) {
+                    println("DivisionRules, short rule, " + s);
+                    continue;
+                }
+                Rule r = new Rule(sa[0].intern(), sa[1].intern(), sa[2].intern(), sa[3].intern(),
+                        Double.parseDouble(sa[4]), Double.parseDouble(sa[5]), Double.parseDouble(sa[6]));
+                iRules.put(r.iParent, r);
+            }
+        } catch(IOException ioe) {
+            ioe.printStackTrace();
+        } catch(NumberFormatException nfe) {
+            nfe.printStackTrace();
+        } finally {
+            close(br);
+        }
+    }
+
+    // only the first letter of a sulston name is used
+    private void readSulstonRules() {
+        BufferedReader br = open("/org/rhwlab/snight/namesHash.txt");
+        if (br == null) return;
+        String [] sa = new String[2];
+        try {
+            String s;
+            while ((s = br.readLine()) != null) {
+                if (s.length() == 0) continue;
+                if (fields(s, ',', sa) < sa.length || sa[1].length() == 0) continue;
+                iSulston.put(sa[0].intern(), sa[1].substring(0, 1).intern());
+            }
+        } catch(IOException ioe) {
+            ioe.printStackTrace();
+        } finally {
+            close(br);
+        }
+    }
+
+    private static BufferedReader open(String name) {
+        URL url = AceTree.class.getResource(name);
+        if (url == null) {
+            println("DivisionRules, missing, " + name);
+            return null;
+        }
+        try {
+            InputStream istream = url.openStream();
+            return new BufferedReader(new InputStreamReader(istream));
+        } catch(IOException ioe) {
+            ioe.printStackTrace();
+            return null;
+        }
+    }
+
+    private static void close(BufferedReader br) {
+        try {
+            br.close();
+        } catch(IOException ioe) {
+        }
+    }
+
+    /**
+     * splits s at sep into the first sa.length fields
+     * @return number of fields found
+     */
+    private static int fields(String s, char sep, String [] sa) {
+        int k = 0;
+        int start = 0;
+        while (k < sa.length) {
+            int end = s.indexOf(sep, start);
+            if (end < 0) {
+                sa[k++] = s.substring(start);
+                break;
+            }
+            sa[k++] = s.substring(start, end);
+            start = end + 1;
+        }
+        return k;
+    }
+
+    private static final int
+         MAXFALLBACK = 100000
+        ;
+
+    private static void println(String s) {System.out.println(s);}
+}
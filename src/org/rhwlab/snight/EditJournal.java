@@ -0,0 +1,517 @@
+package org.rhwlab.snight;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.Vector;
+
+/**
+ * undo/redo journal for edits of the nuclei_record
+ * <br>NucleiMgr.markDirty() is called by the nucedit dialogs just before
+ * they change a time point; the journal then keeps a packed copy of that
+ * time point (once per edit) and when the edit is closed, which happens
+ * when the tree is rebuilt, only the fields that differ are kept as
+ * row, field, before and after values
+ * <br>the copies only live while an edit is open, so the journal itself
+ * grows with the size of the edits, not with the size of the series
+ * <br>every edit, undo and redo is also appended to a file when one is set,
+ * so the edits made since the last save can be replayed after a crash;
+ * the file is only created with the first edit, so viewing a series
+ * writes nothing next to it
+ * <br>a journal an earlier session left behind is not touched until it is
+ * replayed with recover() or the first edit of this session needs the
+ * file; it is then kept as name.recovered
+ *
+ * Created: Oct. 2026
+ */
+public class EditJournal {
+    private NucleiMgr                   iNucleiMgr;
+    private NucleusStore                iNames;
+    private TreeMap<Integer, NucleusStore.Timepoint> iOpen;
+    private Vector<Entry>               iEntries;
+    private int                         iPosition;
+    private boolean                     iApplying;
+    private File                        iFile;
+    private DataOutputStream            iOut;
+    private boolean                     iStarted;
+
+    public EditJournal(NucleiMgr nucleiMgr) {
+        iNucleiMgr = nucleiMgr;
+        iNames = new NucleusStore();
+        iEntries = new Vector<Entry>();
+        iPosition = 0;
+    }
+
+    /**
+     * keeps the state of the given time points until the edit is closed
+     * <br>a time point already copied in the open edit is left alone so
+     * the copy is always from before the first change
+     * @param first 0-based index of the first time point
+     * @param last 0-based index of the last time point, inclusive
+     */
+    public synchronized void touch(int first, int last) {
+        if (iApplying) return;
+        Vector<Vector<Nucleus>> record = iNucleiMgr.getNucleiRecord();
+        if (record == null) return;
+        if (iOpen == null) iOpen = new TreeMap<Integer, NucleusStore.Timepoint>();
+        for (int i = Math.max(first, 0); i <= last && i < record.size(); i++) {
+            if (iOpen.containsKey(i)) continue;
+            Vector<Nucleus> nuclei = record.elementAt(i);
+            if (nuclei != null) iOpen.put(i, iNames.pack(nuclei));
+        }
+    }
+
+    /**
+     * closes the open edit, keeping only what changed
+     * @param label what the edit was, for the file
+     * @return true if there was a change to keep
+     */
+    public synchronized boolean commit(String label) {
+        if (iOpen == null) return false;
+        Vector<Vector<Nucleus>> record = iNucleiMgr.getNucleiRecord();
+        Vector<Delta> deltas = new Vector<Delta>();
+        Nucleus a = new Nucleus();
+        Iterator<Map.Entry<Integer, NucleusStore.Timepoint>> it = iOpen.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<Integer, NucleusStore.Timepoint> me = it.next();
+            int time = me.getKey();
+            NucleusStore.Timepoint tp = me.getValue();
+            Vector<Nucleus> nuclei = record.elementAt(time);
+            Delta d = new Delta(time, tp.size(), nuclei.size());
+            int common = Math.min(tp.size(), nuclei.size());
+            for (int j=0; j < common; j++) {
+                tp.get(j, a);
+                Nucleus b = nuclei.elementAt(j);
+                for (int f=0; f < FIELDS; f++) {
+                    int va = value(a, f);
+                    int vb = value(b, f);
+                    if (va != vb) d.add(j, f, va, vb);
+                }
+            }
+            // rows that exist on one side only are kept whole
+            for (int j = common; j < tp.size(); j++) {
+                tp.get(j, a);
+                for (int f=0; f < FIELDS; f++) d.add(j, f, value(a, f), 0);
+            }
+            for (int j = common; j < nuclei.size(); j++) {
+                Nucleus b = nuclei.elementAt(j);
+                for (int f=0; f < FIELDS; f++) d.add(j, f, 0, value(b, f));
+            }
+            if (d.iCount > 0 || d.iFromSize != d.iToSize) deltas.add(d.trim());
+        }
+        iOpen = null;
+        if (deltas.size() == 0) return false;
+        label += " " + (deltas.firstElement().iTime + 1) + "-" + (deltas.lastElement().iTime + 1);
+        Entry e = new Entry(label, deltas);
+        iEntries.setSize(iPosition);
+        iEntries.add(e);
+        if (iEntries.size() > MAXENTRIES) iEntries.remove(0);
+        iPosition = iEntries.size();
+        write(e, false);
+        return true;
+    }
+
+    public synchronized boolean canUndo() {
+        return iPosition > 0 || iOpen != null;
+    }
+
+    public synchronized boolean canRedo() {
+        return iPosition < iEntries.size() && iOpen == null;
+    }
+
+    /**
+     * puts back the fields changed by the last edit
+     * <br>the time points are marked dirty; the caller rebuilds the tree
+     * @return NOTHING, PATCHED, or REMOVED when rows were taken out of
+     * the nuclei_record, in which case the tree must be built anew
+     */
+    public synchronized int undo() {
+        commit("edit");
+        if (iPosition == 0) return NOTHING;
+        Entry e = iEntries.elementAt(--iPosition);
+        write(e, true);
+        return apply(e, true);
+    }
+
+    /**
+     * applies again the last edit taken back by undo()
+     * @return NOTHING, PATCHED or REMOVED as for undo()
+     */
+    public synchronized int redo() {
+        if (!canRedo()) return NOTHING;
+        Entry e = iEntries.elementAt(iPosition++);
+        write(e, false);
+        return apply(e, false);
+    }
+
+    public synchronized String getUndoLabel() {
+        return iPosition > 0 ? iEntries.elementAt(iPosition - 1).iLabel : null;
+    }
+
+    public synchronized String getRedoLabel() {
+        return iPosition < iEntries.size() ? iEntries.elementAt(iPosition).iLabel : null;
+    }
+
+    private int apply(Entry e, boolean backwards) {
+        Vector<Vector<Nucleus>> record = iNucleiMgr.getNucleiRecord();
+        boolean removed = false;
+        iApplying = true;
+        try {
+            for (int i=0; i < e.iDeltas.size(); i++) {
+                Delta d = e.iDeltas.elementAt(i);
+                Vector<Nucleus> nuclei = record.elementAt(d.iTime);
+                int size = backwards ? d.iFromSize : d.iToSize;
+                if (nuclei.size() > size) {
+                    nuclei.setSize(size);
+                    removed = true;
+                }
+                while (nuclei.size() < size) nuclei.add(new Nucleus());
+                for (int k=0; k < d.iCount; k++) {
+                    int row = d.iCodes[k] >>> 5;
+                    if (row >= size) continue;
+                    setValue(nuclei.elementAt(row), d.iCodes[k] & 31, backwards ? d.iBefore[k] : d.iAfter[k]);
+                }
+                iNucleiMgr.markDirty(d.iTime + 1);
+            }
+        } finally {
+            iApplying = false;
+        }
+        return removed ? REMOVED : PATCHED;
+    }
+
+    /**
+     * sets the file the edits will be written to; nothing is written
+     * until the first edit
+     * @param file the journal file, null to stop writing one
+     */
+    public synchronized void setFile(File file) {
+        close();
+        iFile = file;
+        iStarted = false;
+    }
+
+    public synchronized File getFile() {
+        return iFile;
+    }
+
+    /**
+     * @return the journal an earlier session left and did not save, or null
+     */
+    public synchronized File getEarlier() {
+        if (iFile == null) return null;
+        if (!iStarted && iFile.length() > 4) return iFile;
+        File recovered = new File(iFile.getPath() + RECOVERED);
+        return recovered.exists() ? recovered : null;
+    }
+
+    /**
+     * replays the journal of an earlier session, see replay()
+     * <br>the earlier journal is deleted once its edits are applied
+     * @return the number of records applied, -1 if there is no earlier journal
+     */
+    public synchronized int recover() throws IOException {
+        File earlier = getEarlier();
+        if (earlier == null) return -1;
+        // the file is about to be written with the edits replayed, move the earlier one aside first
+        if (earlier.equals(iFile)) earlier = keepEarlier();
+        if (earlier == null) return -1;
+        int count = replay(earlier);
+        if (count > 0) earlier.delete();
+        return count;
+    }
+
+    /**
+     * empties the journal file, for use once the nuclei were saved
+     * <br>the undo history in memory is kept; a journal of an earlier
+     * session is left alone until this session edits
+     */
+    public synchronized void saved() {
+        if (iStarted) start();
+    }
+
+    // the first write of the session: keeps an earlier journal, then starts the file afresh
+    private void start() {
+        close();
+        iStarted = true;
+        if (iFile == null) return;
+        if (iFile.length() > 4) keepEarlier();
+        try {
+            iOut = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(iFile)));
+            iOut.writeInt(MAGIC);
+            iOut.flush();
+        } catch(IOException ioe) {
+            System.out.println("EditJournal, cannot write " + iFile + CS + ioe);
+            iOut = null;
+        }
+    }
+
+    private File keepEarlier() {
+        File recovered = new File(iFile.getPath() + RECOVERED);
+        recovered.delete();
+        if (!iFile.renameTo(recovered)) {
+            System.out.println("EditJournal, cannot keep the earlier journal " + iFile);
+            return null;
+        }
+        System.out.println("EditJournal, unsaved edits of an earlier session kept in " + recovered);
+        return recovered;
+    }
+
+    public synchronized void close() {
+        if (iOut == null) return;
+        try {
+            iOut.close();
+        } catch(IOException ioe) {
+            System.out.println("EditJournal close: " + ioe);
+        }
+        iOut = null;
+    }
+
+    /**
+     * applies the records of a journal file to the nuclei_record
+     * <br>each record becomes an edit that can be undone; replay stops
+     * at the first record that does not fit the current time points
+     * @param file a file written by this class
+     * @return the number of records applied, -1 if the file is not a journal
+     */
+    public synchronized int replay(File file) throws IOException {
+        commit("edit");
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        int count = 0;
+        try {
+            if (in.readInt() != MAGIC) return -1;
+            Vector<Vector<Nucleus>> record = iNucleiMgr.getNucleiRecord();
+            while (true) {
+                Entry e;
+                try {
+                    e = read(in);
+                } catch(EOFException eof) {
+                    break;
+                }
+                boolean fits = true;
+                for (int i=0; i < e.iDeltas.size() && fits; i++) {
+                    Delta d = e.iDeltas.elementAt(i);
+                    fits = d.iTime < record.size() && record.elementAt(d.iTime).size() == d.iFromSize;
+                }
+                if (!fits) {
+                    System.out.println("EditJournal replay: record " + count + " does not fit, stopping");
+                    break;
+                }
+                apply(e, false);
+                iEntries.setSize(iPosition);
+                iEntries.add(e);
+                iPosition = iEntries.size();
+                write(e, false);
+                count++;
+            }
+        } finally {
+            in.close();
+        }
+        return count;
+    }
+
+    // one record per applied change, already turned the way it was applied
+    private void write(Entry e, boolean backwards) {
+        if (!iStarted) start();
+        if (iOut == null) return;
+        try {
+            iOut.writeUTF((backwards ? UNDO : "") + e.iLabel);
+            iOut.writeInt(e.iDeltas.size());
+            for (int i=0; i < e.iDeltas.size(); i++) {
+                Delta d = e.iDeltas.elementAt(i);
+                iOut.writeInt(d.iTime);
+                iOut.writeInt(backwards ? d.iToSize : d.iFromSize);
+                iOut.writeInt(backwards ? d.iFromSize : d.iToSize);
+                iOut.writeInt(d.iCount);
+                for (int k=0; k < d.iCount; k++) {
+                    int f = d.iCodes[k] & 31;
+                    iOut.writeInt(d.iCodes[k]);
+                    writeValue(f, backwards ? d.iAfter[k] : d.iBefore[k]);
+                    writeValue(f, backwards ? d.iBefore[k] : d.iAfter[k]);
+                }
+            }
+            iOut.flush();
+        } catch(IOException ioe) {
+            System.out.println("EditJournal, stopped writing " + iFile + CS + ioe);
+            close();
+        }
+    }
+
+    private void writeValue(int f, int v) throws IOException {
+        if (!isName(f)) {
+            iOut.writeInt(v);
+            return;
+        }
+        String s = iNames.name(v);
+        iOut.writeBoolean(s != null);
+        if (s != null) iOut.writeUTF(s);
+    }
+
+    private Entry read(DataInputStream in) throws IOException {
+        String label = in.readUTF();
+        int n = in.readInt();
+        Vector<Delta> deltas = new Vector<Delta>(n);
+        for (int i=0; i < n; i++) {
+            Delta d = new Delta(in.readInt(), in.readInt(), in.readInt());
+            int count = in.readInt();
+            for (int k=0; k < count; k++) {
+                int code = in.readInt();
+                int before = readValue(in, code & 31);
+                int after = readValue(in, code & 31);
+                d.add(code >>> 5, code & 31, before, after);
+            }
+            deltas.add(d.trim());
+        }
+        return new Entry(label, deltas);
+    }
+
+    private int readValue(DataInputStream in, int f) throws IOException {
+        if (!isName(f)) return in.readInt();
+        if (!in.readBoolean()) return NucleusStore.NONAME;
+        return iNames.nameId(in.readUTF());
+    }
+
+    private static boolean isName(int f) {
+        return f == IDENTITY || f == ASSIGNEDID || f == HASHKEY;
+    }
+
+    // every field as an int, names through the dictionary
+    private int value(Nucleus n, int f) {
+        switch (f) {
+            case 0: return n.index;
+            case 1: return n.status;
+            case 2: return n.predecessor;
+            case 3: return n.successor1;
+            case 4: return n.successor2;
+            case 5: return n.x;
+            case 6: return n.y;
+            case 7: return Float.floatToIntBits(n.z);
+            case 8: return n.size;
+            case 9: return n.weight;
+            case 10: return n.rweight;
+            case 11: return n.rsum;
+            case 12: return n.rcount;
+            case 13: return n.rwraw;
+            case 14: return n.rwcorr1;
+            case 15: return n.rwcorr2;
+            case 16: return n.rwcorr3;
+            case 17: return n.rwcorr4;
+            case IDENTITY: return iNames.nameId(n.identity);
+            case ASSIGNEDID: return iNames.nameId(n.assignedID);
+            case HASHKEY: return iNames.nameId(n.hashKey);
+            default: return n.id_tag;
+        }
+    }
+
+    private void setValue(Nucleus n, int f, int v) {
+        switch (f) {
+            case 0: n.index = v; break;
+            case 1: n.status = v; break;
+            case 2: n.predecessor = v; break;
+            case 3: n.successor1 = v; break;
+            case 4: n.successor2 = v; break;
+            case 5: n.x = v; break;
+            case 6: n.y = v; break;
+            case 7: n.z = Float.intBitsToFloat(v); break;
+            case 8: n.size = v; break;
+            case 9: n.weight = v; break;
+            case 10: n.rweight = v; break;
+            case 11: n.rsum = v; break;
+            case 12: n.rcount = v; break;
+            case 13: n.rwraw = v; break;
+            case 14: n.rwcorr1 = v; break;
+            case 15: n.rwcorr2 = v; break;
+            case 16: n.rwcorr3 = v; break;
+            case 17: n.rwcorr4 = v; break;
+            case IDENTITY: n.identity = iNames.name(v); break;
+            case ASSIGNEDID: n.assignedID = iNames.name(v); break;
+            case HASHKEY: n.hashKey = iNames.name(v); break;
+            default: n.id_tag = (char)v;
+        }
+    }
+
+    private static class Entry {
+        String          iLabel;
+        Vector<Delta>   iDeltas;
+
+        Entry(String label, Vector<Delta> deltas) {
+            iLabel = label;
+            iDeltas = deltas;
+        }
+    }
+
+    // the changes to one time point, as row << 5 | field codes
+    private static class Delta {
+        int     iTime;
+        int     iFromSize;
+        int     iToSize;
+        int     iCount;
+        int []  iCodes;
+        int []  iBefore;
+        int []  iAfter;
+
+        Delta(int time, int fromSize, int toSize) {
+            iTime = time;
+            iFromSize = fromSize;
+            iToSize = toSize;
+            iCodes = new int[8];
+            iBefore = new int[8];
+            iAfter = new int[8];
+        }
+
+        void add(int row, int field, int before, int after) {
+            if (iCount == iCodes.length) grow(iCount * 2);
+            iCodes[iCount] = row << 5 | field;
+            iBefore[iCount] = before;
+            iAfter[iCount] = after;
+            iCount++;
+        }
+
+        Delta trim() {
+            if (iCount < iCodes.length) grow(iCount);
+            return this;
+        }
+
+        private void grow(int n) {
+            int [] c = new int[n];
+            int [] b = new int[n];
+            int [] a = new int[n];
+            System.arraycopy(iCodes, 0, c, 0, iCount);
+            System.arraycopy(iBefore, 0, b, 0, iCount);
+            System.arraycopy(iAfter, 0, a, 0, iCount);
+            iCodes = c;
+            iBefore = b;
+            iAfter = a;
+        }
+    }
+
+    public static final int
+         NOTHING = -1
+        ,PATCHED = 0
+        ,REMOVED = 1
+        ,MAXENTRIES = 1000
+        ;
+
+    private static final int
+         FIELDS = 22
+        ,IDENTITY = 18
+        ,ASSIGNEDID = 19
+        ,HASHKEY = 20
+        ,MAGIC = 0x414a4e31
+        ;
+
+    private static final String
+         CS = ", "
+        ,UNDO = "undo "
+        ,RECOVERED = ".recovered"
+        ;
+
+}
@@ -1,8 +1,12 @@
 package org.rhwlab.snight;
 
 import java.io.PrintWriter;
-import java.util.Collections;
+import java.util.BitSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
 import java.util.Vector;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 import org.rhwlab.utils.EUtils;
 
@@ -27,6 +31,13 @@ public class Identity3 {
     private MeasureCSV measureCSV;
     private CanonicalTransform canTransform;
 
+    // which forward pass identityAssignment ran last and where it started
+    private int iRenameRule;
+    private int iRenameFrom;
+    private int iRenameEnd;
+
+    private static int cNamingEngine = Identity3.PARALLEL;
+
     public Identity3(NucleiMgr nucleiMgr) {
         iNucleiMgr = nucleiMgr;
         if (nucleiMgr.isNucConfigNull()) { // the legacy loading pipeline
@@ -62,6 +73,7 @@ public class Identity3 {
     @SuppressWarnings("unused")
 	public void identityAssignment() {
     	println("Starting identity assingment in Identity3");
+    	iRenameRule = 0;
     	if (iNamingMethod == MANUAL) {
     		println("identityAssignment, skip naming due to MANUAL naming method");
     		return;
@@ -116,6 +128,8 @@ public class Identity3 {
         }
         println("identityAssignment, reached code end, " + iStartingIndex + CS + start[0]);
         // we are going to assign Nuc names from here on by a simple method
+        iRenameRule = STANDARD;
+        iRenameFrom = start[0];
         for (int i = start[0]; i < iEndingIndex; i++) {
             Vector<Nucleus> nuclei = nuclei_record.elementAt(i);
             Vector<Nucleus> nuclei_prev = null;
@@ -125,39 +139,158 @@ public class Identity3 {
             for (int j = 0; j < nuc_ct; j++) {
                 nucleij = nuclei.elementAt(j);
                 if (nucleij.status == Nucleus.NILLI) continue;
-                if (nuclei_prev != null && nucleij.predecessor != Nucleus.NILLI) {
-                    Nucleus pred = nuclei_prev.elementAt(nucleij.predecessor - 1);
-                    if (pred.successor2 == Nucleus.NILLI) {
-                     	nucleij.identity = pred.identity;
-                       	continue;
-                    } else {
-                       	// case of dividing pred
-                       	Nucleus sister = nuclei.get(pred.successor2 - 1);
-                       	
-                       	// Nucleus doesn't have forced name
-                       	if (!nucleij.assignedID.equals(""))
-                       		nucleij.identity = nucleij.assignedID;
-                       	else {
-	                       	nucleij.identity = pred.identity + "a";
-	                       	sister.identity = pred.identity + "p";
-                       	}
-                       	continue;
-                    }
-                } else {
-                 	// this is the first encounter of this nucleus
-                   	//nucleij.identity = NUC + iNucCount++;
-                	//println("identityAssignment adding nuc, " + nucleij);
-                	if (!nucleij.assignedID.equals(""))
-                		nucleij.identity = nucleij.assignedID;
-                	else {
-	                	int z = Math.round(nucleij.z);
-	                	nucleij.identity = NUC + EUtils.makePaddedInt(i + 1) + "_" + z + "_" + nucleij.x + "_" + nucleij.y;
-	                	//println("identityAssignment, adding nuc, " + nucleij);
-                	}
-                }
+                nameNucleus(i, nucleij, nuclei, nuclei_prev);
            }
         }
     }
+
+    // the simple method: a nucleus takes its name from its predecessor
+    private void nameNucleus(int i, Nucleus nucleij, Vector<Nucleus> nuclei, Vector<Nucleus> nuclei_prev) {
+        if (nuclei_prev != null && nucleij.predecessor != Nucleus.NILLI) {
+            Nucleus pred = nuclei_prev.elementAt(nucleij.predecessor - 1);
+            if (pred.successor2 == Nucleus.NILLI) {
+             	nucleij.identity = pred.identity;
+            } else {
+               	// case of dividing pred
+               	Nucleus sister = nuclei.get(pred.successor2 - 1);
+               	
+               	// Nucleus doesn't have forced name
+               	if (!nucleij.assignedID.equals(""))
+               		nucleij.identity = nucleij.assignedID;
+               	else {
+                   	nucleij.identity = pred.identity + "a";
+                   	sister.identity = pred.identity + "p";
+               	}
+            }
+        } else {
+         	// this is the first encounter of this nucleus
+           	//nucleij.identity = NUC + iNucCount++;
+        	//println("identityAssignment adding nuc, " + nucleij);
+        	if (!nucleij.assignedID.equals(""))
+        		nucleij.identity = nucleij.assignedID;
+        	else {
+            	int z = Math.round(nucleij.z);
+            	nucleij.identity = NUC + EUtils.makePaddedInt(i + 1) + "_" + z + "_" + nucleij.x + "_" + nucleij.y;
+            	//println("identityAssignment, adding nuc, " + nucleij);
+        	}
+        }
+    }
+
+    /**
+     * names only the nuclei an edit can have renamed
+     * <br>the non forced names of the edited time points are cleared as
+     * clearAllNames would, then the forward pass identityAssignment last
+     * used is run again from the time point before the first edit, but
+     * only over the edited time points and over nuclei whose predecessor
+     * got a new name; it stops as soon as no name changes any more
+     * <br>the division rules of the last full pass are reused
+     * @param edited 0-based indices of the edited time points
+     * @param touched receives the 0-based indices where a name changed
+     * @return false if the edit reaches back into the time points named by
+     * InitialID, identityAssignment must then be run instead
+     */
+    public boolean identityUpdate(BitSet edited, BitSet touched) {
+        if (iNamingMethod == MANUAL) return true;
+        int first = edited.nextSetBit(0);
+        if (first < 0) return true;
+        if (iRenameRule == NEWCANONICAL) {
+            if (iDivisionCaller == null || first < iRenameFrom) return false;
+        } else if (iRenameRule == STANDARD) {
+            if (first < iRenameFrom) return false;
+        } else return false;
+        int last = edited.length() - 1;
+
+        // the names as they were before the edited time points were cleared
+        IdentityHashMap<Nucleus, String> old = new IdentityHashMap<Nucleus, String>();
+        for (int k = first; k >= 0 && k < nuclei_record.size() && k < iEndingIndex; k = edited.nextSetBit(k + 1)) {
+            if (iStartingIndex > 1 && k == iStartingIndex - 1) continue;
+            Vector<Nucleus> nuclei = nuclei_record.elementAt(k);
+            for (int j=0; j < nuclei.size(); j++) {
+                Nucleus n = nuclei.elementAt(j);
+                if (n.assignedID.length() > 0) continue;
+                old.put(n, n.identity);
+                n.identity = "";
+            }
+        }
+
+        // nuclei of the previous time point whose name changed
+        IdentityHashMap<Nucleus, Boolean> cur = new IdentityHashMap<Nucleus, Boolean>();
+        if (iRenameRule == NEWCANONICAL) {
+            int m = Math.min(nuclei_record.size(), iRenameEnd);
+            for (int i = Math.max(first, iRenameFrom); i <= m; i++) {
+                if (i > last + 1 && cur.isEmpty()) break;
+                Vector<Nucleus> nuclei = nuclei_record.elementAt(i - 1);
+                Vector<Nucleus> nextNuclei = null;
+                if (i < m) nextNuclei = nuclei_record.elementAt(i);
+                boolean all = edited.get(i - 1) || edited.get(i);
+                IdentityHashMap<Nucleus, Boolean> next = new IdentityHashMap<Nucleus, Boolean>();
+                for (int j = 0; j < nuclei.size(); j++) {
+                    Nucleus parent = nuclei.elementAt(j);
+                    if (parent.status == Nucleus.NILLI) continue;
+                    if (!all && !cur.containsKey(parent)) continue;
+                    Nucleus dau1 = null;
+                    Nucleus dau2 = null;
+                    if (nextNuclei != null && parent.successor1 > 0) dau1 = nextNuclei.elementAt(parent.successor1 - 1);
+                    if (nextNuclei != null && parent.successor2 > 0) dau2 = nextNuclei.elementAt(parent.successor2 - 1);
+                    String was = oldName(old, parent);
+                    String was1 = oldName(old, dau1);
+                    String was2 = oldName(old, dau2);
+                    nameSuccessors(i, parent, nextNuclei);
+                    if (!parent.identity.equals(was)) touched.set(i - 1);
+                    if (renamed(dau1, was1, next)) touched.set(i);
+                    if (renamed(dau2, was2, next)) touched.set(i);
+                }
+                cur = next;
+            }
+        } else {
+            for (int i = Math.max(first, iRenameFrom); i < iEndingIndex && i < nuclei_record.size(); i++) {
+                if (i > last && cur.isEmpty()) break;
+                Vector<Nucleus> nuclei = nuclei_record.elementAt(i);
+                Vector<Nucleus> nuclei_prev = null;
+                if (i > 0) nuclei_prev = nuclei_record.elementAt(i - 1);
+                boolean all = edited.get(i);
+                IdentityHashMap<Nucleus, Boolean> next = new IdentityHashMap<Nucleus, Boolean>();
+                for (int j = 0; j < nuclei.size(); j++) {
+                    Nucleus n = nuclei.elementAt(j);
+                    if (n.status == Nucleus.NILLI) continue;
+                    Nucleus pred = null;
+                    if (nuclei_prev != null && n.predecessor != Nucleus.NILLI)
+                        pred = nuclei_prev.elementAt(n.predecessor - 1);
+                    if (!all && (pred == null || !cur.containsKey(pred))) continue;
+                    Nucleus sister = null;
+                    if (pred != null && pred.successor2 != Nucleus.NILLI) sister = nuclei.get(pred.successor2 - 1);
+                    String was = oldName(old, n);
+                    String wasSister = oldName(old, sister);
+                    nameNucleus(i, n, nuclei, nuclei_prev);
+                    if (renamed(n, was, next)) touched.set(i);
+                    if (renamed(sister, wasSister, next)) touched.set(i);
+                }
+                cur = next;
+            }
+        }
+        // a cleared nucleus nobody named again has changed too
+        Iterator<Nucleus> it = old.keySet().iterator();
+        while (it.hasNext()) {
+            Nucleus n = it.next();
+            if (!n.identity.equals(old.get(n))) {
+                touched.or(edited);
+                break;
+            }
+        }
+        return true;
+    }
+
+    private static String oldName(IdentityHashMap<Nucleus, String> old, Nucleus n) {
+        if (n == null) return null;
+        if (old.containsKey(n)) return old.get(n);
+        return n.identity;
+    }
+
+    private static boolean renamed(Nucleus n, String was, IdentityHashMap<Nucleus, Boolean> changed) {
+        if (n == null || n.identity.equals(was)) return false;
+        changed.put(n, Boolean.TRUE);
+        return true;
+    }
     
     @SuppressWarnings("unused")
 	private void clearAllNames() {
@@ -192,8 +325,6 @@ public class Identity3 {
 
     @SuppressWarnings({ "unused", "rawtypes", "unchecked" })
 	public void useCanonicalRules(int [] start, int [] lineage_ct_p) {
-		Vector report = new Vector();
-
         double zPixRes;
         int iEndingIndex;
 
@@ -215,101 +346,250 @@ public class Identity3 {
 
         int k = iNucleiMgr.getNucleiRecord().size();
         int m = Math.min(k, iEndingIndex);
+        iRenameRule = NEWCANONICAL;
+        iRenameFrom = start[0];
+        iRenameEnd = m;
         newLine();
         System.out.println("useCanonicalRules starting at: " + start[0] + CS + iEndingIndex);
-        int nuc_ct = 0;
-        int i;
-        Vector<Nucleus> nuclei = null;
-        int breakout = 0;
+        if (cNamingEngine == VERIFY) {
+            verifyNaming(start[0], m);
+        } else if (cNamingEngine == SERIAL || ForkJoinPool.getCommonPoolParallelism() < 2
+                || !nameInParallel(start[0], m)) {
+            nameInSequence(start[0], m);
+        }
+    }
 
+    // the time points from-1 to m-1 one after the other, parent by parent
+    private void nameInSequence(int from, int m) {
         /*
          * Iterate over all time points 
          */
-        for (i = start[0]; i <= m; i++) {
-        	//System.out.println("\n----------------------------\n"+
-        						//"usecanonicalrules "+i);
-            if (breakout > 0) {
-                System.out.println("Identity3.useCanonicalRules exiting, breakout=" + breakout);
-                System.exit(0);
-                break;
-            }
-            
+        for (int i = from; i <= m; i++) {
             // access nuclei at given time point (0 indexed --> subtract 1)
-            nuclei = nuclei_record.elementAt(i - 1);
-            nuc_ct = nuclei.size();
-            Nucleus parent = null;
-            Vector<Nucleus> nextNuclei;
-            if (i < m) {
-                nextNuclei = nuclei_record.elementAt(i);
-            } else {
-                nextNuclei = null;
-            }
+            Vector<Nucleus> nuclei = nuclei_record.elementAt(i - 1);
+            Vector<Nucleus> nextNuclei = null;
+            if (i < m) nextNuclei = nuclei_record.elementAt(i);
             
             /*
              * Iterate over the nuclei at the current time point
              */
-            for (int j = 0; j < nuc_ct; j++) {
-                parent = nuclei.elementAt(j);
-                //println("useCanonicalRules, " + i + CS + j + CS + parent.identity);
-                if (parent.status == Nucleus.NILLI) {
-                	//println("useCanonicalRules, XXX, " + i + CS + j + CS + parent.identity + CS + parent.status);
-                	continue;
+            for (int j = 0; j < nuclei.size(); j++) {
+                Nucleus parent = nuclei.elementAt(j);
+                if (parent.status == Nucleus.NILLI) continue;
+                nameSuccessors(i, parent, nextNuclei);
+            }
+        }
+    }
+
+    /**
+     * names the same nuclei as nameInSequence, a subtree per task
+     * <br>a nucleus is only named by its parent, or by itself when it has no
+     * parent, and what a parent calls its daughters depends on nothing but its
+     * own name and their positions; so once the founders are named by
+     * InitialID, each track, and after a division each daughter, can be named
+     * on its own, in any order, with the same result
+     * <br>the subtrees are the tracks alive at from-1 and any track that
+     * starts later without a parent; every task writes only the nuclei of its
+     * own subtree, so nothing has to be merged afterwards
+     * @return false, having named nothing, if some nucleus is the successor
+     * of two parents, or a successor index is out of range; the names then
+     * depend on the order and only nameInSequence gives the right ones
+     */
+    private boolean nameInParallel(int from, int m) {
+        if (from < 1 || from > m) return true;
+        // the nuclei some parent names, a parent names them only up to m-1
+        BitSet [] named = new BitSet[m];
+        for (int t = from - 1; t < m; t++) named[t] = new BitSet();
+        for (int t = from - 1; t < m - 1; t++) {
+            Vector<Nucleus> nuclei = nuclei_record.elementAt(t);
+            int next = nuclei_record.elementAt(t + 1).size();
+            for (int j = 0; j < nuclei.size(); j++) {
+                Nucleus parent = nuclei.elementAt(j);
+                if (parent.status == Nucleus.NILLI) continue;
+                int s1 = parent.successor1;
+                int s2 = parent.successor2;
+                if (s1 > 0 && s2 > 0) {
+                    if (!claim(named[t + 1], s1, next) || !claim(named[t + 1], s2, next)) return false;
+                } else if (s1 > 0) {
+                    if (!claim(named[t + 1], s1, next)) return false;
                 }
-                String pname = parent.identity;
-               
-                /* NUC NAMEING PROCEDURE MODIFIED 20100630
-                 * 
-                 * REVISED July 14, 2016 --> @author Braden Katzman
-                 */
-                if (pname == null || pname.length() == 0) {
-                    //pname = NUC + iNucCount++;
-                	int z = Math.round(parent.z);
-                	
-                	// Try to only use the Nuc... name when there is no forced name in assignedID
-                	if (parent.assignedID.equals(""))
-                		pname = NUC + EUtils.makePaddedInt(i) + "_" + z + "_" + parent.x + "_" + parent.y;
-                	else {
-                		pname = parent.assignedID;
-                	}
-                	
-                	// set the identity to the Nuc... name or the assignedID
-                    parent.identity = pname;
-                	//println("useCanoncalRules, adding nuc, " + parent.identity);
+            }
+        }
+        Vector<SubtreeNamer> tasks = new Vector<SubtreeNamer>();
+        for (int t = from - 1; t < m; t++) {
+            Vector<Nucleus> nuclei = nuclei_record.elementAt(t);
+            for (int j = 0; j < nuclei.size(); j++) {
+                if (named[t].get(j) || nuclei.elementAt(j).status == Nucleus.NILLI) continue;
+                tasks.add(new SubtreeNamer(t, j, m));
+            }
+        }
+        ForkJoinPool.commonPool().invoke(new RecursiveAction() {
+            @Override
+            protected void compute() {
+                invokeAll(tasks);
+            }
+        });
+        return true;
+    }
+
+    private static boolean claim(BitSet named, int successor, int size) {
+        if (successor > size || named.get(successor - 1)) return false;
+        named.set(successor - 1);
+        return true;
+    }
+
+    /**
+     * names a track from the nucleus at index j of time point t (0-based)
+     * as nameInSequence would, and forks a task for each daughter when the
+     * track divides
+     */
+    private class SubtreeNamer extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        int iT;
+        int iJ;
+        int iM;
+
+        SubtreeNamer(int t, int j, int m) {
+            iT = t;
+            iJ = j;
+            iM = m;
+        }
+
+        @Override
+        protected void compute() {
+            int t = iT;
+            Nucleus n = nuclei_record.elementAt(t).elementAt(iJ);
+            while (n.status != Nucleus.NILLI) {
+                Vector<Nucleus> nextNuclei = null;
+                if (t + 1 < iM) nextNuclei = nuclei_record.elementAt(t + 1);
+                nameSuccessors(t + 1, n, nextNuclei);
+                if (nextNuclei == null || n.successor1 <= 0) return;
+                if (n.successor2 > 0) {
+                    invokeAll(new SubtreeNamer(t + 1, n.successor1 - 1, iM),
+                            new SubtreeNamer(t + 1, n.successor2 - 1, iM));
+                    return;
                 }
-               
-                
-                // check if valid division
-                if (nextNuclei != null) {
-                    boolean good = (parent.successor1 > 0 && parent.successor2 > 0);
-                    if (!good) {
-                        // not dividing so just extend the name
-                        if (parent.successor1 > 0) {
-                            Nucleus n = nextNuclei.elementAt(parent.successor1 - 1);
-                            if (n.assignedID.length() <= 0) {
-                                //println("useCanonicalRules, XXXXXX, " + i + CS + j + CS + parent.identity + CS + parent.status + CS + n.identity);
-                                //println("useCanonicalRules, XXXXXX, "+parent.identity);
-                                n.identity = pname;
-                            }
-                        }
-                        continue;
-                    }
+                n = nextNuclei.elementAt(n.successor1 - 1);
+                t++;
+            }
+        }
+    }
+
+    /**
+     * names the time points both ways and prints every nucleus whose names
+     * differ; the names of nameInSequence are the ones kept
+     */
+    private void verifyNaming(int from, int m) {
+        if (from < 1 || from > m) return;
+        String [][] before = names(from, m);
+        long t = System.currentTimeMillis();
+        boolean parallel = nameInParallel(from, m);
+        long tParallel = System.currentTimeMillis() - t;
+        String [][] byParallel = names(from, m);
+        for (int i = from - 1; i < m; i++) {
+            Vector<Nucleus> nuclei = nuclei_record.elementAt(i);
+            for (int j = 0; j < nuclei.size(); j++) nuclei.elementAt(j).identity = before[i][j];
+        }
+        t = System.currentTimeMillis();
+        nameInSequence(from, m);
+        long tSerial = System.currentTimeMillis() - t;
+        if (!parallel) {
+            println("Identity3.verifyNaming, the lineage does not split into subtrees, named in sequence");
+            return;
+        }
+        int diffs = 0;
+        int count = 0;
+        for (int i = from - 1; i < m; i++) {
+            Vector<Nucleus> nuclei = nuclei_record.elementAt(i);
+            for (int j = 0; j < nuclei.size(); j++) {
+                count++;
+                String serial = nuclei.elementAt(j).identity;
+                String other = byParallel[i][j];
+                if (serial == null ? other == null : serial.equals(other)) continue;
+                diffs++;
+                println("Identity3.verifyNaming, differs, " + (i + 1) + CS + (j + 1) + CS + serial + CS + other);
+            }
+        }
+        println("Identity3.verifyNaming, " + diffs + " of " + count + " names differ, serial "
+                + tSerial + " ms, parallel " + tParallel + " ms");
+    }
 
-                    // this canonical parent is dividing
-                    Nucleus dau1 = nextNuclei.elementAt(parent.successor1 - 1);
-                    Nucleus dau2 = nextNuclei.elementAt(parent.successor2 - 1);
-                    //System.out.println("about to assign names to children of: " + parent.identity + " - " + dau1.identity + ", " + dau2.identity);
-
-                    /*
-                     * Assign names via DivisionCaller
-                     */
-                    if (parent != null && dau1 != null && dau2 != null) {
-                        iDivisionCaller.assignNames(parent, dau1, dau2);
-                        usePreassignedID(dau1, dau2);
+    private String [][] names(int from, int m) {
+        String [][] names = new String[m][];
+        for (int i = from - 1; i < m; i++) {
+            Vector<Nucleus> nuclei = nuclei_record.elementAt(i);
+            names[i] = new String[nuclei.size()];
+            for (int j = 0; j < nuclei.size(); j++) names[i][j] = nuclei.elementAt(j).identity;
+        }
+        return names;
+    }
+
+    /**
+     * how useCanonicalRules names the nuclei, for the whole process
+     * @param engine SERIAL, PARALLEL or VERIFY
+     */
+    public static void setNamingEngine(int engine) {
+        cNamingEngine = engine;
+    }
+
+    public static int getNamingEngine() {
+        return cNamingEngine;
+    }
+
+    // the canonical rules: a parent passes its name on, or has its daughters named by the DivisionCaller
+    private void nameSuccessors(int i, Nucleus parent, Vector<Nucleus> nextNuclei) {
+        String pname = parent.identity;
+       
+        /* NUC NAMEING PROCEDURE MODIFIED 20100630
+         * 
+         * REVISED July 14, 2016 --> @author Braden Katzman
+         */
+        if (pname == null || pname.length() == 0) {
+            //pname = NUC + iNucCount++;
+        	int z = Math.round(parent.z);
+        	
+        	// Try to only use the Nuc... name when there is no forced name in assignedID
+        	if (parent.assignedID.equals(""))
+        		pname = NUC + EUtils.makePaddedInt(i) + "_" + z + "_" + parent.x + "_" + parent.y;
+        	else {
+        		pname = parent.assignedID;
+        	}
+        	
+        	// set the identity to the Nuc... name or the assignedID
+            parent.identity = pname;
+        	//println("useCanoncalRules, adding nuc, " + parent.identity);
+        }
+       
+        
+        // check if valid division
+        if (nextNuclei != null) {
+            boolean good = (parent.successor1 > 0 && parent.successor2 > 0);
+            if (!good) {
+                // not dividing so just extend the name
+                if (parent.successor1 > 0) {
+                    Nucleus n = nextNuclei.elementAt(parent.successor1 - 1);
+                    if (n.assignedID.length() <= 0) {
+                        //println("useCanonicalRules, XXXXXX, " + i + CS + j + CS + parent.identity + CS + parent.status + CS + n.identity);
+                        //println("useCanonicalRules, XXXXXX, "+parent.identity);
+                        n.identity = pname;
                     }
                 }
+                return;
+            }
+
+            // this canonical parent is dividing
+            Nucleus dau1 = nextNuclei.elementAt(parent.successor1 - 1);
+            Nucleus dau2 = nextNuclei.elementAt(parent.successor2 - 1);
+            //System.out.println("about to assign names to children of: " + parent.identity + " - " + dau1.identity + ", " + dau2.identity);
+
+            /*
+             * Assign names via DivisionCaller
+             */
+            if (parent != null && dau1 != null && dau2 != null) {
+                iDivisionCaller.assignNames(parent, dau1, dau2);
+                usePreassignedID(dau1, dau2);
             }
         }
-        Collections.sort(report);
     }
 
     private void usePreassignedID(Nucleus dau1, Nucleus dau2) {
@@ -490,6 +770,19 @@ public class Identity3 {
          ,NEWCANONICAL = 3
 	 ;
 
+    // the naming engines of useCanonicalRules
+    public static final int
+         SERIAL = 0
+        ,PARALLEL = 1
+        ,VERIFY = 2
+        ;
+
+    public static final String [] NAMING_ENGINE = {
+         "serial"
+        ,"parallel"
+        ,"verify"
+    };
+
 
     private static final String
 		 NUC = "Nuc"
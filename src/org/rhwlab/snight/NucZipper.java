@@ -7,7 +7,9 @@ package org.rhwlab.snight;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
-//import java.nio.file.Files;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.BitSet;
 import java.util.Vector;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipOutputStream;
@@ -47,56 +49,75 @@ public class NucZipper {
         }
 
         try {
-        	
-            FileOutputStream fos = new FileOutputStream(tempFile);
-            ZipOutputStream zos = new ZipOutputStream(fos);
             Vector nuclei = nucleiMgr.getNucleiRecord();
-            
-            // Find first entry of nonempty sub-vector starting from last index
-            int lastEmptyIndex = nuclei.size()-1;
-            for (int i = lastEmptyIndex; i >= 0; i--) {
-            	Vector currentVec = (Vector)nuclei.elementAt(i);
-            	if (!currentVec.isEmpty()) {
-            		lastEmptyIndex = i+1;
-            		break;
-            	}
-            }
-            System.out.println("Last non-empty index in nuclei_record: "+lastEmptyIndex);
-            
+
             // given long save time I'm changing behavior to use actual last loaded nucleus
-            // for (int i=0; i < nuclei.size(); i++) {
-            
-        	for (int i = 0; i < lastEmptyIndex; i++) {
-            	// I'm not sure why the above was replaced with the below
-            	// but I'm putting it back in an attempt to iteratively edit 
-            	//large data files (which requires them to be saved out fully	
-        		// for (int i=0; i <nucleiMgr.getiEndingIndex(); i++) {
-                String ename = nucDir + "t" + EUtils.makePaddedInt(i + 1) + "-nuclei";
-                zos.putNextEntry(new ZipEntry(ename));
-                String s;
-                for (int j=0; j < ((Vector)nuclei.elementAt(i)).size(); j++) {
-                    Nucleus n = (Nucleus)((Vector)nuclei.elementAt(i)).elementAt(j);
-                    s = formatNucleus(j, n);
-                    byte [] b = s.getBytes();
-                    zos.write(b, 0, b.length);
-                }
-                zos.closeEntry();
+            int lastEmptyIndex = getLastNonEmpty(nuclei, nuclei.size());
+            System.out.println("Last non-empty index in nuclei_record: "+lastEmptyIndex);
+
+            // the format follows the file saved to, a .zip name always gets the text zip legacy tools read
+            ZipNuclei zn = nucleiMgr.getZipNuclei();
+            boolean binary = NucleiArchive.isArchive(targetFile)
+                    || targetFile.getName().endsWith(NucleiArchive.EXT);
+            // the parameters of a series opened from an archive are the ones it stored
+            Vector parameterFileInfo = nucleiMgr.getParameterFileInfo();
+            if (parameterFileInfo == null && zn != null && zn.getArchive() != null) {
+                parameterFileInfo = zn.getArchive().getParameterLines();
             }
-            addParameters(zos, nucleiMgr);
-            zos.close();
-            ChannelCopy.transferCopy(tempFile, targetFile);
-            //Files.deleteIfExists(tempFile.toPath());
-            try {
-            	tempFile.delete();
-            } catch (Exception e) {
-            	System.out.println("Failed to delete temp file.");
+            if (binary) {
+                NucleiArchive.write(tempFile, nuclei, lastEmptyIndex, nucleiMgr.getParameterEntry(), parameterFileInfo);
+            } else {
+                // when saving over the zip we last read or wrote only the edited time points are formatted
+                boolean done = false;
+                BitSet dirty = nucleiMgr.getDirtyIndices(targetFile, lastEmptyIndex);
+                if (dirty != null) {
+                    ZipRewriter zr = null;
+                    try {
+                        zr = new ZipRewriter(targetFile);
+                        int k = zr.write(tempFile, nuclei, lastEmptyIndex, nucDir,
+                                nucleiMgr.getParameterEntry(), parameterFileInfo, dirty);
+                        System.out.println("NucZipper rewrote " + k + " of " + lastEmptyIndex + " time points");
+                        done = true;
+                    } catch(IOException ioe) {
+                        System.out.println("NucZipper incremental save failed, writing everything: " + ioe);
+                    } finally {
+                        if (zr != null) zr.close();
+                    }
+                }
+                if (!done) writeZip(tempFile, nuclei, lastEmptyIndex, nucDir, nucleiMgr.getParameterEntry(),
+                        parameterFileInfo);
             }
+            replace(tempFile, targetFile);
+            if (binary) nucleiMgr.setSaved(null, 0);
+            else nucleiMgr.setSaved(targetFile, lastEmptyIndex);
         } catch(IOException ioe) {
             System.out.println("NucZipper exception: " + ioe);
             new AceTreeHelp("/org/rhwlab/help/messages/PermissionError.html", 200, 200);
         }
     }
     
+    /**
+     * moves the freshly written temp file over the target
+     * <br>a rename within the directory is atomic, so a crash leaves either
+     * the old or the new file; where that is not possible the temp file
+     * is copied over the target as before
+     */
+    private static void replace(File tempFile, File targetFile) throws IOException {
+        try {
+            Files.move(tempFile.toPath(), targetFile.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            return;
+        } catch(IOException ioe) {
+            System.out.println("NucZipper atomic rename failed, copying: " + ioe);
+        }
+        ChannelCopy.transferCopy(tempFile, targetFile);
+        try {
+            tempFile.delete();
+        } catch (Exception e) {
+            System.out.println("Failed to delete temp file.");
+        }
+    }
+
     private String addExtNumber(String path) {
     	// Find indices of parenthesis
     	int left = path.indexOf("(");
@@ -121,13 +142,57 @@ public class NucZipper {
 		return path;
     }
 
-    @SuppressWarnings("unused")
-	private void addParameters(ZipOutputStream zos, NucleiMgr nucleiMgr)
+    /**
+     * finds how many time points need to be written
+     * @param nuclei the nuclei_record
+     * @param size number of entries of the record to consider
+     * @return one past the last non-empty time point
+     */
+    public static int getLastNonEmpty(Vector nuclei, int size) {
+        // Find first entry of nonempty sub-vector starting from last index
+        int lastEmptyIndex = size-1;
+        for (int i = lastEmptyIndex; i >= 0; i--) {
+            Vector currentVec = (Vector)nuclei.elementAt(i);
+            if (!currentVec.isEmpty()) {
+                lastEmptyIndex = i+1;
+                break;
+            }
+        }
+        return lastEmptyIndex;
+    }
+
+    /**
+     * writes the text zip: one tN-nuclei entry per time point and the parameters entry
+     * @param file destination, overwritten
+     * @param nuclei the nuclei_record
+     * @param count number of time points to write
+     * @param nucDir directory of the nuclei entries, with trailing slash
+     * @param parameterEntry name of the parameters entry
+     * @param parameterFileInfo lines of the parameters entry, may be null
+     */
+    public static void writeZip(File file, Vector nuclei, int count, String nucDir,
+            String parameterEntry, Vector parameterFileInfo) throws IOException {
+        FileOutputStream fos = new FileOutputStream(file);
+        ZipOutputStream zos = new ZipOutputStream(fos);
+        for (int i = 0; i < count; i++) {
+            String ename = nucDir + "t" + EUtils.makePaddedInt(i + 1) + "-nuclei";
+            zos.putNextEntry(new ZipEntry(ename));
+            String s;
+            for (int j=0; j < ((Vector)nuclei.elementAt(i)).size(); j++) {
+                Nucleus n = (Nucleus)((Vector)nuclei.elementAt(i)).elementAt(j);
+                s = formatNucleus(j, n);
+                byte [] b = s.getBytes();
+                zos.write(b, 0, b.length);
+            }
+            zos.closeEntry();
+        }
+        addParameters(zos, parameterEntry, parameterFileInfo);
+        zos.close();
+    }
+
+    private static void addParameters(ZipOutputStream zos, String ename, Vector parameterFileInfo)
                     throws IOException {
-        ZipNuclei zn = nucleiMgr.getZipNuclei();
-        String ename = nucleiMgr.getParameterEntry();
         zos.putNextEntry(new ZipEntry(ename));
-        Vector parameterFileInfo = nucleiMgr.getParameterFileInfo();
         String s = null;
         if (parameterFileInfo != null) {
             for (int i=0; i < parameterFileInfo.size(); i++) {
@@ -141,7 +206,62 @@ public class NucZipper {
     }
 
 
-    private String formatNucleus(int j, Nucleus n) {
+    /**
+     * a hash of everything formatNucleus writes for one time point but the names
+     * <br>NucleiMgr keeps one per time point of the saved file, with its
+     * names(), to find the time points changed since, including the
+     * renames and relinks made by a rebuild
+     * @param nuclei one time point of the nuclei_record
+     * @return long fingerprint
+     */
+    public static long fingerprint(Vector nuclei) {
+        long h = nuclei.size();
+        for (int j=0; j < nuclei.size(); j++) {
+            Nucleus n = (Nucleus)nuclei.elementAt(j);
+            h = mix(h, n.status > 0 ? 1 : 0);
+            h = mix(h, n.predecessor);
+            h = mix(h, n.successor1);
+            h = mix(h, n.successor2);
+            h = mix(h, n.x);
+            h = mix(h, n.y);
+            h = mix(h, Float.floatToIntBits(n.z));
+            h = mix(h, n.size);
+            h = mix(h, n.weight);
+            h = mix(h, n.rweight);
+            h = mix(h, n.rsum);
+            h = mix(h, n.rcount);
+            h = mix(h, n.rwraw);
+            h = mix(h, n.rwcorr1);
+            h = mix(h, n.rwcorr2);
+            h = mix(h, n.rwcorr3);
+            h = mix(h, n.rwcorr4);
+        }
+        return h;
+    }
+
+    /**
+     * the names formatNucleus writes for one time point, identity and
+     * assignedID of each nucleus in turn; they are kept and compared as
+     * strings since two names can share a hash
+     * @param nuclei one time point of the nuclei_record
+     * @return String [] of twice the size of nuclei
+     */
+    public static String [] names(Vector nuclei) {
+        String [] names = new String[2 * nuclei.size()];
+        for (int j=0; j < nuclei.size(); j++) {
+            Nucleus n = (Nucleus)nuclei.elementAt(j);
+            names[2 * j] = n.identity;
+            names[2 * j + 1] = n.assignedID;
+        }
+        return names;
+    }
+
+    private static long mix(long h, int v) {
+        h = (h ^ v) * 0x100000001B3L;
+        return h ^ (h >>> 29);
+    }
+
+    static String formatNucleus(int j, Nucleus n) {
         StringBuffer sb = new StringBuffer();
         sb.append(String.valueOf(j + 1) + CS);
         int status = 0;
@@ -0,0 +1,461 @@
+package org.rhwlab.snight;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Vector;
+import java.util.zip.ZipEntry;
+
+/**
+ * a compact binary alternative to the text -nuclei entries of a nuclei zip
+ * <br>layout (big endian):
+ * <br>  MAGIC
+ * <br>  the records of every time point, RECORD bytes per nucleus
+ * <br>  the name dictionary: count, then one string per name
+ * <br>  the parameter entry name, then the line count and one string per
+ *        line of the parameters entry
+ * <br>  the footer: time point count, then (long offset, int count) per time point,
+ *        then the dictionary offset
+ * <br>  the footer offset (long) followed by MAGIC again
+ * <br>a record holds index, status, predecessor, successor1, successor2,
+ * x, y, z (float), size, weight, rweight, rsum, rcount, rwraw,
+ * rwcorr1..4 and the dictionary ids of identity and assignedID, so the
+ * archive carries everything the text format carries, parameters included
+ * <br>a string is its length in bytes (int) followed by its UTF-8 bytes, so
+ * any name a zip entry can hold goes through unchanged; offsets are longs
+ * <br>the footer, dictionary and parameters are read when the archive is
+ * opened, a time point is read from the file when it is asked for; the
+ * file is held open until close() and opened again if needed after it
+ * <br>NucleiMgr and NucleiMgrHeadless pick the format up through ZipNuclei,
+ * which checks the leading magic rather than the file name; NucZipper
+ * writes this format when the file saved to is an archive or has the
+ * EXT extension, and the text zip otherwise
+ * <br>main() converts in both directions so tools that expect the
+ * text zip (StarryNite and others) keep working
+ *
+ * Created: Oct. 2026
+ */
+public class NucleiArchive {
+    private File                iFile;
+    private FileChannel         iChannel;
+    private long []             iOffsets;
+    private int []              iCounts;
+    private String []           iNames;
+    private String              iParameterEntry;
+    private Vector<String>      iParameterLines;
+    private NucleusStore        iInternStore;
+    private String []           iInterned;
+
+    /**
+     * opens the archive and reads its footer, dictionary and parameters
+     * @param file an archive written by write()
+     * @throws IOException if the file is not an archive
+     */
+    public NucleiArchive(File file) throws IOException {
+        iFile = file;
+        try {
+            long end = getChannel().size();
+            if (end < 2 * MAGIC.length + 8 || !hasMagic(read(0, MAGIC.length), 0)) {
+                throw new IOException("not a nuclei archive: " + file);
+            }
+            ByteBuffer tail = read(end - MAGIC.length - 8, MAGIC.length + 8);
+            if (!hasMagic(tail, 8)) throw new IOException("not a nuclei archive: " + file);
+            long footer = tail.getLong(0);
+            if (footer < MAGIC.length || footer > end - MAGIC.length - 8) {
+                throw new IOException("bad footer offset in nuclei archive: " + file);
+            }
+            ByteBuffer bb = read(footer, (int)(end - MAGIC.length - 8 - footer));
+            int n = bb.getInt();
+            iOffsets = new long[n];
+            iCounts = new int[n];
+            for (int i=0; i < n; i++) {
+                iOffsets[i] = bb.getLong();
+                iCounts[i] = bb.getInt();
+            }
+            long dictionary = bb.getLong();
+            if (dictionary < MAGIC.length || dictionary > footer) {
+                throw new IOException("bad dictionary offset in nuclei archive: " + file);
+            }
+            bb = read(dictionary, (int)(footer - dictionary));
+            iNames = new String[bb.getInt()];
+            for (int i=0; i < iNames.length; i++) {
+                iNames[i] = readString(bb);
+            }
+            iParameterEntry = readString(bb);
+            iParameterLines = new Vector<String>();
+            int lines = bb.getInt();
+            for (int i=0; i < lines; i++) iParameterLines.add(readString(bb));
+        } catch(RuntimeException re) {
+            // a truncated or garbled archive runs off the end of a buffer
+            close();
+            throw new IOException("cannot read nuclei archive: " + file + CS + re);
+        } catch(IOException ioe) {
+            close();
+            throw ioe;
+        }
+    }
+
+    public File getFile() {
+        return iFile;
+    }
+
+    /**
+     * lets go of the file; a later readTimepoint() opens it again
+     */
+    public synchronized void close() {
+        if (iChannel == null) return;
+        try {
+            iChannel.close();
+        } catch(IOException ioe) {
+            println("NucleiArchive, cannot close, " + iFile + CS + ioe);
+        }
+        iChannel = null;
+    }
+
+    private synchronized FileChannel getChannel() throws IOException {
+        if (iChannel == null) iChannel = new RandomAccessFile(iFile, "r").getChannel();
+        return iChannel;
+    }
+
+    // length bytes from position, positional reads so several threads can share the channel
+    private ByteBuffer read(long position, int length) throws IOException {
+        ByteBuffer bb = ByteBuffer.allocate(length);
+        FileChannel fc = getChannel();
+        while (bb.hasRemaining()) {
+            if (fc.read(bb, position + bb.position()) < 0) {
+                throw new IOException("nuclei archive ends early: " + iFile);
+            }
+        }
+        bb.flip();
+        return bb;
+    }
+
+    /**
+     * @return number of time points stored, including empty ones
+     */
+    public int getTimepointCount() {
+        return iCounts.length;
+    }
+
+    /**
+     * @param i 0-based time index
+     * @return number of nuclei stored for that time
+     */
+    public int getCount(int i) {
+        if (i < 0 || i >= iCounts.length) return 0;
+        return iCounts[i];
+    }
+
+    public String getParameterEntry() {
+        return iParameterEntry;
+    }
+
+    /**
+     * @return the lines of the parameters entry, empty if none were stored
+     */
+    public Vector<String> getParameterLines() {
+        return new Vector<String>(iParameterLines);
+    }
+
+    /**
+     * decodes one time point
+     * @param i 0-based time index
+     * @param store dictionary the names are interned into, may be null
+     * @return Vector of new Nucleus objects, empty if the time is not stored
+     * @throws IOException if the file cannot be read
+     */
+    public Vector<Nucleus> readTimepoint(int i, NucleusStore store) throws IOException {
+        int count = getCount(i);
+        Vector<Nucleus> v = new Vector<Nucleus>(count);
+        if (count == 0) return v;
+        String [] names = internedNames(store);
+        ByteBuffer bb = read(iOffsets[i], count * RECORD);
+        for (int j=0; j < count; j++) {
+            Nucleus n = new Nucleus();
+            n.index = bb.getInt();
+            n.status = bb.getInt();
+            n.predecessor = bb.getInt();
+            n.successor1 = bb.getInt();
+            n.successor2 = bb.getInt();
+            n.x = bb.getInt();
+            n.y = bb.getInt();
+            n.z = bb.getFloat();
+            n.size = bb.getInt();
+            n.weight = bb.getInt();
+            n.rweight = bb.getInt();
+            n.rsum = bb.getInt();
+            n.rcount = bb.getInt();
+            n.rwraw = bb.getInt();
+            n.rwcorr1 = bb.getInt();
+            n.rwcorr2 = bb.getInt();
+            n.rwcorr3 = bb.getInt();
+            n.rwcorr4 = bb.getInt();
+            n.identity = name(names, bb.getInt());
+            n.assignedID = name(names, bb.getInt());
+            v.add(n);
+        }
+        return v;
+    }
+
+    /**
+     * reads every time point into the nuclei_record
+     * <br>time points beyond the size of the record are skipped
+     * @param record the nuclei_record, already sized by fakeNuclei()
+     * <br>the file is let go afterwards, everything is in the record
+     * @param store dictionary the names are interned into
+     * @return the largest 0-based time index that was stored, -1 if none
+     */
+    public int read(Vector<Vector<Nucleus>> record, NucleusStore store) {
+        int last = -1;
+        int n = Math.min(record.size(), getTimepointCount());
+        try {
+            for (int i=0; i < n; i++) {
+                record.setElementAt(readTimepoint(i, store), i);
+                last = i;
+            }
+        } catch(IOException ioe) {
+            println("NucleiArchive, cannot read, " + iFile + CS + ioe);
+        } finally {
+            close();
+        }
+        return last;
+    }
+
+    private synchronized String [] internedNames(NucleusStore store) {
+        if (store == null) return iNames;
+        if (store != iInternStore) {
+            iInterned = new String[iNames.length];
+            for (int k=0; k < iNames.length; k++) iInterned[k] = store.intern(iNames[k]);
+            iInternStore = store;
+        }
+        return iInterned;
+    }
+
+    private static String name(String [] names, int id) {
+        if (id == NucleusStore.NONAME) return null;
+        return names[id];
+    }
+
+    /**
+     * writes the first count time points of the record as an archive
+     * <br>like NucZipper the index written is the position in the Vector
+     * @param file destination, overwritten
+     * @param record the nuclei_record
+     * @param count number of time points to write
+     * @param parameterEntry name of the parameters entry of the text zip
+     * @param parameterFileInfo lines of the parameters entry, may be null
+     */
+    public static void write(File file, Vector<Vector<Nucleus>> record, int count, String parameterEntry,
+            Vector parameterFileInfo) throws IOException {
+        HashMap<String, Integer> ids = new HashMap<String, Integer>();
+        ArrayList<String> names = new ArrayList<String>();
+        long [] offsets = new long[count];
+        int [] counts = new int[count];
+        DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16));
+        try {
+            // DataOutputStream.size() is an int and stops counting at 2GB
+            long position = MAGIC.length;
+            dos.write(MAGIC);
+            for (int i=0; i < count; i++) {
+                Vector<Nucleus> v = record.elementAt(i);
+                offsets[i] = position;
+                counts[i] = v.size();
+                position += (long)v.size() * RECORD;
+                for (int j=0; j < v.size(); j++) {
+                    Nucleus n = v.elementAt(j);
+                    dos.writeInt(j + 1);
+                    dos.writeInt(n.status);
+                    dos.writeInt(n.predecessor);
+                    dos.writeInt(n.successor1);
+                    dos.writeInt(n.successor2);
+                    dos.writeInt(n.x);
+                    dos.writeInt(n.y);
+                    dos.writeFloat(n.z);
+                    dos.writeInt(n.size);
+                    dos.writeInt(n.weight);
+                    dos.writeInt(n.rweight);
+                    dos.writeInt(n.rsum);
+                    dos.writeInt(n.rcount);
+                    dos.writeInt(n.rwraw);
+                    dos.writeInt(n.rwcorr1);
+                    dos.writeInt(n.rwcorr2);
+                    dos.writeInt(n.rwcorr3);
+                    dos.writeInt(n.rwcorr4);
+                    dos.writeInt(nameId(ids, names, n.identity));
+                    dos.writeInt(nameId(ids, names, n.assignedID));
+                }
+            }
+            long dictionary = position;
+            dos.writeInt(names.size());
+            position += 4;
+            for (int i=0; i < names.size(); i++) {
+                position += writeString(dos, names.get(i));
+            }
+            position += writeString(dos, parameterEntry == null ? "" : parameterEntry);
+            int lines = parameterFileInfo == null ? 0 : parameterFileInfo.size();
+            dos.writeInt(lines);
+            position += 4;
+            for (int i=0; i < lines; i++) {
+                position += writeString(dos, String.valueOf(parameterFileInfo.elementAt(i)));
+            }
+            long footer = position;
+            dos.writeInt(count);
+            for (int i=0; i < count; i++) {
+                dos.writeLong(offsets[i]);
+                dos.writeInt(counts[i]);
+            }
+            dos.writeLong(dictionary);
+            dos.writeLong(footer);
+            dos.write(MAGIC);
+        } finally {
+            dos.close();
+        }
+    }
+
+    private static int writeString(DataOutputStream dos, String s) throws IOException {
+        byte [] b = s.getBytes(StandardCharsets.UTF_8);
+        dos.writeInt(b.length);
+        dos.write(b);
+        return 4 + b.length;
+    }
+
+    private static int nameId(HashMap<String, Integer> ids, ArrayList<String> names, String name) {
+        if (name == null) return NucleusStore.NONAME;
+        Integer id = ids.get(name);
+        if (id == null) {
+            id = names.size();
+            names.add(name);
+            ids.put(name, id);
+        }
+        return id;
+    }
+
+    /**
+     * @param file any file
+     * @return true if the file starts with the archive magic
+     */
+    public static boolean isArchive(File file) {
+        if (file == null || !file.isFile() || file.length() < MAGIC.length) return false;
+        byte [] b = new byte[MAGIC.length];
+        try {
+            FileInputStream fis = new FileInputStream(file);
+            try {
+                int k = 0;
+                while (k < b.length) {
+                    int r = fis.read(b, k, b.length - k);
+                    if (r < 0) return false;
+                    k += r;
+                }
+            } finally {
+                fis.close();
+            }
+        } catch(IOException ioe) {
+            return false;
+        }
+        return hasMagic(ByteBuffer.wrap(b), 0);
+    }
+
+    private static boolean hasMagic(ByteBuffer bb, int position) {
+        for (int i=0; i < MAGIC.length; i++) {
+            if (bb.get(position + i) != MAGIC[i]) return false;
+        }
+        return true;
+    }
+
+    private static String readString(ByteBuffer bb) throws IOException {
+        int len = bb.getInt();
+        if (len < 0 || len > bb.remaining()) throw new IOException("bad string length in nuclei archive: " + len);
+        byte [] b = new byte[len];
+        bb.get(b);
+        return new String(b, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * lossless conversion between the text zip and the archive
+     * <br>usage: NucleiArchive -tobinary nuclei.zip nuclei.acenuc
+     * <br>       NucleiArchive -totext nuclei.acenuc nuclei.zip
+     */
+    public static void main(String[] args) {
+        if (args.length != 3) {
+            println("usage: NucleiArchive -tobinary|-totext source destination");
+            return;
+        }
+        try {
+            if (args[0].equals("-tobinary")) toBinary(new File(args[1]), new File(args[2]));
+            else if (args[0].equals("-totext")) toText(new File(args[1]), new File(args[2]));
+            else println("unknown option: " + args[0]);
+        } catch(IOException ioe) {
+            ioe.printStackTrace();
+        }
+    }
+
+    public static void toBinary(File zip, File archive) throws IOException {
+        ZipNuclei zn = new ZipNuclei(zip.getPath());
+        if (zn.iZipFile == null) throw new IOException("cannot open " + zip);
+        Vector<Vector<Nucleus>> record = new Vector<Vector<Nucleus>>();
+        for (int i=0; i < NucleiMgr.LAST; i++) record.add(new Vector<Nucleus>());
+        int last = new NucleiReader(zn, new NucleusStore()).read(record);
+        String parameterEntry = "";
+        Vector<String> parameterLines = new Vector<String>();
+        Enumeration<? extends ZipEntry> e = zn.iZipFile.entries();
+        while (e.hasMoreElements()) {
+            ZipEntry ze = e.nextElement();
+            if (!ze.getName().startsWith(NucleiMgr.PARAMETERS + "/")) continue;
+            parameterEntry = ze.getName();
+            parameterLines.clear();
+            BufferedReader br = new BufferedReader(new InputStreamReader(zn.iZipFile.getInputStream(ze)));
+            try {
+                String s;
+                while ((s = br.readLine()) != null) parameterLines.add(s);
+            } finally {
+                br.close();
+            }
+        }
+        zn.close();
+        write(archive, record, NucZipper.getLastNonEmpty(record, last + 1), parameterEntry, parameterLines);
+        println("wrote " + archive + CS + (last + 1) + " time points");
+    }
+
+    public static void toText(File archive, File zip) throws IOException {
+        NucleiArchive na = new NucleiArchive(archive);
+        Vector<Vector<Nucleus>> record = new Vector<Vector<Nucleus>>();
+        try {
+            for (int i=0; i < na.getTimepointCount(); i++) record.add(na.readTimepoint(i, null));
+        } finally {
+            na.close();
+        }
+        String parameterEntry = na.getParameterEntry();
+        if (parameterEntry.length() == 0) parameterEntry = NucleiMgr.PARAMETERS + "/" + NucleiMgr.PARAMETERS;
+        NucZipper.writeZip(zip, record, record.size(), "nuclei/", parameterEntry, na.getParameterLines());
+        println("wrote " + zip + CS + record.size() + " time points");
+    }
+
+    /**
+     * file name extension suggested for archives; detection uses MAGIC only
+     */
+    public static final String EXT = ".acenuc";
+
+    private static final byte [] MAGIC = {'A', 'C', 'E', 'N', 'U', 'C', '0', '1'};
+
+    /**
+     * bytes of one nucleus record
+     */
+    private static final int
+         RECORD = 80
+        ;
+
+    private static final String CS = ", ";
+    private static void println(String s) {System.out.println(s);}
+}
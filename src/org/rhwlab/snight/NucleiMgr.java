@@ -7,12 +7,12 @@ package org.rhwlab.snight;
 
 import java.io.File;
 import java.io.FileOutputStream;
+import java.io.IOException;
 import java.io.PrintWriter;
-import java.util.Enumeration;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Hashtable;
-import java.util.StringTokenizer;
 import java.util.Vector;
-import java.util.zip.ZipEntry;
 
 import org.rhwlab.acetree.NucUtils;
 import org.rhwlab.image.ImageWindow;
@@ -20,6 +20,7 @@ import org.rhwlab.image.ParsingLogic.ImageNameLogic;
 import org.rhwlab.nucedit.EditLog;
 import org.rhwlab.tree.AncesTree;
 import org.rhwlab.tree.Cell;
+import org.rhwlab.tree.CellTracks;
 import org.rhwlab.utils.C;
 import org.rhwlab.utils.EUtils;
 import org.rhwlab.utils.Log;
@@ -40,6 +41,17 @@ public class NucleiMgr {
     FileOutputStream 		iFOS;
     PrintWriter 			iPWriter;
     Vector<Vector<Nucleus>> nuclei_record;
+    NucleusStore            iNucleusStore;
+    BitSet                  iDirty;
+    BitSet                  iEdited;
+    Hashtable<Integer, NucleusGrid> iGrids;
+    Hashtable<Integer, NucleusNames> iNameIndex;
+    EditJournal             iJournal;
+    Vector<NucleiListener>  iListeners;
+    long []                 iSavedPrints;
+    String [][]             iSavedNames;
+    File                    iSavedFile;
+    long                    iSavedModified;
     String 					iParameterEntry;
     int 					iStartingIndex;
     int 					iEndingIndex;
@@ -106,7 +118,7 @@ public class NucleiMgr {
         // primary purpose of the manager now is to process the nuclei
         // the normal case where we have zipped nuclei to use
         iZipNuclei = new ZipNuclei(nucConfig.getZipFileName());
-        if (iZipNuclei.iZipFile != null) {
+        if (iZipNuclei.isOpen()) {
 
             // NUCLEI PROCESSING
             long timeStart = System.nanoTime();
@@ -217,7 +229,7 @@ public class NucleiMgr {
             // the normal case where we have zipped nuclei to use
             iParameters = dummyParameters();
             iZipNuclei = new ZipNuclei(zipPath);
-            if (iZipNuclei.iZipFile != null) {
+            if (iZipNuclei.isOpen()) {
                 //20060719 readEditLog(iEditLog);
 
                 // NUCLEI PROCESSING
@@ -284,7 +296,7 @@ public class NucleiMgr {
             // the normal case where we have zipped nuclei to us
             iParameters = dummyParameters();
             iZipNuclei = new ZipNuclei(zipPath);
-            if (iZipNuclei.iZipFile != null) {
+            if (iZipNuclei.isOpen()) {
                 //20060719 readEditLog(iEditLog);
                 long timeStart = System.nanoTime();
                 readNuclei();
@@ -434,92 +446,15 @@ public class NucleiMgr {
         fakeNuclei(); // for memory allocation purposes - I think?
 
         iFakeNuclei = false; //override this param
-        Nucleus n;
-        int debugCount = 0;
-
-        //System.out.println("readNuclei:2 " + iMovie.time_end + CS + iMovie.time_start);
-
-        // iterate over the contents of the zip file
-        Enumeration<? extends ZipEntry> e = zn.iZipFile.entries();
-        //int lastNonEmptyIndex = 0;
-        while (e.hasMoreElements()) {
-            ZipEntry ze = e.nextElement();
-            Vector<Nucleus> v = new Vector<>();
-            String [] saa = zn.parseZipEntry(ze);
-
-            if (saa.length < 2)
-                continue; // maybe a nuclei/ entry
-
-            if (saa[0].equals("nuclei")) {
-                int index = zn.parseZipEntryName(saa[1]) - 1;
-                //System.out.println("Zip index: "+index);
-                if (index < 0)
-                    continue; // probably a nuclei/log entry
-
-                String s = zn.readLine(ze);
-                if (s == null) {
-                    if (nuclei_record.size() > index) {
-                        //System.out.println("setting element in nuc record");
-                        nuclei_record.setElementAt(v, index);
-                        //lastNonEmptyIndex = index;
-                        if (index > iLastNucleiFile)
-                            iLastNucleiFile = index;
-                    }
-                    continue;
-                }
-                boolean newFormat = true;
-                // detect old format by the absence of commas
-                //if (debugCount++ < 10) println("readNuclei: " + s);
-                if (s.indexOf(',') == -1)
-                    newFormat = false;
-                int j = 1;
-                // added code to handle some misformed nuclei files
-                // a little squirrely maybe but it is working
-                while (s != null && s.length() > 10) {
-                    //if (index == 199) println("\n\nREADNUCLEI: " + s);
-                    try {
-                        String [] sa;
-                        if (newFormat)
-                            sa = getTokens(s, 0);
-                        else
-                            sa = getTokens(s);
-                        if (sa[0] != null
-                                && (sa[0].length() > 0
-                                && Integer.parseInt(sa[0]) != j++)) {
-                            break;
-                        }
-                        if (newFormat) {
-                            n = new Nucleus(sa);
-                        	/*
-                        	if (n.identity.isEmpty() || n.identity == null)
-                        		System.out.println("No name for nucleus: "+n);
-                    		*/
-                            //System.out.println("Created nucleus: ("+n.identity+")");
-                        }
-                        else
-                            n = new Nucleus(sa, !newFormat);
-                        v.add(n);
-                        s = zn.readLine(ze);
-                    }
-                    catch(Exception ee) {
-                        System.out.println("readNuclei exception: " + ee);
-                        System.out.println(s);
-                        System.out.println("time=" + index + ", j = " + j);
-                        zn.closeEntry();
-                        ee.printStackTrace();
-                        System.exit(1);
-                        break;
-                    }
-                }
 
-                if (nuclei_record.size() > index) {
-                    nuclei_record.setElementAt(v, index);
-                    if (index > iLastNucleiFile)
-                        iLastNucleiFile = index;
-                }
-                zn.closeEntry();
-            }
-        }
+        // binary archives are decoded directly, text tN-nuclei entries are parsed concurrently
+        int last;
+        if (zn.getArchive() != null)
+            last = zn.getArchive().read(nuclei_record, getNucleusStore());
+        else
+            last = new NucleiReader(zn, getNucleusStore()).read(nuclei_record);
+        if (last > iLastNucleiFile)
+            iLastNucleiFile = last;
 
         if (isNucConfigNull()) {
             println("readNuclei: iEndingIndex=" + iEndingIndex + CS + iLastNucleiFile + CS + nuclei_record.size());
@@ -558,6 +493,10 @@ public class NucleiMgr {
 
         nuclei_record.setSize(newSize);
         println("readNuclei: at end, nuclei_record.size: " + nuclei_record.size());
+        if (zn.getArchive() == null) {
+            setSaved(new File(zn.iZipName), iLastNucleiFile + 1);
+            startJournal(new File(zn.iZipName));
+        }
 
         return nuclei_record.size();
     }
@@ -575,6 +514,135 @@ public class NucleiMgr {
         return nuclei_record.elementAt(i);
     }
 
+    /**
+     * the dictionary of cell names shared by all nuclei of this series
+     * @return NucleusStore
+     */
+    public NucleusStore getNucleusStore() {
+        if (iNucleusStore == null)
+            iNucleusStore = new NucleusStore();
+        return iNucleusStore;
+    }
+
+    /**
+     * records that the nuclei of the given time point were edited
+     * <br>the nucedit dialogs call this so that a save only has to
+     * rewrite the time points that changed
+     * @param time 1-based time
+     */
+    public void markDirty(int time) {
+        markDirty(time, time);
+    }
+
+    /**
+     * to be called before the nuclei are changed, so that the
+     * EditJournal can keep what they were for undo
+     * @param startTime first edited time, 1-based
+     * @param endTime last edited time, inclusive
+     */
+    public void markDirty(int startTime, int endTime) {
+        if (startTime > endTime) {
+            int t = startTime;
+            startTime = endTime;
+            endTime = t;
+        }
+        synchronized (this) {
+            if (iDirty == null) iDirty = new BitSet();
+            iDirty.set(Math.max(startTime - 1, 0), Math.max(endTime, 0));
+            if (iEdited == null) iEdited = new BitSet();
+            iEdited.set(Math.max(startTime - 1, 0), Math.max(endTime, 0));
+            for (int t = startTime; t <= endTime; t++) {
+                if (iGrids != null) iGrids.remove(t);
+                if (iNameIndex != null) iNameIndex.remove(t);
+            }
+        }
+        getJournal().touch(startTime - 1, endTime - 1);
+    }
+
+    /**
+     * @return the undo/redo journal of the edits of this nuclei_record
+     */
+    public synchronized EditJournal getJournal() {
+        if (iJournal == null) iJournal = new EditJournal(this);
+        return iJournal;
+    }
+
+    /**
+     * journals the edits of this session next to the given nuclei zip
+     * <br>the file is only written once there is an edit; a journal left
+     * there by a session that did not save is offered through
+     * getRecoveredJournal() for AceTree.replayJournal()
+     * @param zip the nuclei zip just read
+     */
+    private void startJournal(File zip) {
+        getJournal().setFile(new File(zip.getPath() + JOURNAL));
+    }
+
+    /**
+     * @return the journal of an earlier session that did not save, or null
+     */
+    public File getRecoveredJournal() {
+        return getJournal().getEarlier();
+    }
+
+    /**
+     * finds the time points that differ from what was last read from
+     * or written to the given file
+     * <br>besides the ones marked dirty this compares a fingerprint and
+     * the names of every time point, which catches the renames and
+     * successor changes a rebuild makes downstream of an edit
+     * @param file the file about to be saved to
+     * @param count number of time points that will be written
+     * @return BitSet of 0-based indices, or null if file is not the saved copy
+     */
+    public synchronized BitSet getDirtyIndices(File file, int count) {
+        if (iSavedFile == null || iSavedPrints == null || !sameFile(file, iSavedFile)) return null;
+        // changed behind our back, its entries cannot be reused
+        if (file.lastModified() != iSavedModified) return null;
+        BitSet dirty = new BitSet(count);
+        if (iDirty != null) dirty.or(iDirty);
+        for (int i=0; i < count; i++) {
+            if (dirty.get(i)) continue;
+            if (i >= iSavedPrints.length || i >= nuclei_record.size()
+                    || NucZipper.fingerprint(getElementAt(i)) != iSavedPrints[i]
+                    || !Arrays.equals(NucZipper.names(getElementAt(i)), iSavedNames[i])) dirty.set(i);
+        }
+        dirty.clear(count, Math.max(count, dirty.length()));
+        return dirty;
+    }
+
+    /**
+     * remembers the given file as holding the first count time points
+     * as they are now and clears the dirty marks
+     * @param file the text zip just read or written, null to forget
+     * @param count number of time points in it
+     */
+    public synchronized void setSaved(File file, int count) {
+        iDirty = null;
+        if (file != null && iJournal != null) iJournal.saved();
+        iSavedFile = file;
+        iSavedPrints = null;
+        iSavedNames = null;
+        if (file == null) return;
+        count = Math.min(count, nuclei_record.size());
+        iSavedPrints = new long[count];
+        iSavedNames = new String[count][];
+        for (int i=0; i < count; i++) {
+            Vector<Nucleus> nuclei = nuclei_record.elementAt(i);
+            iSavedPrints[i] = nuclei == null ? 0 : NucZipper.fingerprint(nuclei);
+            iSavedNames[i] = nuclei == null ? null : NucZipper.names(nuclei);
+        }
+        iSavedModified = file.lastModified();
+    }
+
+    private static boolean sameFile(File a, File b) {
+        try {
+            return a.getCanonicalFile().equals(b.getCanonicalFile());
+        } catch(IOException ioe) {
+            return a.getAbsoluteFile().equals(b.getAbsoluteFile());
+        }
+    }
+
     public int getiEndingIndex(){
         return iEndingIndex;
     }
@@ -624,45 +692,36 @@ public class NucleiMgr {
         int k = 0;
 
         // Resize if trying to access a time greater than number of files loaded
-        Vector<Nucleus> nuclei;
         if (nuclei_record.size() < time) {
             nuclei_record.setSize(time);
             for (int i = getiLastNucleiFile()+1; i < time; i++)
                 nuclei_record.setElementAt(new Vector<Nucleus>(), i);
-            nuclei = nuclei_record.elementAt(time);
         }
-        else
-            nuclei = nuclei_record.elementAt(time);
 
-        Nucleus n = null;
-        for (int j=0; j < nuclei.size(); j++) {
-            n = nuclei.elementAt(j);
-            //System.out.println(n);
-            if (n.identity.equals(name)) {
-                k = n.index;
-                //System.out.println("getCellIndex: " + n);
-                break;
-            }
-        }
+        // note that time is used as a 0-based index here
+        NucleusNames names = getNucleusNames(time + 1);
+        Nucleus n = names == null ? null : names.byName(name);
+        if (n != null) k = n.index;
         String s = "(" + k + ")";
         return s;
     }
 
     public Nucleus findClosestNucleusXYZ(int mx, int my, float mz, int time) {
-        Vector<Nucleus> nuclei = nuclei_record.elementAt(time - 1);
+        NucleusGrid grid = getNucleusGrid(time);
+        if (grid == null) return null;
         double x, y, z, r;
         boolean g;
         Nucleus candidate = null;
         double d = 100000;
         double xyz;
-        mz *= getZPixRes();
-        for (int j=0; j < nuclei.size(); j++) {
-            Nucleus n = nuclei.elementAt(j);
-            //System.out.print("findClosest..: " + n);
-            if (n.status == -1) continue;
+        double zPixRes = getZPixRes();
+        mz *= zPixRes;
+        Nucleus [] nuclei = grid.candidates(mx, my, mz, grid.getMaxRadius(), grid.getMaxRadius());
+        for (int j=0; j < nuclei.length; j++) {
+            Nucleus n = nuclei[j];
             x = n.x;
             y = n.y;
-            z = n.z * getZPixRes();
+            z = n.z * zPixRes;
             r = n.size/2.;
             g = Math.abs(x - mx) < r;
             if (!g) continue;
@@ -671,7 +730,6 @@ public class NucleiMgr {
             g = Math.abs(z - mz) < r;
             if (!g) continue;
             xyz = Math.abs(x - mx) + Math.abs(y - my) + Math.abs(z - mz);
-            //System.out.println("findClosest: " + n.identity + CS + xy);
             if (xyz < d) {
                 d = xyz;
                 candidate = n;
@@ -689,24 +747,20 @@ public class NucleiMgr {
      * @return
      */
     public Nucleus findClosestNucleus(int mx, int my, int time) {
-        //System.out.println("findClosestNucleus: " + mx + CS + my + CS + time);
-        Vector<Nucleus> nuclei = nuclei_record.elementAt(time - 1);
+        NucleusGrid grid = getNucleusGrid(time);
+        if (grid == null) return null;
         double x, y, r;
         boolean g;
         Nucleus candidate = null;
         double d = 100000;
         double xy;
-        for (int j=0; j < nuclei.size(); j++) {
-            Nucleus n = nuclei.elementAt(j);
-            //System.out.println("findClosest..: " + n);
-            //System.out.print(n);
-            if (n.status == -1) continue;
+        Nucleus [] nuclei = grid.candidates(mx, my, 0, grid.getMaxRadius(), -1);
+        for (int j=0; j < nuclei.length; j++) {
+            Nucleus n = nuclei[j];
             x = n.x;
             y = n.y;
             r = n.size/2.;
             xy = Math.abs(x - mx) + Math.abs(y - my);
-            //System.out.print("findClosest: "  + j + CS + n.identity + CS + x + CS + y + CS
-            //        + mx + CS + my + CS + r + CS + xy);
             g = Math.abs(x - mx) < r;
             if (!g) continue;
             g = Math.abs(y - my) < r;
@@ -716,7 +770,6 @@ public class NucleiMgr {
                 candidate = n;
             }
         }
-        //System.out.println("returning candidate: " + candidate.identity + CS + candidate.z);
         return candidate;
     }
 
@@ -730,31 +783,25 @@ public class NucleiMgr {
      * @return
      */
     public Nucleus findClosestNucleus(int mx, int my, int mz, int time) {
-        //System.out.println("findClosestNucleus: " + mx + CS + my + CS + mz + CS + time);
         if (time < 1) time = 1;
-        Vector<Nucleus> nuclei = null;
-        try {
-            nuclei = nuclei_record.elementAt(time - 1);
-        } catch(Exception e) {
-            return null;
-        }
+        NucleusGrid grid = getNucleusGrid(time);
+        if (grid == null) return null;
         double x, y, z, r;
         boolean g;
         Nucleus candidate = null;
         double d = 100000;
         double xy;
-        mz *= getZPixRes();
-        for (int j=0; j < nuclei.size(); j++) {
-            Nucleus n = nuclei.elementAt(j);
-            //System.out.print(n);
-            if (n.status == -1) continue;
+        double zPixRes = getZPixRes();
+        mz *= zPixRes;
+        // z is truncated to whole pixels here, so reach one further
+        Nucleus [] nuclei = grid.candidates(mx, my, mz, grid.getMaxRadius(), grid.getMaxRadius() + 1);
+        for (int j=0; j < nuclei.length; j++) {
+            Nucleus n = nuclei[j];
             x = n.x;
             y = n.y;
-            z = (int)(n.z * getZPixRes());
+            z = (int)(n.z * zPixRes);
             r = n.size/2.;
             xy = Math.abs(x - mx) + Math.abs(y - my) + Math.abs(z - mz);
-            //System.out.print("findClosest: "  + j + CS + n.identity + CS + x + CS + y + CS
-            //        + mx + CS + my + CS + r + CS + xy);
             g = Math.abs(x - mx) < r;
             if (!g) continue;
             g = Math.abs(y - my) < r;
@@ -766,14 +813,148 @@ public class NucleiMgr {
                 candidate = n;
             }
         }
-        //System.out.println("returning candidate: " + candidate.identity + CS + candidate.z);
         return candidate;
     }
 
+    /**
+     * @param time 1-based time
+     * @return the spatial index of the live nuclei of the time point, built
+     * on first use, or null if there is no such time point
+     */
+    public synchronized NucleusGrid getNucleusGrid(int time) {
+        Vector<Vector<Nucleus>> record = getNucleiRecord();
+        if (record == null || time < 1 || time > record.size()) return null;
+        Vector<Nucleus> nuclei = record.elementAt(time - 1);
+        if (nuclei == null) return null;
+        if (iGrids == null) iGrids = new Hashtable<Integer, NucleusGrid>();
+        double zPixRes = getZPixRes();
+        NucleusGrid grid = iGrids.get(time);
+        if (grid == null || !grid.isCurrent(nuclei, zPixRes)) {
+            grid = new NucleusGrid(nuclei, zPixRes);
+            iGrids.put(time, grid);
+        }
+        return grid;
+    }
+
+    /**
+     * @param time 1-based time
+     * @return the identity and hashKey index of the time point, built
+     * on first use, or null if there is no such time point
+     */
+    public synchronized NucleusNames getNucleusNames(int time) {
+        Vector<Vector<Nucleus>> record = getNucleiRecord();
+        if (record == null || time < 1 || time > record.size()) return null;
+        Vector<Nucleus> nuclei = record.elementAt(time - 1);
+        if (nuclei == null) return null;
+        if (iNameIndex == null) iNameIndex = new Hashtable<Integer, NucleusNames>();
+        NucleusNames names = iNameIndex.get(time);
+        if (names == null || !names.isFor(nuclei)) {
+            names = new NucleusNames(nuclei);
+            iNameIndex.put(time, names);
+        }
+        return names;
+    }
+
+    /**
+     * drops the spatial and name indexes of the given time points, all of them if edited is null
+     * @param edited 0-based indexes of the time points
+     */
+    private synchronized void dropIndexes(BitSet edited) {
+        if (edited == null) {
+            if (iGrids != null) iGrids.clear();
+            if (iNameIndex != null) iNameIndex.clear();
+            return;
+        }
+        for (int k = edited.nextSetBit(0); k >= 0; k = edited.nextSetBit(k + 1)) {
+            if (iGrids != null) iGrids.remove(k + 1);
+            if (iNameIndex != null) iNameIndex.remove(k + 1);
+        }
+    }
+
+    // naming reassigns identities and hashKeys all through the record
+    private synchronized void dropNucleusNames() {
+        if (iNameIndex != null) iNameIndex.clear();
+    }
+
 
+    /**
+     * @param cellName identity of the nucleus
+     * @param time 1-based time
+     * @return the first nucleus of the time point with this identity, or null
+     */
     public Nucleus getCurrentCellData(String cellName, int time) {
-        Vector<Nucleus> nucData = nuclei_record.elementAt(time - 1);
-        return NucUtils.getCurrentCellData(nucData, cellName);
+        NucleusNames names = getNucleusNames(time);
+        return names == null ? null : names.byName(cellName);
+    }
+
+    /**
+     * @param cell the Cell, whose hashKey is looked up
+     * @param time 1-based time
+     * @return the live nucleus of the cell at this time point, or null
+     */
+    public Nucleus getCurrentCellNucleus(Cell cell, int time) {
+        if (cell == null) return null;
+        CellTracks tracks = getCellTracks();
+        if (tracks != null && tracks.contains(cell)) {
+            Nucleus n = tracks.nucleus(cell, time);
+            if (n != null && n.status >= 0) return n;
+        }
+        return getNucleusFromHashkey(cell.getHashKey(), time);
+    }
+
+    /**
+     * @return the tracks of the Cells of the AncesTree, or null while
+     * there are edits that updateNuclei has not put in the tree yet
+     */
+    public CellTracks getCellTracks() {
+        synchronized (this) {
+            if (iEdited != null) return null;
+        }
+        AncesTree ances = getAncesTree();
+        return ances == null ? null : ances.getTracks();
+    }
+
+    /**
+     * told when processNuclei or updateNuclei has put a change in the
+     * nuclei and the AncesTree
+     */
+    public interface NucleiListener {
+        /**
+         * @param startTime first changed time, 1-based
+         * @param endTime last changed time, inclusive
+         */
+        void nucleiChanged(int startTime, int endTime);
+    }
+
+    public synchronized void addNucleiListener(NucleiListener l) {
+        if (iListeners == null) iListeners = new Vector<NucleiListener>();
+        if (!iListeners.contains(l)) iListeners.add(l);
+    }
+
+    public synchronized void removeNucleiListener(NucleiListener l) {
+        if (iListeners != null) iListeners.remove(l);
+    }
+
+    private void fireNucleiChanged(int startTime, int endTime) {
+        NucleiListener [] listeners;
+        synchronized (this) {
+            if (iListeners == null || startTime > endTime) return;
+            listeners = iListeners.toArray(new NucleiListener[0]);
+        }
+        for (int i=0; i < listeners.length; i++) listeners[i].nucleiChanged(startTime, endTime);
+    }
+
+    /**
+     * @param daughterName identity of a nucleus at the given time
+     * @param time 1-based time
+     * @return its predecessor at the time point before, or null
+     */
+    public Nucleus getParent(String daughterName, int time) {
+        Nucleus n = getCurrentCellData(daughterName, time);
+        if (n == null || n.predecessor < 1 || time < 2) return null;
+        Vector nuclei = (Vector)getNucleiRecord().elementAt(time - 2);
+        if (n.predecessor > nuclei.size()) return null;
+        return (Nucleus)nuclei.elementAt(n.predecessor - 1);
     }
 
     @SuppressWarnings("unused")
@@ -789,22 +970,14 @@ public class NucleiMgr {
         return nuclei_record.elementAt(time);
     }
 
-    @SuppressWarnings("unused")
+    /**
+     * @param hashKey of the nucleus
+     * @param time 1-based time
+     * @return the first nucleus with status >= 0 and this hashKey, or null
+     */
     public Nucleus getNucleusFromHashkey(String hashKey, int time) {
-        Nucleus r = null;
-        boolean found = false;
-        Vector<Nucleus> nucData = nuclei_record.elementAt(time - 1);
-        for (int j = 0; j < nucData.size(); j++) {
-            Nucleus n = nucData.elementAt(j);
-            //println("getNucleusFromHashkey: " + n);
-            if (n.status < 0) continue;
-            if (n.hashKey.equals(hashKey)) {
-                found = true;
-                r = n;
-                break;
-            }
-        }
-        return r;
+        NucleusNames names = getNucleusNames(time);
+        return names == null ? null : names.byHashKey(hashKey);
     }
 
     public double nucDiameter(Nucleus n, double imgPlane) {
@@ -909,6 +1082,11 @@ public class NucleiMgr {
     // Timing commented out -was used for optimization
     public void processNuclei(boolean doIdentity, int namingMethod) {
         println("NucleiMgr processing nuclei including: assigning names, building AncesTree");
+        synchronized (this) {
+            iEdited = null;
+        }
+        getJournal().commit(EDIT);
+        dropIndexes(null);
         setAllSuccessors();
         if (iIdentity == null)
             iIdentity = new Identity3(this);
@@ -945,8 +1123,48 @@ public class NucleiMgr {
             System.out.println("Building AncesTree with times: " + nucConfig.getStartingIndex() + ", " + nucConfig.getEndingIndex());
             iAncesTree = new AncesTree(null, this, nucConfig.getStartingIndex(), nucConfig.getEndingIndex());
         }
+        dropNucleusNames();
+        fireNucleiChanged(1, getNucleiRecord().size());
 
     }
+    /**
+     * the incremental counterpart of processNuclei(true) for use after an edit
+     * <br>successors are recomputed around the time points marked dirty
+     * since the last build, Identity3 renames only downstream of them and
+     * the AncesTree is patched where its Cells no longer match the nuclei
+     * @param root the Cell the root cells hang from in the JTree
+     * @return Vector of the Cells whose subtrees changed, or null if
+     * processNuclei has to be run instead, as when no edit was marked dirty
+     */
+    public Vector updateNuclei(Cell root) {
+        getJournal().commit(EDIT);
+        BitSet edited;
+        synchronized (this) {
+            edited = iEdited;
+            iEdited = null;
+        }
+        // markDirty() comes before the change, so drop what was built in between
+        if (edited != null) dropIndexes(edited);
+        // nothing was marked dirty, so the change is not known
+        if (edited == null || iAncesTree == null || iIdentity == null) return null;
+        BitSet touched = new BitSet();
+        int size = nuclei_record.size();
+        for (int k = edited.nextSetBit(0); k >= 0 && k < size; k = edited.nextSetBit(k + 1)) {
+            touched.set(k);
+            // the successors of the time point before an edit point into it
+            if (k > 0) touched.set(k - 1);
+        }
+        for (int k = touched.nextSetBit(0); k >= 0; k = touched.nextSetBit(k + 1)) {
+            setSuccessors(k);
+        }
+        if (!iIdentity.identityUpdate(edited, touched)) return null;
+        Vector changed = iAncesTree.update(touched, root);
+        dropNucleusNames();
+        // names change downstream of the first edit
+        fireNucleiChanged(touched.nextSetBit(0) + 1, getNucleiRecord().size());
+        return changed;
+    }
+
     public Hashtable getCellsByName() {
         return iAncesTree.getCellsByName();
     }
@@ -972,16 +1190,6 @@ public class NucleiMgr {
         }
     }
 
-    private String [] getTokens(String s, int x) {
-        String [] sa = new String[30];
-        StringTokenizer st = new StringTokenizer(s, ",");
-        int k = 0;
-        while (st.hasMoreTokens()) {
-            sa[k++] = st.nextToken().trim();
-        }
-        return sa;
-    }
-
     /**
      * major access function to the array of nuclei Vectors
      * stored here -- one Vector for each time point
@@ -991,13 +1199,19 @@ public class NucleiMgr {
         return nuclei_record;
     }
 
+    /**
+     * closes the edit the EditJournal has open so that the changes
+     * which follow can be undone on their own
+     */
     public void makeBackupNucleiRecord() {
-        System.out.println("Refusing to make backup, waste of memory");
+        getJournal().commit(EDIT);
     }
 
+    /**
+     * takes back the last journaled edit, see EditJournal.undo()
+     */
     public void restoreNucleiRecord() {
-        //   nuclei_record = nuclei_record_backup;
-        System.out.println("cannot restore no backup made");
+        getJournal().undo();
     }
 
     public void setEndingIndex(int endTime) {
@@ -1108,50 +1322,6 @@ public class NucleiMgr {
         return 0;
     }
 
-    /**
-     * Special tokenizing function adapted to the lines in nuclei files
-     *
-     * a line in such a file consists of 15 fields which were written
-     * by a printf statement in a C program
-     * The widths of the fields are specified in the static int [] X
-     * 1    index -- line number in file starting from 1
-     * 2    x location of nucleus in pixels
-     * 3    y location of nucleus in pixels
-     * 4    z location of nucleus in planes (float)
-     * 5    cell name assigned by StarryNight
-     * 6    nominal cell diameter in pixels (all cells in a time index have the same value)
-     * 7    measure of GFP signal within the circle of this nucleus
-     * 8    ? (seems to be a flag)
-     * 9    ? (float)
-     * 10   ? (float)
-     * 11   ? (float)
-     * 12   ? (float)
-     * 13   index - the index that this cell had in the previous time nuclei file
-     * 14   index - the index that this cell has in the next time nuclei file
-     * 15   index - (if present indicates a division occurred) index of second daughter in next time nuclei file
-     *
-     *
-     *
-     * @param s String representing one line from such a file
-     * @return String [] containing the tokens found
-     */
-
-    private String [] getTokens(String s) {
-        String [] sa = new String[15];
-        int k = 0;
-        int j = 0;
-        int max = s.length();
-        for(int i=0; i<15; i++) {
-            //if(j > max) break;
-            k += XX[i];
-            //System.out.println(i + ", " + j + ", " + k);
-            if (k > max) break;
-            sa[i] = s.substring(j, k).trim();
-            j = k;
-        }
-        return sa;
-    }
-
     /**
 <<<<<<< HEAD
      * Don't delete. Used by Acebatch2
@@ -1162,18 +1332,12 @@ public class NucleiMgr {
      */
     public void setNucleiRecord(Vector nr) {
         nuclei_record = nr;
+        dropIndexes(null);
     }
 
     public boolean isNucConfigNull() { return nucConfig == null; }
     public NucleiConfig getNucConfig() { return nucConfig; }
 
-    /**
-     * pointers into the formatted lines of the nuclei files
-     */
-    private static final int [] XX = {
-            6,5,5,6,14,4,8,4,5,6,5,6,5,5,5
-    };
-
     public static final int
             LAST = 10000 // more than the most time points we ever expect to see
             ;
@@ -1183,6 +1347,8 @@ public class NucleiMgr {
             PARAMETERS = "parameters"
             ,NL = "\n"
             ,CS = ", "
+            ,JOURNAL = ".journal"
+            ,EDIT = "edit"
             ;
 
     private void println(String s) {System.out.println(s);}
@@ -1,9 +1,8 @@
 package org.rhwlab.snight;
 
 import application_src.application_model.data.LineageData;
-import javafx.beans.property.IntegerProperty;
-import javafx.beans.property.SimpleIntegerProperty;
-import org.rhwlab.image.management.ImageManager;
+import org.rhwlab.tree.Cell;
+import org.rhwlab.tree.CellTracks;
 
 import java.util.*;
 /**
@@ -13,11 +12,15 @@ import java.util.*;
  * Author: Braden Katzman
  */
 
-public class NucleiMgrAdapter implements LineageData {
+public class NucleiMgrAdapter implements LineageData, NucleiMgr.NucleiListener {
 
 	private NucleiMgr nucleiMgr;
-	private ArrayList<ArrayList<double[]>> allPositions;
+	private LinkedHashMap<Integer, Frame> frames; /* the time points WormGUIDES looked at last, read from the nuclei as they are */
+	private double[] shift; /* subtracted from every position, see shiftAllPositions() */
 	private Hashtable<String, int[]> cellOccurences;
+	private boolean occurrencesStale;
+	private ArrayList<String> allCellNames;
+	private int endingIndex;
 	private int realTimePoints; /* NucleiMgr's ending index is past last time with cells present */
 	private boolean isSulston;
 	private double[] xyzScale;
@@ -26,13 +29,39 @@ public class NucleiMgrAdapter implements LineageData {
 
 
 	public NucleiMgrAdapter(NucleiMgr nucleiMgr, Config config) {
-		this.nucleiMgr = nucleiMgr;
+		this.frames = new LinkedHashMap<>(2 * FRAMES, 0.75f, true);
+		this.shift = new double[3];
 		this.cellOccurences = new Hashtable<>();
-		this.realTimePoints = config.getNucleiConfig().getEndingIndex(); // initialize to this to avoid errors
-		this.allPositions = new ArrayList<>();
+		bind(nucleiMgr, config);
+	}
+
+	/**
+	 * Serves another series to the same WormGUIDES window, which can be started only once. The adapter stops
+	 * listening to the NucleiMgr it served before
+	 */
+	public synchronized void setNucleiMgr(NucleiMgr nucleiMgr, Config config) {
+		if (nucleiMgr == this.nucleiMgr) return;
+		dispose();
+		cellOccurences.clear();
+		occurrencesStale = false;
+		allCellNames = null;
+		bind(nucleiMgr, config);
+	}
+
+	/**
+	 * Stops listening to the NucleiMgr and drops the frames read from it
+	 */
+	public synchronized void dispose() {
+		nucleiMgr.removeNucleiListener(this);
+		frames.clear();
+	}
+
+	private void bind(NucleiMgr nucleiMgr, Config config) {
+		this.nucleiMgr = nucleiMgr;
+		this.endingIndex = config.getNucleiConfig().getEndingIndex();
+		this.realTimePoints = this.endingIndex; // initialize to this to avoid errors
 		preprocessCellOccurrences();
-		preprocessCellPositions();
-		setIsSulstonModeFlag(nucleiMgr.iAncesTree.sulstonmode);
+		setIsSulstonModeFlag(nucleiMgr.getAncesTree().sulstonmode);
 		//System.out.println("NucleiMgrAdapter has isSulstonMode: " + isSulston);
 		this.xyzScale = new double[3];
 		this.xyzScale[0] = this.xyzScale[1] = config.getNucleiConfig().getXyRes();
@@ -40,10 +69,100 @@ public class NucleiMgrAdapter implements LineageData {
 		this.exprMax = 100;
 		this.exprMin = -100;
 		calculateExprMaxMin();
+		nucleiMgr.addNucleiListener(this);
+	}
+
+	/**
+	 * The live nuclei of one time point as WormGUIDES asks for them. The arrays are handed out as they are,
+	 * callers must not modify them
+	 */
+	private static class Frame {
+		Vector<Nucleus> source;
+		int sourceSize;
+		String[] names;
+		double[][] positions;
+		double[] diameters;
+		int[] rweights;
+	}
+
+	/**
+	 * @return the frame of the time point, read from nuclei_record on first use after a change
+	 */
+	private synchronized Frame getFrame(int time) {
+		Vector<Nucleus> v = nucleiMgr.getNucleiRecord().get(time - 1);
+		Frame f = frames.get(time);
+		if (f != null && f.source == v && f.sourceSize == v.size()) return f;
+
+		int size = 0;
+		for (int m = 0; m < v.size(); ++m) {
+			if (v.get(m).status == 1) size++;
+		}
+		f = new Frame();
+		f.source = v;
+		f.sourceSize = v.size();
+		f.names = new String[size];
+		f.positions = new double[size][];
+		f.diameters = new double[size];
+		f.rweights = new int[size];
+		int i = 0;
+		for (int m = 0; m < v.size() && i < size; ++m) {
+			Nucleus n = v.get(m);
+			if (n.status != 1) continue;
+			f.names[i] = n.identity;
+			f.positions[i] = new double[] { n.x - shift[0], n.y - shift[1], n.z - shift[2] };
+			f.diameters[i] = n.size;
+			f.rweights[i] = (int) n.rweight;
+			i++;
+		}
+		frames.put(time, f);
+		if (frames.size() > FRAMES) {
+			Iterator<Integer> it = frames.keySet().iterator();
+			it.next();
+			it.remove();
+		}
+		return f;
+	}
+
+	private synchronized void ensureCellOccurrences() {
+		if (occurrencesStale) {
+			occurrencesStale = false;
+			cellOccurences.clear();
+			allCellNames = null;
+			preprocessCellOccurrences();
+		}
 	}
 
 	private void preprocessCellOccurrences() {
-		int timePoints = getNumberOfTimePoints();
+		int timePoints = Math.min(endingIndex, nucleiMgr.getNucleiRecord().size());
+		this.realTimePoints = timePoints;
+
+		/*
+		 * Straight from the tracks of the AncesTree when it is up to date
+		 */
+		CellTracks tracks = nucleiMgr.getCellTracks();
+		if (tracks != null) {
+			int last = timePoints;
+			for (int i = 1; i <= timePoints; i++) {
+				if (!hasLiveNuclei(i)) {
+					this.realTimePoints = i;
+					last = i - 1;
+					break;
+				}
+			}
+
+			Cell[] cells = tracks.getCells();
+			for (int k = 0; k < cells.length; k++) {
+				String name = cells[k].getName();
+				int first = tracks.getFirstTime(name);
+				if (first > last || cellOccurences.containsKey(name)) continue;
+
+				int[] start_end = new int[2];
+				start_end[0] = first;
+				start_end[1] = Math.min(tracks.getLastTime(name), last);
+				cellOccurences.put(name, start_end);
+			}
+			return;
+		}
 
 		/*
 		 * First occurences
@@ -87,27 +206,18 @@ public class NucleiMgrAdapter implements LineageData {
 		}
 	}
 
-	private void preprocessCellPositions() {
-		for (int i = 1; i <= realTimePoints; i++) {
-			ArrayList<double[]> positions_at_time = new ArrayList<double[]>();
-
-			double[][] positions = getPositions(i, true);
-
-			for (int j = 0; j < positions.length; j++) {
-				double[] coords = positions[j];
-
-				positions_at_time.add(coords);
-			}
-
-			allPositions.add(positions_at_time);
+	private boolean hasLiveNuclei(int time) {
+		Vector<Nucleus> v = nucleiMgr.getNucleiRecord().get(time - 1);
+		for (int m = 0; m < v.size(); ++m) {
+			if (v.get(m).status == 1) return true;
 		}
-		//System.out.println("Size of allPositions = " + allPositions.size());
+		return false;
 	}
 
 	private void calculateExprMaxMin() {
 		for (int i = 1; i <= realTimePoints; i++) {
 			//access vector of nuclei at given time frame
-			Vector<Nucleus> v = nucleiMgr.nuclei_record.get(i-1);
+			Vector<Nucleus> v = nucleiMgr.getNucleiRecord().get(i-1);
 
 			//iterate through the vector of nuclei
 			for (int m = 0; m < v.size(); ++m) {
@@ -127,167 +237,64 @@ public class NucleiMgrAdapter implements LineageData {
 		System.out.println(exprMax + " " + exprMin);
 	}
 
-	public void updateCellOccurencesAndPositions() {
-		cellOccurences.clear();
-		allPositions.clear();
+	/**
+	 * Called by NucleiMgr once an edit is in the nuclei and the AncesTree. Only the frames of the changed
+	 * time points are read again, when WormGUIDES next asks for them
+	 */
+	@Override
+	public synchronized void nucleiChanged(int startTime, int endTime) {
+		Iterator<Integer> it = frames.keySet().iterator();
+		while (it.hasNext()) {
+			int time = it.next();
+			if (time >= startTime && time <= endTime) it.remove();
+		}
+		occurrencesStale = true;
+		allCellNames = null;
+	}
 
-		preprocessCellOccurrences();
-		preprocessCellPositions();
+	/**
+	 * Drops everything read so far; the position shift is kept
+	 */
+	public synchronized void updateCellOccurencesAndPositions() {
+		frames.clear();
+		occurrencesStale = true;
+		allCellNames = null;
 	}
 
 	public void updateCellOccurencesAndPositions(int startTime, int endTime) {
-		// check that the range is valid
-
-		for (int i = startTime; i <= endTime; i++) {
-			updateCellOccurencesAndPositions(i, false);
-		}
-
-		preprocessCellOccurrences();
+		nucleiChanged(startTime, endTime);
 	}
 
 	public void updateCellOccurencesAndPositions(int time, boolean performCellOccurenceUpdate) {
-		// check that the time is valid
-		ArrayList<double[]> positions_at_time = new ArrayList<>();
-
-		double[][] positions = getPositions(time, true);
-
-		for (int j = 0; j < positions.length; j++) {
-			double[] coords = positions[j];
-
-			positions_at_time.add(coords);
-		}
-
-		allPositions.set(time, positions_at_time);
-
-		if (performCellOccurenceUpdate) {
-			preprocessCellOccurrences();
+		synchronized (this) {
+			frames.remove(time);
+			if (performCellOccurenceUpdate) {
+				occurrencesStale = true;
+			}
 		}
 	}
 
 	@Override
 	public String[] getNames(int time) {
 		if (time > 0) {
-			ArrayList<String> namesAL = new ArrayList<>(); //named to distinguish between return String[] array
-
-			//access vector of nuclei at given time frame
-//			Vector<Nucleus> v = nucleiMgr.nuclei_record.get(time);
-				Vector<Nucleus> v = nucleiMgr.nuclei_record.get(time - 1);
-
-			//copy nuclei identities to ArrayList names AL
-			for (int m = 0; m < v.size(); ++m) {
-				Nucleus n = v.get(m);
-				if (n.status == 1) {
-					namesAL.add(n.identity); //push back identity
-				}
-			}
-
-			//convert ArrayList to String[]
-			int size = namesAL.size();
-			String[] names = new String[size];
-			for (int i = 0; i < size; ++i) {
-				names[i] = namesAL.get(i);
-			}
-
-			return names;
+			return getFrame(time).names;
 		}
 		return new String[0];
 	}
 
 	@Override
 	public double[][] getPositions(int time) {
-		if (allPositions == null) {
-			preprocessCellPositions();
-		}
-
-		//System.out.println("Trying to access position data at time: " + time);
-		ArrayList<double[]> positions = allPositions.get(time - 1);
-
-		double[][] positions_array = new double[positions.size()][3];
-
-		for (int i = 0; i < positions.size(); i++) {
-			positions_array[i] = positions.get(i);
-		}
-
-		return positions_array;
-	}
-
-	private double[][] getPositions(int time, boolean prvte) {
-		ArrayList<ArrayList<Double>> positionsAL = new ArrayList<ArrayList<Double>>();
-
-		//access vector of nuclei at given time frame
-		Vector<Nucleus> v = nucleiMgr.nuclei_record.get(time-1);
-
-		//copy nuclei positions to ArrayList positionsAL
-		for (int m = 0; m < v.size(); ++m) {
-			Nucleus n = v.get(m);
-			if (n.status == 1) {
-				ArrayList<Double> position = new ArrayList<Double>(Arrays.asList((double)n.x, (double)n.y, (double)n.z));
-				positionsAL.add(position);
-			}
-		}
-
-		//convert ArrayList to Integer[][]
-		int size = positionsAL.size(); //numbers of rows i.e. nuclei
-
-		double[][] positions = new double[size][3]; //nuclei x 3 positions coordinates
-		for (int i = 0; i < size; ++i) {
-			ArrayList<Double> row = positionsAL.get(i);
-
-			positions[i][0] = row.get(0);
-			positions[i][1] = row.get(1);
-			positions[i][2] = row.get(2);
-		}
-
-		return positions;
-
+		return getFrame(time).positions;
 	}
 
 	@Override
 	public double[] getDiameters(int time) {
-		ArrayList<Double> diametersAL = new ArrayList<Double>();
-
-		//access vector of nuclei at given time frame
-		Vector<Nucleus> v = nucleiMgr.nuclei_record.get(time - 1);
-
-		for (int m = 0; m < v.size(); ++m) {
-			Nucleus n = v.get(m);
-			if (n.status == 1) {
-				diametersAL.add((double)n.size);
-			}
-		}
-
-		//convert ArrayList to Integer[]
-		int size = diametersAL.size();
-		double[] diameters = new double[size];
-		for (int i = 0; i < size; ++i) {
-			diameters[i] = diametersAL.get(i);
-		}
-
-		return diameters;
+		return getFrame(time).diameters;
 	}
 
 	@Override
 	public int[] getRweights(int time) {
-		ArrayList<Integer> rweightsAL = new ArrayList<>();
-
-		//access vector of nuclei at given time frame
-		Vector<Nucleus> v = nucleiMgr.nuclei_record.get(time-1);
-
-		for (int m = 0; m < v.size(); ++m) {
-			Nucleus n = v.get(m);
-			if (n.status == 1) {
-				rweightsAL.add((int)n.rweight);
-			}
-		}
-
-		//convert ArrayList to Integer[]
-		int size = rweightsAL.size();
-		int[] rweights = new int[size];
-		for (int i = 0; i < size; ++i) {
-			rweights[i] = rweightsAL.get(i);
-		}
-
-		return rweights;
+		return getFrame(time).rweights;
 	}
 
 	@Override
@@ -302,47 +309,38 @@ public class NucleiMgrAdapter implements LineageData {
 
 	@SuppressWarnings({ "rawtypes", "unchecked" })
 	@Override
-	public ArrayList<String> getAllCellNames() {
-		ArrayList<String> allCellNames = new ArrayList<>();
-
-		/*
-		//old code
-		for (int i = 1; i <= realTimePoints; i++) {
-			String[] namesAti = getNames(i);
-
-			for (String name : namesAti) {
-				if (!allCellNames.contains(name)) {
-					allCellNames.add(name);
-				}
+	public synchronized ArrayList<String> getAllCellNames() {
+		if (allCellNames == null) {
+			allCellNames = new ArrayList<>();
+
+			//the names of the cells in the AncesTree
+			for (Object cellname:nucleiMgr.getCellsByName().keySet()){
+				String cname = (String)cellname;
+				allCellNames.add(cname);
 			}
-		}
-		*/
 
-		//replace the old code for faster launch speed
-		for (Object cellname:nucleiMgr.getCellsByName().keySet()){
-			String cname = (String)cellname;
-			allCellNames.add(cname);
+			//sort names list by string length, so that parent always appear in front of children
+			Collections.sort(allCellNames, Comparator.comparing(String::length));
 		}
 
-		//sort names list by string length, so that parent always appear in front of children
-		Collections.sort(allCellNames, Comparator.comparing(String::length));
-
-		return allCellNames;
+		return new ArrayList<>(allCellNames);
 	}
 
 	@Override
 	public int getNumberOfTimePoints() {
+		ensureCellOccurrences();
 		return this.realTimePoints;
 	}
 
 	/*
-	 * If slow, optimize with preprocessing of cells and their first and last occurrences
+	 * First and last occurrences are preprocessed, from the CellTracks of the AncesTree when they are current
 	 *
 	 * (non-Javadoc)
 	 * @see wormguides.model.LineageData#getFirstOccurrenceOf(java.lang.String)
 	 */
 	@Override
 	public int getFirstOccurrenceOf(String name) {
+		ensureCellOccurrences();
 		int[] start_end = cellOccurences.get(name);
 
 		if (start_end != null) {
@@ -354,6 +352,7 @@ public class NucleiMgrAdapter implements LineageData {
 
 	@Override
 	public int getLastOccurrenceOf(String name) {
+		ensureCellOccurrences();
 		int[] start_end = cellOccurences.get(name);
 
 		if (start_end != null) {
@@ -365,21 +364,18 @@ public class NucleiMgrAdapter implements LineageData {
 
 	@Override
 	public boolean isCellName(String name) {
-		return getAllCellNames().contains(name);
+		return name != null && nucleiMgr.getCellsByName().containsKey(name);
 	}
 
+	/**
+	 * The shift is applied as the frames are read, so it also holds for time points read again after an edit
+	 */
 	@Override
-	public void shiftAllPositions(double x, double y, double z) {
-		for (int i = 0; i < allPositions.size(); i++) {
-			ArrayList<double[]> positions_at_frame = allPositions.get(i);
-
-			for (int j = 0; j < positions_at_frame.size(); j++) {
-				double[] coords = positions_at_frame.get(j);
-
-				positions_at_frame.set(j, new double[] { coords[0] - x, coords[1] - y, coords[2] - z });
-			}
-			allPositions.set(i, positions_at_frame);
-		}
+	public synchronized void shiftAllPositions(double x, double y, double z) {
+		shift[0] += x;
+		shift[1] += y;
+		shift[2] += z;
+		frames.clear();
 	}
 
 	@Override
@@ -396,4 +392,6 @@ public class NucleiMgrAdapter implements LineageData {
 	public double[] getXYZScale() {
 		return this.xyzScale;
 	}
+
+	private static final int FRAMES = 16;
 }
\ No newline at end of file
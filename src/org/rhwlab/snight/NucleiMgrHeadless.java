@@ -7,9 +7,7 @@ import java.io.PrintWriter;
 import java.util.Enumeration;
 import java.util.GregorianCalendar;
 import java.util.Hashtable;
-import java.util.StringTokenizer;
 import java.util.Vector;
-import java.util.zip.ZipEntry;
 
 import org.rhwlab.acetree.AceTree;
 import org.rhwlab.acetree.NucUtils;
@@ -131,7 +129,7 @@ public class NucleiMgrHeadless extends NucleiMgr {
             //iParameters = readParameterInfo(zipPath);
             iParameters = dummyParameters();
             iZipNuclei = new ZipNuclei(zipPath);
-            if (iZipNuclei.iZipFile != null) {
+            if (iZipNuclei.isOpen()) {
 
                 //20060719 readEditLog(iEditLog);
                 readNuclei();
@@ -196,7 +194,7 @@ public class NucleiMgrHeadless extends NucleiMgr {
             //iParameters = readParameterInfo(zipPath);
             iParameters = dummyParameters();
             iZipNuclei = new ZipNuclei(zipPath);
-            if (iZipNuclei.iZipFile != null) {
+            if (iZipNuclei.isOpen()) {
 
                 //20060719 readEditLog(iEditLog);
                 readNuclei();
@@ -350,69 +348,10 @@ public class NucleiMgrHeadless extends NucleiMgr {
         //System.out.println("readNuclei:1 " + iMovie.time_end + CS + iMovie.time_start);
         fakeNuclei();
         iFakeNuclei = false; //override this parm
-        Nucleus n = null;
-        int debugCount = 0;
-
-        Enumeration e = zn.iZipFile.entries();
-        //System.out.println("readNuclei:2 " + iMovie.time_end + CS + iMovie.time_start);
-        while (e.hasMoreElements()) {
-            ZipEntry ze = (ZipEntry)e.nextElement();
-
-            Vector v = new Vector();
-            String [] saa = zn.parseZipEntry(ze);
-            if (saa.length < 2) continue; // maybe a nuclei/ entry
-            if (saa[0].equals("nuclei")) {
-                int index = zn.parseZipEntryName(saa[1]) - 1;
-                if (index < 0) continue; // probably a nuclei/log entry
-                //if (index > 30) continue;
-                //println("ZipNuclei.main: finds: " + saa[1] + CS + ze.isDirectory() + CS + index);
-                String s = zn.readLine(ze);
-                if (s == null) {
-                    if (nuclei_record.size() > index) {
-                        nuclei_record.setElementAt(v, index);
-                        if (index > iLastNucleiFile) iLastNucleiFile = index;
-                    }
-                    continue;
-                }
-                boolean newFormat = true;
-                // detect old format by the absence of commas
-                //if (debugCount++ < 10) println("readNuclei: " + s);
-                if (s.indexOf(',') == -1) newFormat = false;
-                int j = 1;
-                // added code to handle some misformed nuclei files
-                // a little squirrely maybe but it is working
-                while (s != null && s.length() > 10) {
-                    //if (index == 199) println("\n\nREADNUCLEI: " + s);
-                    try {
-                        String [] sa;
-                        if (newFormat) sa = getTokens(s, 0);
-                        else sa = getTokens(s);
-                        if (    sa[0] != null
-                            && (sa[0].length() > 0
-                            && Integer.parseInt(sa[0]) != j++)) {
-                            break;
-                        }
-                        if (newFormat) n = new Nucleus(sa);
-                        else n = new Nucleus(sa, !newFormat);
-                        v.add(n);
-                        s = zn.readLine(ze);
-                    } catch(Exception ee) {
-                        System.out.println("readNuclei exception: " + ee);
-                        System.out.println(s);
-                        System.out.println("time=" + index + ", j = " + j);
-                        zn.closeEntry();
-                        ee.printStackTrace();
-                        System.exit(1);
-                        break;
-                    }
-                }
-                if (nuclei_record.size() > index) {
-                    nuclei_record.setElementAt(v, index);
-                    if (index > iLastNucleiFile) iLastNucleiFile = index;
-                }
-                zn.closeEntry();
-            }
-        }
+        int last;
+        if (zn.getArchive() != null) last = zn.getArchive().read(nuclei_record, getNucleusStore());
+        else last = new NucleiReader(zn, getNucleusStore()).read(nuclei_record);
+        if (last > iLastNucleiFile) iLastNucleiFile = last;
         //println("readNuclei: iEndingIndex=" + iEndingIndex + CS + iLastNucleiFile + CS + nuclei_record.size());
         if (iEndingIndex == 1) {
             iEndingIndex = iLastNucleiFile + 1;
@@ -422,6 +361,7 @@ public class NucleiMgrHeadless extends NucleiMgr {
             }
         }
         //println("readNuclei: at end, nuclei_record.size: " + nuclei_record.size());
+        if (zn.getArchive() == null) setSaved(new File(zn.iZipName), iLastNucleiFile + 1);
 
         //System.out.println("readNuclei:3 " + iMovie.time_end + CS + iMovie.time_start);
         return 9999;
@@ -473,136 +413,13 @@ public class NucleiMgrHeadless extends NucleiMgr {
     @Override
 	public String getIndex(String name, int time) {
         int k = 0;
-        Vector nuclei = nuclei_record.elementAt(time);
-        Nucleus n = null;
-        for (int j=0; j < nuclei.size(); j++) {
-            n = (Nucleus)nuclei.elementAt(j);
-            //System.out.println(n);
-            if (n.identity.equals(name)) {
-                k = n.index;
-                //System.out.println("getCellIndex: " + n);
-                break;
-            }
-        }
+        NucleusNames names = getNucleusNames(time + 1);
+        Nucleus n = names == null ? null : names.byName(name);
+        if (n != null) k = n.index;
         String s = "(" + k + ")";
         return s;
     }
 
-    @Override
-	public Nucleus findClosestNucleusXYZ(int mx, int my, float mz, int time) {
-        Vector nuclei = nuclei_record.elementAt(time - 1);
-        double x, y, z, r;
-        boolean g;
-        Nucleus candidate = null;
-        double d = 100000;
-        double xyz;
-        mz *= iZPixRes;
-        for (int j=0; j < nuclei.size(); j++) {
-            Nucleus n = (Nucleus)nuclei.elementAt(j);
-            System.out.print("findClosest..: " + n);
-            if (n.status == -1) continue;
-            x = n.x;
-            y = n.y;
-            z = n.z * iZPixRes;
-            r = n.size/2.;
-            g = Math.abs(x - mx) < r;
-            if (!g) continue;
-            g = Math.abs(y - my) < r;
-            if (!g) continue;
-            g = Math.abs(z - mz) < r;
-            if (!g) continue;
-            xyz = Math.abs(x - mx) + Math.abs(y - my) + Math.abs(z - mz);
-            //System.out.println("findClosest: " + n.identity + CS + xy);
-            if (xyz < d) {
-                d = xyz;
-                candidate = n;
-            }
-        }
-        return candidate;
-    }
-
-    @Override
-	public Nucleus findClosestNucleus(int mx, int my, int time) {
-        //System.out.println("findClosestNucleus: " + mx + CS + my + CS + time);
-        Vector nuclei = nuclei_record.elementAt(time - 1);
-        double x, y, r;
-        boolean g;
-        Nucleus candidate = null;
-        double d = 100000;
-        double xy;
-        for (int j=0; j < nuclei.size(); j++) {
-            Nucleus n = (Nucleus)nuclei.elementAt(j);
-            //System.out.println("findClosest..: " + n);
-            //System.out.print(n);
-            if (n.status == -1) continue;
-            x = n.x;
-            y = n.y;
-            r = n.size/2.;
-            xy = Math.abs(x - mx) + Math.abs(y - my);
-            //System.out.print("findClosest: "  + j + CS + n.identity + CS + x + CS + y + CS
-            //        + mx + CS + my + CS + r + CS + xy);
-            g = Math.abs(x - mx) < r;
-            if (!g) continue;
-            g = Math.abs(y - my) < r;
-            if (!g) continue;
-            if (xy < d) {
-                d = xy;
-                candidate = n;
-            }
-        }
-        //System.out.println("returning candidate: " + candidate.identity + CS + candidate.z);
-        return candidate;
-    }
-
-    @Override
-	public Nucleus findClosestNucleus(int mx, int my, int mz, int time) {
-        //System.out.println("findClosestNucleus: " + mx + CS + my + CS + mz + CS + time);
-        if (time < 1) time = 1;
-        Vector nuclei = null;
-        try {
-            nuclei = nuclei_record.elementAt(time - 1);
-        } catch(Exception e) {
-            return null;
-        }
-        double x, y, z, r;
-        boolean g;
-        Nucleus candidate = null;
-        double d = 100000;
-        double xy;
-        mz *= iZPixRes;
-        for (int j=0; j < nuclei.size(); j++) {
-            Nucleus n = (Nucleus)nuclei.elementAt(j);
-            //System.out.print(n);
-            if (n.status == -1) continue;
-            x = n.x;
-            y = n.y;
-            z = (int)(n.z * iZPixRes);
-            r = n.size/2.;
-            xy = Math.abs(x - mx) + Math.abs(y - my) + Math.abs(z - mz);
-            //System.out.print("findClosest: "  + j + CS + n.identity + CS + x + CS + y + CS
-            //        + mx + CS + my + CS + r + CS + xy);
-            g = Math.abs(x - mx) < r;
-            if (!g) continue;
-            g = Math.abs(y - my) < r;
-            if (!g) continue;
-            g = Math.abs(z - mz) < r;
-            if (!g) continue;
-            if (xy < d) {
-                d = xy;
-                candidate = n;
-            }
-        }
-        //System.out.println("returning candidate: " + candidate.identity + CS + candidate.z);
-        return candidate;
-    }
-
-
-    @Override
-	public Nucleus getCurrentCellData(String cellName, int time) {
-        Vector nucData = nuclei_record.elementAt(time - 1);
-        return NucUtils.getCurrentCellData(nucData, cellName);
-    }
-
     @Override
 	@SuppressWarnings("unused")
 	public boolean isValidCell(String name, int time) {
@@ -618,26 +435,6 @@ public class NucleiMgrHeadless extends NucleiMgr {
         return nuclei_record.elementAt(time);
     }
 
-    @Override
-	@SuppressWarnings("unused")
-	public Nucleus getNucleusFromHashkey(String hashKey, int time) {
-        Nucleus r = null;
-        boolean found = false;
-        Vector nucData = nuclei_record.elementAt(time - 1);
-        for (int j = 0; j < nucData.size(); j++) {
-            Nucleus n = (Nucleus)nucData.elementAt(j);
-            //println("getNucleusFromHashkey: " + n);
-            if (n.status < 0) continue;
-            if (n.hashKey.equals(hashKey)) {
-                found = true;
-                r = n;
-                break;
-            }
-        }
-        return r;
-
-    }
-
     @Override
 	public double nucDiameter(Nucleus n, double imgPlane) {
         if (n == null) return -1; //covers some issues re currentCell and not tracking
@@ -861,19 +658,6 @@ public class NucleiMgrHeadless extends NucleiMgr {
         }
     }
 
-    private String [] getTokens(String s, int x) {
-        String [] sa = new String[30];
-        StringTokenizer st = new StringTokenizer(s, ",");
-        int k = 0;
-        while (st.hasMoreTokens()) {
-            //String ss = st.nextToken();
-            //System.out.println("getTokens: " + k + CS + ss);
-            //sa[k++] = ss.trim();
-            sa[k++] = st.nextToken().trim();
-        }
-        return sa;
-    }
-
     /**
      * major access function to the array of nuclei Vectors
      * stored here -- one Vector for each time point
@@ -884,31 +668,6 @@ public class NucleiMgrHeadless extends NucleiMgr {
         return nuclei_record;
     }
 
-    @Override
-	public void makeBackupNucleiRecord() {
-//        System.out.println("makeBackupNucleiRecord");
-//        nuclei_record_backup = new Vector();
-//        Vector nuclei = null;
-//        Vector nucleiNew = null;
-//        Nucleus n = null;
-//        Nucleus nNew = null;
-//        for (int i=0; i < nuclei_record.size(); i++) {
-//            nuclei = nuclei_record.elementAt(i);
-//            nucleiNew = new Vector();
-//            for (int j=0; j < nuclei.size(); j++) {
-//                n = (Nucleus)nuclei.elementAt(j);
-//                nNew = n.copy();
-//                nucleiNew.add(nNew);
-//            }
-//            nuclei_record_backup.add(nucleiNew);
-//        }
-    }
-
-    @Override
-	public void restoreNucleiRecord() {
-        //nuclei_record = nuclei_record_backup;
-    }
-
     @Override
 	public void setEndingIndex(int endTime) {
         iEndingIndex = endTime;
@@ -1046,56 +805,6 @@ public class NucleiMgrHeadless extends NucleiMgr {
         }
     }
 
-    /**
-     * Special tokenizing function adapted to the lines in nuclei files
-     *
-     * a line in such a file consists of 15 fields which were written
-     * by a printf statement in a C program
-     * The widths of the fields are specified in the static int [] X
-     * 1    index -- line number in file starting from 1
-     * 2    x location of nucleus in pixels
-     * 3    y location of nucleus in pixels
-     * 4    z location of nucleus in planes (float)
-     * 5    cell name assigned by StarryNight
-     * 6    nominal cell diameter in pixels (all cells in a time index have the same value)
-     * 7    measure of GFP signal within the circle of this nucleus
-     * 8    ? (seems to be a flag)
-     * 9    ? (float)
-     * 10   ? (float)
-     * 11   ? (float)
-     * 12   ? (float)
-     * 13   index - the index that this cell had in the previous time nuclei file
-     * 14   index - the index that this cell has in the next time nuclei file
-     * 15   index - (if present indicates a division occurred) index of second daughter in next time nuclei file
-     *
-     *
-     *
-     * @param s String representing one line from such a file
-     * @return String [] containing the tokens found
-     */
-
-    private String [] getTokens(String s) {
-        String [] sa = new String[15];
-        int k = 0;
-        int j = 0;
-        int max = s.length();
-        for(int i=0; i<15; i++) {
-            //if(j > max) break;
-            k += XX[i];
-            //System.out.println(i + ", " + j + ", " + k);
-            if (k > max) break;
-            sa[i] = s.substring(j, k).trim();
-            j = k;
-        }
-        return sa;
-    }
-
-    /**
-     * pointers into the formatted lines of the nuclei files
-     */
-    private static final int [] XX = {
-            6,5,5,6,14,4,8,4,5,6,5,6,5,5,5
-    };
 
     public static final int
          LAST = 599 // more than the most nuclei we ever expect to see
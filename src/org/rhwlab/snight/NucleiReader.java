@@ -0,0 +1,433 @@
+package org.rhwlab.snight;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.Vector;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * reads the tN-nuclei entries of a nuclei zip concurrently
+ * <br>each entry is inflated whole on a bounded pool of worker threads and
+ * its lines are scanned at the byte level straight into Nucleus fields,
+ * without the per line String, StringTokenizer and String [] of the
+ * serial path in NucleiMgr
+ * <br>the old fixed width format (no commas) is still handled through
+ * the column widths StarryNite used, and misformed files are tolerated
+ * the same way as before: reading an entry stops at the first short line
+ * or at the first line whose index is out of sequence
+ *
+ * Created: Oct. 2026
+ */
+public class NucleiReader {
+    private ZipNuclei       iZipNuclei;
+    private NucleusStore    iStore;
+    private int             iThreads;
+
+    public NucleiReader(ZipNuclei zipNuclei, NucleusStore store) {
+        iZipNuclei = zipNuclei;
+        iStore = store;
+        iThreads = Math.max(1, Math.min(Runtime.getRuntime().availableProcessors(), MAXTHREADS));
+    }
+
+    public void setThreads(int threads) {
+        iThreads = Math.max(1, threads);
+    }
+
+    /**
+     * reads every nuclei entry of the zip into the record
+     * <br>entries whose time index is beyond the size of the record are skipped
+     * @param record the nuclei_record, already sized by fakeNuclei()
+     * @return the largest 0-based time index that was stored, -1 if none
+     */
+    public int read(Vector<Vector<Nucleus>> record) {
+        ArrayList<ZipEntry> entries = new ArrayList<ZipEntry>();
+        ArrayList<Integer> indices = new ArrayList<Integer>();
+        Enumeration<? extends ZipEntry> e = iZipNuclei.iZipFile.entries();
+        while (e.hasMoreElements()) {
+            ZipEntry ze = e.nextElement();
+            String [] saa = iZipNuclei.parseZipEntry(ze);
+            if (saa.length < 2) continue; // maybe a nuclei/ entry
+            if (!saa[0].equals("nuclei")) continue;
+            int index = iZipNuclei.parseZipEntryName(saa[1]) - 1;
+            if (index < 0) continue; // probably a nuclei/log entry
+            if (index >= record.size()) continue;
+            entries.add(ze);
+            indices.add(index);
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(iThreads, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "NucleiReader");
+                t.setDaemon(true);
+                return t;
+            }
+        });
+        ArrayList<Future<Vector<Nucleus>>> futures = new ArrayList<Future<Vector<Nucleus>>>();
+        for (int i=0; i < entries.size(); i++) {
+            futures.add(pool.submit(new EntryTask(entries.get(i), indices.get(i))));
+        }
+
+        int last = -1;
+        try {
+            for (int i=0; i < futures.size(); i++) {
+                int index = indices.get(i);
+                Vector<Nucleus> v = futures.get(i).get();
+                record.setElementAt(v, index);
+                if (index > last) last = index;
+            }
+        } catch(InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            System.out.println("NucleiReader interrupted");
+        } catch(ExecutionException ee) {
+            // same outcome as the serial reader: a line that cannot be parsed is fatal
+            System.out.println("readNuclei exception: " + ee.getCause());
+            ee.getCause().printStackTrace();
+            System.exit(1);
+        } finally {
+            pool.shutdownNow();
+        }
+        return last;
+    }
+
+    /**
+     * inflates and parses one tN-nuclei entry
+     */
+    private class EntryTask implements Callable<Vector<Nucleus>> {
+        private ZipEntry    iEntry;
+        private int         iIndex;
+
+        EntryTask(ZipEntry entry, int index) {
+            iEntry = entry;
+            iIndex = index;
+        }
+
+        @Override
+        public Vector<Nucleus> call() throws Exception {
+            LineScanner scanner = cScanner.get();
+            scanner.iStore = iStore;
+            int len = scanner.inflate(iZipNuclei.iZipFile, iEntry);
+            return scanner.parse(len, iIndex);
+        }
+    }
+
+    /**
+     * per thread state: the inflate buffer, the token boundaries of the
+     * current line and a small cache of recently seen names
+     */
+    static class LineScanner {
+        NucleusStore    iStore;
+        byte []         iBuf = new byte[1 << 16];
+        int []          iStart = new int[MAXTOKENS];
+        int []          iEnd = new int[MAXTOKENS];
+        int             iCount;
+        String []       iNames = new String[NAMECACHE];
+
+        int inflate(ZipFile zipFile, ZipEntry ze) throws IOException {
+            long size = ze.getSize();
+            if (size > iBuf.length) iBuf = new byte[(int)size];
+            InputStream is = zipFile.getInputStream(ze);
+            int len = 0;
+            try {
+                while (true) {
+                    if (len == iBuf.length) {
+                        byte [] b = new byte[iBuf.length * 2];
+                        System.arraycopy(iBuf, 0, b, 0, len);
+                        iBuf = b;
+                    }
+                    int k = is.read(iBuf, len, iBuf.length - len);
+                    if (k < 0) break;
+                    len += k;
+                }
+            } finally {
+                is.close();
+            }
+            return len;
+        }
+
+        Vector<Nucleus> parse(int len, int time) {
+            Vector<Nucleus> v = new Vector<Nucleus>();
+            int p = 0;
+            boolean first = true;
+            boolean newFormat = true;
+            int j = 1;
+            while (p < len) {
+                int lineStart = p;
+                int lineEnd = p;
+                while (lineEnd < len && iBuf[lineEnd] != '\n' && iBuf[lineEnd] != '\r') lineEnd++;
+                // a line ends at \n, \r or \r\n as with BufferedReader.readLine
+                p = lineEnd;
+                if (p < len && iBuf[p] == '\r') p++;
+                if (p < len && iBuf[p] == '\n') p++;
+
+                if (first) {
+                    // detect old format by the absence of commas
+                    newFormat = indexOf((byte)',', lineStart, lineEnd) >= 0;
+                    first = false;
+                }
+                // added code to handle some misformed nuclei files
+                if (lineEnd - lineStart <= 10) break;
+                try {
+                    Nucleus n;
+                    if (newFormat) {
+                        tokenize(lineStart, lineEnd);
+                        if (iCount > 0 && iEnd[0] > iStart[0] && parseInt(0) != j++) break;
+                        n = makeNucleus();
+                    } else {
+                        String [] sa = getTokens(new String(iBuf, lineStart, lineEnd - lineStart));
+                        if (sa[0] != null
+                                && (sa[0].length() > 0
+                                && Integer.parseInt(sa[0]) != j++)) {
+                            break;
+                        }
+                        n = new Nucleus(sa, true);
+                    }
+                    v.add(n);
+                } catch(RuntimeException re) {
+                    String s = new String(iBuf, lineStart, lineEnd - lineStart);
+                    throw new IllegalStateException(s + ", time=" + time + ", j = " + j, re);
+                }
+            }
+            v.trimToSize();
+            return v;
+        }
+
+        private int indexOf(byte b, int from, int to) {
+            for (int i=from; i < to; i++) {
+                if (iBuf[i] == b) return i;
+            }
+            return -1;
+        }
+
+        /**
+         * splits the line on commas the way StringTokenizer did: empty tokens
+         * between adjacent commas are skipped and every token is trimmed
+         */
+        private void tokenize(int from, int to) {
+            iCount = 0;
+            int i = from;
+            while (i < to && iCount < MAXTOKENS) {
+                while (i < to && iBuf[i] == ',') i++;
+                if (i >= to) break;
+                int s = i;
+                while (i < to && iBuf[i] != ',') i++;
+                int e = i;
+                while (s < e && (iBuf[s] & 0xff) <= ' ') s++;
+                while (e > s && (iBuf[e - 1] & 0xff) <= ' ') e--;
+                iStart[iCount] = s;
+                iEnd[iCount] = e;
+                iCount++;
+            }
+        }
+
+        /**
+         * the byte level counterpart of Nucleus(String [])
+         */
+        private Nucleus makeNucleus() {
+            Nucleus n = new Nucleus();
+            n.index = parseInt(Nucleus.INDEX);
+            n.x = parseInt(Nucleus.X);
+            n.y = parseInt(Nucleus.Y);
+            n.z = parseFloat(Nucleus.Z);
+            n.identity = name(Nucleus.IDENTITY);
+            n.size = parseInt(Nucleus.SIZE);
+            n.weight = parseInt(Nucleus.WT);
+            // series without red data simply stop early
+            try {
+                for (int i = Nucleus.RWT; i <= Nucleus.RWCORR4 && i < iCount; i++) {
+                    if (iEnd[i] == iStart[i]) continue;
+                    switch(i) {
+                        case Nucleus.RWT: n.rweight = parseInt(i); break;
+                        case Nucleus.RSUM: n.rsum = parseInt(i); break;
+                        case Nucleus.RCOUNT: n.rcount = parseInt(i); break;
+                        case Nucleus.ASSIGNEDID: n.assignedID = name(i); break;
+                        case Nucleus.RWRAW: n.rwraw = parseInt(i); break;
+                        case Nucleus.RWCORR1: n.rwcorr1 = parseInt(i); break;
+                        case Nucleus.RWCORR2: n.rwcorr2 = parseInt(i); break;
+                        case Nucleus.RWCORR3: n.rwcorr3 = parseInt(i); break;
+                        case Nucleus.RWCORR4: n.rwcorr4 = parseInt(i); break;
+                    }
+                }
+            } catch(NumberFormatException nfe) {
+            }
+            n.status = -1;
+            int xstat = parseInt(Nucleus.STATUS);
+            if (xstat > 0) n.status = xstat;
+
+            if (isNill(Nucleus.PRED)) n.predecessor = Nucleus.NILLI;
+            else n.predecessor = parseInt(Nucleus.PRED);
+            if (isNill(Nucleus.SUCC1)) n.successor1 = Nucleus.NILLI;
+            else n.successor1 = parseInt(Nucleus.SUCC1);
+            if (Nucleus.SUCC2 >= iCount || isNill(Nucleus.SUCC2)) n.successor2 = Nucleus.NILLI;
+            else n.successor2 = parseInt(Nucleus.SUCC2);
+            return n;
+        }
+
+        private boolean isNill(int k) {
+            if (k >= iCount) throw new NumberFormatException("missing field " + k);
+            int s = iStart[k];
+            return iEnd[k] - s == 4 && iBuf[s] == 'n' && iBuf[s + 1] == 'i'
+                    && iBuf[s + 2] == 'l' && iBuf[s + 3] == 'l';
+        }
+
+        int parseInt(int k) {
+            if (k >= iCount) throw new NumberFormatException("missing field " + k);
+            int s = iStart[k];
+            int e = iEnd[k];
+            if (s == e) throw new NumberFormatException("empty field " + k);
+            boolean neg = false;
+            if (iBuf[s] == '-' || iBuf[s] == '+') {
+                neg = iBuf[s] == '-';
+                s++;
+                if (s == e) throw new NumberFormatException(token(k));
+            }
+            long r = 0;
+            for (int i=s; i < e; i++) {
+                int d = iBuf[i] - '0';
+                if (d < 0 || d > 9) throw new NumberFormatException(token(k));
+                r = r * 10 + d;
+                if (r > 0x80000000L) throw new NumberFormatException(token(k));
+            }
+            if (neg) r = -r;
+            if (r > Integer.MAX_VALUE) throw new NumberFormatException(token(k));
+            return (int)r;
+        }
+
+        /**
+         * plain decimals with few digits are converted exactly in float
+         * arithmetic; anything else goes through Float.parseFloat
+         */
+        float parseFloat(int k) {
+            if (k >= iCount) throw new NumberFormatException("missing field " + k);
+            int s = iStart[k];
+            int e = iEnd[k];
+            boolean neg = false;
+            if (s < e && (iBuf[s] == '-' || iBuf[s] == '+')) {
+                neg = iBuf[s] == '-';
+                s++;
+            }
+            int m = 0;
+            int digits = 0;
+            int decimals = -1;
+            for (int i=s; i < e; i++) {
+                byte b = iBuf[i];
+                if (b == '.' && decimals < 0) {
+                    decimals = 0;
+                    continue;
+                }
+                int d = b - '0';
+                if (d < 0 || d > 9 || ++digits > 7) return Float.parseFloat(token(k));
+                m = m * 10 + d;
+                if (decimals >= 0) decimals++;
+            }
+            if (digits == 0) return Float.parseFloat(token(k));
+            float f = m;
+            if (decimals > 0) f = f / POW10[decimals];
+            return neg ? -f : f;
+        }
+
+        /**
+         * returns the dictionary String for token k, allocating only when the
+         * name has not been seen recently by this thread
+         */
+        String name(int k) {
+            if (k >= iCount) return null;
+            int s = iStart[k];
+            int e = iEnd[k];
+            int h = 0;
+            for (int i=s; i < e; i++) {
+                if (iBuf[i] < 0) return iStore.intern(token(k)); // not plain ASCII
+                h = 31 * h + iBuf[i];
+            }
+            int slot = h & (NAMECACHE - 1);
+            String cached = iNames[slot];
+            if (cached != null && cached.length() == e - s) {
+                boolean same = true;
+                for (int i=s; i < e && same; i++) {
+                    same = cached.charAt(i - s) == iBuf[i];
+                }
+                if (same) return cached;
+            }
+            String name = iStore.intern(token(k));
+            iNames[slot] = name;
+            return name;
+        }
+
+        private String token(int k) {
+            return new String(iBuf, iStart[k], iEnd[k] - iStart[k]);
+        }
+    }
+
+    /**
+     * Special tokenizing function adapted to the lines in old format nuclei files
+     *
+     * a line in such a file consists of 15 fields which were written
+     * by a printf statement in a C program
+     * The widths of the fields are specified in the static int [] XX
+     * 1    index -- line number in file starting from 1
+     * 2    x location of nucleus in pixels
+     * 3    y location of nucleus in pixels
+     * 4    z location of nucleus in planes (float)
+     * 5    cell name assigned by StarryNight
+     * 6    nominal cell diameter in pixels (all cells in a time index have the same value)
+     * 7    measure of GFP signal within the circle of this nucleus
+     * 8    ? (seems to be a flag)
+     * 9    ? (float)
+     * 10   ? (float)
+     * 11   ? (float)
+     * 12   ? (float)
+     * 13   index - the index that this cell had in the previous time nuclei file
+     * 14   index - the index that this cell has in the next time nuclei file
+     * 15   index - (if present indicates a division occurred) index of second daughter in next time nuclei file
+     *
+     * @param s String representing one line from such a file
+     * @return String [] containing the tokens found
+     */
+    public static String [] getTokens(String s) {
+        String [] sa = new String[15];
+        int k = 0;
+        int j = 0;
+        int max = s.length();
+        for(int i=0; i<15; i++) {
+            k += XX[i];
+            if (k > max) break;
+            sa[i] = s.substring(j, k).trim();
+            j = k;
+        }
+        return sa;
+    }
+
+    private static final ThreadLocal<LineScanner> cScanner = new ThreadLocal<LineScanner>() {
+        @Override
+        protected LineScanner initialValue() {
+            return new LineScanner();
+        }
+    };
+
+    /**
+     * pointers into the formatted lines of the old nuclei files
+     */
+    private static final int [] XX = {
+            6,5,5,6,14,4,8,4,5,6,5,6,5,5,5
+    };
+
+    private static final float [] POW10 = {
+            1f, 10f, 100f, 1000f, 10000f, 100000f, 1000000f, 10000000f
+    };
+
+    private static final int
+         MAXTHREADS = 8
+        ,MAXTOKENS = 30
+        ,NAMECACHE = 1024
+    ;
+
+}
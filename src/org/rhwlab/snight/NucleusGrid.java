@@ -0,0 +1,234 @@
+package org.rhwlab.snight;
+
+import java.util.Arrays;
+import java.util.Vector;
+
+/**
+ * uniform grid over the live nuclei of one time point, for picking and
+ * neighbour queries without scanning the whole time point
+ * <br>positions are in pixels, with z scaled by the z pixel resolution
+ * so that distances are the same in every direction; the cells are at
+ * least as large as the largest nucleus radius, so the nuclei whose box
+ * of half width size/2 holds a point are all in the 3x3x3 cells around it
+ * <br>NucleiMgr builds one per time point on first use and drops it when
+ * the time point is marked dirty; nuclei with status -1 are left out
+ *
+ * Created: Oct. 2026
+ */
+public class NucleusGrid {
+    private Vector<Nucleus>     iSource;
+    private int                 iSourceSize;
+    private double              iZPixRes;
+    private Nucleus []          iNuclei;
+    private double []           iX;
+    private double []           iY;
+    private double []           iZ;
+    private double              iMaxR;
+    private double              iCell;
+    private double              iX0, iY0, iZ0;
+    private int                 iNx, iNy, iNz;
+    private int []              iStart;
+    private int []              iItems;
+
+    public NucleusGrid(Vector<Nucleus> nuclei, double zPixRes) {
+        iSource = nuclei;
+        iSourceSize = nuclei.size();
+        iZPixRes = zPixRes;
+        int live = 0;
+        for (int j=0; j < nuclei.size(); j++) {
+            if (nuclei.elementAt(j).status != -1) live++;
+        }
+        iNuclei = new Nucleus[live];
+        iX = new double[live];
+        iY = new double[live];
+        iZ = new double[live];
+        double x1 = 0, y1 = 0, z1 = 0;
+        iX0 = iY0 = iZ0 = 0;
+        iMaxR = 0;
+        int k = 0;
+        for (int j=0; j < nuclei.size(); j++) {
+            Nucleus n = nuclei.elementAt(j);
+            if (n.status == -1) continue;
+            iNuclei[k] = n;
+            iX[k] = n.x;
+            iY[k] = n.y;
+            iZ[k] = n.z * zPixRes;
+            iMaxR = Math.max(iMaxR, n.size/2.);
+            if (k == 0 || iX[k] < iX0) iX0 = iX[k];
+            if (k == 0 || iY[k] < iY0) iY0 = iY[k];
+            if (k == 0 || iZ[k] < iZ0) iZ0 = iZ[k];
+            if (k == 0 || iX[k] > x1) x1 = iX[k];
+            if (k == 0 || iY[k] > y1) y1 = iY[k];
+            if (k == 0 || iZ[k] > z1) z1 = iZ[k];
+            k++;
+        }
+
+        // about two nuclei per cell, never smaller than the largest radius
+        double volume = Math.max(x1 - iX0, 1) * Math.max(y1 - iY0, 1) * Math.max(z1 - iZ0, 1);
+        iCell = Math.max(Math.max(iMaxR, 1), Math.cbrt(2 * volume / Math.max(live, 1)));
+        iNx = (int)((x1 - iX0) / iCell) + 1;
+        iNy = (int)((y1 - iY0) / iCell) + 1;
+        iNz = (int)((z1 - iZ0) / iCell) + 1;
+
+        // counting sort of the nuclei into their cells, in vector order
+        int [] cellOf = new int[live];
+        iStart = new int[iNx * iNy * iNz + 1];
+        for (int i=0; i < live; i++) {
+            cellOf[i] = cell(ix(iX[i]), iy(iY[i]), iz(iZ[i]));
+            iStart[cellOf[i] + 1]++;
+        }
+        for (int c=0; c < iStart.length - 1; c++) iStart[c + 1] += iStart[c];
+        int [] fill = Arrays.copyOf(iStart, iStart.length - 1);
+        iItems = new int[live];
+        for (int i=0; i < live; i++) iItems[fill[cellOf[i]]++] = i;
+    }
+
+    /**
+     * @return true while this grid was built from the given time point
+     * as it is now; edits must still be reported through NucleiMgr.markDirty()
+     */
+    public boolean isCurrent(Vector<Nucleus> nuclei, double zPixRes) {
+        return nuclei == iSource && nuclei.size() == iSourceSize && zPixRes == iZPixRes;
+    }
+
+    /**
+     * @return the largest size/2 of the indexed nuclei
+     */
+    public double getMaxRadius() {
+        return iMaxR;
+    }
+
+    /**
+     * the nuclei within a box around a point, in the order of the time point
+     * @param x pixels
+     * @param y pixels
+     * @param z scaled by the z pixel resolution
+     * @param reach half width of the box in x and y
+     * @param zReach half width of the box in z, negative for all z
+     */
+    public Nucleus [] candidates(double x, double y, double z, double reach, double zReach) {
+        int x0 = ix(x - reach), x1 = ix(x + reach);
+        int y0 = iy(y - reach), y1 = iy(y + reach);
+        int z0 = zReach < 0 ? 0 : iz(z - zReach), z1 = zReach < 0 ? iNz - 1 : iz(z + zReach);
+        int count = 0;
+        int [] found = new int[16];
+        for (int cz=z0; cz <= z1; cz++) {
+            for (int cy=y0; cy <= y1; cy++) {
+                for (int cx=x0; cx <= x1; cx++) {
+                    int c = cell(cx, cy, cz);
+                    for (int p=iStart[c]; p < iStart[c + 1]; p++) {
+                        if (count == found.length) found = Arrays.copyOf(found, count * 2);
+                        found[count++] = iItems[p];
+                    }
+                }
+            }
+        }
+        Arrays.sort(found, 0, count);
+        Nucleus [] nuclei = new Nucleus[count];
+        for (int i=0; i < count; i++) nuclei[i] = iNuclei[found[i]];
+        return nuclei;
+    }
+
+    /**
+     * @param x pixels
+     * @param y pixels
+     * @param plane z in planes
+     * @return the nucleus with the nearest center, or null if there are none
+     */
+    public Nucleus nearest(double x, double y, double plane) {
+        Nucleus [] n = nearest(x, y, plane, 1);
+        return n.length > 0 ? n[0] : null;
+    }
+
+    /**
+     * @param x pixels
+     * @param y pixels
+     * @param plane z in planes
+     * @param k how many
+     * @return up to k nuclei, nearest first
+     */
+    public Nucleus [] nearest(double x, double y, double plane, int k) {
+        double z = plane * iZPixRes;
+        k = Math.min(k, iNuclei.length);
+        int [] best = new int[k];
+        double [] dist = new double[k];
+        int count = 0;
+        int cx = ix(x), cy = iy(y), cz = iz(z);
+        int rings = Math.max(iNx, Math.max(iNy, iNz));
+        for (int s=0; s <= rings && k > 0; s++) {
+            for (int gz=cz - s; gz <= cz + s; gz++) {
+                if (gz < 0 || gz >= iNz) continue;
+                for (int gy=cy - s; gy <= cy + s; gy++) {
+                    if (gy < 0 || gy >= iNy) continue;
+                    for (int gx=cx - s; gx <= cx + s; gx++) {
+                        if (gx < 0 || gx >= iNx) continue;
+                        // only the shell of the cube
+                        if (Math.abs(gx - cx) != s && Math.abs(gy - cy) != s && Math.abs(gz - cz) != s) continue;
+                        int c = cell(gx, gy, gz);
+                        for (int p=iStart[c]; p < iStart[c + 1]; p++) {
+                            int i = iItems[p];
+                            double d = distance(i, x, y, z);
+                            if (count == k && d >= dist[k - 1]) continue;
+                            int at = count < k ? count++ : k - 1;
+                            while (at > 0 && (dist[at - 1] > d || (dist[at - 1] == d && best[at - 1] > i))) {
+                                dist[at] = dist[at - 1];
+                                best[at] = best[at - 1];
+                                at--;
+                            }
+                            dist[at] = d;
+                            best[at] = i;
+                        }
+                    }
+                }
+            }
+            // anything in the next shell is at least s cells away
+            if (count == k && dist[k - 1] <= s * iCell) break;
+        }
+        Nucleus [] nuclei = new Nucleus[count];
+        for (int i=0; i < count; i++) nuclei[i] = iNuclei[best[i]];
+        return nuclei;
+    }
+
+    /**
+     * @param x pixels
+     * @param y pixels
+     * @param plane z in planes
+     * @param radius in pixels
+     * @return the nuclei with centers within the radius, in the order of the time point
+     */
+    public Vector<Nucleus> within(double x, double y, double plane, double radius) {
+        double z = plane * iZPixRes;
+        Vector<Nucleus> v = new Vector<Nucleus>();
+        for (Nucleus n : candidates(x, y, z, radius, radius)) {
+            double dx = n.x - x, dy = n.y - y, dz = n.z * iZPixRes - z;
+            if (dx * dx + dy * dy + dz * dz <= radius * radius) v.add(n);
+        }
+        return v;
+    }
+
+    private double distance(int i, double x, double y, double z) {
+        double dx = iX[i] - x, dy = iY[i] - y, dz = iZ[i] - z;
+        return Math.sqrt(dx * dx + dy * dy + dz * dz);
+    }
+
+    private int cell(int cx, int cy, int cz) {
+        return (cz * iNy + cy) * iNx + cx;
+    }
+
+    private int ix(double x) {
+        return clamp((int)Math.floor((x - iX0) / iCell), iNx);
+    }
+
+    private int iy(double y) {
+        return clamp((int)Math.floor((y - iY0) / iCell), iNy);
+    }
+
+    private int iz(double z) {
+        return clamp((int)Math.floor((z - iZ0) / iCell), iNz);
+    }
+
+    private static int clamp(int c, int n) {
+        return c < 0 ? 0 : c >= n ? n - 1 : c;
+    }
+
+}
@@ -0,0 +1,113 @@
+package org.rhwlab.snight;
+
+import java.util.HashMap;
+import java.util.Vector;
+
+/**
+ * identity and hashKey lookup for the nuclei of one time point
+ * <br>identity and hashKey are public fields that the naming code and
+ * the nucedit dialogs assign directly, so the tables check themselves:
+ * a hit is checked against the nucleus it points at, and a miss is
+ * only believed once every slot still holds the nucleus, identity,
+ * hashKey and live status that were indexed; that check compares
+ * references, not strings; if anything moved the tables are rebuilt
+ * <br>NucleiMgr keeps one per time point and drops it along with the
+ * NucleusGrid when the time point is edited or renamed
+ *
+ * Created: Oct. 2026
+ */
+public class NucleusNames {
+    private Vector<Nucleus>             iSource;
+    private Nucleus []                  iNuclei;
+    private String []                   iNames;
+    private String []                   iKeys;
+    private boolean []                  iLive;
+    private HashMap<String, Integer>    iByName;
+    private HashMap<String, Integer>    iByKey;
+
+    public NucleusNames(Vector<Nucleus> nuclei) {
+        iSource = nuclei;
+        build();
+    }
+
+    /**
+     * @return true while this was built for the given Vector
+     */
+    public boolean isFor(Vector<Nucleus> nuclei) {
+        return nuclei == iSource;
+    }
+
+    /**
+     * @return the first nucleus with this identity, whatever its status,
+     * or null
+     */
+    public synchronized Nucleus byName(String name) {
+        if (name == null) return null;
+        Integer k = iByName.get(name);
+        if (k != null) {
+            Nucleus n = slot(k);
+            if (n != null && name.equals(n.identity)) return n;
+        } else if (isCurrent()) {
+            return null;
+        }
+        build();
+        k = iByName.get(name);
+        return k == null ? null : iNuclei[k];
+    }
+
+    /**
+     * @return the first nucleus with status >= 0 and this hashKey, or null
+     */
+    public synchronized Nucleus byHashKey(String hashKey) {
+        if (hashKey == null) return null;
+        Integer k = iByKey.get(hashKey);
+        if (k != null) {
+            Nucleus n = slot(k);
+            if (n != null && n.status >= 0 && hashKey.equals(n.hashKey)) return n;
+        } else if (isCurrent()) {
+            return null;
+        }
+        build();
+        k = iByKey.get(hashKey);
+        return k == null ? null : iNuclei[k];
+    }
+
+    // the nucleus still at slot k, or null if the Vector changed under it
+    private Nucleus slot(int k) {
+        if (k >= iSource.size()) return null;
+        Nucleus n = iSource.elementAt(k);
+        return n == iNuclei[k] ? n : null;
+    }
+
+    private boolean isCurrent() {
+        // one copy instead of a synchronized elementAt() per slot
+        Object [] now = iSource.toArray();
+        if (now.length != iNuclei.length) return false;
+        for (int k=0; k < now.length; k++) {
+            Nucleus n = (Nucleus)now[k];
+            if (n != iNuclei[k] || n.identity != iNames[k] || n.hashKey != iKeys[k]) return false;
+            if ((n.status >= 0) != iLive[k]) return false;
+        }
+        return true;
+    }
+
+    private void build() {
+        Nucleus [] nuclei = iSource.toArray(new Nucleus[0]);
+        int size = nuclei.length;
+        iNuclei = nuclei;
+        iNames = new String[size];
+        iKeys = new String[size];
+        iLive = new boolean[size];
+        iByName = new HashMap<String, Integer>(size * 2);
+        iByKey = new HashMap<String, Integer>(size * 2);
+        for (int k=0; k < size; k++) {
+            Nucleus n = nuclei[k];
+            iNames[k] = n.identity;
+            iKeys[k] = n.hashKey;
+            iLive[k] = n.status >= 0;
+            if (n.identity != null && !iByName.containsKey(n.identity)) iByName.put(n.identity, k);
+            if (iLive[k] && n.hashKey != null && !iByKey.containsKey(n.hashKey)) iByKey.put(n.hashKey, k);
+        }
+    }
+
+}
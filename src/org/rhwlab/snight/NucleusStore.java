@@ -0,0 +1,247 @@
+package org.rhwlab.snight;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Vector;
+
+/**
+ * the cell name dictionary of a series, and packed copies of time points
+ * <br>NucleiReader and NucleiArchive intern every name they read here, so
+ * the Nucleus objects of the nuclei_record share one String instance per
+ * distinct name; the Nucleus objects themselves stay as they are, the
+ * editing code writes their fields directly
+ * <br>a Timepoint holds one time point as a struct of primitive arrays,
+ * one column per Nucleus field and the names as dictionary ids;
+ * EditJournal keeps the state of the time points an open edit touches
+ * that way
+ *
+ * Created: Oct. 2026
+ */
+public class NucleusStore {
+    private HashMap<String, Integer>    iNameIds;
+    private ArrayList<String>           iNames;
+
+    public NucleusStore() {
+        iNameIds = new HashMap<String, Integer>();
+        iNames = new ArrayList<String>();
+        // id 0 is always the empty name so that a zero filled column is valid
+        nameId("");
+    }
+
+    /**
+     * returns the id of the given name, adding it to the dictionary if needed
+     * @param name a cell name, null is treated as NONAME
+     * @return int id into the dictionary
+     */
+    public synchronized int nameId(String name) {
+        if (name == null) return NONAME;
+        Integer id = iNameIds.get(name);
+        if (id == null) {
+            id = iNames.size();
+            iNames.add(name);
+            iNameIds.put(name, id);
+        }
+        return id;
+    }
+
+    /**
+     * @param id an id handed out by nameId
+     * @return the shared String for that id or null for NONAME
+     */
+    public synchronized String name(int id) {
+        if (id == NONAME) return null;
+        return iNames.get(id);
+    }
+
+    /**
+     * @param name any String
+     * @return the dictionary's instance of an equal String
+     */
+    public String intern(String name) {
+        return name(nameId(name));
+    }
+
+    /**
+     * packs one time point of the nuclei_record into columns
+     * @param nuclei Vector of Nucleus
+     * @return Timepoint holding a copy of the data
+     */
+    public Timepoint pack(Vector<Nucleus> nuclei) {
+        Timepoint tp = new Timepoint(this, nuclei.size());
+        for (int j=0; j < nuclei.size(); j++) {
+            tp.add(nuclei.elementAt(j));
+        }
+        return tp;
+    }
+
+    /**
+     * one time point of nuclei as parallel primitive arrays
+     * <br>row j of every column describes the nucleus with index j + 1
+     */
+    public static class Timepoint {
+        private NucleusStore iStore;
+        private int iSize;
+
+        public int [] index;
+        public int [] status;
+        public int [] predecessor;
+        public int [] successor1;
+        public int [] successor2;
+        public int [] x;
+        public int [] y;
+        public float [] z;
+        public int [] size;
+        public int [] weight;
+        public int [] rweight;
+        public int [] rsum;
+        public int [] rcount;
+        public int [] rwraw;
+        public int [] rwcorr1;
+        public int [] rwcorr2;
+        public int [] rwcorr3;
+        public int [] rwcorr4;
+        public int [] identity;
+        public int [] assignedID;
+        public int [] hashKey;
+        public char [] idTag;
+
+        public Timepoint(NucleusStore store, int capacity) {
+            iStore = store;
+            iSize = 0;
+            allocate(Math.max(capacity, 1));
+        }
+
+        public int size() {
+            return iSize;
+        }
+
+        /**
+         * appends a row for the given nucleus
+         * @param n Nucleus to copy from
+         * @return the row that was written
+         */
+        public int add(Nucleus n) {
+            int j = addRow();
+            set(j, n);
+            return j;
+        }
+
+        // an empty row, the columns grown when needed
+        private int addRow() {
+            if (iSize == index.length) allocate(iSize * 2);
+            int j = iSize++;
+            predecessor[j] = Nucleus.NILLI;
+            successor1[j] = Nucleus.NILLI;
+            successor2[j] = Nucleus.NILLI;
+            identity[j] = NONAME;
+            hashKey[j] = NONAME;
+            return j;
+        }
+
+        // copies the fields of the nucleus into row j
+        private void set(int j, Nucleus n) {
+            index[j] = n.index;
+            status[j] = n.status;
+            predecessor[j] = n.predecessor;
+            successor1[j] = n.successor1;
+            successor2[j] = n.successor2;
+            x[j] = n.x;
+            y[j] = n.y;
+            z[j] = n.z;
+            size[j] = n.size;
+            weight[j] = n.weight;
+            rweight[j] = n.rweight;
+            rsum[j] = n.rsum;
+            rcount[j] = n.rcount;
+            rwraw[j] = n.rwraw;
+            rwcorr1[j] = n.rwcorr1;
+            rwcorr2[j] = n.rwcorr2;
+            rwcorr3[j] = n.rwcorr3;
+            rwcorr4[j] = n.rwcorr4;
+            identity[j] = iStore.nameId(n.identity);
+            assignedID[j] = iStore.nameId(n.assignedID);
+            hashKey[j] = iStore.nameId(n.hashKey);
+            idTag[j] = n.id_tag;
+        }
+
+        /**
+         * fills the given nucleus from row j
+         * <br>passing the same Nucleus for every row gives a cheap
+         * flyweight walk over the time point
+         * @return the Nucleus passed in
+         */
+        public Nucleus get(int j, Nucleus n) {
+            n.index = index[j];
+            n.status = status[j];
+            n.predecessor = predecessor[j];
+            n.successor1 = successor1[j];
+            n.successor2 = successor2[j];
+            n.x = x[j];
+            n.y = y[j];
+            n.z = z[j];
+            n.size = size[j];
+            n.weight = weight[j];
+            n.rweight = rweight[j];
+            n.rsum = rsum[j];
+            n.rcount = rcount[j];
+            n.rwraw = rwraw[j];
+            n.rwcorr1 = rwcorr1[j];
+            n.rwcorr2 = rwcorr2[j];
+            n.rwcorr3 = rwcorr3[j];
+            n.rwcorr4 = rwcorr4[j];
+            n.identity = iStore.name(identity[j]);
+            n.assignedID = iStore.name(assignedID[j]);
+            n.hashKey = iStore.name(hashKey[j]);
+            n.id_tag = idTag[j];
+            return n;
+        }
+
+        private void allocate(int n) {
+            index = grow(index, n);
+            status = grow(status, n);
+            predecessor = grow(predecessor, n);
+            successor1 = grow(successor1, n);
+            successor2 = grow(successor2, n);
+            x = grow(x, n);
+            y = grow(y, n);
+            z = grow(z, n);
+            size = grow(size, n);
+            weight = grow(weight, n);
+            rweight = grow(rweight, n);
+            rsum = grow(rsum, n);
+            rcount = grow(rcount, n);
+            rwraw = grow(rwraw, n);
+            rwcorr1 = grow(rwcorr1, n);
+            rwcorr2 = grow(rwcorr2, n);
+            rwcorr3 = grow(rwcorr3, n);
+            rwcorr4 = grow(rwcorr4, n);
+            identity = grow(identity, n);
+            assignedID = grow(assignedID, n);
+            hashKey = grow(hashKey, n);
+            idTag = grow(idTag, n);
+        }
+
+        private int [] grow(int [] a, int n) {
+            int [] b = new int[n];
+            if (a != null) System.arraycopy(a, 0, b, 0, Math.min(iSize, n));
+            return b;
+        }
+
+        private float [] grow(float [] a, int n) {
+            float [] b = new float[n];
+            if (a != null) System.arraycopy(a, 0, b, 0, Math.min(iSize, n));
+            return b;
+        }
+
+        private char [] grow(char [] a, int n) {
+            char [] b = new char[n];
+            if (a != null) System.arraycopy(a, 0, b, 0, Math.min(iSize, n));
+            return b;
+        }
+    }
+
+    public static final int
+         NONAME = -1
+    ;
+
+}
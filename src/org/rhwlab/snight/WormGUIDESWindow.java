@@ -9,8 +9,6 @@ import org.rhwlab.image.management.ImageManager;
 
 import java.util.Vector;
 
-import static application_src.application_model.loaders.AceTreeTableLineageDataLoader.setOriginToZero;
-
 /**
  * Class to open WormGUIDES via AceTree
  *
@@ -115,11 +113,27 @@ public class WormGUIDESWindow extends MainApp {
         }));
 	}
 
+	/**
+	 * The adapter is told of edits by the NucleiMgr and reads the changed time points again when they are shown;
+	 * this only makes sure nothing read before the edit is kept. The shift to the center made when WormGUIDES
+	 * started is kept, so the embryo does not move in the viewer with every edit
+	 */
 	public void rebuildData() {
 		nucleiMgrAdapter.updateCellOccurencesAndPositions();
+	}
+
+	/**
+	 * WormGUIDES can be started only once, so the window is kept and shows the series AceTree has open now
+	 */
+	public void showSeries() {
+		nucleiMgrAdapter.setNucleiMgr(aceTree.getNucleiMgr(), aceTree.getConfig());
+	}
 
-		// shift the positions to the center
-		setOriginToZero(nucleiMgrAdapter, false);
+	/**
+	 * Stops the adapter listening to the edits of the NucleiMgr
+	 */
+	public void dispose() {
+		nucleiMgrAdapter.dispose();
 	}
 
 	public void updateData(int time) {
@@ -30,6 +30,7 @@ public class ZipNuclei {
     ZipFile iZipFile;
     InputStream iInputStream;
     BufferedReader iBufferedReader;
+    NucleiArchive iArchive;
 
     /**
      * constructor
@@ -41,6 +42,15 @@ public class ZipNuclei {
         iZipName = zipName;
         iInputStream = null;
         File zipFile = new File(zipName);
+        // a binary nuclei archive is recognized by its magic, whatever its name
+        if (NucleiArchive.isArchive(zipFile)) {
+            try {
+                iArchive = new NucleiArchive(zipFile);
+            } catch(IOException ioe) {
+                System.out.println("unable to open nuclei archive: " + ioe);
+            }
+            return;
+        }
         try {
             //println("ZipNuclei constructor, " + iZipName);
             //iZipFile = new ZipFile(iZipName);
@@ -61,6 +71,20 @@ public class ZipNuclei {
         //System.out.println("using iZipFile: " + iZipName + CS + iZipFile);
     }
 
+    /**
+     * @return true if either a zip file or a binary nuclei archive was opened
+     */
+    public boolean isOpen() {
+        return iZipFile != null || iArchive != null;
+    }
+
+    /**
+     * @return the binary nuclei archive, or null when the nuclei are in a zip
+     */
+    public NucleiArchive getArchive() {
+        return iArchive;
+    }
+
     /**
      * returns one entry from the zip file
      * @param entryName String name of entry
@@ -124,6 +148,8 @@ public class ZipNuclei {
     }
 
     public void close() {
+        if (iArchive != null) iArchive.close();
+        if (iZipFile == null) return;
         try {
             iZipFile.close();
         } catch(IOException ioe) {
@@ -0,0 +1,290 @@
+package org.rhwlab.snight;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Vector;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.ZipException;
+
+import org.rhwlab.utils.EUtils;
+
+/**
+ * saves a nuclei zip by rewriting only the time points that changed
+ * <br>the entries of the previously saved zip are located through its
+ * central directory; the entry of a clean time point is copied across
+ * as a raw byte range (local header, compressed data and data
+ * descriptor) so it is neither formatted nor deflated again, while
+ * dirty time points are formatted and deflated as NucZipper does
+ * <br>a new central directory is written at the end, so the output has
+ * the same entries in the same order as a full NucZipper.writeZip
+ * <br>the output goes to a separate file which NucZipper then renames
+ * over the target, so an interrupted save leaves the old zip intact
+ *
+ * Created: Oct. 2026
+ */
+public class ZipRewriter {
+    private RandomAccessFile            iSource;
+    private HashMap<String, Entry>      iEntries;
+
+    /**
+     * reads the central directory of the given zip
+     * @param source a zip previously written by NucZipper
+     * @throws ZipException if the zip uses features this class does not copy (zip64, spanning)
+     */
+    public ZipRewriter(File source) throws IOException {
+        iSource = new RandomAccessFile(source, "r");
+        try {
+            readDirectory();
+        } catch(IOException ioe) {
+            iSource.close();
+            throw ioe;
+        }
+    }
+
+    /**
+     * writes the nuclei_record to dest reusing the clean entries of the source
+     * @param dest destination, overwritten
+     * @param nuclei the nuclei_record
+     * @param count number of time points to write
+     * @param nucDir directory of the nuclei entries, with trailing slash
+     * @param parameterEntry name of the parameters entry
+     * @param parameterFileInfo lines of the parameters entry, may be null
+     * @param dirty 0-based indices of the time points to format again
+     * @return the number of time points that were formatted
+     */
+    public int write(File dest, Vector nuclei, int count, String nucDir,
+            String parameterEntry, Vector parameterFileInfo, BitSet dirty) throws IOException {
+        if (count + 1 > MAXENTRIES) throw new ZipException("too many entries: " + count);
+        FileOutputStream fos = new FileOutputStream(dest);
+        FileChannel out = fos.getChannel();
+        FileChannel in = iSource.getChannel();
+        ByteArrayOutputStream central = new ByteArrayOutputStream();
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        int formatted = 0;
+        try {
+            long dosTime = dosTime(System.currentTimeMillis());
+            for (int i = 0; i < count; i++) {
+                String ename = nucDir + "t" + EUtils.makePaddedInt(i + 1) + "-nuclei";
+                Entry e = iEntries.get(ename);
+                long offset = out.position();
+                if (e != null && !dirty.get(i)) {
+                    long pos = e.iStart;
+                    while (pos < e.iEnd) pos += in.transferTo(pos, e.iEnd - pos, out);
+                    byte [] cen = e.iCentral.clone();
+                    ByteBuffer.wrap(cen).order(ByteOrder.LITTLE_ENDIAN).putInt(CENOFF, checkOffset(offset));
+                    central.write(cen);
+                } else {
+                    Vector v = (Vector)nuclei.elementAt(i);
+                    StringBuffer sb = new StringBuffer();
+                    for (int j=0; j < v.size(); j++) {
+                        sb.append(NucZipper.formatNucleus(j, (Nucleus)v.elementAt(j)));
+                    }
+                    writeEntry(out, central, deflater, ename, sb.toString().getBytes(), dosTime);
+                    formatted++;
+                }
+            }
+            StringBuffer sb = new StringBuffer();
+            if (parameterFileInfo != null) {
+                for (int i=0; i < parameterFileInfo.size(); i++) {
+                    sb.append((String)parameterFileInfo.elementAt(i) + "\n");
+                }
+            }
+            writeEntry(out, central, deflater, parameterEntry, sb.toString().getBytes(), dosTime);
+
+            long cenOffset = out.position();
+            byte [] cen = central.toByteArray();
+            writeFully(out, ByteBuffer.wrap(cen));
+            ByteBuffer end = ByteBuffer.allocate(ENDHDR).order(ByteOrder.LITTLE_ENDIAN);
+            end.putInt(ENDSIG);
+            end.putShort((short)0);
+            end.putShort((short)0);
+            end.putShort((short)(count + 1));
+            end.putShort((short)(count + 1));
+            end.putInt(cen.length);
+            end.putInt(checkOffset(cenOffset));
+            end.putShort((short)0);
+            end.flip();
+            writeFully(out, end);
+            out.force(true);
+        } finally {
+            deflater.end();
+            out.close();
+            fos.close();
+        }
+        return formatted;
+    }
+
+    public void close() {
+        try {
+            iSource.close();
+        } catch(IOException ioe) {
+            System.out.println("ZipRewriter close: " + ioe);
+        }
+    }
+
+    private void writeEntry(FileChannel out, ByteArrayOutputStream central, Deflater deflater,
+            String ename, byte [] data, long dosTime) throws IOException {
+        CRC32 crc = new CRC32();
+        crc.update(data, 0, data.length);
+        deflater.reset();
+        deflater.setInput(data);
+        deflater.finish();
+        ByteArrayOutputStream bos = new ByteArrayOutputStream(data.length / 3 + 64);
+        byte [] buf = new byte[8192];
+        while (!deflater.finished()) {
+            int k = deflater.deflate(buf);
+            bos.write(buf, 0, k);
+        }
+        byte [] name = ename.getBytes("UTF-8");
+        int offset = checkOffset(out.position());
+
+        ByteBuffer loc = ByteBuffer.allocate(LOCHDR + name.length).order(ByteOrder.LITTLE_ENDIAN);
+        loc.putInt(LOCSIG);
+        loc.putShort((short)VERSION);
+        loc.putShort((short)0);
+        loc.putShort((short)Deflater.DEFLATED);
+        loc.putInt((int)dosTime);
+        loc.putInt((int)crc.getValue());
+        loc.putInt(bos.size());
+        loc.putInt(data.length);
+        loc.putShort((short)name.length);
+        loc.putShort((short)0);
+        loc.put(name);
+        loc.flip();
+        writeFully(out, loc);
+        writeFully(out, ByteBuffer.wrap(bos.toByteArray(), 0, bos.size()));
+
+        ByteBuffer cen = ByteBuffer.allocate(CENHDR + name.length).order(ByteOrder.LITTLE_ENDIAN);
+        cen.putInt(CENSIG);
+        cen.putShort((short)VERSION);
+        cen.putShort((short)VERSION);
+        cen.putShort((short)0);
+        cen.putShort((short)Deflater.DEFLATED);
+        cen.putInt((int)dosTime);
+        cen.putInt((int)crc.getValue());
+        cen.putInt(bos.size());
+        cen.putInt(data.length);
+        cen.putShort((short)name.length);
+        cen.putShort((short)0);
+        cen.putShort((short)0);
+        cen.putShort((short)0);
+        cen.putShort((short)0);
+        cen.putInt(0);
+        cen.putInt(offset);
+        cen.put(name);
+        central.write(cen.array());
+    }
+
+    private void readDirectory() throws IOException {
+        // the end record is at the very end unless the zip has a comment
+        long length = iSource.length();
+        int tail = (int)Math.min(length, ENDHDR + 0xFFFF);
+        byte [] b = new byte[tail];
+        iSource.seek(length - tail);
+        iSource.readFully(b);
+        ByteBuffer bb = ByteBuffer.wrap(b).order(ByteOrder.LITTLE_ENDIAN);
+        int endPos = -1;
+        for (int i = tail - ENDHDR; i >= 0; i--) {
+            if (bb.getInt(i) == ENDSIG) {
+                endPos = i;
+                break;
+            }
+        }
+        if (endPos < 0) throw new ZipException("no end of central directory");
+        int total = bb.getShort(endPos + 10) & 0xFFFF;
+        long cenSize = bb.getInt(endPos + 12) & 0xFFFFFFFFL;
+        long cenOffset = bb.getInt(endPos + 16) & 0xFFFFFFFFL;
+        if (bb.getShort(endPos + 4) != 0 || total == 0xFFFF || cenOffset == 0xFFFFFFFFL)
+            throw new ZipException("unsupported zip layout");
+
+        byte [] c = new byte[(int)cenSize];
+        iSource.seek(cenOffset);
+        iSource.readFully(c);
+        ByteBuffer cb = ByteBuffer.wrap(c).order(ByteOrder.LITTLE_ENDIAN);
+        ArrayList<Entry> entries = new ArrayList<Entry>();
+        int pos = 0;
+        for (int i = 0; i < total; i++) {
+            if (pos + CENHDR > c.length || cb.getInt(pos) != CENSIG)
+                throw new ZipException("bad central directory");
+            int nlen = cb.getShort(pos + 28) & 0xFFFF;
+            int elen = cb.getShort(pos + 30) & 0xFFFF;
+            int clen = cb.getShort(pos + 32) & 0xFFFF;
+            Entry e = new Entry();
+            e.iName = new String(c, pos + CENHDR, nlen, "UTF-8");
+            e.iStart = cb.getInt(pos + CENOFF) & 0xFFFFFFFFL;
+            if (e.iStart == 0xFFFFFFFFL) throw new ZipException("unsupported zip64 entry");
+            int len = CENHDR + nlen + elen + clen;
+            e.iCentral = new byte[len];
+            System.arraycopy(c, pos, e.iCentral, 0, len);
+            entries.add(e);
+            pos += len;
+        }
+
+        // an entry runs from its local header to the next one, or to the central directory
+        Collections.sort(entries, new Comparator<Entry>() {
+            @Override
+            public int compare(Entry a, Entry b) {
+                return Long.compare(a.iStart, b.iStart);
+            }
+        });
+        iEntries = new HashMap<String, Entry>();
+        for (int i = 0; i < entries.size(); i++) {
+            Entry e = entries.get(i);
+            e.iEnd = i + 1 < entries.size() ? entries.get(i + 1).iStart : cenOffset;
+            iEntries.put(e.iName, e);
+        }
+    }
+
+    private static int checkOffset(long offset) throws ZipException {
+        if (offset >= 0xFFFFFFFFL) throw new ZipException("zip too large for rewrite");
+        return (int)offset;
+    }
+
+    private static void writeFully(FileChannel out, ByteBuffer bb) throws IOException {
+        while (bb.hasRemaining()) out.write(bb);
+    }
+
+    // MS-DOS date and time as stored in zip headers, date in the high half
+    private static long dosTime(long millis) {
+        Calendar c = Calendar.getInstance();
+        c.setTimeInMillis(millis);
+        int year = c.get(Calendar.YEAR);
+        if (year < 1980) return (1 << 21) | (1 << 16);
+        return (year - 1980) << 25 | (c.get(Calendar.MONTH) + 1) << 21
+                | c.get(Calendar.DAY_OF_MONTH) << 16 | c.get(Calendar.HOUR_OF_DAY) << 11
+                | c.get(Calendar.MINUTE) << 5 | c.get(Calendar.SECOND) >> 1;
+    }
+
+    private static class Entry {
+        String  iName;
+        long    iStart;
+        long    iEnd;
+        byte [] iCentral;
+    }
+
+    private static final int
+         LOCSIG = 0x04034b50
+        ,CENSIG = 0x02014b50
+        ,ENDSIG = 0x06054b50
+        ,LOCHDR = 30
+        ,CENHDR = 46
+        ,ENDHDR = 22
+        ,CENOFF = 42
+        ,VERSION = 20
+        ,MAXENTRIES = 0xFFFF
+        ;
+
+}
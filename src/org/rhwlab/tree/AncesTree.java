@@ -11,10 +11,12 @@ import org.rhwlab.snight.Identity3;
 import org.rhwlab.snight.NucleiMgr;
 import org.rhwlab.snight.Nucleus;
 
+import java.util.BitSet;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.Enumeration;
 import java.util.Hashtable;
+import java.util.IdentityHashMap;
 import java.util.Vector;
 import java.util.Iterator;
 
@@ -38,6 +40,8 @@ import java.util.Iterator;
  * <br><code>getRoot</code>returns <code>iRoot</code>
  * <br><code>getCells</code>returns <code>Hashtable iCells</code>
  * which enables any Cell in the tree to be accessed by its name.
+ * <br><code>getTracks</code>returns <code>CellTracks iTracks</code>
+ * which follows any Cell through the time points of its life.
  * <p>
  * <p>
  *
@@ -65,6 +69,11 @@ public class AncesTree implements Comparator {
     private boolean iShowDeathsAndDivisions;
     private int []  iCellCounts;
     private Vector iRootCells;
+    // state of an update(), null otherwise
+    private IdentityHashMap iCutTimes;
+    private BitSet [] iReplay;
+    private Vector iNewRoots;
+    private CellTracks iTracks;
     
     public boolean sulstonmode;
 
@@ -317,6 +326,40 @@ public class AncesTree implements Comparator {
         return iRootCells;
     }
 
+    /**
+     * writes out the tree under root and the names of the nuclei
+     * <br>used to check that update() leaves the same lineage as a full build
+     *
+     * @param root Cell the root cells hang from
+     * @param nuclei_record Vector of the nuclei of each time frame
+     * @return String one line per Cell and one per time frame
+     */
+    public static String describe(Cell root, Vector nuclei_record) {
+        StringBuffer sb = new StringBuffer();
+        for (int i=0; i < root.getChildCount(); i++) {
+            describe((Cell)root.getChildAt(i), "", sb);
+        }
+        for (int i=0; i < nuclei_record.size(); i++) {
+            Vector nuclei = (Vector)nuclei_record.elementAt(i);
+            sb.append(i + 1);
+            for (int j=0; j < nuclei.size(); j++) {
+                Nucleus n = (Nucleus)nuclei.elementAt(j);
+                sb.append(CS);
+                sb.append(n.status == Nucleus.NILLI ? "-" : n.identity);
+            }
+            sb.append("\n");
+        }
+        return sb.toString();
+    }
+
+    private static void describe(Cell c, String indent, StringBuffer sb) {
+        sb.append(indent + c.getName() + CS + c.getTime() + CS + c.getEndTime()
+                + CS + c.getFateInt() + CS + c.getCellData().size() + "\n");
+        for (int i=0; i < c.getChildCount(); i++) {
+            describe((Cell)c.getChildAt(i), indent + " ", sb);
+        }
+    }
+
     /**
      * loops through -nuclei file data after it has been
      * processed into the NucleiMgr object
@@ -342,6 +385,7 @@ public class AncesTree implements Comparator {
         
         //long timeStart2 = System.nanoTime();
         makeCellsByNameHash();
+        iTracks = new CellTracks(iCells.values(), iNucleiMgr.getNucleiRecord());
     }
 
     private int countAliveCellsAtIndex(int k) {
@@ -400,147 +444,400 @@ public class AncesTree implements Comparator {
             for (int j=0; j < nuclei.size(); j++) {
                 // use info on this cell from this and previous time frames
                 Nucleus n = (Nucleus)nuclei.elementAt(j);
-                //System.out.println("processEntry:3 " + i + CS + j + CS + n.identity);
-                if (n.status == -1) {
-                    continue;
-                }
-                if (n.predecessor == Nucleus.NILLI) {
-                    // StarryNight may locate cells later in the processing
-                    // and assign them to the root for lack of better info
-                    processRootCell(i, n); // found a new one
-                    continue;
-                }
-                // k is the index of the predecessor of this cell
-                int k = n.predecessor - 1;
-                Nucleus prevn = null;
-                if (k >= 0) {
-                	try {
-                		prevn = (Nucleus)prev.elementAt(k);
-                	} catch(Exception e) {
-                		return 1;
-                	}
-                }
-                // do the nominal thing and set the hashKey of the
-                // current nucleus equal to that of its predecessor
-                // this will be overlayed later if necessary
-                if (prevn.status == -1) {
-                    // current nucleus points back to a dead nucleus
-                    // change predecessor to root and process it as a new cell
-                    n.predecessor = Nucleus.NILLI;
-                    processRootCell(i, n); // call it a new one
-                    continue;
+                if (processNucleus(i, j, prev, n) != 0)
+                	return 1;
+            }
+        }
+        //long timeEnd = System.nanoTime();
+        //double timeDiff = (timeEnd-timeStart)/1e6;
+        //System.out.println("Time for AncesTree.processEntry(): "+timeDiff+" ms.");
+        return 0;
+    }
 
-                }
-                
-                //System.out.println("prevn "+prevn.identity);
-                String hashKey = prevn.getHashKey();
-                n.setHashKey(hashKey);
-
-                // check for cell death
-                if ((n.successor1 == -1 || n.successor1 == 0) && index < iEndingIndex) {
-                    if (iShowDeathsAndDivisions)
-                    	System.out.println(death(n.identity));
-                    Cell c = null;
-
-                    if (hashKey != null)
-                    	c = (Cell)iCells.get(hashKey); //####################
-
-                    if (c != null) {
-                        c.setEndTime(index);
-                        c.setEndFate(Cell.DIED);
-                    } else {
-                        System.out.println("DYING CELL NOT IN HASH TABLE");
-                        continue;
-                    }
+    /**
+     * places one nucleus of a time frame after the first in the tree
+     * <br>it either continues the Cell of its predecessor, starts a
+     * daughter Cell or, lacking a live predecessor, a new root Cell
+     *
+     * @param i int the 0 based index of the time frame
+     * @param j int the 0 based index of the nucleus in it
+     * @param prev Vector the nuclei of the previous time frame
+     * @param n Nucleus to place
+     * @return int 1 if the data is inconsistent and processing must stop
+     */
+    @SuppressWarnings("unused")
+	private int processNucleus(int i, int j, Vector prev, Nucleus n) {
+        int index = i + 1;
+        //System.out.println("processEntry:3 " + i + CS + j + CS + n.identity);
+        if (n.status == -1) {
+            return 0;
+        }
+        if (n.predecessor == Nucleus.NILLI) {
+            // StarryNight may locate cells later in the processing
+            // and assign them to the root for lack of better info
+            processRootCell(i, n); // found a new one
+            return 0;
+        }
+        // k is the index of the predecessor of this cell
+        int k = n.predecessor - 1;
+        Nucleus prevn = null;
+        if (k >= 0) {
+        	try {
+        		prevn = (Nucleus)prev.elementAt(k);
+        	} catch(Exception e) {
+        		return 1;
+        	}
+        }
+        // do the nominal thing and set the hashKey of the
+        // current nucleus equal to that of its predecessor
+        // this will be overlayed later if necessary
+        if (prevn.status == -1) {
+            // current nucleus points back to a dead nucleus
+            // change predecessor to root and process it as a new cell
+            n.predecessor = Nucleus.NILLI;
+            processRootCell(i, n); // call it a new one
+            return 0;
 
-                }
+        }
+        
+        //System.out.println("prevn "+prevn.identity);
+        String hashKey = prevn.getHashKey();
+        n.setHashKey(hashKey);
 
-                //if (prev.size() <= k || k < 0) continue; // an error I have seen
-                //Nucleus prevn = (Nucleus)prev.elementAt(n.predecessor - 1);
-                String parentName = prevn.identity;
-                if (parentName.equals("Nuc199") && i == 179) {
-                	int lll = 9;
-                }
+        // check for cell death
+        if ((n.successor1 == -1 || n.successor1 == 0) && index < iEndingIndex) {
+            if (iShowDeathsAndDivisions)
+            	System.out.println(death(n.identity));
+            Cell c = null;
 
-                if (hashKey == null) {
-                    System.out.println("null hashkey");
-                    System.out.println("***** processEntry2: " + i + CS + iCells);
-                    //return 1;
-                }
-                Cell parent = (Cell)iCells.get(hashKey); //####################
-                //System.out.println("processEntry - parent: " + parent.getName());
+            if (hashKey != null)
+            	c = (Cell)iCells.get(hashKey); //####################
+
+            if (c != null) {
+                c.setEndTime(index);
+                c.setEndFate(Cell.DIED);
+            } else {
+                System.out.println("DYING CELL NOT IN HASH TABLE");
+                return 0;
+            }
+
+        }
+
+        //if (prev.size() <= k || k < 0) return 0; // an error I have seen
+        //Nucleus prevn = (Nucleus)prev.elementAt(n.predecessor - 1);
+        String parentName = prevn.identity;
+
+        if (hashKey == null) {
+            System.out.println("null hashkey");
+            System.out.println("***** processEntry2: " + i + CS + iCells);
+            //return 1;
+        }
+        Cell parent = (Cell)iCells.get(hashKey); //####################
+        //System.out.println("processEntry - parent: " + parent.getName());
+
+        if (parent == null) {
+            System.out.println("null parent: " + parentName);
+            System.out.println("i=" + (i+1) + ", j=" + (j+1));
+            System.out.println(prevn.toString());
+            System.out.println(n.toString());
+
+        }
+        // a division can be seen by examining the successor2 variable
+        // of this same cell in the previous time frame
+        if (prevn.successor2 == Nucleus.NILLI) {
+            parent.updateCellData(n);
+            return 0; // no division
+        }
+        else {
+            //println("processEntries: " + "division encountered");
+            //handle cell division here
+            // note that we catch the other daughter when she
+            // comes up in the current set of nuclei
+            String daughterName = n.identity;
+            //System.out.println("daughterName: " + daughterName);
+            if (daughterName == null) {
+                System.out.println("null daughterName: " + i + CS + j);
+                System.out.println(n);
+            }
+            Cell daughter = new Cell(daughterName);
+            daughter.setParameters(index, iEndingIndex, n);
+            if (n.successor1 == Nucleus.NILLI && index < iEndingIndex) {
+                // special case of birth and death at same time
+                daughter.setEndTime(index);
+                daughter.setEndFate(Cell.DIED);
+                //System.out.println("special case " + daughter + CS + i);
+            }
+            hashKey = makeHashKey(index, n);
+            n.setHashKey(hashKey);
+            daughter.setHashKey(hashKey);
+
+            // check for pre-provided cell and remove if present
+            Cell x = (Cell)iCells.get(n.identity);
+            if (x != null) {
+                //System.out.println("processRootCell2: " + x.showStuff());
+
+            	Cell p = (Cell)x.getParent();
+            	x.removeFromParent();
+                //parent = p;
+            	iCells.remove(n.identity);
+            }
 
-                if (parent == null) {
-                    System.out.println("null parent: " + parentName);
-                    System.out.println("i=" + (i+1) + ", j=" + (j+1));
-                    System.out.println(prevn.toString());
-                    System.out.println(n.toString());
+            if (parent == null) {
+                System.out.println("null parent, i = " + (i+1) + "j = " + (j+1));
+                System.out.println("FORCED CONTINUE");
+                return 0;
+            }
+            parent.add(daughter);
+            parent.setEndTime(index - 1);
+            parent.setEndFate(Cell.DIVIDED);
+            if (daughterName.equals(POLAR)) {
+                n.identity = daughterName;
+                daughter.setName(daughterName);
+            }
+            if (iShowDeathsAndDivisions)
+            	System.out.println(division(parent.getName(), daughter.getName()));
+            iCells.put(daughter.getHashKey(), daughter);
+
+            checkDaughters(parent);
+        }
+        return 0;
+    }
 
+    /**
+     * patches the tree after an edit instead of building a new one
+     * <br>every nucleus of the touched time points is checked against the
+     * Cell holding it; where the two disagree that Cell is cut back to the
+     * time of the disagreement and its descendants are dropped, then the
+     * nuclei that lost their place go through processNucleus again in time
+     * order, so the affected subtrees grow back as a full build would
+     * grow them while the rest of the tree is left alone
+     * <br>the names and successors must already be up to date
+     *
+     * @param touched BitSet 0 based indices of the time frames whose nuclei,
+     * successors or names changed
+     * @param root Cell the root cells hang from in the JTree
+     * @return Vector of the Cells whose children changed, or null when the
+     * edit reaches the first time frame or the early dummy cells and the
+     * tree has to be built anew
+     */
+    @SuppressWarnings("unchecked")
+    public Vector update(BitSet touched, Cell root) {
+        Vector patched = new Vector();
+        int first = touched.nextSetBit(0);
+        if (first < 0) return patched;
+        dropTracks();
+        if (first + 1 <= iStartingIndex) return null;
+        Vector nuclei_record = iNucleiMgr.getNucleiRecord();
+        int end = Math.min(iEndingIndex, nuclei_record.size());
+        iCutTimes = new IdentityHashMap();
+        iReplay = new BitSet[end + 1];
+        iNewRoots = new Vector();
+        try {
+            // find the misplaced nuclei against the tree as it is
+            Vector seeds = new Vector();
+            Vector seedTimes = new Vector();
+            for (int k = first; k >= 0 && k < end; k = touched.nextSetBit(k + 1)) {
+                Vector nuclei = (Vector)nuclei_record.elementAt(k);
+                Vector prev = (Vector)nuclei_record.elementAt(k - 1);
+                for (int j=0; j < nuclei.size(); j++) {
+                    Nucleus n = (Nucleus)nuclei.elementAt(j);
+                    if (isPlaced(k + 1, n, prev)) continue;
+                    seeds.add(n);
+                    seedTimes.add(Integer.valueOf(k + 1));
                 }
-                // a division can be seen by examining the successor2 variable
-                // of this same cell in the previous time frame
-                if (prevn.successor2 == Nucleus.NILLI) {
-                    parent.updateCellData(n);
-                    continue; // no division
+            }
+            // cut their Cells back, collecting the nuclei that lose their place
+            for (int i=0; i < seeds.size(); i++) {
+                Nucleus n = (Nucleus)seeds.elementAt(i);
+                int t = ((Integer)seedTimes.elementAt(i)).intValue();
+                Vector prev = (Vector)nuclei_record.elementAt(t - 2);
+                Cell c = findHolder(n, t, prev, root);
+                if (c != null && !cut(c, t, patched, root)) return null;
+                if (n.status != Nucleus.NILLI) replay(t, n);
+            }
+            // and place those nuclei again
+            for (int t = first + 1; t <= end; t++) {
+                if (iReplay[t] == null) continue;
+                if (t == iStartingIndex) return null;
+                Vector nuclei = (Vector)nuclei_record.elementAt(t - 1);
+                Vector prev = (Vector)nuclei_record.elementAt(t - 2);
+                for (int j = iReplay[t].nextSetBit(0); j >= 0; j = iReplay[t].nextSetBit(j + 1)) {
+                    Nucleus n = (Nucleus)nuclei.elementAt(j);
+                    if (processNucleus(t - 1, j, prev, n) != 0) return null;
+                    if (sulstonmode && (n.identity.equals("ABal") || n.identity.equals("MS"))) return null;
                 }
-                else {
-                    //println("processEntries: " + "division encountered");
-                    //handle cell division here
-                    // note that we catch the other daughter when she
-                    // comes up in the current set of nuclei
-                    String daughterName = n.identity;
-                    //System.out.println("daughterName: " + daughterName);
-                    if (daughterName == null) {
-                        System.out.println("null daughterName: " + i + CS + j);
-                        System.out.println(n);
-                    }
-                    Cell daughter = new Cell(daughterName);
-                    daughter.setParameters(index, iEndingIndex, n);
-                    if (n.successor1 == Nucleus.NILLI && index < iEndingIndex) {
-                        // special case of birth and death at same time
-                        daughter.setEndTime(index);
-                        daughter.setEndFate(Cell.DIED);
-                        //System.out.println("special case " + daughter + CS + i);
-                    }
-                    hashKey = makeHashKey(index, n);
-                    n.setHashKey(hashKey);
-                    daughter.setHashKey(hashKey);
-
-                    // check for pre-provided cell and remove if present
-                    Cell x = (Cell)iCells.get(n.identity);
-                    if (x != null) {
-                        //System.out.println("processRootCell2: " + x.showStuff());
-
-                    	Cell p = (Cell)x.getParent();
-                    	x.removeFromParent();
-                        //parent = p;
-                    	iCells.remove(n.identity);
-                    }
-
-                    if (parent == null) {
-                        System.out.println("null parent, i = " + (i+1) + "j = " + (j+1));
-                        System.out.println("FORCED CONTINUE");
-                        continue;
-                    }
-                    parent.add(daughter);
-                    parent.setEndTime(index - 1);
-                    parent.setEndFate(Cell.DIVIDED);
-                    if (daughterName.equals(POLAR)) {
-                        n.identity = daughterName;
-                        daughter.setName(daughterName);
-                    }
-                    if (iShowDeathsAndDivisions)
-                    	System.out.println(division(parent.getName(), daughter.getName()));
-                    iCells.put(daughter.getHashKey(), daughter);
-
-                    checkDaughters(parent);
+            }
+            if (iNewRoots.size() > 0 || patched.contains(root)) {
+                // root cells are kept in the order extractRootCells gives them
+                Vector v = new Vector();
+                Enumeration e = root.children();
+                while (e.hasMoreElements()) v.add(e.nextElement());
+                v.addAll(iNewRoots);
+                Collections.sort(v, this);
+                root.removeAllChildren();
+                for (int i=0; i < v.size(); i++) root.add((Cell)v.elementAt(i));
+                iRootCells = v;
+                if (!patched.contains(root)) patched.add(root);
+            }
+        } finally {
+            iCutTimes = null;
+            iReplay = null;
+            iNewRoots = null;
+        }
+        for (int k = first; k >= 0 && k < end; k = touched.nextSetBit(k + 1)) {
+            iCellCounts[k + 1] = countAliveCellsAtIndex(k + 1);
+        }
+        makeCellsByNameHash();
+        return patched;
+    }
+
+    // true if the tree holds n at time t the way processNucleus would have put it
+    private boolean isPlaced(int t, Nucleus n, Vector prev) {
+        Cell c = null;
+        if (n.hashKey != null) c = (Cell)iCells.get(n.hashKey);
+        boolean held = c != null && holds(c, n, t);
+        if (n.status == Nucleus.NILLI) return !held;
+        if (!held) return false;
+        Nucleus p = null;
+        if (n.predecessor != Nucleus.NILLI) {
+            if (n.predecessor < 1 || n.predecessor > prev.size()) return false;
+            p = (Nucleus)prev.elementAt(n.predecessor - 1);
+            if (p.status == Nucleus.NILLI) p = null;
+        }
+        Cell parent = (Cell)c.getParent();
+        if (c.getTime() == t) {
+            if (!c.getName().equals(n.identity)) return false;
+            if (parent == null || !parent.isNodeChild(c)) return false;
+            if (p == null) {
+                if (parent.getHashKey() != null) return false;
+            } else {
+                if (p.successor2 == Nucleus.NILLI) return false;
+                if (p.hashKey == null || parent != iCells.get(p.hashKey)) return false;
+            }
+        } else {
+            if (p == null || p.successor2 != Nucleus.NILLI) return false;
+            if (!holds(c, p, t - 1)) return false;
+        }
+        boolean dies = (n.successor1 == -1 || n.successor1 == 0) && t < iEndingIndex;
+        boolean divides = n.successor2 != Nucleus.NILLI && t < iEndingIndex;
+        if (dies) return c.getEndTime() == t && c.getFateInt() == Cell.DIED;
+        if (divides) return c.getEndTime() == t && c.getFateInt() == Cell.DIVIDED;
+        if (t < iEndingIndex && c.getEndTime() <= t) return false;
+        return true;
+    }
+
+    private boolean holds(Cell c, Nucleus n, int t) {
+        int k = t - c.getTime();
+        Vector data = c.getCellData();
+        return k >= 0 && k < data.size() && ((CellData)data.elementAt(k)).iNucleus == n;
+    }
+
+    // the Cell holding n at time t, also when its hashKey is stale; null for a new nucleus
+    private Cell findHolder(Nucleus n, int t, Vector prev, Cell root) {
+        Cell c = null;
+        if (n.hashKey != null) c = (Cell)iCells.get(n.hashKey);
+        if (c != null && holds(c, n, t)) return c;
+        if (n.predecessor > 0 && n.predecessor <= prev.size()) {
+            Nucleus p = (Nucleus)prev.elementAt(n.predecessor - 1);
+            Cell pc = null;
+            if (p.hashKey != null) pc = (Cell)iCells.get(p.hashKey);
+            if (pc != null && holds(pc, p, t - 1)) {
+                if (holds(pc, n, t)) return pc;
+                for (int i=0; i < pc.getChildCount(); i++) {
+                    Cell d = (Cell)pc.getChildAt(i);
+                    if (holds(d, n, t)) return d;
                 }
             }
         }
-        //long timeEnd = System.nanoTime();
-        //double timeDiff = (timeEnd-timeStart)/1e6;
-        //System.out.println("Time for AncesTree.processEntry(): "+timeDiff+" ms.");
-        return 0;
+        for (int i=0; i < root.getChildCount(); i++) {
+            Cell d = (Cell)root.getChildAt(i);
+            if (holds(d, n, t)) return d;
+        }
+        return null;
+    }
+
+    // cuts c back so that it ends before time t; false if c is not a real cell
+    private boolean cut(Cell c, int t, Vector patched, Cell root) {
+        Integer done = (Integer)iCutTimes.get(c);
+        if (done != null && done.intValue() <= t) return true;
+        if (c.getHashKey() == null) return false;
+        Cell parent = (Cell)c.getParent();
+        if (t <= c.getTime()) {
+            discard(c);
+            if (parent == null || parent.getParent() == null) {
+                if (!patched.contains(root)) patched.add(root);
+                return true;
+            }
+            if (parent.getHashKey() == null) return false;
+            return cut(parent, c.getTime(), patched, root);
+        }
+        Vector data = c.getCellData();
+        int keep = t - c.getTime();
+        for (int k = keep; k < data.size(); k++) {
+            replay(c.getTime() + k, ((CellData)data.elementAt(k)).iNucleus);
+        }
+        if (keep < data.size()) data.setSize(keep);
+        while (c.getChildCount() > 0) {
+            Cell d = (Cell)c.getChildAt(0);
+            c.remove(0);
+            discard(d);
+        }
+        c.setEndTime(iEndingIndex);
+        c.setEndFate(Cell.ALIVE);
+        Nucleus last = ((CellData)data.lastElement()).iNucleus;
+        if ((last.successor1 == -1 || last.successor1 == 0) && t - 1 < iEndingIndex) {
+            c.setEndTime(t - 1);
+            c.setEndFate(Cell.DIED);
+        }
+        iCutTimes.put(c, Integer.valueOf(t));
+        if (!patched.contains(c)) patched.add(c);
+        return true;
+    }
+
+    // drops c and its descendants, their nuclei will be placed again
+    private void discard(Cell c) {
+        Cell parent = (Cell)c.getParent();
+        if (parent != null && parent.isNodeChild(c)) c.removeFromParent();
+        else c.setParent(null);
+        Vector stack = new Vector();
+        stack.add(c);
+        while (stack.size() > 0) {
+            Cell x = (Cell)stack.remove(stack.size() - 1);
+            iCutTimes.put(x, Integer.valueOf(Integer.MIN_VALUE));
+            removeCell(x);
+            Vector data = x.getCellData();
+            for (int k=0; k < data.size(); k++) {
+                replay(x.getTime() + k, ((CellData)data.elementAt(k)).iNucleus);
+            }
+            for (int i=0; i < x.getChildCount(); i++) stack.add(x.getChildAt(i));
+        }
+    }
+
+    private void removeCell(Cell x) {
+        String key = x.getHashKey();
+        if (key != null && iCells.get(key) == x) {
+            iCells.remove(key);
+            return;
+        }
+        // a hashKey changed by an edit, look for the entry itself
+        Enumeration e = iCells.keys();
+        while (e.hasMoreElements()) {
+            Object k = e.nextElement();
+            if (iCells.get(k) == x) {
+                iCells.remove(k);
+                return;
+            }
+        }
+    }
+
+    private void replay(int t, Nucleus n) {
+        if (t < 1 || t >= iReplay.length || n.status == Nucleus.NILLI) return;
+        Vector nuclei = (Vector)iNucleiMgr.getNucleiRecord().elementAt(t - 1);
+        int j = n.index - 1;
+        if (j < 0 || j >= nuclei.size() || nuclei.elementAt(j) != n) j = nuclei.indexOf(n);
+        if (j < 0) return;
+        if (iReplay[t] == null) iReplay[t] = new BitSet();
+        iReplay[t].set(j);
     }
 
     public String division(String par, String dau) {
@@ -787,6 +1084,8 @@ public class AncesTree implements Comparator {
         	parent.add(c);
         	checkDaughters(parent);
         	//iCells.put(hashKey, c);
+        } else if (iNewRoots != null) {
+            iNewRoots.add(c);
         } else {
             iRoot.add(c);
             //System.out.println("processRootCell: adding " + c.getName());
@@ -836,6 +1135,20 @@ public class AncesTree implements Comparator {
     //   return iTree;
     //}
 
+    /**
+     * access function for the time point to nucleus runs of the Cells,
+     * rebuilt here on first use after an update
+     * @return CellTracks of the Cells in iCells
+     */
+    public synchronized CellTracks getTracks() {
+        if (iTracks == null) iTracks = new CellTracks(iCells.values(), iNucleiMgr.getNucleiRecord());
+        return iTracks;
+    }
+
+    private synchronized void dropTracks() {
+        iTracks = null;
+    }
+
     public int getCellCount(int time) {
         return iCellCounts[time];
     }
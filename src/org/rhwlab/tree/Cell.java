@@ -8,9 +8,7 @@ import java.awt.BasicStroke;
 import java.awt.Color;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
-import java.awt.Point;
 import java.text.DecimalFormat;
-import java.util.Enumeration;
 import java.util.Hashtable;
 import java.util.Vector;
 import javax.swing.tree.DefaultMutableTreeNode;
@@ -54,8 +52,6 @@ public class Cell extends DefaultMutableTreeNode {
     public double ysc;
     public int yStartUse;
     public int xUse;
-    private int iXmax;
-    private Vector iCellsDrawn;
     
     // Reference to bookmark list
     private DefaultListModel iBookmarkListModel;
@@ -158,15 +154,6 @@ public class Cell extends DefaultMutableTreeNode {
         return getTheColor(getDiscrete(red));
     }
 
-    private Color getColor(int i, Vector v) {
-        // next line is patch attempt for "canonical trees"
-        if (v.size() == 0) 
-        	return getTheColor(getDiscrete(0));
-        CellData cd = (CellData)v.elementAt(i);
-        int red = cd.iNucleus.rweight;
-        return getTheColor(getDiscrete(red));
-    }
-
     public void paintLine(Graphics g, int x1, int y1, int x2, int y2){
         Graphics2D g2d = (Graphics2D)g;
         int width = LINEWIDTH;
@@ -174,260 +161,14 @@ public class Cell extends DefaultMutableTreeNode {
         g2d.drawLine(x1, y1, x2, y2);
     }
 
-    private void drawColoredLine(Graphics g, Cell c, int x1, int y1, int x2, int y2) {
-        //System.out.println("\ndrawColoredLine entered: " + iName + CS + c.getName() + CS + x1
-        //       + CS + y1 + CS + x2 + CS + y2 + CS + ysc + CS + (y2 - y1)/ysc);
-        Vector use;
-        if (!iName.equals(c.getName())) {
-            use = c.iCellData;
-        } else {
-            use = iCellData;
-
-        }
-        int useSize = use.size();
-        // If drawing a horizontal line
-        if (x1 != x2) {
-            c.getParent();
-            // Retrieves green color
-            Color color = getColor(use.size() - 1, use);
-            g.setColor(color);
-            g.drawLine(x1, y1, x2, y2);
-        }
-        // If drawing a vertical line
-        else {
-            int range = (int)Math.round((y2 - y1)/ysc);
-            int k = Math.min(range, useSize);
-            // attempt a patch to handle canonical trees without
-            // having them create iCellData
-            if (k == 0) {
-                k = range;
-                useSize = k;
-            }
-            // end of patch attempt
-            if (k > 0) {
-                int y2i = y1;
-                int y10 = y1;
-                for (int i=0; i < k; i++) {
-                	Color color = c.getColor(i, use);
-                	// Use another color for bookmarked cells
-                	if (iBookmarkListModel != null) {
-                		if (iBookmarkListModel.contains(c.getName())) {
-                			//System.out.println(c.getName()+" bookmarked.");
-                			color = Color.MAGENTA;
-                		}
-                	}
-                    //System.out.println("drawColoredLine: " + i + CS + k + CS +c.iCellData.size() + CS + c.getName() + CS + useSize + CS + use.elementAt(i));
-                    g.setColor(color);
-                    y2i = y10 + (y2 - y10) * (i + 1) / k;
-                    paintLine(g, x1, y1, x2, y2);
-                    y1 = y2i;
-                }
-            }
-        }
-        g.setColor(Color.BLACK);
-    }
-
-
     // Used to draw root of tree with the yellow segment
     public void draw(Graphics g, int w, int h, int frameWidth, Hashtable cHash) {
-        //System.out.println("draw1 " + this.getName());
-        iCellsDrawn = new Vector();
         iCellXHash = cHash;
-        int rootStart = iTimeIndex;
-        double height = (iLateTime - iTimeIndex);
-        //double height = 500. - iTimeIndex;
-        //double height = iEndingIndex - iTimeIndex;
-        //System.out.println("Cell.draw: " + iTimeIndex + CS + iEndingIndex + CS + iLateTime);
-        //height = 800;
-        //System.out.println("draw cHeight=" + cHeight);
-        ysc = (h - START1 - BORDERS)/height; //*(cHeight-100)/600;
-        iXmax = xsc;
-        yStartUse = START1;
-        
-        // Draws yellow root segment of lineage tree
-        xUse = draw(g, h, xsc + 20, yStartUse, this, cHash, rootStart);
-        g.fillOval(xUse-2, START1-2, 4, 4);
-        g.drawString(this.toString(), xUse + 5, START1);
-        fillInHash(this, cHash);
-        g.setColor(Color.YELLOW);
-        g.drawLine(xUse, START0, xUse, START1);
-        g.setColor(Color.BLACK);
-        showScale(g, h - START1 - BORDERS, frameWidth);
-        //drawCellNames(g);
+        LineageLayout layout = LineageLayout.sulston(this, iLateTime, h, iBookmarkListModel, cHash);
+        layout.paint((Graphics2D)g, g.getClipBounds());
         iLateTime = iEndingIndex;
     }
 
-    // Seems useless
-    private void drawCellNames(Graphics g) {
-        g.setColor(Color.BLACK);
-        Enumeration e = iCellsDrawn.elements();
-        while (e.hasMoreElements()) {
-            Cell c = (Cell)e.nextElement();
-            boolean b = isLeaf(c);
-            if (!b && c != this) {
-                    //drawRotatedText(g, c.getName(), c.xUse, c.yStartUse - 5, -Math.PI/8);
-            }
-        }
-
-    }
-
-    private boolean isLeaf(Cell c) {
-        boolean rtn = false;
-        if (c.isLeaf()) 
-        	rtn = true;
-        else if (c.getEndTime() > iLateTime) 
-        	rtn = true;
-        return rtn;
-    }
-
-
-
-    private int draw(Graphics g, int h, int x, int ystart, Cell c, Hashtable cHash, int rootStart) {
-        iCellsDrawn.add(c);
-        boolean done = false;
-        int lastTime = c.iEndTime;
-        int lateTime = iLateTime;
-        //System.out.println("draw2 " + c.getName() + CS + this.getName() + CS + lastTime + CS + lateTime);
-        if (c.iEndTime > lateTime) {
-            done = true;
-            lastTime = lateTime;
-        }
-
-        int length = (int)((lastTime - c.iTimeIndex) * ysc + .5);
-        c.yStartUse = (int)((c.iTimeIndex - iTimeIndex) * ysc) + START1;
-        //System.out.println("draw2: " + c + CS + iTimeIndex + CS + c.iTimeIndex + CS + c.iEndTime);
-
-        if (c.getChildCount() == 0 || done) {
-            if (x < iXmax) x = iXmax + xsc;
-
-            //g.setColor(getDebugColor(c));
-            //g.drawLine(x, c.yStartUse, x, c.yStartUse + length);
-        	//System.out.println("draw2 " + c.getName());
-            drawColoredLine(g, c, x, c.yStartUse, x, c.yStartUse + length);
-            //System.out.println("draw1: " + iName + CS + c.getName() + CS + done + CS + g.getColor());
-            g.setColor(Color.BLACK);
-            //System.out.println("draw: " + c.getName() + CS + yStartUse + CS + length);
-            drawRotatedText(g, c.getName(), x, c.yStartUse + length + 5, Math.PI/2);
-            if (x > iXmax) iXmax = x;
-            c.xUse = x;
-            fillInHash(c, cHash);
-            g.fillOval(c.xUse-2, c.yStartUse-2, 4, 4);
-            return x;
-        } else {
-            Cell cLeft = (Cell)c.getChildAt(0);
-            Cell cRite = (Cell)c.getChildAt(1);
-            int nl = cLeft.getChildCount()/2;
-            if (nl == 0) 
-            	nl = 1;
-            //g.setColor(getDebugColor(cLeft));
-            //System.out.println("draw2 " + cLeft.getName());
-            int x1 = draw(g, h, x, yStartUse + length, cLeft, cHash, rootStart);
-            //g.setColor(Color.black);
-            cLeft.xUse = x1;
-            if (!isLeaf(cLeft)) {
-            //if (x1 != x && !cLeft.isLeaf()) {
-                g.fillOval(cLeft.xUse - 2, cLeft.yStartUse - 2, 4, 4);
-                fillInHash(cLeft, cHash);
-                drawRotatedText(g, cLeft.getName(), cLeft.xUse, cLeft.yStartUse - 5, -Math.PI/8);
-                //System.out.println("drawRotated: " + cLeft.getName() + CS + cLeft.isLeaf() + CS + x1 + CS + x);
-            }
-            int xx = x1 + xsc * nl;
-            //System.out.println("draw2 " + cRite.getName());
-            int x2 = draw(g, h, xx, yStartUse + length, cRite, cHash, rootStart);
-            cRite.xUse = x2;
-            if (!isLeaf(cRite)) {
-            //if (x2 != xx && !cRite.isLeaf()) {
-                //g.fillOval(cRite.xUse - 4, cRite.yStartUse - 4, 8, 8);
-                g.fillOval(cRite.xUse - 2, cRite.yStartUse - 2, 4, 4);
-                fillInHash(cRite, cHash);
-                drawRotatedText(g, cRite.getName(), cRite.xUse, cRite.yStartUse - 5, -Math.PI/8);
-            }
-            //g.setColor(getDebugColor(c));;
-            //g.drawLine(cLeft.xUse, cLeft.yStartUse, cRite.xUse, cRite.yStartUse);
-            
-            // Draw horizontal line 
-            drawColoredLine(g, c, cLeft.xUse, cLeft.yStartUse, cRite.xUse, cRite.yStartUse);
-            
-            //System.out.println("draw2: " + iName + CS + c.getName() + CS + done + CS + g.getColor());
-            x = (x1 + x2)/2;
-            //g.drawLine(x, c.yStartUse, x, cLeft.yStartUse);
-            
-            // Draw vertical line
-            drawColoredLine(g, c, x, c.yStartUse, x, cLeft.yStartUse);
-
-            return x;
-        }
-    }
-
-
-    private void fillInHash(Cell c, Hashtable cHash) {
-        int k = c.xUse * 10000 + c.yStartUse;
-        cHash.put(new Integer(k), c);
-    }
-
-
-    private void showScale(Graphics g, int y, int frameWidth) {
-        // tick marks every 10 minutes
-        int lateTime = iLateTime;
-        int x = 5; //frameWidth/2;
-        Color colorNow = g.getColor();
-        g.setColor(Color.blue);
-        g.drawLine(x, START1, x, y + START1);
-
-        int k = iLateTime - iTimeIndex;
-        double fy = y;
-        double fk = k;
-        double incOne = fy/fk;
-        double incTen = 10*incOne;
-
-        k = (k - (k%10))/10;
-        int inc = 5;
-        for (int i=0; i <= k; i++) {
-            int y0 = START1 + (int)Math.round(incTen * i); // + 0.5);
-            g.drawLine(x, y0, x + inc, y0);
-        }
-        g.drawString(String.valueOf(iTimeIndex), x + inc, START1);
-        g.drawString(String.valueOf(lateTime), x + inc, START1 + y + 15);
-        g.setColor(colorNow);
-    }
-
-    private void drawRotatedText(Graphics g, String s, int x, int y, double angle) {
-        Point p1 = new Point(x,y);
-        //System.out.println("drawRotatedText1: " + s + CS + p1.getX() + CS + p1.getY() + CS + angle);
-
-        Graphics2D g2d = (Graphics2D)g;
-        g2d.rotate(angle);
-        try {
-            g2d.getTransform().inverseTransform(p1, p1);
-        } catch(Exception e) {
-            e.printStackTrace();
-        }
-        //System.out.println("drawRotatedText2: " + s + CS + p1.getX() + CS + p1.getY());
-
-
-        if (angle > 1.5) g2d.drawString(s, y, -x);
-        else {
-            Point p = myRotate(x, y);
-            g2d.drawString(s, (int)p.getX(), (int)p.getY());
-
-        }
-
-        myRotate(x, y);
-
-        g2d.rotate(-angle);
-
-    }
-
-    private Point myRotate(int x, int y) {
-        double h = Math.sqrt(x*x + y*y);
-        double a = Math.atan((double)y/(double)x);
-        double b = .375*Math.PI - a;
-        //System.out.println("myRotate: " + h + CS + a + CS + b);
-        int yy = (int)Math.round(h * Math.cos(b));
-        int xx = (int)Math.round(h * Math.sin(b));
-        return new Point(xx, yy);
-    }
-
 
     public void updateCellData(Nucleus n) {
         iCellData.add(new CellData(n));
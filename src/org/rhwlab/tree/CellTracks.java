@@ -0,0 +1,251 @@
+package org.rhwlab.tree;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Hashtable;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.Vector;
+
+import org.rhwlab.snight.Nucleus;
+
+/**
+ * where every Cell of an AncesTree is at each time point of its life
+ * <br>a Cell holds one nucleus per time point from getTime() on; here
+ * that run is kept as the slots of those nuclei in the Vectors of
+ * nuclei_record, all tracks end to end in one int array, so following
+ * a cell through time is an array read per time point instead of a
+ * search of the time point
+ * <br>built by AncesTree when it is built and again on first use after
+ * an update; a slot is checked against the Cell's own CellData when it
+ * is read and looked for again if the nucleus has moved in its Vector
+ *
+ * Created: Oct. 2026
+ */
+public class CellTracks {
+    private Vector                          iRecord;
+    private IdentityHashMap<Cell, Integer>  iTrackOf;
+    private Hashtable<String, int []>       iSpans;
+    private Cell []                         iCells;
+    private int []                          iStart;
+    private int []                          iOffset;
+    private int []                          iLength;
+    private int []                          iSlots;
+    private int []                          iEndFirst;
+    private int []                          iByEnd;
+    private int                             iFirst;
+    private int                             iLast;
+
+    /**
+     * @param cells the Cells of the tree, those without nuclei are left out
+     * @param record nuclei_record the Cells were built from
+     */
+    @SuppressWarnings("unchecked")
+    public CellTracks(Collection cells, Vector record) {
+        iRecord = record;
+        int count = 0;
+        int total = 0;
+        for (Iterator it = cells.iterator(); it.hasNext(); ) {
+            int length = ((Cell)it.next()).getCellData().size();
+            if (length == 0) continue;
+            count++;
+            total += length;
+        }
+        iTrackOf = new IdentityHashMap<Cell, Integer>(count * 2);
+        iSpans = new Hashtable<String, int []>(count * 2);
+        iCells = new Cell[count];
+        iStart = new int[count];
+        iOffset = new int[count];
+        iLength = new int[count];
+        iSlots = new int[total];
+        int k = 0;
+        int offset = 0;
+        int first = Integer.MAX_VALUE;
+        int last = 0;
+        for (Iterator it = cells.iterator(); it.hasNext(); ) {
+            Cell c = (Cell)it.next();
+            Vector data = c.getCellData();
+            if (data.size() == 0) continue;
+            iCells[k] = c;
+            iStart[k] = c.getTime();
+            iOffset[k] = offset;
+            iLength[k] = data.size();
+            for (int i=0; i < iLength[k]; i++) {
+                Nucleus n = ((CellData)data.elementAt(i)).iNucleus;
+                iSlots[offset + i] = find(iStart[k] + i, n, n.index - 1);
+            }
+            iTrackOf.put(c, k);
+            int end = iStart[k] + iLength[k] - 1;
+            int [] span = iSpans.get(c.getName());
+            if (span == null) iSpans.put(c.getName(), new int [] {iStart[k], end});
+            else {
+                span[0] = Math.min(span[0], iStart[k]);
+                span[1] = Math.max(span[1], end);
+            }
+            first = Math.min(first, iStart[k]);
+            last = Math.max(last, end);
+            offset += iLength[k];
+            k++;
+        }
+
+        iFirst = count == 0 ? 0 : first;
+        iLast = last;
+
+        // counting sort of the tracks by the time they end
+        iEndFirst = new int[last + 2];
+        for (k=0; k < count; k++) iEndFirst[iStart[k] + iLength[k]]++;
+        for (int t=0; t <= last; t++) iEndFirst[t + 1] += iEndFirst[t];
+        int [] fill = Arrays.copyOf(iEndFirst, last + 1);
+        iByEnd = new int[count];
+        for (k=0; k < count; k++) iByEnd[fill[iStart[k] + iLength[k] - 1]++] = k;
+    }
+
+    /**
+     * @return true if the Cell has a track here
+     */
+    public boolean contains(Cell c) {
+        return c != null && iTrackOf.containsKey(c);
+    }
+
+    /**
+     * @return first time point of the Cell, or -1 if it has no track
+     */
+    public int getStart(Cell c) {
+        int k = trackOf(c);
+        return k < 0 ? -1 : iStart[k];
+    }
+
+    /**
+     * @return last time point of the Cell, or -1 if it has no track
+     */
+    public int getEnd(Cell c) {
+        int k = trackOf(c);
+        return k < 0 ? -1 : iStart[k] + iLength[k] - 1;
+    }
+
+    /**
+     * @return number of time points the Cell has nuclei in, 0 if none
+     */
+    public int getLength(Cell c) {
+        int k = trackOf(c);
+        return k < 0 ? 0 : iLength[k];
+    }
+
+    /**
+     * @param c the Cell
+     * @param time 1-based time
+     * @return 0-based slot of the Cell's nucleus in the Vector of the time point,
+     * or -1 if the Cell has none at that time
+     */
+    public synchronized int slot(Cell c, int time) {
+        int k = trackOf(c);
+        if (k < 0) return -1;
+        int i = time - iStart[k];
+        if (i < 0 || i >= iLength[k]) return -1;
+        Vector data = c.getCellData();
+        if (i >= data.size()) return -1;
+        Nucleus n = ((CellData)data.elementAt(i)).iNucleus;
+        int j = find(time, n, iSlots[iOffset[k] + i]);
+        if (j >= 0) iSlots[iOffset[k] + i] = j;
+        return j;
+    }
+
+    /**
+     * @param c the Cell
+     * @param time 1-based time
+     * @return the Cell's nucleus at that time, or null if it has none
+     */
+    public Nucleus nucleus(Cell c, int time) {
+        int j = slot(c, time);
+        if (j < 0) return null;
+        return (Nucleus)((Vector)iRecord.elementAt(time - 1)).elementAt(j);
+    }
+
+    /**
+     * @return the slots of the Cell's nuclei from getStart(c) on, empty if it has no track
+     */
+    public int [] slots(Cell c) {
+        int k = trackOf(c);
+        if (k < 0) return new int[0];
+        int [] slots = new int[iLength[k]];
+        for (int i=0; i < slots.length; i++) slots[i] = slot(c, iStart[k] + i);
+        return slots;
+    }
+
+    /**
+     * @return the Cell's nuclei from getStart(c) on, null where a nucleus
+     * is no longer in nuclei_record, empty if it has no track
+     */
+    public Nucleus [] track(Cell c) {
+        int k = trackOf(c);
+        if (k < 0) return new Nucleus[0];
+        Nucleus [] nuclei = new Nucleus[iLength[k]];
+        for (int i=0; i < nuclei.length; i++) nuclei[i] = nucleus(c, iStart[k] + i);
+        return nuclei;
+    }
+
+    /**
+     * @param time 1-based time
+     * @return the Cells whose tracks end at that time, in the order of the tracks
+     */
+    public Cell [] endingAt(int time) {
+        if (time < 0 || time + 1 >= iEndFirst.length) return new Cell[0];
+        Cell [] cells = new Cell[iEndFirst[time + 1] - iEndFirst[time]];
+        for (int i=0; i < cells.length; i++) cells[i] = iCells[iByEnd[iEndFirst[time] + i]];
+        return cells;
+    }
+
+    /**
+     * @return first time point of any track, 0 if there are none
+     */
+    public int getFirst() {
+        return iFirst;
+    }
+
+    /**
+     * @return last time point of any track, 0 if there are none
+     */
+    public int getLast() {
+        return iLast;
+    }
+
+    /**
+     * @return every Cell with a track
+     */
+    public Cell [] getCells() {
+        return iCells.clone();
+    }
+
+    /**
+     * @param name Cell name
+     * @return first time point of any Cell with this name, or 0 if there is none
+     */
+    public int getFirstTime(String name) {
+        int [] span = name == null ? null : iSpans.get(name);
+        return span == null ? 0 : span[0];
+    }
+
+    /**
+     * @param name Cell name
+     * @return last time point of any Cell with this name, or 0 if there is none
+     */
+    public int getLastTime(String name) {
+        int [] span = name == null ? null : iSpans.get(name);
+        return span == null ? 0 : span[1];
+    }
+
+    private int trackOf(Cell c) {
+        if (c == null) return -1;
+        Integer k = iTrackOf.get(c);
+        return k == null ? -1 : k.intValue();
+    }
+
+    // slot j if it still holds n, otherwise wherever n is now, -1 if it is gone
+    private int find(int time, Nucleus n, int j) {
+        if (time < 1 || time > iRecord.size()) return -1;
+        Vector nuclei = (Vector)iRecord.elementAt(time - 1);
+        if (j >= 0 && j < nuclei.size() && nuclei.elementAt(j) == n) return j;
+        return nuclei.indexOf(n);
+    }
+
+}
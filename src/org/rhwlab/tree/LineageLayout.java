@@ -0,0 +1,557 @@
+package org.rhwlab.tree;
+
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.Stroke;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.HashSet;
+import java.util.Hashtable;
+import java.util.Vector;
+
+import javax.imageio.ImageIO;
+import javax.swing.ListModel;
+
+/**
+ * the geometry of a drawn lineage tree, laid out once and painted as often
+ * as needed
+ * <br>the tree is kept as lines, labels and dots in the coordinates of the
+ * panel it is shown in; a line colored by expression keeps one color per
+ * time point and is painted as runs of equal color
+ * <br>marks are grouped by the cell they belong to, each group with the
+ * bounds of its whole subtree, so a paint only visits the subtrees that
+ * meet the clip; a subtree narrower than a few pixels at the current scale
+ * is painted as a single line and text too small to read is left out
+ * <br>the same layout writes PNG and SVG files at any scale without the
+ * tree being on screen
+ *
+ * Created: Oct. 2026
+ */
+public class LineageLayout {
+    private Node        iRoot;
+    private float       iLineWidth;
+    private Rectangle   iBounds;
+
+    /**
+     * @param lineWidth the width of every line of the tree
+     */
+    public LineageLayout(float lineWidth) {
+        iLineWidth = lineWidth;
+        iRoot = new Node();
+    }
+
+    /**
+     * lays out the tree below root the way Cell.draw has always drawn it
+     * <br>sets ysc of root and xUse, yStartUse of every cell drawn, which
+     * the panels use to find the cell under the mouse
+     * @param root the cell at the top of the tree
+     * @param lateTime the last time point shown
+     * @param h height of the panel
+     * @param bookmarks names of the cells drawn in magenta, or null
+     * @param cHash filled with the cells by position as Cell.draw does, or null
+     */
+    public static LineageLayout sulston(Cell root, int lateTime, int h, ListModel bookmarks, Hashtable cHash) {
+        LineageLayout layout = new LineageLayout(Cell.LINEWIDTH);
+        new Sulston(layout, root, lateTime, bookmarks, cHash).build(h);
+        return layout;
+    }
+
+    /**
+     * @param steps one rgb color per step, the line is cut into that many equal steps
+     */
+    public void addLine(int x1, int y1, int x2, int y2, int [] steps) {
+        add(iRoot, new Segment(x1, y1, x2, y2, steps, iLineWidth));
+    }
+
+    public void addLine(int x1, int y1, int x2, int y2, Color color) {
+        addLine(x1, y1, x2, y2, new int [] {color.getRGB()});
+    }
+
+    /**
+     * @param angle rotation about x, y in radians
+     * @param font font of the label, null for the font of the Graphics painted on
+     */
+    public void addLabel(String text, int x, int y, double angle, Color color, Font font) {
+        add(iRoot, new Label(text, x, y, angle, color, font));
+    }
+
+    public void addDot(int x, int y, Color color) {
+        add(iRoot, new Dot(x, y, color));
+    }
+
+    private void add(Node n, Mark m) {
+        n.marks.add(m);
+        iBounds = null;
+    }
+
+    /**
+     * @return width needed to show the whole tree at scale 1
+     */
+    public int getWidth() {
+        Rectangle r = getBounds();
+        return Math.max(r.x + r.width, 0) + MARGIN;
+    }
+
+    public int getHeight() {
+        Rectangle r = getBounds();
+        return Math.max(r.y + r.height, 0) + MARGIN;
+    }
+
+    private Rectangle getBounds() {
+        if (iBounds == null) {
+            iBounds = iRoot.pack();
+            if (iBounds == null) iBounds = new Rectangle();
+        }
+        return iBounds;
+    }
+
+    /**
+     * paints the marks that meet clip
+     * @param clip in the coordinates of the layout, null for all of it
+     */
+    public void paint(Graphics2D g, Rectangle clip) {
+        getBounds();
+        Stroke stroke = g.getStroke();
+        Color color = g.getColor();
+        g.setStroke(new BasicStroke(iLineWidth));
+        double scale = Math.abs(g.getTransform().getScaleX());
+        if (scale == 0) scale = 1;
+        paint(g, iRoot, clip, scale);
+        g.setStroke(stroke);
+        g.setColor(color);
+    }
+
+    private void paint(Graphics2D g, Node n, Rectangle clip, double scale) {
+        if (n.bounds == null) return;
+        if (clip != null && !n.bounds.intersects(clip)) return;
+        if (n != iRoot && !n.children.isEmpty() && n.reach != null && n.reach.width * scale < LODWIDTH) {
+            g.setColor(n.color);
+            g.drawLine(n.x, n.y, n.x, n.reach.y + n.reach.height);
+            return;
+        }
+        for (int i=0; i < n.children.size(); i++) paint(g, n.children.get(i), clip, scale);
+        for (int i=0; i < n.marks.size(); i++) {
+            Mark m = n.marks.get(i);
+            if (clip == null || m.bounds.intersects(clip)) m.paint(g, scale);
+        }
+    }
+
+    /**
+     * renders the whole tree off screen
+     * @param scale 1 for the size it has in the panel
+     * @param font font of the labels that have none
+     */
+    public BufferedImage toImage(double scale, Font font) {
+        int w = Math.max((int)Math.ceil(getWidth() * scale), 1);
+        int h = Math.max((int)Math.ceil(getHeight() * scale), 1);
+        BufferedImage image = new BufferedImage(w, h, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = image.createGraphics();
+        g.setColor(Color.white);
+        g.fillRect(0, 0, w, h);
+        if (scale != 1) {
+            g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+            g.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+            g.scale(scale, scale);
+        }
+        if (font != null) g.setFont(font);
+        paint(g, null);
+        g.dispose();
+        return image;
+    }
+
+    /**
+     * @param format an ImageIO format name such as png
+     */
+    public void writeImage(File f, String format, double scale, Font font) throws IOException {
+        if (!ImageIO.write(toImage(scale, font), format, f)) {
+            throw new IOException("no writer for " + format);
+        }
+    }
+
+    /**
+     * writes the whole tree as SVG, every mark at full detail
+     * @param scale size of the drawing relative to the panel
+     * @param font font of the labels that have none
+     */
+    public void writeSvg(File f, double scale, Font font) throws IOException {
+        getBounds();
+        if (font == null) font = new Font("Dialog", Font.PLAIN, FONTSIZE);
+        PrintWriter pw = new PrintWriter(new OutputStreamWriter(new FileOutputStream(f), "UTF-8"));
+        try {
+            int w = getWidth();
+            int h = getHeight();
+            pw.println("<?xml version=\"1.0\" encoding=\"UTF-8\"?>");
+            pw.println("<svg xmlns=\"http://www.w3.org/2000/svg\" width=\"" + (int)Math.ceil(w * scale)
+                    + "\" height=\"" + (int)Math.ceil(h * scale) + "\" viewBox=\"0 0 " + w + " " + h + "\">");
+            pw.println("<rect width=\"" + w + "\" height=\"" + h + "\" fill=\"white\"/>");
+            pw.println("<g stroke-width=\"" + iLineWidth + "\" stroke-linecap=\"square\">");
+            writeSvg(pw, iRoot, font);
+            pw.println("</g>");
+            pw.println("</svg>");
+        } finally {
+            pw.close();
+        }
+        if (pw.checkError()) throw new IOException("cannot write " + f);
+    }
+
+    private void writeSvg(PrintWriter pw, Node n, Font font) {
+        for (int i=0; i < n.children.size(); i++) writeSvg(pw, n.children.get(i), font);
+        for (int i=0; i < n.marks.size(); i++) n.marks.get(i).svg(pw, font);
+    }
+
+    private static String svgColor(int rgb) {
+        return String.format("#%06x", rgb & 0xffffff);
+    }
+
+    /**
+     * the marks of one cell and the nodes of its daughters
+     */
+    private static class Node {
+        Vector<Mark>    marks = new Vector<Mark>();
+        Vector<Node>    children = new Vector<Node>();
+        // everything drawn in the subtree, and only its lines
+        Rectangle       bounds;
+        Rectangle       reach;
+        // the single line painted in place of the subtree when it is too narrow
+        int             x;
+        int             y;
+        Color           color = Color.black;
+
+        Rectangle pack() {
+            bounds = null;
+            reach = null;
+            for (int i=0; i < children.size(); i++) {
+                Node c = children.get(i);
+                bounds = union(bounds, c.pack());
+                reach = union(reach, c.reach);
+            }
+            for (int i=0; i < marks.size(); i++) {
+                Mark m = marks.get(i);
+                bounds = union(bounds, m.bounds);
+                if (m instanceof Segment) reach = union(reach, m.bounds);
+            }
+            return bounds;
+        }
+
+        private static Rectangle union(Rectangle a, Rectangle b) {
+            if (a == null) return b == null ? null : new Rectangle(b);
+            if (b != null) a.add(b);
+            return a;
+        }
+    }
+
+    private static abstract class Mark {
+        Rectangle bounds;
+
+        abstract void paint(Graphics2D g, double scale);
+        abstract void svg(PrintWriter pw, Font font);
+    }
+
+    /**
+     * a straight line cut into equal steps of their own color
+     */
+    private static class Segment extends Mark {
+        int     x1;
+        int     y1;
+        int     x2;
+        int     y2;
+        int []  steps;
+
+        Segment(int xx1, int yy1, int xx2, int yy2, int [] rgb, float width) {
+            x1 = xx1;
+            y1 = yy1;
+            x2 = xx2;
+            y2 = yy2;
+            steps = rgb;
+            bounds = new Rectangle(Math.min(x1, x2), Math.min(y1, y2), Math.abs(x2 - x1), Math.abs(y2 - y1));
+            int grow = (int)Math.ceil(width / 2) + 1;
+            bounds.grow(grow, grow);
+        }
+
+        // start of step i, rounded the way the steps have always been cut
+        int x(int i) {
+            return x1 + (x2 - x1) * i / steps.length;
+        }
+
+        int y(int i) {
+            return y1 + (y2 - y1) * i / steps.length;
+        }
+
+        @Override
+        void paint(Graphics2D g, double scale) {
+            int n = steps.length;
+            int start = 0;
+            for (int i=1; i < n; i++) {
+                if (steps[i] == steps[start]) continue;
+                // a step under a pixel long takes the color of the run it follows
+                double length = Math.max(Math.abs(x(i + 1) - x(i)), Math.abs(y(i + 1) - y(i))) * scale;
+                if (length < 1 && i < n - 1) continue;
+                g.setColor(new Color(steps[start]));
+                g.drawLine(x(start), y(start), x(i), y(i));
+                start = i;
+            }
+            g.setColor(new Color(steps[start]));
+            g.drawLine(x(start), y(start), x2, y2);
+        }
+
+        @Override
+        void svg(PrintWriter pw, Font font) {
+            int n = steps.length;
+            int start = 0;
+            for (int i=1; i <= n; i++) {
+                if (i < n && steps[i] == steps[start]) continue;
+                pw.println("<line x1=\"" + x(start) + "\" y1=\"" + y(start) + "\" x2=\"" + x(i) + "\" y2=\"" + y(i)
+                        + "\" stroke=\"" + svgColor(steps[start]) + "\"/>");
+                start = i;
+            }
+        }
+    }
+
+    private static class Label extends Mark {
+        String  text;
+        int     x;
+        int     y;
+        double  angle;
+        Color   color;
+        Font    font;
+
+        Label(String s, int xx, int yy, double a, Color c, Font f) {
+            text = s;
+            x = xx;
+            y = yy;
+            angle = a;
+            color = c;
+            font = f;
+            // a generous box, one em per character
+            int size = font != null ? font.getSize() : FONTSIZE;
+            Rectangle r = new Rectangle(0, -size, Math.max(text.length(), 1) * size, size + size / 2);
+            AffineTransform at = AffineTransform.getTranslateInstance(x, y);
+            at.rotate(angle);
+            bounds = at.createTransformedShape(r).getBounds();
+            bounds.grow(2, 2);
+        }
+
+        @Override
+        void paint(Graphics2D g, double scale) {
+            Font f = g.getFont();
+            int size = font != null ? font.getSize() : (f != null ? f.getSize() : FONTSIZE);
+            if (size * scale < MINTEXT) return;
+            g.setColor(color);
+            if (font != null) g.setFont(font);
+            if (angle == 0) {
+                g.drawString(text, x, y);
+            } else {
+                AffineTransform at = g.getTransform();
+                g.translate(x, y);
+                g.rotate(angle);
+                g.drawString(text, 0, 0);
+                g.setTransform(at);
+            }
+            if (font != null) g.setFont(f);
+        }
+
+        @Override
+        void svg(PrintWriter pw, Font dflt) {
+            Font f = font != null ? font : dflt;
+            StringBuffer sb = new StringBuffer("<text x=\"" + x + "\" y=\"" + y + "\"");
+            sb.append(" fill=\"" + svgColor(color.getRGB()) + "\"");
+            sb.append(" font-family=\"" + f.getFamily() + "\" font-size=\"" + f.getSize() + "\"");
+            if (angle != 0) {
+                sb.append(" transform=\"rotate(" + Math.toDegrees(angle) + " " + x + " " + y + ")\"");
+            }
+            sb.append(">");
+            for (int i=0; i < text.length(); i++) {
+                char c = text.charAt(i);
+                if (c == '&') sb.append("&amp;");
+                else if (c == '<') sb.append("&lt;");
+                else if (c == '>') sb.append("&gt;");
+                else sb.append(c);
+            }
+            sb.append("</text>");
+            pw.println(sb.toString());
+        }
+    }
+
+    private static class Dot extends Mark {
+        int     x;
+        int     y;
+        Color   color;
+
+        Dot(int xx, int yy, Color c) {
+            x = xx;
+            y = yy;
+            color = c;
+            bounds = new Rectangle(x - 3, y - 3, 6, 6);
+        }
+
+        @Override
+        void paint(Graphics2D g, double scale) {
+            g.setColor(color);
+            g.fillOval(x - 2, y - 2, 4, 4);
+        }
+
+        @Override
+        void svg(PrintWriter pw, Font font) {
+            pw.println("<circle cx=\"" + x + "\" cy=\"" + y + "\" r=\"2\" fill=\"" + svgColor(color.getRGB())
+                    + "\" stroke=\"none\"/>");
+        }
+    }
+
+    /**
+     * the layout of Cell.draw: leaves left to right xsc apart, a parent
+     * centred over its daughters, time down the panel
+     */
+    private static class Sulston {
+        LineageLayout   layout;
+        Cell            root;
+        int             lateTime;
+        HashSet<String> bookmarks;
+        Hashtable       cHash;
+        double          ysc;
+        int             xmax;
+
+        Sulston(LineageLayout l, Cell r, int late, ListModel marks, Hashtable hash) {
+            layout = l;
+            root = r;
+            lateTime = late;
+            cHash = hash;
+            bookmarks = new HashSet<String>();
+            if (marks != null) {
+                for (int i=0; i < marks.getSize(); i++) bookmarks.add(String.valueOf(marks.getElementAt(i)));
+            }
+        }
+
+        void build(int h) {
+            double height = lateTime - root.getTime();
+            root.ysc = (h - Cell.START1 - Cell.BORDERS)/height;
+            ysc = root.ysc;
+            xmax = Cell.xsc;
+            root.yStartUse = Cell.START1;
+            Node top = layout.iRoot;
+            int x = place(root, Cell.xsc + 20, top);
+            root.xUse = x;
+            layout.add(top, new Dot(x, Cell.START1, Color.black));
+            layout.add(top, new Label(root.toString(), x + 5, Cell.START1, 0, Color.black, null));
+            hash(root);
+            layout.add(top, new Segment(x, Cell.START0, x, Cell.START1, rgb(Color.yellow), layout.iLineWidth));
+            scale(top, h - Cell.START1 - Cell.BORDERS);
+        }
+
+        private int place(Cell c, int x, Node parent) {
+            Node n = new Node();
+            parent.children.add(n);
+            boolean done = false;
+            int lastTime = c.getEndTime();
+            if (lastTime > lateTime) {
+                done = true;
+                lastTime = lateTime;
+            }
+            int length = (int)((lastTime - c.getTime()) * ysc + .5);
+            c.yStartUse = (int)((c.getTime() - root.getTime()) * ysc) + Cell.START1;
+            n.y = c.yStartUse;
+            n.color = lastColor(c);
+
+            if (c.getChildCount() < 2 || done) {
+                if (x < xmax) x = xmax + Cell.xsc;
+                vertical(n, c, x, c.yStartUse, c.yStartUse + length);
+                layout.add(n, new Label(c.getName(), x, c.yStartUse + length + 5, Math.PI/2, Color.black, null));
+                if (x > xmax) xmax = x;
+                c.xUse = x;
+                hash(c);
+                layout.add(n, new Dot(c.xUse, c.yStartUse, Color.black));
+                n.x = x;
+                return x;
+            }
+            Cell cLeft = (Cell)c.getChildAt(0);
+            Cell cRite = (Cell)c.getChildAt(1);
+            int x1 = place(cLeft, x, n);
+            cLeft.xUse = x1;
+            if (!isLeaf(cLeft)) daughter(n, cLeft);
+            int x2 = place(cRite, x1 + Cell.xsc, n);
+            cRite.xUse = x2;
+            if (!isLeaf(cRite)) daughter(n, cRite);
+            layout.add(n, new Segment(cLeft.xUse, cLeft.yStartUse, cRite.xUse, cRite.yStartUse,
+                    new int [] {n.color.getRGB()}, layout.iLineWidth));
+            x = (x1 + x2)/2;
+            vertical(n, c, x, c.yStartUse, cLeft.yStartUse);
+            n.x = x;
+            return x;
+        }
+
+        private void daughter(Node n, Cell d) {
+            layout.add(n, new Dot(d.xUse, d.yStartUse, Color.black));
+            hash(d);
+            layout.add(n, new Label(d.getName(), d.xUse, d.yStartUse - 5, -Math.PI/8, Color.black, null));
+        }
+
+        // one step per time point, as many as the cell has data for
+        private void vertical(Node n, Cell c, int x, int y1, int y2) {
+            Vector use = c.getCellData();
+            int range = (int)Math.round((y2 - y1)/ysc);
+            int k = Math.min(range, use.size());
+            if (k == 0) k = range;
+            if (k <= 0) return;
+            int [] steps = new int[k];
+            boolean marked = bookmarks.contains(c.getName());
+            for (int i=0; i < k; i++) {
+                steps[i] = marked ? Color.MAGENTA.getRGB() : color(use, i).getRGB();
+            }
+            layout.add(n, new Segment(x, y1, x, y2, steps, layout.iLineWidth));
+        }
+
+        private void scale(Node top, int y) {
+            int x = 5;
+            int inc = 5;
+            int [] blue = rgb(Color.blue);
+            layout.add(top, new Segment(x, Cell.START1, x, y + Cell.START1, blue, layout.iLineWidth));
+            int k = lateTime - root.getTime();
+            double incTen = 10. * y / k;
+            k = (k - (k%10))/10;
+            for (int i=0; i <= k; i++) {
+                int y0 = Cell.START1 + (int)Math.round(incTen * i);
+                layout.add(top, new Segment(x, y0, x + inc, y0, blue, layout.iLineWidth));
+            }
+            layout.add(top, new Label(String.valueOf(root.getTime()), x + inc, Cell.START1, 0, Color.blue, null));
+            layout.add(top, new Label(String.valueOf(lateTime), x + inc, Cell.START1 + y + 15, 0, Color.blue, null));
+        }
+
+        private boolean isLeaf(Cell c) {
+            return c.isLeaf() || c.getEndTime() > lateTime;
+        }
+
+        private void hash(Cell c) {
+            if (cHash != null) cHash.put(Integer.valueOf(c.xUse * 10000 + c.yStartUse), c);
+        }
+
+        private static Color color(Vector use, int i) {
+            if (use.size() == 0) return Cell.getTheColor(Cell.getDiscrete(0));
+            CellData cd = (CellData)use.elementAt(i);
+            return Cell.getTheColor(Cell.getDiscrete(cd.iNucleus.rweight));
+        }
+
+        private static Color lastColor(Cell c) {
+            Vector use = c.getCellData();
+            return color(use, use.size() - 1);
+        }
+
+        private static int [] rgb(Color c) {
+            return new int [] {c.getRGB()};
+        }
+    }
+
+    private static final int
+         MARGIN = 10
+        ,FONTSIZE = 12
+        ,LODWIDTH = 3
+        ,MINTEXT = 4
+        ;
+}
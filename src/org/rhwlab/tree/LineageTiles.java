@@ -0,0 +1,83 @@
+package org.rhwlab.tree;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * off screen tiles of a LineageLayout
+ * <br>the layout is painted into square images the first time a part of it
+ * is shown and those are copied to the screen afterwards, so scrolling and
+ * expose events cost an image copy instead of walking the tree again
+ * <br>the tiles most recently shown are kept; a new layout needs new tiles
+ *
+ * Created: Oct. 2026
+ */
+public class LineageTiles {
+    private LineageLayout                       iLayout;
+    private Font                                iFont;
+    private Color                               iBackground;
+    private LinkedHashMap<Long, BufferedImage>  iTiles;
+
+    /**
+     * @param font font of the labels that have none, null for the default
+     */
+    public LineageTiles(LineageLayout layout, Font font, Color background) {
+        iLayout = layout;
+        iFont = font;
+        iBackground = background;
+        iTiles = new LinkedHashMap<Long, BufferedImage>(16, .75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, BufferedImage> eldest) {
+                return size() > MAXTILES;
+            }
+        };
+    }
+
+    public LineageLayout getLayout() {
+        return iLayout;
+    }
+
+    /**
+     * @param clip the part of g to cover, null for the whole layout
+     */
+    public void paint(Graphics g, Rectangle clip) {
+        if (clip == null) clip = new Rectangle(0, 0, iLayout.getWidth(), iLayout.getHeight());
+        if (clip.isEmpty()) return;
+        int c0 = Math.floorDiv(clip.x, TILE);
+        int c1 = Math.floorDiv(clip.x + clip.width - 1, TILE);
+        int r0 = Math.floorDiv(clip.y, TILE);
+        int r1 = Math.floorDiv(clip.y + clip.height - 1, TILE);
+        for (int r=r0; r <= r1; r++) {
+            for (int c=c0; c <= c1; c++) {
+                g.drawImage(tile(c, r), c * TILE, r * TILE, null);
+            }
+        }
+    }
+
+    private BufferedImage tile(int col, int row) {
+        Long key = Long.valueOf(((long)col << 32) | (row & 0xffffffffL));
+        BufferedImage image = iTiles.get(key);
+        if (image != null) return image;
+        image = new BufferedImage(TILE, TILE, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = image.createGraphics();
+        g.setColor(iBackground);
+        g.fillRect(0, 0, TILE, TILE);
+        g.translate(-col * TILE, -row * TILE);
+        if (iFont != null) g.setFont(iFont);
+        iLayout.paint(g, new Rectangle(col * TILE, row * TILE, TILE, TILE));
+        g.dispose();
+        iTiles.put(key, image);
+        return image;
+    }
+
+    private static final int
+         TILE = 256
+        ,MAXTILES = 64
+        ;
+}
@@ -280,29 +280,8 @@ public class SulstonTree extends JFrame implements ActionListener, WindowFocusLi
             //append(dir);
             //append(name);
             //println("SulstonTree.saveImage, " + iTreeCanvas + CS + iTitle);
+            // rendered off screen from the laid out tree, .svg names are written as SVG
             iTreePanel.captureImage(name, dir);
-            /*
-            Rectangle screenRect = this.getBounds();
-            int topAdjust = 58;
-            int y = screenRect.y;
-            screenRect.y += topAdjust;
-            int height = screenRect.height;
-            screenRect.height -= topAdjust;
-            // create screen shot
-            Robot robot = null;
-            try {
-                robot = new Robot();
-                BufferedImage image = robot.createScreenCapture(screenRect);
-                ImageIO.write(image, IMAGETYPE, new File(iTitle + "." + IMAGETYPE));
-            } catch(AWTException awtex) {
-                awtex.printStackTrace();
-            } catch(Exception e) {
-                e.printStackTrace();
-            }
-            System.out.println("file: " + iTitle + "." + IMAGETYPE + " written");
-            //iSaveInProcess = false;
-
-             */
         }
     }
 
@@ -10,7 +10,6 @@ import java.awt.Color;
 import java.awt.Dimension;
 import java.awt.Graphics;
 import java.awt.event.MouseEvent;
-import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
@@ -20,7 +19,6 @@ import java.util.Enumeration;
 import java.util.Hashtable;
 import java.util.Vector;
 
-import javax.imageio.ImageIO;
 import javax.swing.JPanel;
 import javax.swing.event.MouseInputAdapter;
 
@@ -44,6 +42,9 @@ public class TreePanel extends JPanel {
     int         iMinRed;
     int         iMaxRed;
     int         iNoPaint;
+    ListModel   iBookmarkListModel;
+    LineageTiles iTiles;
+    int         iLayoutHeight;
 
     public TreePanel(Cell c, SulstonTree sulstonTree, boolean canInterrogate) {
     	//System.out.println("TreePanel constructor called.");
@@ -73,21 +74,28 @@ public class TreePanel extends JPanel {
     public void setBookmarkListModel(ListModel listModel) {
     	if (c != null)
     		c.setBookmarkListModel(listModel);
+    	iBookmarkListModel = listModel;
+    	iTiles = null;
     }
 
     public void setLateTime(int time) {
+        if (time != iLateTime) iTiles = null;
         iLateTime = time;
     }
 
     public void setMinRed(int min) {
+        if (min != iMinRed) iTiles = null;
         iMinRed = min;
     }
 
     public void setMaxRed(int max) {
+        if (max != iMaxRed) iTiles = null;
         iMaxRed = max;
     }
 
     public void setCell(Cell cSet) {
+        // the tree may have been rebuilt or edited, so lay it out again
+        iTiles = null;
     	try {
 	        c = cSet;
 	        width = XSCALE*c.getLeafCount();
@@ -104,16 +112,41 @@ public class TreePanel extends JPanel {
         }
     }
 
+    /**
+     * the tree laid out for the current cell and settings, made again only
+     * when one of those has changed or the window height has
+     */
+    private LineageTiles getTiles() {
+        if (c == null) return null;
+        int h = iSulstonTree.getSize().height - 89;
+        if (iTiles == null || h != iLayoutHeight) {
+            iCellXHash.clear();
+            Cell.setMinRed(iMinRed);
+            Cell.setMaxRed(iMaxRed);
+            LineageLayout layout = LineageLayout.sulston(c, iLateTime, h, iBookmarkListModel, iCellXHash);
+            iTiles = new LineageTiles(layout, getFont(), Color.white);
+            iLayoutHeight = h;
+        }
+        return iTiles;
+    }
+
 //    public void captureImage(String filePath) {
     public void captureImage(String fileName, String dir) {
-        BufferedImage image = new BufferedImage(getWidth(), getHeight(), BufferedImage.TYPE_INT_RGB);
-        //println("captureImage, " + getWidth() + CS + getHeight());
-        Graphics g = image.getGraphics();
-        paint(g);
-        //println("captureImage, " + image.getWidth() + CS + image.getHeight());
+        captureImage(fileName, dir, 1);
+    }
+
+    /**
+     * renders the tree off screen to dir/fileName, as SVG when the name
+     * ends in .svg and as PNG otherwise
+     * @param scale size of the image relative to the panel
+     */
+    public void captureImage(String fileName, String dir, double scale) {
+        LineageTiles tiles = getTiles();
+        if (tiles == null) return;
         File f = new File(dir + "/" + fileName);
         try {
-            ImageIO.write(image, "png", f);
+            if (fileName.toLowerCase().endsWith(".svg")) tiles.getLayout().writeSvg(f, scale, getFont());
+            else tiles.getLayout().writeImage(f, "png", scale, getFont());
         } catch(IOException ioe) {
             ioe.printStackTrace();
         }
@@ -135,7 +168,7 @@ public class TreePanel extends JPanel {
         pw.println("<html>");
         pw.println("<head><title>" + s + "</title></head>");
         pw.println("<body>");
-        pw.println("<img src=\"" + s + ".png\">");
+        pw.println("<img src=\"" + fileName + "\">");
         pw.println("</body>");
         pw.println("</html>");
     }
@@ -149,18 +182,14 @@ public class TreePanel extends JPanel {
         Dimension d = getSize();
         //System.out.println("paintComponent d=" + d + CS + iLateTime);
         //d = getPreferredSize();
-        Dimension pd = iSulstonTree.getSize();
         //System.out.println("paintComponent, pd=" + pd);
         //Cell.setHeight(pd.height);
 
-        if (c != null) {
+        LineageTiles tiles = getTiles();
+        if (tiles != null) {
             //System.out.println("TreePanel.paintComponent:\n " + System.currentTimeMillis()
                    //+CS + d + CS + iSulstonTree.getWidth() + CS + c.getName()
                     //+ "\n" + iLateTime + CS + iMinRed + CS + iMaxRed);
-            iCellXHash.clear();
-            c.setLateTime(iLateTime);
-            Cell.setMinRed(iMinRed);
-            Cell.setMaxRed(iMaxRed);
             //System.out.println("TreePanel cell drawing...");
             // Give Cell c reference to bookmark list
             /*
@@ -172,8 +201,8 @@ public class TreePanel extends JPanel {
             	c.setBookmarkListModel(null);
             }
             */
-            // Draws first yellow segment of root cell
-            c.draw(g, d.width, pd.height-89, iSulstonTree.getWidth(), iCellXHash);
+            // only the tiles under the clip are copied, each painted once per layout
+            tiles.paint(g, g.getClipBounds());
         }
         //displayHash();
         //System.out.println("paintComponent2: " + getSize());
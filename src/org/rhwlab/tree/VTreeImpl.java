@@ -6,17 +6,14 @@
  */
 package org.rhwlab.tree;
 
-import java.awt.BasicStroke;
 import java.awt.BorderLayout;
 import java.awt.Canvas;
 import java.awt.Color;
 import java.awt.Dimension;
 import java.awt.Font;
 import java.awt.Graphics;
-import java.awt.Graphics2D;
 import java.awt.ScrollPane;
 import java.awt.event.MouseEvent;
-import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
@@ -27,7 +24,6 @@ import java.util.Enumeration;
 import java.util.Hashtable;
 import java.util.Vector;
 
-import javax.imageio.ImageIO;
 import javax.swing.JFrame;
 import javax.swing.JTextField;
 import javax.swing.event.MouseInputAdapter;
@@ -170,7 +166,7 @@ public class VTreeImpl {
         iLeafNames = labelLeaves;
         iPSFileName = dir + C.Fileseparator + fileName; //params[PSFILE].getText();
 
-        if (fileName.indexOf("png") >= 0) {
+        if (fileName.indexOf("png") >= 0 || fileName.indexOf("svg") >= 0) {
             iTestCanvas.captureImage(fileName, dir);
             return;
         }
@@ -793,6 +789,46 @@ public class VTreeImpl {
     }
 
 
+    /**
+     * the lines and names of iCellLines as a layout painted by the canvas
+     * and written out by captureImage, colors fixed as they are now
+     */
+    private LineageLayout makeLayout() {
+        LineageLayout layout = new LineageLayout(iLineWidth);
+        Font f = new Font("Courier", 0, 10 /*iLineInc*/);
+        for(int i=0; i < iCellLines.size(); i++) {
+            Object o = iCellLines.get(i);
+            if (o instanceof CellLine) {
+                CellLine p = (CellLine)o;
+                Vector cellData = p.c.getCellData();
+                int x1 = p.c.getTime() + OFFSET;
+                int x2 = x1;
+                if (p.y1 == p.y2) x2 = p.c.getEnd() + OFFSET;
+                if (x1 == x2) {
+                    layout.addLine(x1, p.y1, x2, p.y2, getSafeColor(cellData, 0));
+                } else if (x1 < x2) {
+                    // one step per time point, as drawLine did it a pixel at a time
+                    int [] steps = new int[x2 - x1];
+                    for (int k=0; k < steps.length; k++) steps[k] = getSafeColor(cellData, k).getRGB();
+                    layout.addLine(x1, p.y1, x2, p.y2, steps);
+                }
+            } else {
+                Name p = (Name)o;
+                Vector cellData = p.c.getCellData();
+                layout.addLabel(p.name, p.x, p.y, 0, getColor(cellData, cellData.size() - 1), f);
+            }
+        }
+        return layout;
+    }
+
+    private Color getSafeColor(Vector cellData, int k) {
+        try {
+            return getColor(cellData, k);
+        } catch(Exception e) {
+            return Color.BLACK;
+        }
+    }
+
     private Color getColor(Vector cellData, int k) {
         if (k < 0 || k > cellData.size()) return Color.black;
         CellData cd = (CellData)cellData.elementAt(k);
@@ -813,10 +849,12 @@ public class VTreeImpl {
         private JFrame  iFrame;
         private boolean iWasDrawn;
         private String rootName;
+        private LineageTiles iTiles;
         int height;
         int width;
         public TestCanvas(String rName) {
             rootName = rName;
+            iTiles = new LineageTiles(makeLayout(), null, Color.white);
             setBackground(Color.white);
             int height = iKlast + 100;
             width = 500;
@@ -835,39 +873,26 @@ public class VTreeImpl {
             //if (!iWasDrawn) System.out.println(s);
         }
 
+        // the background is part of the tiles, so there is nothing to clear first
+        @Override
+		public void update(Graphics g) {
+            paint(g);
+        }
+
         @Override
-		@SuppressWarnings("unused")
 		public void paint(Graphics g) {
-            g.setColor(Color.white);
-            g.fillRect(0, 0, getWidth(), getHeight());
-            int offset = OFFSET;
-            Graphics2D g2 = (Graphics2D)g;
-            int width = LINEWIDTH;
-            g2.setStroke(new BasicStroke(iLineWidth));
-            for(int i=0; i < iCellLines.size(); i++) {
-                Object o = iCellLines.get(i);
-                if (o instanceof CellLine) {
-                    CellLine p = (CellLine)o;
-                    int x1 = p.c.getTime() + offset;
-                    int x2 = x1;
-                    if (p.y1 == p.y2) x2 = p.c.getEnd() + offset;
-                    drawLine(g2, x1, p.y1, x2, p.y2, p.c);
-                    //g.drawLine(x1, p.y1, x2, p.y2);
-                } else {
-                    Name p = (Name)o;
-                    //g.drawString(p.name, p.x, p.y);
-                    drawString(g2, p.x, p.y, p.c);
-                }
-            }
+            iTiles.paint(g, g.getClipBounds());
         }
 
+        /**
+         * renders the whole tree off screen to dir/fileName, as SVG when the
+         * name ends in .svg and as PNG otherwise
+         */
         public void captureImage(String fileName, String dir) {
-            BufferedImage image = new BufferedImage(getWidth(), getHeight(), BufferedImage.TYPE_INT_RGB);
-            Graphics g = image.getGraphics();
-            paint(g);
             File f = new File(dir + "/" + fileName);
             try {
-                ImageIO.write(image, "png", f);
+                if (fileName.toLowerCase().endsWith(".svg")) iTiles.getLayout().writeSvg(f, 1, null);
+                else iTiles.getLayout().writeImage(f, "png", 1, null);
             } catch(IOException ioe) {
                 ioe.printStackTrace();
             }
@@ -888,7 +913,7 @@ public class VTreeImpl {
             pw.println("<html>");
             pw.println("<head><title>" + s + "</title></head>");
             pw.println("<body>");
-            pw.println("<img src=\"" + s + ".png\">");
+            pw.println("<img src=\"" + fileName + "\">");
             pw.println("</body>");
             pw.println("</html>");
 
@@ -931,85 +956,6 @@ public class VTreeImpl {
             return c;
         }
 
-        private void drawLine(Graphics g, int x1, int y1, int x2, int y2, Cell c) {
-            //println("Analysis5.drawLine: " + c.getName() + CS + x1 + CS + y1 + CS + x2 + CS + y2);
-            Vector cellData = c.getCellData();
-            if (x1 == x2) {
-                try {
-                    Color cc = getColor(cellData, 0);
-                    g.setColor(cc);
-                } catch(Exception e) {
-                    g.setColor(Color.BLACK);
-                }
-                //g.setColor(cc);
-                g.drawLine(x1, y1, x2, y2);
-            } else {
-                int k = 0;
-                for (int x=x1; x < x2; x++) {
-                    try {
-                        Color cc = getColor(cellData, k++);
-                        //System.out.println("drawLine: " + c.getName() + CS + cc);
-                        g.setColor(cc);
-                    } catch(Exception e) {
-                        g.setColor(Color.BLACK);
-                    }
-                    g.drawLine(x, y1, x + 1, y2);
-                }
-            }
-        }
-
-
-
-
-
-        private void drawLine(Graphics g, int x1, int y1, int x2, int y2, Cell c, boolean bogus) {
-            //System.out.println("Analysis5.drawLine: " + c.getName() + CS + x1 + CS + y1 + CS + x2 + CS + y2);
-            if (x1 == x2) {
-                try {
-                    Color cc = c.getColor(0);
-                    g.setColor(cc);
-                } catch(Exception e) {
-                    g.setColor(Color.BLACK);
-                }
-                //g.setColor(cc);
-                g.drawLine(x1, y1, x2, y2);
-            } else {
-                int k = 0;
-                for (int x=x1; x < x2; x++) {
-                    try {
-                        Color cc = c.getColor(k++);
-                        //System.out.println("drawLine: " + c.getName() + CS + cc);
-                        g.setColor(cc);
-                    } catch(Exception e) {
-                        g.setColor(Color.BLACK);
-                    }
-                    g.drawLine(x, y1, x + 1, y2);
-                }
-            }
-        }
-
-        private void drawString(Graphics g, int x, int y, Cell c) {
-            //System.out.println("drawString: " + c + CS + x + CS + y);
-            Vector cellData = c.getCellData();
-            Color cc = getColor(cellData, cellData.size() - 1);
-            //Color cc = c.getLastColor();
-            g.setColor(cc);
-            Font f = new Font("Courier", 0, 10 /*iLineInc*/);
-            g.setFont(f);
-            g.drawString(c.getName(), x, y);
-        }
-
-        private void drawString(Graphics g, int x, int y, Cell c, boolean bogus) {
-            //System.out.println("drawString: " + c + CS + x + CS + y);
-            Color cc = c.getLastColor();
-            g.setColor(cc);
-            Font f = new Font("Courier", 0, 10 /*iLineInc*/);
-            g.setFont(f);
-            g.drawString(c.getName(), x, y);
-        }
-
-
-
         class MouseHandler extends MouseInputAdapter {
 
             public MouseHandler(Object o) {